@@ -22,24 +22,25 @@ package net.daporkchop.fp2.common.util.alloc;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import net.daporkchop.lib.common.math.PMath;
 
-import java.util.Comparator;
 import java.util.NavigableSet;
 import java.util.TreeSet;
 
+import static java.lang.Math.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
-import static net.daporkchop.lib.common.util.PorkUtil.*;
 
 /**
  * A simple, efficient memory allocator for arbitrarily sized blocks of memory backed by a sequential heap.
  * <p>
  * Nodes are inserted and removed from the list whenever an allocation is added or removed, and merged whenever possible.
  * <p>
- * Unallocated memory blocks are stored in a TreeSet to allow efficient detection of the smallest possible block that would fit an allocation of the given size.
+ * Unallocated memory blocks are stored in a TreeSet to allow efficient detection of the smallest possible block that would fit an allocation of the given size, and are
+ * additionally indexed by their address so that {@link #compact(MoveListener)} can find the lowest block that would fit an allocation without visiting all of them.
  *
  * @author DaPorkchop_
  */
@@ -52,25 +53,26 @@ public final class SequentialVariableSizedAllocator implements Allocator {
      *   - O(log2(N) + C) (worst-case)
      * free():
      *   - O(log2(N))
+     * compact():
+     *   - O(MAX_COMPACT_CANDIDATES * (MAX_COMPACT_SCAN + log2(N))) (worst-case)
      */
 
     protected static final long MIN_ALLOC_SZ = 64L; //the maximum number of bytes we are willing to waste as padding at the end of a block
 
+    protected static final int MAX_COMPACT_CANDIDATES = 32; //the maximum number of allocations compact() will try to find a new place for before giving up
+    protected static final int MAX_COMPACT_SCAN = 64; //the maximum number of free nodes compact() will check in address order for each candidate
+
     protected final long blockSize;
     protected final GrowFunction growFunction;
     protected final SequentialHeapManager manager;
     protected long capacity;
+    protected long allocatedSpace;
 
-    protected final NavigableSet<Node> emptyNodes = new TreeSet<>((Comparator<Object>) (_a, _b) -> {
-        Node b = (Node) _b;
-        if (_a instanceof Long) {
-            return Long.compare((Long) _a, b.size);
-        } else {
-            Node a = (Node) _a;
-            int d = Long.compare(a.size, b.size);
-            return d != 0 ? d : Long.compare(a.base, b.base);
-        }
+    protected final NavigableSet<Node> emptyNodes = new TreeSet<>((a, b) -> {
+        int d = Long.compare(a.size, b.size);
+        return d != 0 ? d : Long.compare(a.base, b.base);
     });
+    protected final Long2ObjectSortedMap<Node> emptyNodesByBase = new Long2ObjectRBTreeMap<>();
     protected final Long2ObjectMap<Node> usedNodes = new Long2ObjectRBTreeMap<>();
     protected Node tail;
 
@@ -87,7 +89,7 @@ public final class SequentialVariableSizedAllocator implements Allocator {
 
         //create wilderness node
         this.tail = new Node().base(0L).size(this.capacity);
-        this.emptyNodes.add(this.tail);
+        this.addEmptyNode(this.tail);
     }
 
     @Override
@@ -97,11 +99,15 @@ public final class SequentialVariableSizedAllocator implements Allocator {
 
         Node found;
         do {
-            found = this.emptyNodes.ceiling(uncheckedCast(rawSize));
+            found = this.emptyNodes.ceiling(new Node().size(rawSize).base(Long.MIN_VALUE));
         } while (found == null && this.expand());
         checkState(found != null, "unable to allocate memory!");
 
-        this.emptyNodes.remove(found);
+        return this.allocFrom(found, rawSize);
+    }
+
+    private long allocFrom(Node found, long rawSize) {
+        this.removeEmptyNode(found);
 
         if (found.size - rawSize > MIN_ALLOC_SZ) { //we don't want to waste too much space at the end, so we split the node in two and leave the remaining space unallocated
             Node split = new Node()
@@ -113,11 +119,12 @@ public final class SequentialVariableSizedAllocator implements Allocator {
             } else {
                 this.tail = split;
             }
-            this.emptyNodes.add(split);
+            this.addEmptyNode(split);
         }
 
         found.used(true);
         this.usedNodes.put(found.base, found);
+        this.allocatedSpace += found.size;
         return found.base;
     }
 
@@ -127,9 +134,10 @@ public final class SequentialVariableSizedAllocator implements Allocator {
         checkArg(node != null, "invalid address for free(): %d (allocator state: %s)", address, this);
 
         node.used(false);
+        this.allocatedSpace -= node.size;
         if (node.next != null && !node.next.used) { //next node isn't used either, we can merge forwards
             Node next = node.next;
-            this.emptyNodes.remove(next);
+            this.removeEmptyNode(next);
 
             node.size(node.size + next.size).next(next.next);
             if (next.next != null) {
@@ -140,7 +148,7 @@ public final class SequentialVariableSizedAllocator implements Allocator {
         }
         if (node.prev != null && !node.prev.used) { //previous node isn't used, we can merge backwards
             Node prev = node.prev;
-            this.emptyNodes.remove(prev);
+            this.removeEmptyNode(prev);
 
             prev.size(prev.size + node.size).next(node.next);
             if (node.next != null) {
@@ -152,7 +160,124 @@ public final class SequentialVariableSizedAllocator implements Allocator {
             node = prev;
         }
 
+        this.addEmptyNode(node);
+    }
+
+    /**
+     * Moves an allocation towards the start of the heap.
+     * <p>
+     * The allocation closest to the end of the heap is moved into the free region with the lowest address which is large enough to hold it, if any such region
+     * exists before the allocation (if more than {@link #MAX_COMPACT_SCAN} smaller free regions come before it, the smallest free region which is large enough
+     * is used instead). If there is no such region, the allocations before it are tried in turn (up to {@link #MAX_COMPACT_CANDIDATES} allocations
+     * in total): moving those merges the space they leave behind with the surrounding free regions, which may eventually make room for the allocations after
+     * them. An allocation is only ever moved to a region which ends before the allocation starts, so the old and new ranges never overlap.
+     * <p>
+     * Once this method returns, the allocation's old address is no longer valid and must be replaced with the new one. The given {@link MoveListener} is
+     * notified before the old region is freed, and is responsible for copying the allocation's contents to its new address.
+     *
+     * @param listener the {@link MoveListener} to notify if an allocation is moved
+     * @return whether or not an allocation was moved
+     */
+    public boolean compact(@NonNull MoveListener listener) {
+        int candidates = 0;
+        for (Node node = this.tail; node != null && candidates < MAX_COMPACT_CANDIDATES; node = node.prev) {
+            if (!node.used) {
+                continue;
+            }
+            candidates++;
+
+            Node target = this.lowestFreeNodeBefore(node);
+            if (target != null) {
+                long oldBase = node.base;
+                long size = node.size;
+                long newBase = this.allocFrom(target, size);
+
+                listener.moved(oldBase, newBase, size);
+                this.free(oldBase);
+                return true;
+            }
+        }
+        return false; //none of the candidates fit anywhere before themselves
+    }
+
+    /**
+     * Finds the free node with the lowest address which comes before the given allocation and is big enough to fit it.
+     * <p>
+     * At most {@link #MAX_COMPACT_SCAN} free nodes are checked in address order. If none of them fit, the smallest free node which fits is returned instead if
+     * it comes before the allocation.
+     *
+     * @param allocation the allocation
+     * @return the free node, or {@code null} if there is none
+     */
+    private Node lowestFreeNodeBefore(Node allocation) {
+        //check the free nodes in address order, so that the first one which fits is the lowest
+        int scanned = 0;
+        for (Node node : this.emptyNodesByBase.headMap(allocation.base).values()) {
+            if (node.size >= allocation.size) {
+                return node;
+            } else if (++scanned >= MAX_COMPACT_SCAN) { //there are too many small free nodes at the start of the heap, fall back to the smallest one which fits
+                Node target = this.emptyNodes.ceiling(new Node().size(allocation.size).base(Long.MIN_VALUE));
+                return target != null && target.base < allocation.base ? target : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shrinks the heap if at least half of it is unused space at the end.
+     *
+     * @return whether or not the heap was shrunk
+     */
+    public boolean shrink() {
+        if (this.tail.used) { //there's no free space at the end of the heap
+            return false;
+        }
+
+        long newCapacity = max(this.growFunction.grow(0L, this.tail.base + this.blockSize), this.blockSize << 4L);
+        if (newCapacity > this.capacity >> 1L) { //don't shrink unless we'd free at least half the heap, to avoid repeatedly shrinking and re-growing
+            return false;
+        }
+
+        this.manager.sbrk(newCapacity);
+        this.capacity = newCapacity;
+
+        this.removeEmptyNode(this.tail);
+        this.tail.size(newCapacity - this.tail.base);
+        this.addEmptyNode(this.tail);
+        return true;
+    }
+
+    /**
+     * @return the total size of all of the free regions which are followed by an allocation, i.e. the amount of free space which could be recovered by compacting
+     * the heap
+     */
+    public long fragmentedSpace() {
+        long freeSpace = this.capacity - this.allocatedSpace;
+        return this.tail.used ? freeSpace : freeSpace - this.tail.size;
+    }
+
+    /**
+     * @return the current capacity of the heap
+     */
+    public long capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the total size of all allocations, including any padding at the end of them
+     */
+    public long allocatedSpace() {
+        return this.allocatedSpace;
+    }
+
+    private void addEmptyNode(Node node) {
         this.emptyNodes.add(node);
+        this.emptyNodesByBase.put(node.base, node);
+    }
+
+    private void removeEmptyNode(Node node) {
+        this.emptyNodes.remove(node);
+        this.emptyNodesByBase.remove(node.base);
     }
 
     private boolean expand() {
@@ -168,15 +293,16 @@ public final class SequentialVariableSizedAllocator implements Allocator {
             long newPrevTailSize = PMath.roundUp(oldPrevTailSize, this.blockSize);
             long newTailOffset = newPrevTailSize - oldPrevTailSize;
             this.tail.size(newPrevTailSize);
+            this.allocatedSpace += newTailOffset; //the padding is now part of the allocation, and will be freed along with it
 
             Node node = new Node().prev(this.tail).base(oldCapacity + newTailOffset).size(deltaCapacity - newTailOffset);
             this.tail.next(node);
             this.tail = node;
-            this.emptyNodes.add(node);
+            this.addEmptyNode(node);
         } else { //tail node is unused, expand it
-            this.emptyNodes.remove(this.tail);
+            this.removeEmptyNode(this.tail);
             this.tail.size(this.tail.size + deltaCapacity);
-            this.emptyNodes.add(this.tail);
+            this.addEmptyNode(this.tail);
         }
         return true;
     }
@@ -184,16 +310,31 @@ public final class SequentialVariableSizedAllocator implements Allocator {
     @Override
     public Stats stats() {
         long allocations = this.usedNodes.size();
-        long allocatedSpace = this.usedNodes.values().stream().mapToLong(Node::size).sum();
-
         return Stats.builder()
                 .heapRegions(1L)
                 .allocations(allocations)
-                .allocatedSpace(allocatedSpace)
+                .allocatedSpace(this.allocatedSpace)
                 .totalSpace(this.capacity)
                 .build();
     }
 
+    /**
+     * A callback function which is notified when an allocation is moved by {@link #compact(MoveListener)}.
+     *
+     * @author DaPorkchop_
+     */
+    @FunctionalInterface
+    public interface MoveListener {
+        /**
+         * Called when an allocation is moved.
+         *
+         * @param oldAddress the allocation's old starting address
+         * @param newAddress the allocation's new starting address
+         * @param size       the size of the allocation
+         */
+        void moved(long oldAddress, long newAddress, long size);
+    }
+
     /**
      * @author DaPorkchop_
      */
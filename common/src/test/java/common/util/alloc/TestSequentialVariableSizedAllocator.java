@@ -0,0 +1,227 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package common.util.alloc;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.daporkchop.fp2.common.util.alloc.Allocator;
+import net.daporkchop.fp2.common.util.alloc.SequentialVariableSizedAllocator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestSequentialVariableSizedAllocator {
+    protected static final long BLOCK_SIZE = 1024L;
+
+    protected int[] memory = new int[0]; //the id of the allocation occupying each block of the heap
+    protected long heapCapacity;
+
+    protected final Long2LongMap sizes = new Long2LongOpenHashMap(); //address -> size
+    protected final Long2IntMap ids = new Long2IntOpenHashMap(); //address -> id
+    protected int nextId = 1;
+
+    protected SequentialVariableSizedAllocator createAllocator() {
+        return new SequentialVariableSizedAllocator(BLOCK_SIZE, Allocator.SequentialHeapManager.unified(capacity -> {
+            this.memory = Arrays.copyOf(this.memory, toInt(capacity / BLOCK_SIZE));
+            this.heapCapacity = capacity;
+        }));
+    }
+
+    protected long alloc(SequentialVariableSizedAllocator alloc, long blocks) {
+        long address = alloc.alloc(blocks * BLOCK_SIZE);
+        checkState(this.sizes.put(address, blocks * BLOCK_SIZE) == this.sizes.defaultReturnValue(), "address %d was allocated twice", address);
+
+        int id = this.nextId++;
+        this.ids.put(address, id);
+        Arrays.fill(this.memory, toInt(address / BLOCK_SIZE), toInt((address / BLOCK_SIZE) + blocks), id);
+        return address;
+    }
+
+    protected void free(SequentialVariableSizedAllocator alloc, long address) {
+        alloc.free(address);
+        this.sizes.remove(address);
+        this.ids.remove(address);
+    }
+
+    protected boolean compact(SequentialVariableSizedAllocator alloc) {
+        return alloc.compact((oldAddress, newAddress, size) -> {
+            checkState(newAddress + size <= oldAddress, "allocation at %d was moved to %d, but is %d bytes long", oldAddress, newAddress, size);
+            checkState(this.sizes.get(oldAddress) == size, "allocation at %d was moved with size %d, but is %d bytes long", oldAddress, size, this.sizes.get(oldAddress));
+            checkState(!this.sizes.containsKey(newAddress), "allocation at %d was moved onto another allocation at %d", oldAddress, newAddress);
+
+            System.arraycopy(this.memory, toInt(oldAddress / BLOCK_SIZE), this.memory, toInt(newAddress / BLOCK_SIZE), toInt(size / BLOCK_SIZE));
+            this.sizes.put(newAddress, this.sizes.remove(oldAddress));
+            this.ids.put(newAddress, this.ids.remove(oldAddress));
+        });
+    }
+
+    protected void validate(SequentialVariableSizedAllocator alloc) {
+        long allocatedSpace = this.sizes.values().stream().mapToLong(Long::longValue).sum();
+        checkState(alloc.allocatedSpace() == allocatedSpace, "allocatedSpace: expected %d, got %d", allocatedSpace, alloc.allocatedSpace());
+        checkState(alloc.stats().allocatedSpace() == allocatedSpace, "stats().allocatedSpace(): expected %d, got %d", allocatedSpace, alloc.stats().allocatedSpace());
+        checkState(alloc.stats().allocations() == this.sizes.size(), "stats().allocations(): expected %d, got %d", this.sizes.size(), alloc.stats().allocations());
+        checkState(alloc.capacity() == this.heapCapacity, "capacity: expected %d, got %d", this.heapCapacity, alloc.capacity());
+
+        this.sizes.forEach((address, size) -> {
+            checkState(address + size <= alloc.capacity(), "allocation at %d (%d bytes) exceeds the heap capacity %d", address, size, alloc.capacity());
+
+            int id = this.ids.get((long) address);
+            for (int block = toInt(address / BLOCK_SIZE), end = toInt((address + size) / BLOCK_SIZE); block < end; block++) {
+                checkState(this.memory[block] == id, "block %d should belong to allocation #%d, but belongs to #%d", block, id, this.memory[block]);
+            }
+        });
+    }
+
+    @Test
+    public void testAccounting() {
+        SequentialVariableSizedAllocator alloc = this.createAllocator();
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+
+        long[] addresses = new long[256];
+        for (int i = 0; i < addresses.length; i++) { //enough to make the heap grow several times
+            addresses[i] = this.alloc(alloc, r.nextInt(1, 16));
+        }
+        this.validate(alloc);
+
+        for (int i = 0; i < addresses.length; i += 2) {
+            this.free(alloc, addresses[i]);
+        }
+        this.validate(alloc);
+
+        for (int i = 1; i < addresses.length; i += 2) {
+            this.free(alloc, addresses[i]);
+        }
+        this.validate(alloc);
+        checkState(alloc.allocatedSpace() == 0L);
+    }
+
+    @Test
+    public void testCompact() {
+        SequentialVariableSizedAllocator alloc = this.createAllocator();
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 1000; i++) {
+            if (this.sizes.isEmpty() || r.nextInt(3) != 0) {
+                this.alloc(alloc, r.nextInt(1, 16));
+            } else {
+                long[] addresses = this.sizes.keySet().toLongArray();
+                this.free(alloc, addresses[r.nextInt(addresses.length)]);
+            }
+        }
+        this.validate(alloc);
+
+        long fragmentedSpace = alloc.fragmentedSpace();
+        while (this.compact(alloc)) {
+            this.validate(alloc);
+            checkState(alloc.fragmentedSpace() <= fragmentedSpace, "compacting increased fragmented space from %d to %d", fragmentedSpace, alloc.fragmentedSpace());
+            fragmentedSpace = alloc.fragmentedSpace();
+        }
+    }
+
+    @Test
+    public void testCompactFallback() {
+        SequentialVariableSizedAllocator alloc = this.createAllocator();
+
+        long a = this.alloc(alloc, 1L);
+        long b = this.alloc(alloc, 1L);
+        long c = this.alloc(alloc, 1L);
+        long d = this.alloc(alloc, 4L);
+        checkState(a == 0L && b == BLOCK_SIZE && c == 2L * BLOCK_SIZE && d == 3L * BLOCK_SIZE);
+
+        //the hole left by a is too small for d, so c should be moved into it instead
+        this.free(alloc, a);
+        checkState(this.compact(alloc));
+        checkState(this.sizes.containsKey(0L) && this.ids.get(0L) == 3, "c was not moved to the start of the heap");
+        this.validate(alloc);
+
+        //the only remaining hole is directly before d, which is too small to fit it
+        checkState(!this.compact(alloc));
+        this.validate(alloc);
+    }
+
+    @Test
+    public void testCompactManySmallHoles() {
+        SequentialVariableSizedAllocator alloc = this.createAllocator();
+
+        //leave lots of holes which are too small for d at the start of the heap
+        long[] addresses = new long[512];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = this.alloc(alloc, 1L);
+        }
+        long hole = this.alloc(alloc, 8L);
+        this.alloc(alloc, 1L);
+        long d = this.alloc(alloc, 8L);
+        for (int i = 0; i < addresses.length; i += 2) {
+            this.free(alloc, addresses[i]);
+        }
+        this.free(alloc, hole);
+        this.validate(alloc);
+
+        //d should still be moved into the only hole which is big enough for it, even though it comes after all of the small ones
+        checkState(this.compact(alloc));
+        checkState(this.sizes.containsKey(hole) && !this.sizes.containsKey(d), "d was not moved into the hole");
+        this.validate(alloc);
+    }
+
+    @Test
+    public void testShrink() {
+        SequentialVariableSizedAllocator alloc = this.createAllocator();
+        long initialCapacity = alloc.capacity();
+
+        long[] addresses = new long[64];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = this.alloc(alloc, 4L);
+        }
+        long grownCapacity = alloc.capacity();
+        checkState(grownCapacity > initialCapacity, "heap didn't grow");
+
+        //the end of the heap is in use, so it can't be shrunk
+        this.free(alloc, addresses[0]);
+        checkState(!alloc.shrink());
+        this.validate(alloc);
+
+        for (int i = 2; i < addresses.length; i++) {
+            this.free(alloc, addresses[i]);
+        }
+        checkState(alloc.shrink());
+        checkState(alloc.capacity() < grownCapacity && alloc.capacity() >= addresses[1] + 4L * BLOCK_SIZE, "bad capacity after shrinking: %d", alloc.capacity());
+        this.validate(alloc);
+
+        //the heap is already as small as it can get
+        checkState(!alloc.shrink());
+
+        //the heap should still be usable after shrinking
+        long address = this.alloc(alloc, 32L);
+        this.validate(alloc);
+        this.free(alloc, address);
+        this.free(alloc, addresses[1]);
+        this.validate(alloc);
+        checkState(alloc.allocatedSpace() == 0L);
+    }
+}
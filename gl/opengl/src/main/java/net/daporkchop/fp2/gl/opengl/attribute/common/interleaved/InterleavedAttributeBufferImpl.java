@@ -109,4 +109,13 @@ public final class InterleavedAttributeBufferImpl<F extends InterleavedAttribute
 
         this.buffer.uploadRange(startIndex * this.stride, writer.baseAddr, writer.size() * this.stride);
     }
+
+    @Override
+    public void copy(int srcIndex, int dstIndex, int count) {
+        checkRangeLen(this.capacity, srcIndex, count);
+        checkRangeLen(this.capacity, dstIndex, count);
+        checkArg(srcIndex + count <= dstIndex || dstIndex + count <= srcIndex, "source range [%d,%d) overlaps destination range [%d,%d)", srcIndex, srcIndex + count, dstIndex, dstIndex + count);
+
+        this.buffer.copyRange(this.buffer, srcIndex * this.stride, dstIndex * this.stride, count * this.stride);
+    }
 }
@@ -144,4 +144,14 @@ public interface AttributeBuffer<S> extends BaseAttributeBuffer {
      */
     void set(int startIndex, @NonNull AttributeWriter<S> writer);
 
+    /**
+     * Copies a range of attribute data elements from one position in this buffer to another.
+     *
+     * @param srcIndex the index of the first attribute data element to copy
+     * @param dstIndex the destination index for the first attribute data element
+     * @param count    the number of attribute data elements to copy
+     * @throws IllegalArgumentException if the source and destination ranges overlap
+     */
+    void copy(int srcIndex, int dstIndex, int count);
+
 }
@@ -57,4 +57,14 @@ public interface IndexBuffer extends GLResource {
      * @throws IllegalArgumentException if {@code writer} doesn't use {@link #format()}
      */
     void set(int startIndex, @NonNull IndexWriter writer);
+
+    /**
+     * Copies a range of indices from one position in this buffer to another.
+     *
+     * @param srcIndex the index of the first index to copy
+     * @param dstIndex the destination index for the first index
+     * @param count    the number of indices to copy
+     * @throws IllegalArgumentException if the source and destination ranges overlap
+     */
+    void copy(int srcIndex, int dstIndex, int count);
 }
@@ -28,12 +28,18 @@ import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.client.IFarTileCache;
 import net.daporkchop.fp2.mode.api.ctx.IFarClientContext;
 import net.daporkchop.fp2.mode.api.player.IFarPlayerClient;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
 import net.daporkchop.fp2.net.packet.debug.server.SPacketDebugUpdateStatistics;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketRequestTiles;
 import net.daporkchop.fp2.net.packet.standard.client.CPacketClientConfig;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketHandshake;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionEnd;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileCached;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketTileData;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDataBatch;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDelta;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUnloadTile;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUnloadTiles;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUpdateConfig;
@@ -41,7 +47,12 @@ import net.daporkchop.fp2.util.annotation.CalledFromAnyThread;
 import net.daporkchop.fp2.util.annotation.CalledFromClientThread;
 import net.daporkchop.fp2.util.annotation.CalledFromNetworkThread;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.lib.common.util.PorkUtil;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
+import net.minecraft.client.multiplayer.ServerData;
 import net.minecraft.client.network.NetHandlerPlayClient;
 import net.minecraft.network.NetworkManager;
 import org.spongepowered.asm.mixin.Final;
@@ -52,10 +63,22 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static net.daporkchop.fp2.net.FP2Network.*;
 import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.fp2.util.math.MathUtil.*;
+import static net.daporkchop.lib.common.math.PMath.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 import static net.daporkchop.lib.common.util.PorkUtil.*;
 
@@ -72,6 +95,10 @@ public abstract class MixinNetHandlerPlayClient implements IFarPlayerClient {
 
     @Unique
     private IFarClientContext<?, ?> fp2_context;
+    @Unique
+    private ZstdDictionary fp2_tileDictionary;
+    @Unique
+    private IFarRenderMode<?, ?>[] fp2_sessionModes;
 
     @Unique
     private boolean fp2_handshakeReceived;
@@ -97,6 +124,12 @@ public abstract class MixinNetHandlerPlayClient implements IFarPlayerClient {
             this.handle((SPacketSessionEnd) packet);
         } else if (packet instanceof SPacketTileData) {
             this.handle((SPacketTileData) packet);
+        } else if (packet instanceof SPacketTileDataBatch) {
+            this.handle((SPacketTileDataBatch) packet);
+        } else if (packet instanceof SPacketTileDelta) {
+            this.handle((SPacketTileDelta) packet);
+        } else if (packet instanceof SPacketTileCached) {
+            this.handle((SPacketTileCached) packet);
         } else if (packet instanceof SPacketUnloadTile) {
             this.handle((SPacketUnloadTile) packet);
         } else if (packet instanceof SPacketUnloadTiles) {
@@ -123,12 +156,90 @@ public abstract class MixinNetHandlerPlayClient implements IFarPlayerClient {
         checkState(!this.fp2_sessionOpen, "a session is already open!");
         this.fp2_sessionOpen = true;
 
+        this.fp2_tileDictionary = packet.tileDictionary();
+        this.fp2_sessionModes = packet.modes();
+
         IFarRenderMode<?, ?> mode = this.modeFor(this.fp2_config);
         if (mode != null) {
             this.fp2_context = mode.clientContext(packet.fakeWorldClient(), this.fp2_config);
+
+            if (FP2Config.global().performance().persistentTileCache()) {
+                this.fp2_enablePersistentTileCache(mode, packet.dimension(), packet.storageId());
+            }
+        }
+    }
+
+    @Unique
+    private void fp2_enablePersistentTileCache(@NonNull IFarRenderMode<?, ?> mode, int dimension, @NonNull UUID storageId) {
+        int modeId = Arrays.asList(this.fp2_sessionModes).indexOf(mode);
+        if (modeId < 0) { //the server doesn't know about this render mode, so it won't be sending us any tiles anyway
+            return;
+        }
+
+        IFarTileCache<IFarPos, IFarTile> tileCache = uncheckedCast(this.fp2_context.tileCache());
+        tileCache.enablePersistence(new File(this.fp2_persistentTileCacheRoot(), "DIM" + dimension + '/' + mode.name().toLowerCase(Locale.ROOT)), this.fp2_tileDictionary, storageId);
+
+        //tell the server which of the tiles near the player we already have, so that it doesn't send them again. the cache may be much larger than the area the
+        //  server will send tiles for, so it's scanned off the network thread.
+        IntAxisAlignedBB[] bounds = this.fp2_nearbyTileBounds();
+        if (bounds != null) {
+            CompletableFuture.runAsync(() -> this.fp2_advertiseCachedTiles(tileCache, modeId, mode, bounds));
+        }
+    }
+
+    @Unique
+    private IntAxisAlignedBB[] fp2_nearbyTileBounds() {
+        EntityPlayerSP player = Minecraft.getMinecraft().player;
+        if (player == null) { //we don't know where the player is, so we can't tell which tiles are going to be needed
+            return null;
+        }
+
+        //these are the same bounds the server's trackers use, minus the world's coordinate limits
+        int cutoff = this.fp2_config.cutoffDistance();
+        IntAxisAlignedBB[] bounds = new IntAxisAlignedBB[this.fp2_config.maxLevels()];
+        for (int level = 0; level < bounds.length; level++) {
+            int x = asrRound(floorI(player.posX), T_SHIFT + level);
+            int y = asrRound(floorI(player.posY), T_SHIFT + level);
+            int z = asrRound(floorI(player.posZ), T_SHIFT + level);
+            bounds[level] = new IntAxisAlignedBB(x - cutoff, y - cutoff, z - cutoff, x + cutoff, y + cutoff, z + cutoff);
+        }
+        return bounds;
+    }
+
+    @Unique
+    private void fp2_advertiseCachedTiles(@NonNull IFarTileCache<IFarPos, IFarTile> tileCache, int modeId, @NonNull IFarRenderMode<?, ?> mode, @NonNull IntAxisAlignedBB[] bounds) {
+        //if the session ends while this is running, the iteration stops early. any tiles which were already advertised are harmless: the server only tells us to
+        //  load a tile from disk if its timestamp matches, and the cache is discarded whenever it would be used for a different storage.
+        Map<IFarPos, Long> timestamps = new HashMap<>();
+        int[] remaining = { CPacketCachedTiles.MAX_TILES_PER_SESSION };
+        tileCache.forEachPersistedTile(bounds, (pos, timestamp) -> {
+            if (remaining[0] <= 0) { //the server would ignore any more tiles anyway
+                return;
+            }
+
+            remaining[0]--;
+            timestamps.put(pos, timestamp);
+            if (timestamps.size() >= CPacketCachedTiles.MAX_TILES_PER_PACKET) {
+                PROTOCOL_FP2.sendToServer(new CPacketCachedTiles().modeId(modeId).mode(mode).timestamps(timestamps));
+                timestamps.clear();
+            }
+        });
+        if (!timestamps.isEmpty()) {
+            PROTOCOL_FP2.sendToServer(new CPacketCachedTiles().modeId(modeId).mode(mode).timestamps(timestamps));
         }
     }
 
+    @Unique
+    private File fp2_persistentTileCacheRoot() {
+        //tiles are cached separately for each world the client connects to
+        Minecraft mc = Minecraft.getMinecraft();
+        ServerData serverData = mc.getCurrentServerData();
+        String server = mc.isIntegratedServerRunning()
+                ? "singleplayer/" + mc.getIntegratedServer().getFolderName().replaceAll("[^a-zA-Z0-9._-]", "_")
+                : "multiplayer/" + (serverData != null ? serverData.serverIP.replaceAll("[^a-zA-Z0-9._-]", "_") : "unknown");
+        return new File(mc.gameDir, "fp2/cache/" + server);
+    }
+
     @Unique
     private void handle(@NonNull SPacketSessionEnd packet) {
         checkState(this.fp2_sessionOpen, "no session is currently open!");
@@ -138,6 +249,9 @@ public abstract class MixinNetHandlerPlayClient implements IFarPlayerClient {
             this.fp2_context.close();
             this.fp2_context = null;
         }
+
+        this.fp2_tileDictionary = null;
+        this.fp2_sessionModes = null;
     }
 
     @Unique
@@ -145,7 +259,62 @@ public abstract class MixinNetHandlerPlayClient implements IFarPlayerClient {
         checkState(this.fp2_sessionOpen, "no session is currently open!");
         checkState(this.fp2_context != null, "active session has no render mode!");
 
-        this.fp2_context.tileCache().receiveTile(uncheckedCast(packet.tile().compressed()));
+        this.fp2_context.tileCache().receiveTile(uncheckedCast(packet.tile().compressed(this.fp2_tileDictionary)));
+    }
+
+    @Unique
+    private void handle(@NonNull SPacketTileDataBatch packet) {
+        checkState(this.fp2_sessionOpen, "no session is currently open!");
+        checkState(this.fp2_context != null, "active session has no render mode!");
+
+        checkIndex(this.fp2_sessionModes.length, packet.modeId());
+        IFarRenderMode<?, ?> mode = this.fp2_sessionModes[packet.modeId()];
+        checkState(mode == this.fp2_context.mode(), "received tile data for %s, but the active session's render mode is %s", mode, this.fp2_context.mode());
+
+        //the tiles were compressed by the server using the session's dictionary, so they can be given to the tile cache as-is
+        IFarTileCache<IFarPos, IFarTile> tileCache = uncheckedCast(this.fp2_context.tileCache());
+        packet.decode(PorkUtil.<IFarRenderMode<IFarPos, IFarTile>>uncheckedCast(mode), this.fp2_tileDictionary).forEach(tileCache::receiveTile);
+    }
+
+    @Unique
+    private void handle(@NonNull SPacketTileDelta packet) {
+        checkState(this.fp2_sessionOpen, "no session is currently open!");
+        checkState(this.fp2_context != null, "active session has no render mode!");
+
+        checkIndex(this.fp2_sessionModes.length, packet.modeId());
+        IFarRenderMode<?, ?> mode = this.fp2_sessionModes[packet.modeId()];
+        checkState(mode == this.fp2_context.mode(), "received tile delta for %s, but the active session's render mode is %s", mode, this.fp2_context.mode());
+
+        TileDelta<IFarPos> delta = packet.decode(PorkUtil.<IFarRenderMode<IFarPos, ?>>uncheckedCast(mode));
+        if (!PorkUtil.<IFarTileCache<IFarPos, ?>>uncheckedCast(this.fp2_context.tileCache()).patchTile(delta)) {
+            //the server only sends deltas against the tile version it last sent us, so this should never happen. if it does, our copy of the tile can't be trusted
+            //  any more, so ask the server to send the whole tile again.
+            FP2_LOG.warn("unable to apply tile delta at {} (base timestamp {}), requesting the full tile", delta.pos(), delta.baseTimestamp());
+            PROTOCOL_FP2.sendToServer(new CPacketRequestTiles().modeId(packet.modeId()).positions(Collections.singletonList(delta.pos())));
+        }
+    }
+
+    @Unique
+    private void handle(@NonNull SPacketTileCached packet) {
+        checkState(this.fp2_sessionOpen, "no session is currently open!");
+        checkState(this.fp2_context != null, "active session has no render mode!");
+
+        checkIndex(this.fp2_sessionModes.length, packet.modeId());
+        IFarRenderMode<?, ?> mode = this.fp2_sessionModes[packet.modeId()];
+        checkState(mode == this.fp2_context.mode(), "received cached tiles for %s, but the active session's render mode is %s", mode, this.fp2_context.mode());
+
+        IFarTileCache<IFarPos, ?> tileCache = uncheckedCast(this.fp2_context.tileCache());
+        List<IFarPos> missing = new ArrayList<>();
+        packet.decode(PorkUtil.<IFarRenderMode<IFarPos, ?>>uncheckedCast(mode)).forEach((pos, timestamp) -> {
+            if (!tileCache.receivePersistedTile(pos, timestamp)) {
+                //the server only does this for tiles we told it we have, so this should never happen
+                FP2_LOG.warn("unable to load cached tile at {} (timestamp {}), requesting the full tile", pos, timestamp);
+                missing.add(pos);
+            }
+        });
+        for (int i = 0; i < missing.size(); i += CPacketRequestTiles.MAX_POSITIONS) { //split the request up to stay within the server's limit
+            PROTOCOL_FP2.sendToServer(new CPacketRequestTiles().modeId(packet.modeId()).positions(missing.subList(i, Math.min(i + CPacketRequestTiles.MAX_POSITIONS, missing.size()))));
+        }
     }
 
     @Unique
@@ -20,14 +20,18 @@
 
 package net.daporkchop.fp2.asm.core.network;
 
+import io.netty.channel.Channel;
 import lombok.NonNull;
 import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.ctx.IFarServerContext;
 import net.daporkchop.fp2.mode.api.ctx.IFarWorldServer;
 import net.daporkchop.fp2.mode.api.player.IFarPlayerServer;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
 import net.daporkchop.fp2.net.packet.debug.client.CPacketDebugDropAllTiles;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
 import net.daporkchop.fp2.net.packet.standard.client.CPacketClientConfig;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketRequestTiles;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionEnd;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUpdateConfig;
@@ -37,8 +41,10 @@ import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.lib.math.vector.Vec3d;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.NetHandlerPlayServer;
+import net.minecraft.network.NetworkManager;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
@@ -58,6 +64,9 @@ import static net.daporkchop.lib.common.util.PorkUtil.*;
 public abstract class MixinNetHandlerPlayServer implements IFarPlayerServer {
     @Shadow
     public EntityPlayerMP player;
+    @Shadow
+    @Final
+    public NetworkManager netManager;
 
     @Unique
     private FP2Config fp2_clientConfig;
@@ -85,12 +94,29 @@ public abstract class MixinNetHandlerPlayServer implements IFarPlayerServer {
         return Vec3d.of(player.posX, player.posY, player.posZ);
     }
 
+    @Override
+    public Vec3d fp2_IFarPlayer_lookVector() {
+        net.minecraft.util.math.Vec3d look = this.player.getLookVec();
+        return Vec3d.of(look.x, look.y, look.z);
+    }
+
+    @Override
+    public Vec3d fp2_IFarPlayer_velocity() {
+        //the server doesn't simulate player motion, so we derive it from the distance moved since the last tick
+        EntityPlayerMP player = this.player;
+        return Vec3d.of(player.posX - player.lastTickPosX, player.posY - player.lastTickPosY, player.posZ - player.lastTickPosZ);
+    }
+
     @CalledFromNetworkThread
     @Override
     public void fp2_IFarPlayerServer_handle(@NonNull Object packet) {
         this.fp2_world.fp2_IFarWorld_scheduleTask(() -> { //TODO: move all logic to network threads
             if (packet instanceof CPacketClientConfig) {
                 this.handle((CPacketClientConfig) packet);
+            } else if (packet instanceof CPacketCachedTiles) {
+                this.handle((CPacketCachedTiles) packet);
+            } else if (packet instanceof CPacketRequestTiles) {
+                this.handle((CPacketRequestTiles) packet);
             } else {
                 throw new IllegalArgumentException("don't know how to handle " + className(packet));
             }
@@ -102,6 +128,38 @@ public abstract class MixinNetHandlerPlayServer implements IFarPlayerServer {
         this.updateConfig(this.fp2_serverConfig, packet.config());
     }
 
+    @Unique
+    private void handle(@NonNull CPacketCachedTiles packet) {
+        if (this.fp2_context == null) { //the session the packet was sent for has already ended
+            return;
+        }
+
+        String[] modeNames = SPacketSessionBegin.sessionModeNames();
+        checkIndex(modeNames.length, packet.modeId());
+        IFarRenderMode<?, ?> mode = IFarRenderMode.REGISTRY.get(modeNames[packet.modeId()]);
+        if (mode != this.fp2_context.mode()) { //the packet was sent for a previous session using a different render mode
+            return;
+        }
+
+        this.fp2_context.notifyCachedTiles(uncheckedCast(packet.decode(mode)));
+    }
+
+    @Unique
+    private void handle(@NonNull CPacketRequestTiles packet) {
+        if (this.fp2_context == null) { //the session the packet was sent for has already ended
+            return;
+        }
+
+        String[] modeNames = SPacketSessionBegin.sessionModeNames();
+        checkIndex(modeNames.length, packet.modeId());
+        IFarRenderMode<?, ?> mode = IFarRenderMode.REGISTRY.get(modeNames[packet.modeId()]);
+        if (mode != this.fp2_context.mode()) { //the packet was sent for a previous session using a different render mode
+            return;
+        }
+
+        this.fp2_context.resendTiles(uncheckedCast(packet.decode(mode)));
+    }
+
     @DebugOnly
     @CalledFromNetworkThread
     @Override
@@ -201,7 +259,11 @@ public abstract class MixinNetHandlerPlayServer implements IFarPlayerServer {
         this.fp2_sessionOpen = true;
 
         if (this.fp2_mode != null) {
-            this.fp2_IFarPlayer_sendPacket(new SPacketSessionBegin().coordLimits(this.fp2_world.fp2_IFarWorld_coordLimits()));
+            IFarStorage<?, ?> storage = this.fp2_world.fp2_IFarWorldServer_tileProviderFor(this.fp2_mode).storage();
+            this.fp2_IFarPlayer_sendPacket(new SPacketSessionBegin().coordLimits(this.fp2_world.fp2_IFarWorld_coordLimits())
+                    .dimension(this.fp2_world.fp2_IFarWorld_dimensionId())
+                    .tileDictionary(storage.compressionDictionary())
+                    .storageId(storage.storageId()));
 
             this.fp2_context = this.fp2_mode.serverContext(this, this.fp2_world, this.fp2_mergedConfig);
         }
@@ -235,6 +297,12 @@ public abstract class MixinNetHandlerPlayServer implements IFarPlayerServer {
         }
     }
 
+    @Override
+    public boolean fp2_IFarPlayerServer_isWritable() {
+        Channel channel = this.netManager.channel();
+        return channel == null || channel.isWritable();
+    }
+
     @CalledFromServerThread
     @Override
     public void fp2_IFarPlayer_update() {
@@ -71,6 +71,8 @@ public abstract class MixinGuiOverlayDebug extends Gui {
                              + ' ' + percentFormat.format((stats.allocatedSpace() | stats.totalSpace()) != 0L ? stats.allocatedSpace() / (double) stats.totalSpace() : 1.0d)
                              + ' ' + GuiHelper.formatByteCount(stats.allocatedSpace()) + '/' + GuiHelper.formatByteCount(stats.totalSpace())
                              + " (" + percentFormat.format((stats.allocatedSpace() | stats.uncompressedSize()) != 0L ? stats.allocatedSpace() / (double) stats.uncompressedSize() : 1.0d) + " -> " + GuiHelper.formatByteCount(stats.uncompressedSize()) + ')');
+                    list.add("Inflated: " + numberFormat.format(stats.inflatedTileCount()) + "T " + GuiHelper.formatByteCount(stats.inflatedSize())
+                             + ' ' + percentFormat.format((stats.inflatedHits() | stats.inflatedMisses()) != 0L ? stats.inflatedHits() / (double) (stats.inflatedHits() + stats.inflatedMisses()) : 0.0d) + " hit rate");
                 } else {
                     list.add("§oNo TileCache active");
                 }
@@ -80,6 +82,8 @@ public abstract class MixinGuiOverlayDebug extends Gui {
                     DebugStats.Renderer stats = renderer.stats();
                     list.add("Baked Tiles: " + numberFormat.format(stats.bakedTiles()) + "T " + numberFormat.format(stats.bakedTilesWithData()) + "D "
                              + numberFormat.format(stats.bakedTiles() - stats.bakedTilesWithData()) + 'E');
+                    list.add("Bakes: " + numberFormat.format(stats.bakes()) + "B " + numberFormat.format(stats.skippedBakes()) + "S ("
+                             + numberFormat.format(stats.receivedTiles() != 0L ? stats.bakes() / (double) stats.receivedTiles() : 0.0d) + " per received tile)");
                     list.add("All VRAM: " + percentFormat.format(stats.allocatedVRAM() / (double) stats.totalVRAM())
                              + ' ' + GuiHelper.formatByteCount(stats.allocatedVRAM()) + '/' + GuiHelper.formatByteCount(stats.totalVRAM()));
                     list.add("Indices: " + percentFormat.format(stats.allocatedIndices() / (double) stats.totalIndices())
@@ -110,12 +114,27 @@ public abstract class MixinGuiOverlayDebug extends Gui {
                              + numberFormat.format(trackingStats.tilesTotal()) + "T " + numberFormat.format(trackingStats.tilesLoaded()) + "L "
                              + numberFormat.format(trackingStats.tilesLoading()) + "P " + numberFormat.format(trackingStats.tilesQueued()) + 'Q');
                     list.add("Updates: " + GuiHelper.formatDuration(trackingStats.avgUpdateDuration()) + " avg, " + GuiHelper.formatDuration(trackingStats.lastUpdateDuration()) + " last");
+                    list.add("Loads: " + numberFormat.format(trackingStats.loadWindow()) + " window, " + GuiHelper.formatDuration(trackingStats.avgLoadLatency()) + " avg latency");
                 } else {
                     list.add("§oTracking data not available");
                 }
+
+                fp2_addWorkerGroupStats(list, "Terrain", packet.terrainWorkers(), numberFormat);
+                fp2_addWorkerGroupStats(list, "Tracker", packet.trackerWorkers(), numberFormat);
             } else {
                 list.add("§oData not available");
             }
         }
     }
+
+    private static void fp2_addWorkerGroupStats(List<String> list, String poolName, DebugStats.WorkerGroup[] groups, NumberFormat numberFormat) {
+        if (groups == null) {
+            return;
+        }
+
+        for (DebugStats.WorkerGroup group : groups) {
+            list.add(poolName + " (" + group.name() + ", weight " + group.weight() + "): " + numberFormat.format(group.queueDepth()) + "Q "
+                     + numberFormat.format(group.executedTasks()) + "T " + GuiHelper.formatDuration(group.busyTime()) + " busy");
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.client.texture;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import lombok.NonNull;
+import net.daporkchop.fp2.compat.vanilla.FastRegistry;
+import net.daporkchop.fp2.config.FP2Config;
+import net.daporkchop.fp2.util.SingleBiomeBlockAccess;
+import net.daporkchop.fp2.util.threading.DefaultFastThreadLocal;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.color.BlockColors;
+import net.minecraft.init.Biomes;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.math.PMath.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Dense lookup table which maps block state IDs to their texture index ID and (block state ID, biome ID) pairs to their color multiplier.
+ * <p>
+ * This replaces the per-vertex hash map lookups and {@link net.minecraft.client.renderer.color.BlockColors#colorMultiplier} calls which used to be done by the
+ * bakers. The bakers only ever expose a single biome to the color handlers (see {@link SingleBiomeBlockAccess}), so the color multiplier usually only depends on
+ * the block state and the biome, and may therefore be cached. However, some biomes also vary their colors by position (e.g. swamps sample a noise function, and
+ * most vanilla biomes get colder at high altitudes). Such (block state, biome) pairs are detected by comparing the colors computed at a number of sample positions,
+ * and are computed at the vertex's actual position every time instead of being cached.
+ * <p>
+ * Since the color of grass and foliage depends on the temperature, which vanilla varies with height and noise above sea level, that would include the most common
+ * tinted blocks in almost every biome. If {@link FP2Config.Performance#approximateBiomeColors()} is enabled, position-dependent colors are instead approximated by
+ * the color at a fixed horizontal position in the center of each {@link #HEIGHT_BAND_SHIFT height band}, which is indistinguishable at the distances far terrain is
+ * rendered at (except for the noise patterns of e.g. swamps, which are lost).
+ * <p>
+ * Texture index IDs are computed eagerly. Color multipliers are computed lazily, one block state at a time (for every biome at once), as most block states never
+ * actually appear in baked tiles.
+ * <p>
+ * Instances are immutable snapshots (apart from lazily filled color rows) and are safe for concurrent use by multiple threads. The current instance is discarded
+ * whenever the texture UVs or {@link FastRegistry} are reloaded, so callers should obtain it once per bake using {@link #get()} rather than storing it.
+ *
+ * @author DaPorkchop_
+ */
+public final class StateBiomeTable {
+    private static final int BIOME_COUNT = 256;
+
+    /**
+     * The base-2 logarithm of the height of the bands in which position-dependent colors are approximated.
+     */
+    private static final int HEIGHT_BAND_SHIFT = 4;
+    private static final int HEIGHT_BANDS = 256 >> HEIGHT_BAND_SHIFT;
+
+    //the positions at which colors are sampled in order to detect position-dependent colors. these are spread out far enough that noise-based colors
+    //  (like the swamp's) are effectively independent at each one, and cover the full range of heights.
+    private static final BlockPos[] SAMPLE_POSITIONS;
+
+    private static final DefaultFastThreadLocal<SingleBiomeBlockAccess> BIOME_ACCESS_TL = new DefaultFastThreadLocal<>(SingleBiomeBlockAccess::new);
+    private static final DefaultFastThreadLocal<BlockPos.MutableBlockPos> POS_TL = new DefaultFastThreadLocal<>(BlockPos.MutableBlockPos::new);
+
+    private static volatile StateBiomeTable CURRENT;
+
+    static {
+        FastRegistry.addReloadListener(StateBiomeTable::invalidate);
+
+        Random random = new Random(0L);
+        SAMPLE_POSITIONS = new BlockPos[16];
+        SAMPLE_POSITIONS[0] = BlockPos.ORIGIN;
+        for (int i = 1; i < SAMPLE_POSITIONS.length; i++) {
+            SAMPLE_POSITIONS[i] = new BlockPos(random.nextInt(1 << 21) - (1 << 20), i * 255 / (SAMPLE_POSITIONS.length - 1), random.nextInt(1 << 21) - (1 << 20));
+        }
+    }
+
+    /**
+     * @return the current {@link StateBiomeTable}
+     */
+    public static StateBiomeTable get() {
+        boolean approximate = FP2Config.global().performance().approximateBiomeColors();
+
+        StateBiomeTable table = CURRENT;
+        if (table == null || table.approximate != approximate) {
+            synchronized (StateBiomeTable.class) {
+                if ((table = CURRENT) == null || table.approximate != approximate) {
+                    checkState(TextureUVs.STATEID_TO_INDEXID != null, "texture UVs have not been loaded yet!");
+                    CURRENT = table = new StateBiomeTable(MC.getBlockColors(), TextureUVs.STATEID_TO_INDEXID, approximate);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Creates a new {@link StateBiomeTable} which isn't used as the current one.
+     *
+     * @param blockColors the {@link BlockColors} to compute the color multipliers with
+     * @param indexIds    the texture index ID of each block state
+     * @param approximate whether or not position-dependent colors should be approximated
+     * @return the new {@link StateBiomeTable}
+     */
+    public static StateBiomeTable create(@NonNull BlockColors blockColors, @NonNull Reference2IntMap<IBlockState> indexIds, boolean approximate) {
+        return new StateBiomeTable(blockColors, indexIds, approximate);
+    }
+
+    /**
+     * Discards the current {@link StateBiomeTable}, causing a new one to be built the next time it is requested.
+     */
+    public static void invalidate() {
+        CURRENT = null;
+    }
+
+    private final BlockColors blockColors;
+    private final boolean approximate;
+
+    private final IBlockState[] states;
+    private final int[] indexIds;
+    private final AtomicReferenceArray<ColorRow> colors;
+
+    private StateBiomeTable(@NonNull BlockColors blockColors, @NonNull Reference2IntMap<IBlockState> indexIds, boolean approximate) {
+        this.blockColors = blockColors;
+        this.approximate = approximate;
+
+        int limit = FastRegistry.blockStateIdLimit();
+        this.states = new IBlockState[limit];
+        this.indexIds = new int[limit];
+        this.colors = new AtomicReferenceArray<>(limit);
+
+        for (int id = 0; id < limit; id++) {
+            IBlockState state = FastRegistry.getBlockState(id);
+            if (state != null) {
+                this.states[id] = state;
+                this.indexIds[id] = indexIds.getInt(state);
+            }
+        }
+    }
+
+    /**
+     * Gets the texture index ID for the given block state.
+     *
+     * @param state the block state ID
+     * @return the texture index ID
+     */
+    public int indexId(int state) {
+        return state >= 0 && state < this.indexIds.length ? this.indexIds[state] : 0;
+    }
+
+    /**
+     * Gets the color multiplier for the given block state in the given biome at the given position.
+     *
+     * @param state the block state ID
+     * @param biome the biome ID
+     * @param x     the X coordinate of the block
+     * @param y     the Y coordinate of the block
+     * @param z     the Z coordinate of the block
+     * @return the color multiplier
+     */
+    public int color(int state, int biome, int x, int y, int z) {
+        if (state < 0 || state >= this.indexIds.length || this.states[state] == null) { //invalid state
+            return -1;
+        } else if (biome < 0 || biome >= BIOME_COUNT) { //biome ID is out of the cached range, compute it directly
+            return this.computeColor(this.states[state], biome, POS_TL.get().setPos(x, y, z));
+        }
+
+        ColorRow row = this.colors.get(state);
+        if (row == null) { //compute the colors for every biome at once
+            //racing threads may compute the same row multiple times, but the result will always be the same
+            this.colors.set(state, row = new ColorRow(this.states[state]));
+        }
+
+        if (!row.positionDependent.get(biome)) {
+            return row.colors[biome];
+        } else if (this.approximate) {
+            return row.bandColors[biome][clamp(y >> HEIGHT_BAND_SHIFT, 0, HEIGHT_BANDS - 1)];
+        } else {
+            return this.computeColor(this.states[state], biome, POS_TL.get().setPos(x, y, z));
+        }
+    }
+
+    private int computeColor(IBlockState state, int biome, BlockPos pos) {
+        SingleBiomeBlockAccess biomeAccess = BIOME_ACCESS_TL.get();
+        biomeAccess.biome(FastRegistry.getBiome(biome, Biomes.PLAINS));
+        return this.blockColors.colorMultiplier(state, biomeAccess, pos, 0);
+    }
+
+    /**
+     * The color multipliers of a single block state in every biome.
+     *
+     * @author DaPorkchop_
+     */
+    private final class ColorRow {
+        private final int[] colors = new int[BIOME_COUNT];
+        private final BitSet positionDependent = new BitSet(BIOME_COUNT); //biomes in which the color must be computed for each position individually
+        private final int[][] bandColors; //the approximate colors in each height band for the position-dependent biomes, only set if approximation is enabled
+
+        public ColorRow(IBlockState state) {
+            for (int biome = 0; biome < BIOME_COUNT; biome++) {
+                int color = this.colors[biome] = StateBiomeTable.this.computeColor(state, biome, SAMPLE_POSITIONS[0]);
+                for (int i = 1; i < SAMPLE_POSITIONS.length; i++) {
+                    if (StateBiomeTable.this.computeColor(state, biome, SAMPLE_POSITIONS[i]) != color) {
+                        this.positionDependent.set(biome);
+                        break;
+                    }
+                }
+            }
+
+            if (StateBiomeTable.this.approximate && !this.positionDependent.isEmpty()) {
+                this.bandColors = new int[BIOME_COUNT][];
+                BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+                for (int biome = this.positionDependent.nextSetBit(0); biome >= 0; biome = this.positionDependent.nextSetBit(biome + 1)) {
+                    int[] bands = this.bandColors[biome] = new int[HEIGHT_BANDS];
+                    for (int band = 0; band < HEIGHT_BANDS; band++) {
+                        bands[band] = StateBiomeTable.this.computeColor(state, biome, pos.setPos(0, (band << HEIGHT_BAND_SHIFT) + (1 << (HEIGHT_BAND_SHIFT - 1)), 0));
+                    }
+                }
+            } else {
+                this.bandColors = null;
+            }
+        }
+    }
+}
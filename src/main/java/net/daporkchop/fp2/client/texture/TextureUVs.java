@@ -258,6 +258,7 @@ public class TextureUVs extends AbstractReleasable {
         }
 
         STATEID_TO_INDEXID = stateIdToIndexId;
+        StateBiomeTable.invalidate(); //texture index IDs and biome color maps may have changed
 
         QuadList[] quadIdToList = new QuadList[distinctQuadsById.size()];
         List<PackedBakedQuad> quadsOut = new ArrayList<>(distinctQuadsById.size());
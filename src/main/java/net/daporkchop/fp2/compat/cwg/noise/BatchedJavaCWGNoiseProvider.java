@@ -0,0 +1,268 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.compat.cwg.noise;
+
+import com.flowpowered.noise.Utils;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import lombok.NonNull;
+import net.daporkchop.lib.common.pool.array.ArrayAllocator;
+
+import static com.flowpowered.noise.module.source.Perlin.*;
+import static net.daporkchop.fp2.util.Constants.*;
+
+/**
+ * Pure-java implementation of {@link CWGNoiseProvider} which samples noise one row at a time.
+ * <p>
+ * All samples in a row share the same X and Y coordinates, so everything derived from them (coordinate wrapping, lattice positions, interpolation weights and most
+ * of the gradient hash) is only computed once per row and octave. The remaining per-sample work is done in tight loops over primitive arrays, which are much
+ * friendlier to the JIT than calling {@link com.flowpowered.noise.Noise#gradientCoherentNoise3D} once per sample.
+ * <p>
+ * Every floating-point operation is performed in exactly the same order as in {@link JavaCWGNoiseProvider}, so the output is bit-for-bit identical.
+ *
+ * @author DaPorkchop_
+ */
+class BatchedJavaCWGNoiseProvider extends JavaCWGNoiseProvider {
+    //these must match the constants used by com.flowpowered.noise.Noise
+    protected static final int X_NOISE_GEN = 1619;
+    protected static final int Y_NOISE_GEN = 31337;
+    protected static final int Z_NOISE_GEN = 6971;
+    protected static final int SEED_NOISE_GEN = 1013;
+    protected static final int SHIFT_NOISE_GEN = 8;
+
+    protected static final double GRADIENT_SCALE = 2.12d;
+
+    protected static int floorLattice(double n) {
+        return n > 0.0d ? (int) n : (int) n - 1;
+    }
+
+    protected static double gradient(double px, double py, double pz, int hash) {
+        int vectorIndex = ((hash ^ (hash >> SHIFT_NOISE_GEN)) & 0xFF) << 2;
+        double[] randomVectors = Utils.RANDOM_VECTORS;
+        return ((randomVectors[vectorIndex] * px) + (randomVectors[vectorIndex + 1] * py) + (randomVectors[vectorIndex + 2] * pz)) * GRADIENT_SCALE;
+    }
+
+    /**
+     * Computes octaved perlin noise for a row of samples which share the same X and Y coordinates.
+     * <p>
+     * The Z coordinates in {@code z} are clobbered.
+     *
+     * @param out     the array to write the raw noise values to
+     * @param x       the X coordinate of the row
+     * @param y       the Y coordinate of the row
+     * @param z       the Z coordinates of the samples in the row
+     * @param count   the number of samples in the row
+     * @param seed    the noise seed
+     * @param octaves the number of octaves
+     */
+    protected static void perlinRow(@NonNull double[] out, double x, double y, @NonNull double[] z, int count, int seed, int octaves) {
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.0d;
+        }
+
+        double curPersistence = 1.0d;
+
+        for (int curOctave = 0; curOctave < octaves; curOctave++) {
+            //everything derived from the X and Y coordinates is the same for the entire row
+            double nx = Utils.makeInt32Range(x);
+            double ny = Utils.makeInt32Range(y);
+
+            int x0 = floorLattice(nx);
+            int x1 = x0 + 1;
+            int y0 = floorLattice(ny);
+            int y1 = y0 + 1;
+
+            double px0 = nx - x0;
+            double px1 = nx - x1;
+            double py0 = ny - y0;
+            double py1 = ny - y1;
+
+            double xs = Utils.sCurve3(px0); //DEFAULT_PERLIN_QUALITY is STANDARD
+            double ys = Utils.sCurve3(py0);
+
+            //integer arithmetic is associative, so the hash can be split into a per-row part and a per-sample part
+            int seedHash = SEED_NOISE_GEN * (seed + curOctave);
+            int h00 = X_NOISE_GEN * x0 + Y_NOISE_GEN * y0;
+            int h10 = X_NOISE_GEN * x1 + Y_NOISE_GEN * y0;
+            int h01 = X_NOISE_GEN * x0 + Y_NOISE_GEN * y1;
+            int h11 = X_NOISE_GEN * x1 + Y_NOISE_GEN * y1;
+
+            for (int i = 0; i < count; i++) {
+                double nz = Utils.makeInt32Range(z[i]);
+
+                int z0 = floorLattice(nz);
+                int z1 = z0 + 1;
+                double pz0 = nz - z0;
+                double pz1 = nz - z1;
+                double zs = Utils.sCurve3(pz0);
+
+                int hz0 = Z_NOISE_GEN * z0;
+                int hz1 = Z_NOISE_GEN * z1;
+
+                //corners are evaluated and interpolated in the same order as in com.flowpowered.noise.Noise#gradientCoherentNoise3D
+                double ix0 = Utils.linearInterp(gradient(px0, py0, pz0, h00 + hz0 + seedHash), gradient(px1, py0, pz0, h10 + hz0 + seedHash), xs);
+                double ix1 = Utils.linearInterp(gradient(px0, py1, pz0, h01 + hz0 + seedHash), gradient(px1, py1, pz0, h11 + hz0 + seedHash), xs);
+                double iy0 = Utils.linearInterp(ix0, ix1, ys);
+                ix0 = Utils.linearInterp(gradient(px0, py0, pz1, h00 + hz1 + seedHash), gradient(px1, py0, pz1, h10 + hz1 + seedHash), xs);
+                ix1 = Utils.linearInterp(gradient(px0, py1, pz1, h01 + hz1 + seedHash), gradient(px1, py1, pz1, h11 + hz1 + seedHash), xs);
+                double iy1 = Utils.linearInterp(ix0, ix1, ys);
+
+                out[i] += Utils.linearInterp(iy0, iy1, zs) * curPersistence;
+
+                z[i] *= DEFAULT_PERLIN_LACUNARITY;
+            }
+
+            // Prepare the next octave.
+            x *= DEFAULT_PERLIN_LACUNARITY;
+            y *= DEFAULT_PERLIN_LACUNARITY;
+            curPersistence *= DEFAULT_PERLIN_PERSISTENCE;
+        }
+    }
+
+    /**
+     * Samples a row of noise values along the Z axis, using the same semantics as {@link #sample(int, int, int, double, double, double, int, int, double)}.
+     */
+    protected static void sampleRow(@NonNull double[] out, @NonNull double[] tmp, int x, int y, int baseZ, int stepZ, int count, double freqX, double freqY, double freqZ, int seed, int octaves, double scale) {
+        for (int i = 0; i < count; i++) {
+            tmp[i] = (baseZ + i * stepZ) * freqZ;
+        }
+
+        perlinRow(out, x * freqX, y * freqY, tmp, count, seed, octaves);
+
+        for (int i = 0; i < count; i++) {
+            out[i] = out[i] * scale - 1.0d;
+        }
+    }
+
+    @Override
+    public void generate3d(@NonNull double[] out, int baseX, int baseY, int baseZ, int level, double freqX, double freqY, double freqZ, int sizeX, int sizeY, int sizeZ, int seed, int octaves, double scale) {
+        ArrayAllocator<double[]> alloc = ALLOC_DOUBLE.get();
+        double[] row = alloc.atLeast(sizeZ);
+        double[] tmp = alloc.atLeast(sizeZ);
+        try {
+            for (int i = 0, dx = 0; dx < sizeX; dx++) {
+                for (int dy = 0; dy < sizeY; dy++, i += sizeZ) {
+                    sampleRow(row, tmp, baseX + (dx << level), baseY + (dy << level), baseZ, 1 << level, sizeZ, freqX, freqY, freqZ, seed, octaves, scale);
+                    System.arraycopy(row, 0, out, i, sizeZ);
+                }
+            }
+        } finally {
+            alloc.release(tmp);
+            alloc.release(row);
+        }
+    }
+
+    @Override
+    public void generate2d(@NonNull double[] out, int baseX, int baseZ, int level, double freqX, double freqZ, int sizeX, int sizeZ, int seed, int octaves, double scale) {
+        ArrayAllocator<double[]> alloc = ALLOC_DOUBLE.get();
+        double[] row = alloc.atLeast(sizeZ);
+        double[] tmp = alloc.atLeast(sizeZ);
+        try {
+            for (int i = 0, dx = 0; dx < sizeX; dx++, i += sizeZ) {
+                sampleRow(row, tmp, baseX + (dx << level), 0, baseZ, 1 << level, sizeZ, freqX, 0.0d, freqZ, seed, octaves, scale);
+                System.arraycopy(row, 0, out, i, sizeZ);
+            }
+        } finally {
+            alloc.release(tmp);
+            alloc.release(row);
+        }
+    }
+
+    @Override
+    public Configured forSettings(@NonNull CustomGeneratorSettings settings, long seed) {
+        return new BatchedConfiguredImpl(settings, seed);
+    }
+
+    /**
+     * Implementation of {@link Configured} which samples noise one row at a time.
+     *
+     * @author DaPorkchop_
+     */
+    protected static class BatchedConfiguredImpl extends ConfiguredImpl {
+        public BatchedConfiguredImpl(@NonNull CustomGeneratorSettings settings, long seed) {
+            super(settings, seed);
+        }
+
+        @Override
+        public void generateDepth2d(@NonNull double[] out, int baseX, int baseZ, int scaleX, int scaleZ, int sizeX, int sizeZ) {
+            ArrayAllocator<double[]> alloc = ALLOC_DOUBLE.get();
+            double[] row = alloc.atLeast(sizeZ);
+            double[] tmp = alloc.atLeast(sizeZ);
+            try {
+                for (int i = 0, dx = 0; dx < sizeX; dx++) {
+                    sampleRow(row, tmp, baseX + dx * scaleX, 0, baseZ, scaleZ, sizeZ, this.depthNoiseFrequencyX, 0.0d, this.depthNoiseFrequencyZ, this.depthNoiseSeed, this.depthNoiseOctaves, this.depthNoiseScale);
+                    for (int dz = 0; dz < sizeZ; dz++, i++) {
+                        out[i] = this.processDepth(row[dz]);
+                    }
+                }
+            } finally {
+                alloc.release(tmp);
+                alloc.release(row);
+            }
+        }
+
+        @Override
+        public void generate3d(@NonNull double[] heightIn, @NonNull double[] variationIn, @NonNull double[] depthIn, @NonNull double[] out, int baseX, int baseY, int baseZ, int scaleX, int scaleY, int scaleZ, int sizeX, int sizeY, int sizeZ) {
+            ArrayAllocator<double[]> alloc = ALLOC_DOUBLE.get();
+            double[] selector = alloc.atLeast(sizeZ);
+            double[] low = alloc.atLeast(sizeZ);
+            double[] high = alloc.atLeast(sizeZ);
+            double[] tmp = alloc.atLeast(sizeZ);
+            try {
+                for (int i3 = 0, dx = 0; dx < sizeX; dx++) {
+                    int x = baseX + dx * scaleX;
+                    for (int dy = 0; dy < sizeY; dy++) {
+                        int y = baseY + dy * scaleY;
+
+                        sampleRow(selector, tmp, x, y, baseZ, scaleZ, sizeZ, this.selectorNoiseFrequencyX, this.selectorNoiseFrequencyY, this.selectorNoiseFrequencyZ, this.selectorNoiseSeed, this.selectorNoiseOctaves, this.selectorNoiseScale);
+
+                        boolean anyLow = false;
+                        boolean anyHigh = false;
+                        for (int dz = 0; dz < sizeZ; dz++) {
+                            double s = selector[dz] = selector[dz] * this.selectorNoiseFactor + this.selectorNoiseOffset;
+                            anyLow |= s < 1.0d;
+                            anyHigh |= s >= 0.0d;
+                        }
+
+                        //only sample the low and high noise if at least one sample in the row actually needs it
+                        if (anyLow) {
+                            sampleRow(low, tmp, x, y, baseZ, scaleZ, sizeZ, this.lowNoiseFrequencyX, this.lowNoiseFrequencyY, this.lowNoiseFrequencyZ, this.lowNoiseSeed, this.lowNoiseOctaves, this.lowNoiseScale);
+                        }
+                        if (anyHigh) {
+                            sampleRow(high, tmp, x, y, baseZ, scaleZ, sizeZ, this.highNoiseFrequencyX, this.highNoiseFrequencyY, this.highNoiseFrequencyZ, this.highNoiseSeed, this.highNoiseOctaves, this.highNoiseScale);
+                        }
+
+                        for (int i2 = dx * sizeZ, dz = 0; dz < sizeZ; dz++, i2++, i3++) {
+                            double s = selector[dz];
+                            double l = s >= 1.0d ? 0.0d : low[dz] * this.lowNoiseFactor + this.lowNoiseOffset;
+                            double h = s < 0.0d ? 0.0d : high[dz] * this.highNoiseFactor + this.highNoiseOffset;
+                            out[i3] = this.combine(heightIn[i2], variationIn[i2], depthIn[i2], y, s, l, h);
+                        }
+                    }
+                }
+            } finally {
+                alloc.release(tmp);
+                alloc.release(high);
+                alloc.release(low);
+                alloc.release(selector);
+            }
+        }
+    }
+}
@@ -38,10 +38,12 @@ import static net.daporkchop.fp2.util.Constants.*;
 public interface CWGNoiseProvider extends Feature<CWGNoiseProvider> {
     CWGNoiseProvider INSTANCE = FeatureBuilder.<CWGNoiseProvider>create(CWGNoiseProvider.class)
             .addNative("net.daporkchop.fp2.compat.cwg.noise.NativeCWGNoiseProvider", x86FeatureDetector.INSTANCE.maxSupportedVectorExtension())
+            .addJava("net.daporkchop.fp2.compat.cwg.noise.BatchedJavaCWGNoiseProvider")
             .addJava("net.daporkchop.fp2.compat.cwg.noise.JavaCWGNoiseProvider")
             .build(true);
 
-    CWGNoiseProvider JAVA_INSTANCE = INSTANCE.isNative() ? new JavaCWGNoiseProvider() : INSTANCE;
+    CWGNoiseProvider JAVA_INSTANCE = INSTANCE.getClass() == JavaCWGNoiseProvider.class ? INSTANCE : new JavaCWGNoiseProvider();
+    CWGNoiseProvider BATCHED_JAVA_INSTANCE = INSTANCE.getClass() == BatchedJavaCWGNoiseProvider.class ? INSTANCE : new BatchedJavaCWGNoiseProvider();
 
     static double scale(int octaves) {
         double maxValue = ((1.0d / (1 << octaves)) - 1.0d) * (1.0d / (DEFAULT_PERLIN_PERSISTENCE - 1.0d));
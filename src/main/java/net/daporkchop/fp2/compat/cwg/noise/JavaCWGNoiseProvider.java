@@ -206,7 +206,11 @@ class JavaCWGNoiseProvider implements CWGNoiseProvider {
 
         @Override
         public double generateDepthSingle(int x, int z) {
-            double d = sample(x, 0, z, this.depthNoiseFrequencyX, 0.0d, this.depthNoiseFrequencyZ, this.depthNoiseSeed, this.depthNoiseOctaves, this.depthNoiseScale) * this.depthNoiseFactor + this.depthNoiseOffset;
+            return this.processDepth(sample(x, 0, z, this.depthNoiseFrequencyX, 0.0d, this.depthNoiseFrequencyZ, this.depthNoiseSeed, this.depthNoiseOctaves, this.depthNoiseScale));
+        }
+
+        protected double processDepth(double noise) {
+            double d = noise * this.depthNoiseFactor + this.depthNoiseOffset;
             d *= d < 0.0d ? -0.9d : 3.0d;
             d -= 2.0d;
             d = clamp(d * (d < 0.0d ? 5.0d / 28.0d : 0.125d), -5.0d / 14.0d, 0.125d) * (0.2d * 17.0d / 64.0d);
@@ -226,14 +230,18 @@ class JavaCWGNoiseProvider implements CWGNoiseProvider {
 
         @Override
         public double generateSingle(double height, double variation, double depth, int x, int y, int z) {
-            height = height * this.heightFactor + this.heightOffset;
-            variation = variation * (height > y ? this.specialHeightVariationFactorBelowAverageY : 1.0d) * this.heightVariationFactor + this.heightVariationOffset;
-
             double selector = sample(x, y, z, this.selectorNoiseFrequencyX, this.selectorNoiseFrequencyY, this.selectorNoiseFrequencyZ, this.selectorNoiseSeed, this.selectorNoiseOctaves, this.selectorNoiseScale) * this.selectorNoiseFactor + this.selectorNoiseOffset;
             //TODO: benchmark and see whether this is actually faster with or without conditional
             double low = selector >= 1.0d ? 0.0d : sample(x, y, z, this.lowNoiseFrequencyX, this.lowNoiseFrequencyY, this.lowNoiseFrequencyZ, this.lowNoiseSeed, this.lowNoiseOctaves, this.lowNoiseScale) * this.lowNoiseFactor + this.lowNoiseOffset;
             double high = selector < 0.0d ? 0.0d : sample(x, y, z, this.highNoiseFrequencyX, this.highNoiseFrequencyY, this.highNoiseFrequencyZ, this.highNoiseSeed, this.highNoiseOctaves, this.highNoiseScale) * this.highNoiseFactor + this.highNoiseOffset;
 
+            return this.combine(height, variation, depth, y, selector, low, high);
+        }
+
+        protected double combine(double height, double variation, double depth, int y, double selector, double low, double high) {
+            height = height * this.heightFactor + this.heightOffset;
+            variation = variation * (height > y ? this.specialHeightVariationFactorBelowAverageY : 1.0d) * this.heightVariationFactor + this.heightVariationOffset;
+
             double d = lerp(low, high, clamp(selector, 0.0d, 1.0d)) + depth;
             d = d * variation + height;
             return d - Math.signum(variation) * y;
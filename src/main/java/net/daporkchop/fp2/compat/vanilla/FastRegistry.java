@@ -143,6 +143,13 @@ public class FastRegistry {
         return id >= 0 && id < IDS_TO_BLOCK_STATES.length ? IDS_TO_BLOCK_STATES[id] : null;
     }
 
+    /**
+     * @return an exclusive upper bound on the IDs of all registered block states
+     */
+    public int blockStateIdLimit() {
+        return IDS_TO_BLOCK_STATES.length;
+    }
+
     /**
      * A function which is run whenever {@link FastRegistry} is reloaded.
      *
@@ -247,12 +247,18 @@ public final class FP2Config implements Cloneable<FP2Config> {
             @Config.CategoryMeta(name = "default", title = false),
             @Config.CategoryMeta(name = Performance.CATEGORY_CLIENT),
             @Config.CategoryMeta(name = Performance.CATEGORY_THREADS),
+            @Config.CategoryMeta(name = Performance.CATEGORY_STORAGE),
+            @Config.CategoryMeta(name = Performance.CATEGORY_NETWORK),
     })
     public static class Performance implements Cloneable<Performance> {
         @SideOnly(Side.CLIENT)
         protected static final String CATEGORY_CLIENT = "client";
         @SideOnly(Side.CLIENT)
         protected static final String CATEGORY_THREADS = "threads";
+        @SideOnly(Side.CLIENT)
+        protected static final String CATEGORY_STORAGE = "storage";
+        @SideOnly(Side.CLIENT)
+        protected static final String CATEGORY_NETWORK = "network";
 
         @Builder.Default
         @Config.RestartRequired(Config.Requirement.WORLD)
@@ -265,6 +271,40 @@ public final class FP2Config implements Cloneable<FP2Config> {
         @Config.GuiCategory(CATEGORY_CLIENT)
         private final int maxBakesProcessedPerFrame = preventInline(256);
 
+        @Builder.Default
+        @Config.Range(min = @Config.Constant(0), max = @Config.Constant(Integer.MAX_VALUE))
+        @Config.GuiRange(min = @Config.Constant(0), max = @Config.Constant(1000))
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final int bakeCoalesceDelay = preventInline(100);
+
+        @Builder.Default
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final boolean persistentTileCache = preventInline(false);
+
+        @Builder.Default
+        @Config.Range(min = @Config.Constant(0), max = @Config.Constant(Integer.MAX_VALUE))
+        @Config.GuiRange(min = @Config.Constant(0), max = @Config.Constant(1024))
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final int inflatedTileCacheSize = preventInline(64);
+
+        @Builder.Default
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final boolean greedyMeshing = preventInline(false);
+
+        @Builder.Default
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final boolean approximateBiomeColors = preventInline(true);
+
+        @Builder.Default
+        @Config.Range(min = @Config.Constant(0), max = @Config.Constant(Integer.MAX_VALUE))
+        @Config.GuiRange(min = @Config.Constant(0), max = @Config.Constant(1024))
+        @Config.GuiCategory(CATEGORY_CLIENT)
+        private final int maxCompactionMovesPerFrame = preventInline(32);
+
         @Builder.Default
         @Config.Range(min = @Config.Constant(1), max = @Config.Constant(Integer.MAX_VALUE))
         @Config.GuiRange(min = @Config.Constant(1), max = @Config.Constant(field = "net.daporkchop.lib.common.util.PorkUtil#CPU_COUNT"))
@@ -286,10 +326,85 @@ public final class FP2Config implements Cloneable<FP2Config> {
         @Config.GuiCategory(CATEGORY_THREADS)
         private final int bakeThreads = max((PorkUtil.CPU_COUNT >> 1) + (PorkUtil.CPU_COUNT >> 2), 1);
 
+        @Builder.Default
+        @Config.Range(min = @Config.Constant(1), max = @Config.Constant(Integer.MAX_VALUE))
+        @Config.GuiRange(min = @Config.Constant(1), max = @Config.Constant(65536))
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_STORAGE)
+        private final int maxQueuedTileWrites = preventInline(8192);
+
+        @Builder.Default
+        @Config.RestartRequired(Config.Requirement.GAME)
+        @Config.GuiCategory(CATEGORY_STORAGE)
+        @NonNull
+        private final StorageProfile storageProfile = preventInline(StorageProfile.BALANCED);
+
+        @Builder.Default
+        @Config.RestartRequired(Config.Requirement.WORLD)
+        @Config.GuiCategory(CATEGORY_STORAGE)
+        @NonNull
+        private final StorageBackend storageBackend = preventInline(StorageBackend.ROCKSDB);
+
+        @Builder.Default
+        @Config.Range(min = @Config.Constant(1024), max = @Config.Constant(Integer.MAX_VALUE))
+        @Config.GuiRange(min = @Config.Constant(16384), max = @Config.Constant(4194304))
+        @Config.GuiCategory(CATEGORY_NETWORK)
+        private final int maxBytesSentPerTick = preventInline(262144);
+
         @Override
         public Performance clone() {
             return this.toBuilder().build();
         }
+
+        /**
+         * Tuning parameters for tile storage.
+         * <p>
+         * The block cache and write buffers are shared between all open storages, so these limits apply to the whole process rather than to each dimension and render mode.
+         *
+         * @author DaPorkchop_
+         */
+        @RequiredArgsConstructor
+        @Getter
+        public enum StorageProfile {
+            LOW_MEMORY(32, 16, 16 << 10),
+            BALANCED(128, 64, 32 << 10),
+            HIGH_THROUGHPUT(512, 256, 64 << 10);
+
+            /**
+             * The size of the shared block cache, in MiB.
+             */
+            protected final int blockCacheSize;
+
+            /**
+             * The maximum total size of all memtables, in MiB.
+             */
+            protected final int writeBufferSize;
+
+            /**
+             * The size of data blocks in the tile data column family, in bytes.
+             */
+            protected final int tileDataBlockSize;
+        }
+
+        /**
+         * The different implementations which may be used for storing tiles.
+         *
+         * @author DaPorkchop_
+         */
+        public enum StorageBackend {
+            /**
+             * Tiles are stored in a RocksDB database.
+             */
+            ROCKSDB,
+            /**
+             * Tiles are stored in fixed-size slots in memory-mapped region files.
+             */
+            MAPPED,
+            /**
+             * Tiles are only stored in memory, and are discarded once the world is closed.
+             */
+            MEMORY;
+        }
     }
 
     /**
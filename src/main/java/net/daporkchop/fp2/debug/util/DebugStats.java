@@ -68,6 +68,9 @@ public class DebugStats {
         protected final long tilesQueued;
         protected final long tilesTrackedGlobal;
 
+        protected final long loadWindow;
+        protected final long avgLoadLatency;
+
         protected final long avgUpdateDuration;
         protected final long lastUpdateDuration;
 
@@ -76,6 +79,21 @@ public class DebugStats {
         }
     }
 
+    /**
+     * @author DaPorkchop_
+     */
+    @Builder
+    @Data
+    public static final class WorkerGroup {
+        @NonNull
+        protected final String name;
+        protected final int weight;
+
+        protected final long queueDepth;
+        protected final long executedTasks;
+        protected final long busyTime;
+    }
+
     /**
      * @author DaPorkchop_
      */
@@ -92,6 +110,11 @@ public class DebugStats {
         protected final long totalSpace;
 
         protected final long uncompressedSize;
+
+        protected final long inflatedTileCount;
+        protected final long inflatedSize;
+        protected final long inflatedHits;
+        protected final long inflatedMisses;
     }
 
     /**
@@ -117,6 +140,10 @@ public class DebugStats {
         protected final long totalVertices;
         protected final long vertexSize;
 
+        protected final long receivedTiles;
+        protected final long bakes;
+        protected final long skippedBakes;
+
         @Override
         public Renderer add(@NonNull Renderer other) {
             checkArg(((this.indexSize == 0L) ^ (other.indexSize == 0L)) || this.indexSize == other.indexSize, "cannot merge renderer debug stats with different index sizes (%d != %d)", this.indexSize, other.indexSize);
@@ -136,7 +163,10 @@ public class DebugStats {
                     max(this.indexSize, other.indexSize),
                     (this.allocatedVertices & thisVertexMask) + (other.allocatedVertices & otherVertexMask),
                     (this.totalVertices & thisVertexMask) + (other.totalVertices & otherVertexMask),
-                    max(this.vertexSize, other.vertexSize));
+                    max(this.vertexSize, other.vertexSize),
+                    this.receivedTiles + other.receivedTiles,
+                    this.bakes + other.bakes,
+                    this.skippedBakes + other.skippedBakes);
         }
 
         @Override
@@ -158,7 +188,10 @@ public class DebugStats {
                     max(this.indexSize, other.indexSize),
                     (this.allocatedVertices & thisVertexMask) - (other.allocatedVertices & otherVertexMask),
                     (this.totalVertices & thisVertexMask) - (other.totalVertices & otherVertexMask),
-                    max(this.vertexSize, other.vertexSize));
+                    max(this.vertexSize, other.vertexSize),
+                    this.receivedTiles - other.receivedTiles,
+                    this.bakes - other.bakes,
+                    this.skippedBakes - other.skippedBakes);
         }
     }
 }
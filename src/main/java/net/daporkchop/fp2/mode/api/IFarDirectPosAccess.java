@@ -68,6 +68,17 @@ public interface IFarDirectPosAccess<POS extends IFarPos> {
      */
     int getAxisHeap(@NonNull POS pos, int axis);
 
+    /**
+     * Creates a new position on the Java heap at the given detail level with the given offsets along each axis.
+     * <p>
+     * This is the inverse of {@link #getAxisHeap(IFarPos, int)}.
+     *
+     * @param level the detail level
+     * @param axes  the position's offset along each axis. Must contain exactly {@link #axisCount()} elements
+     * @return the position
+     */
+    POS fromAxes(int level, @NonNull int[] axes);
+
     /**
      * Gets the position's offset along the given axis.
      *
@@ -71,6 +71,10 @@ public interface IFarPos extends Comparable<IFarPos> {
      * Writes this position to the given {@link ByteBuf}.
      * <p>
      * The written data must be deserializable by this position's render mode's {@link IFarRenderMode#readPos(ByteBuf)} method.
+     * <p>
+     * The encoded form consists of the position's level as a single byte, followed by the big-endian Morton code (Z-order index) of the position's
+     * coordinates with their sign bits flipped. This ensures that all positions at the same level are adjacent when sorted by their encoded form, and that
+     * positions which are close together in space tend to be close together in the sort order as well.
      *
      * @param dst the {@link ByteBuf} to write to
      */
@@ -112,6 +116,17 @@ public interface IFarPos extends Comparable<IFarPos> {
         return this.containedBy(coordLimits[this.level()]);
     }
 
+    /**
+     * Gets the position at this position's level with the smallest encoded form (as written by {@link #writePos(ByteBuf)}) which is both contained by the given
+     * tile coordinate limits and ordered after this position.
+     * <p>
+     * This position must not itself be contained by the given tile coordinate limits.
+     *
+     * @param coordLimits the {@link IntAxisAlignedBB} representing the tile coordinate limits
+     * @return the next position contained by the given tile coordinate limits, or {@code null} if there are none
+     */
+    IFarPos nextContainedBy(@NonNull IntAxisAlignedBB coordLimits);
+
     /**
      * Gets a {@link Stream} containing all the unique positions in the a bounding box originating at this position.
      * <p>
@@ -20,6 +20,8 @@
 
 package net.daporkchop.fp2.mode.api;
 
+import io.netty.buffer.ByteBuf;
+import lombok.NonNull;
 import net.daporkchop.fp2.util.IReusablePersistent;
 
 /**
@@ -32,4 +34,27 @@ public interface IFarTile extends IReusablePersistent {
      * @return any extra data that will be saved with the tile
      */
     long extra();
+
+    /**
+     * @return the amount of memory occupied by this tile's data, in bytes
+     */
+    long memoryUsage();
+
+    /**
+     * Writes the differences between the given tile and this tile to the given {@link ByteBuf}.
+     * <p>
+     * Applying the written delta to a tile identical to {@code base} using {@link #applyDelta(ByteBuf)} will make it identical to this tile. The {@link #extra()} data
+     * is not included.
+     *
+     * @param base the tile to compute the differences relative to. Must be of the same type as this tile
+     * @param dst  the {@link ByteBuf} to write to
+     */
+    void writeDelta(@NonNull IFarTile base, @NonNull ByteBuf dst);
+
+    /**
+     * Applies a delta previously written by {@link #writeDelta(IFarTile, ByteBuf)} to this tile.
+     *
+     * @param src the {@link ByteBuf} to read the delta from
+     */
+    void applyDelta(@NonNull ByteBuf src);
 }
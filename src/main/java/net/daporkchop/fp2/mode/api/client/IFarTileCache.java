@@ -25,15 +25,23 @@ import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.lib.unsafe.capability.Releasable;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import java.io.File;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Stream;
 
 /**
  * Client-side, in-memory cache for loaded tiles.
+ * <p>
+ * Received tiles may optionally also be persisted to disk (see {@link #enablePersistence(File, ZstdDictionary, UUID)}).
  *
  * @author DaPorkchop_
  */
@@ -43,6 +51,66 @@ public interface IFarTileCache<POS extends IFarPos, T extends IFarTile> extends
 
     void unloadTile(@NonNull POS pos);
 
+    /**
+     * Patches the cached tile at the delta's position by applying the given delta to it.
+     * <p>
+     * The delta is only applied if the cached tile's timestamp is the same as the delta's base timestamp.
+     *
+     * @param delta the delta
+     * @return whether or not the delta could be applied
+     */
+    boolean patchTile(@NonNull TileDelta<POS> delta);
+
+    /**
+     * Enables persisting all received tiles to disk, allowing them to be re-used in later sessions rather than having to be sent by the server again.
+     * <p>
+     * Must be called before any tiles have been received.
+     *
+     * @param directory  the directory to store the tiles in
+     * @param dictionary the (possibly {@code null}) dictionary which the session's tile data is compressed with
+     * @param storageId  the ID of the server-side storage which the session's tiles come from. Tiles which were stored on disk for a different storage are discarded
+     */
+    void enablePersistence(@NonNull File directory, ZstdDictionary dictionary, @NonNull UUID storageId);
+
+    /**
+     * Iterates over the positions and timestamps of the tiles which are stored on disk and are contained by the given per-level bounds.
+     * <p>
+     * If persistence isn't enabled, this method does nothing.
+     * <p>
+     * Unlike the other methods in this interface, this may be called from any thread, and may even be called after this cache has been released (in which case
+     * it does nothing). If this cache is released while the iteration is in progress, the iteration stops early.
+     *
+     * @param bounds the bounds to check tile positions against, indexed by detail level. Tiles at levels beyond the end of the array are skipped
+     * @param action the callback function
+     */
+    void forEachPersistedTile(@NonNull IntAxisAlignedBB[] bounds, @NonNull ObjLongConsumer<POS> action);
+
+    /**
+     * Loads the tile at the given position from disk, as if it had just been received from the server.
+     *
+     * @param pos       the position of the tile
+     * @param timestamp the timestamp of the version of the tile which the server expects the client to have
+     * @return whether or not the given version of the tile was stored on disk
+     */
+    boolean receivePersistedTile(@NonNull POS pos, long timestamp);
+
+    /**
+     * Gets the inflated tile data for the given snapshot, which must have been obtained from this cache.
+     * <p>
+     * Recently inflated tiles are cached, so repeatedly inflating the same snapshot is cheap. The returned tile may be shared with other threads, and must not be modified.
+     *
+     * @param snapshot the snapshot
+     * @return the inflated tile, or {@code null} if the snapshot is empty. Must be released using {@link #releaseTile(IFarTile)} once no longer needed
+     */
+    T acquireTile(@NonNull ITileSnapshot<POS, T> snapshot);
+
+    /**
+     * Releases a tile previously returned by {@link #acquireTile(ITileSnapshot)}.
+     *
+     * @param tile the tile
+     */
+    void releaseTile(@NonNull T tile);
+
     /**
      * Adds a new {@link Listener} that will be notified when tiles change.
      *
@@ -28,9 +28,14 @@ import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.player.IFarPlayerServer;
 import net.daporkchop.fp2.mode.api.server.IFarTileProvider;
 import net.daporkchop.fp2.mode.api.server.tracking.IFarTracker;
-import net.daporkchop.fp2.mode.api.tile.TileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
 import net.daporkchop.fp2.util.annotation.CalledFromServerThread;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * A server-side context for a specific {@link IFarPlayerServer} in a {@link IFarWorldServer} using a specific {@link IFarRenderMode}.
  *
@@ -75,6 +80,27 @@ public interface IFarServerContext<POS extends IFarPos, T extends IFarTile> exte
     @CalledFromServerThread
     void notifyConfigChange(@NonNull FP2Config config);
 
+    /**
+     * Called when the client advertises tiles which it already has in its persistent tile cache.
+     * <p>
+     * The implementation may skip sending the data for any of these tiles, as long as the version the client has cached is still the current one. Tiles which aren't
+     * currently visible to the player, or which would exceed {@link CPacketCachedTiles#MAX_TILES_PER_SESSION}, may be ignored.
+     *
+     * @param timestamps the timestamps of the client's cached tiles, keyed by position
+     */
+    @CalledFromServerThread
+    void notifyCachedTiles(@NonNull Map<POS, Long> timestamps);
+
+    /**
+     * Called when the client asks for the full data of some tiles to be sent again, because the version of the tile it has can no longer be relied upon.
+     * <p>
+     * Positions which aren't currently loaded on the client are ignored.
+     *
+     * @param positions the positions of the tiles to re-send
+     */
+    @CalledFromServerThread
+    void resendTiles(@NonNull Collection<POS> positions);
+
     /**
      * Closes this context, deactivating it if needed and releasing any allocated resources.
      */
@@ -92,10 +118,26 @@ public interface IFarServerContext<POS extends IFarPos, T extends IFarTile> exte
 
     /**
      * Sends the given tile data to the client.
+     * <p>
+     * The snapshot remains owned by the caller. If the implementation needs to keep a reference to it after this method returns, it must retain it.
+     *
+     * @param snapshot a snapshot of the data to be sent
+     */
+    default void sendTile(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+        this.sendTile(snapshot, null);
+    }
+
+    /**
+     * Sends the given tile data to the client.
+     * <p>
+     * The snapshot remains owned by the caller. If the implementation needs to keep a reference to it after this method returns, it must retain it.
+     * <p>
+     * If the client still has the tile version which the given delta is based on, the implementation may choose to send only the delta instead of the full tile data.
      *
      * @param snapshot a snapshot of the data to be sent
+     * @param delta    the (possibly {@code null}) differences between the previous version of the tile and the given snapshot
      */
-    void sendTile(@NonNull TileSnapshot<POS, T> snapshot);
+    void sendTile(@NonNull RefCountedTileSnapshot<POS, T> snapshot, TileDelta<POS> delta);
 
     /**
      * Unloads the tile at the given position on the client.
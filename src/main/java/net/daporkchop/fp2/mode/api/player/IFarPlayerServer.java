@@ -35,6 +35,16 @@ import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 public interface IFarPlayerServer {
     Vec3d fp2_IFarPlayer_position();
 
+    /**
+     * @return a unit vector pointing in the direction the player is looking
+     */
+    Vec3d fp2_IFarPlayer_lookVector();
+
+    /**
+     * @return the player's velocity, in blocks/tick
+     */
+    Vec3d fp2_IFarPlayer_velocity();
+
     @CalledFromNetworkThread
     void fp2_IFarPlayerServer_handle(@NonNull Object packet);
 
@@ -53,6 +63,11 @@ public interface IFarPlayerServer {
     @DebugOnly
     void fp2_IFarPlayer_debugSendPacket(@NonNull IMessage packet);
 
+    /**
+     * @return whether or not the player's connection is currently able to accept more outgoing data without having to buffer it
+     */
+    boolean fp2_IFarPlayerServer_isWritable();
+
     @CalledFromServerThread
     void fp2_IFarPlayer_update();
 
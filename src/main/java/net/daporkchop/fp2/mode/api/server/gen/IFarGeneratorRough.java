@@ -25,6 +25,10 @@ import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.minecraft.world.WorldServer;
 
+import java.util.stream.Stream;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
 /**
  * Extracts height and color information from a world for use by a rendering mode.
  * <p>
@@ -46,6 +50,37 @@ public interface IFarGeneratorRough<POS extends IFarPos, T extends IFarTile> ext
      */
     void generate(@NonNull POS pos, @NonNull T tile);
 
+    /**
+     * Gets the positions of all the tiles which this generator can generate together with the tile at the given position in a single call to
+     * {@link #generate(IFarPos[], IFarTile[])}.
+     * <p>
+     * The returned positions are all at the same level as the given position, and include the given position itself. Generators which don't benefit from batching
+     * return only the given position.
+     *
+     * @param pos the position of the tile
+     * @return the positions of the tiles which may be generated together with the given tile
+     */
+    default Stream<POS> batchGenerationGroup(@NonNull POS pos) {
+        return Stream.of(pos);
+    }
+
+    /**
+     * Generates a rough estimate of the terrain in multiple tiles at once.
+     * <p>
+     * All of the positions must be distinct, and must be members of the same {@link #batchGenerationGroup(IFarPos) batch generation group}. Generators may use this
+     * to share work between adjacent tiles, but the result must be identical to generating each tile individually.
+     *
+     * @param positions the positions of the tiles to generate
+     * @param tiles     the tiles to generate, in the same order as the positions
+     */
+    default void generate(@NonNull POS[] positions, @NonNull T[] tiles) {
+        checkArg(positions.length == tiles.length, "positions (%d) and tiles (%d) must have the same length", positions.length, tiles.length);
+
+        for (int i = 0; i < positions.length; i++) {
+            this.generate(positions[i], tiles[i]);
+        }
+    }
+
     /**
      * Factory method for creating instances of {@link IFarGeneratorRough}.
      *
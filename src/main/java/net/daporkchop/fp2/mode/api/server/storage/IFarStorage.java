@@ -24,9 +24,12 @@ import lombok.NonNull;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -46,6 +49,31 @@ public interface IFarStorage<POS extends IFarPos, T extends IFarTile> extends Cl
 
     void forEachDirtyPos(@NonNull Consumer<POS> callback);
 
+    /**
+     * Iterates over all dirty positions at the given level which are contained by the given tile coordinate limits.
+     * <p>
+     * Conceptually implemented by
+     * <blockquote><pre>{@code
+     * this.forEachDirtyPos(pos -> {
+     *     if (pos.level() == level && pos.containedBy(coordLimits)) {
+     *         callback.accept(pos);
+     *     }
+     * });
+     * }</pre></blockquote>
+     * except the implementation has the opportunity to optimize this beyond what the user could write.
+     *
+     * @param level       the level of detail
+     * @param coordLimits the {@link IntAxisAlignedBB} representing the tile coordinate limits
+     * @param callback    the callback function to run for each position
+     */
+    default void forEachDirtyPos(int level, @NonNull IntAxisAlignedBB coordLimits, @NonNull Consumer<POS> callback) {
+        this.forEachDirtyPos(pos -> {
+            if (pos.level() == level && pos.containedBy(coordLimits)) {
+                callback.accept(pos);
+            }
+        });
+    }
+
     /**
      * Atomically marks multiple positions as dirty as of the given timestamp.
      * <p>
@@ -68,6 +96,28 @@ public interface IFarStorage<POS extends IFarPos, T extends IFarTile> extends Cl
 
     //void markVanillaRenderable(@NonNull Stream<POS> positions);
 
+    /**
+     * Gets the dictionary which should be used for compressing tile data from this storage.
+     * <p>
+     * The dictionary must not change for as long as this storage is open.
+     *
+     * @return the dictionary, or {@code null} if tile data should be compressed without a dictionary
+     */
+    default ZstdDictionary compressionDictionary() {
+        return null;
+    }
+
+    /**
+     * Gets an ID which uniquely identifies the tile data in this storage.
+     * <p>
+     * The ID must not change for as long as the storage's contents are kept, including across restarts, and must differ from the ID of any other storage. In
+     * particular, a storage which is re-created from scratch (e.g. because its world was deleted and a new world with the same name was created) must get a new ID.
+     * Clients use this to decide whether tiles which they cached in an earlier session are still valid.
+     *
+     * @return the storage ID
+     */
+    UUID storageId();
+
     /**
      * Closes this storage.
      * <p>
@@ -20,12 +20,15 @@
 
 package net.daporkchop.fp2.mode.api.server.tracking;
 
+import lombok.NonNull;
 import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.util.annotation.CalledFromServerThread;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 
+import java.util.Comparator;
+
 /**
  * @author DaPorkchop_
  */
@@ -47,6 +50,25 @@ public interface IFarTracker<POS extends IFarPos, T extends IFarTile> extends Au
     @Override
     void close();
 
+    /**
+     * Gets a {@link Comparator} which orders tile positions by their priority for this tracker, based on the most recently computed tracking state.
+     * <p>
+     * Tiles which compare as lower are more important.
+     *
+     * @return a {@link Comparator} for sorting tile positions by priority
+     */
+    Comparator<POS> priorityComparator();
+
+    /**
+     * Checks whether or not the given tile position is in the area tracked by this tracker, based on the most recently computed tracking state.
+     * <p>
+     * If this tracker hasn't computed a tracking state yet, all positions are considered to be visible.
+     *
+     * @param pos the tile position
+     * @return whether or not the tile position is visible
+     */
+    boolean isVisible(@NonNull POS pos);
+
     @DebugOnly
     DebugStats.Tracking debugStats();
 }
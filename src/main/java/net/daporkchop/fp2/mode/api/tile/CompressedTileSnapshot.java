@@ -31,9 +31,11 @@ import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
 import net.daporkchop.lib.compression.zstd.Zstd;
 
-import static net.daporkchop.fp2.util.Constants.*;
+import java.util.Objects;
+
 import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
@@ -50,17 +52,40 @@ public class CompressedTileSnapshot<POS extends IFarPos, T extends IFarTile> imp
     @Getter(AccessLevel.NONE)
     protected final byte[] data;
 
-    protected CompressedTileSnapshot(@NonNull TileSnapshot<POS, T> src) {
-        this.pos = src.pos();
-        this.timestamp = src.timestamp();
+    /**
+     * The (possibly {@code null}) dictionary the tile data is compressed with.
+     */
+    protected final ZstdDictionary dictionary;
+
+    /**
+     * Creates a new {@link CompressedTileSnapshot} which wraps tile data that has already been compressed, without re-compressing it.
+     *
+     * @param pos        the tile's position
+     * @param timestamp  the tile's timestamp
+     * @param compressed a single Zstd frame containing the tile data, or {@code null} if the tile is empty. The array will be used directly and must not be modified
+     *                   afterwards
+     * @param dictionary the (possibly {@code null}) dictionary the tile data was compressed with
+     */
+    public static <POS extends IFarPos, T extends IFarTile> CompressedTileSnapshot<POS, T> wrapCompressed(@NonNull POS pos, long timestamp, byte[] compressed, ZstdDictionary dictionary) {
+        return new CompressedTileSnapshot<>(pos, timestamp, compressed, dictionary);
+    }
+
+    protected CompressedTileSnapshot(@NonNull TileSnapshot<POS, T> src, ZstdDictionary dictionary) {
+        this(src.pos(), src.timestamp(), src.data != null ? Unpooled.wrappedBuffer(src.data) : null, dictionary);
+    }
+
+    protected CompressedTileSnapshot(@NonNull POS pos, long timestamp, ByteBuf uncompressed, ZstdDictionary dictionary) {
+        this.pos = pos;
+        this.timestamp = timestamp;
+        this.dictionary = dictionary;
 
-        if (src.data == null) { //no data
+        if (uncompressed == null) { //no data
             this.data = null;
         } else { //source snapshot has some data, let's compress it
-            ByteBuf compressed = ByteBufAllocator.DEFAULT.buffer(Zstd.PROVIDER.compressBound(src.data.length));
+            ByteBuf compressed = ByteBufAllocator.DEFAULT.buffer(Zstd.PROVIDER.compressBound(uncompressed.readableBytes()));
             try {
                 //compress data
-                checkState(ZSTD_DEF.get().compress(Unpooled.wrappedBuffer(src.data), compressed));
+                checkState(ZstdDictionary.compress(this.dictionary, uncompressed.duplicate(), compressed));
 
                 //copy compressed data into a byte array
                 this.data = new byte[compressed.readableBytes()];
@@ -71,6 +96,20 @@ public class CompressedTileSnapshot<POS extends IFarPos, T extends IFarTile> imp
         }
     }
 
+    protected CompressedTileSnapshot(@NonNull POS pos, long timestamp, byte[] compressed, ZstdDictionary dictionary) {
+        this.pos = pos;
+        this.timestamp = timestamp;
+        this.data = compressed;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the compressed tile data as a single Zstd frame, or {@code null} if the tile is empty. The returned array must not be modified!
+     */
+    public byte[] compressedData() {
+        return this.data;
+    }
+
     @Override
     public T loadTile(@NonNull SimpleRecycler<T> recycler) {
         if (this.data != null) {
@@ -79,7 +118,7 @@ public class CompressedTileSnapshot<POS extends IFarPos, T extends IFarTile> imp
             ByteBuf uncompressed = ByteBufAllocator.DEFAULT.buffer(Zstd.PROVIDER.frameContentSize(compressed));
             try {
                 //decompress data
-                checkState(ZSTD_INF.get().decompress(compressed, uncompressed));
+                checkState(ZstdDictionary.decompress(this.dictionary, compressed, uncompressed));
 
                 //initialize tile from decompressed data
                 T tile = recycler.allocate();
@@ -100,8 +139,10 @@ public class CompressedTileSnapshot<POS extends IFarPos, T extends IFarTile> imp
     }
 
     @Override
-    public ITileSnapshot<POS, T> compressed() {
-        return this; //we're already compressed!
+    public ITileSnapshot<POS, T> compressed(ZstdDictionary dictionary) {
+        return Objects.equals(dictionary, this.dictionary)
+                ? this //we're already compressed!
+                : this.uncompressed().compressed(dictionary); //we're compressed using a different dictionary, re-compress
     }
 
     @Override
@@ -112,12 +153,28 @@ public class CompressedTileSnapshot<POS extends IFarPos, T extends IFarTile> imp
             uncompressedData = new byte[Zstd.PROVIDER.frameContentSize(Unpooled.wrappedBuffer(this.data))];
 
             //decompress data
-            checkState(ZSTD_INF.get().decompress(Unpooled.wrappedBuffer(this.data), Unpooled.wrappedBuffer(uncompressedData).clear()));
+            checkState(ZstdDictionary.decompress(this.dictionary, Unpooled.wrappedBuffer(this.data), Unpooled.wrappedBuffer(uncompressedData).clear()));
         }
 
         return new TileSnapshot<>(this.pos, this.timestamp, uncompressedData);
     }
 
+    @Override
+    public void write(@NonNull ByteBuf dst) {
+        this.pos.writePos(dst);
+        dst.writeLongLE(this.timestamp);
+
+        if (this.data == null) { //no data!
+            dst.writeIntLE(-1);
+        } else { //tile data is present, decompress it directly into the buffer
+            ByteBuf compressed = Unpooled.wrappedBuffer(this.data);
+            int uncompressedSize = Zstd.PROVIDER.frameContentSize(compressed);
+
+            dst.writeIntLE(uncompressedSize).ensureWritable(uncompressedSize);
+            checkState(ZstdDictionary.decompress(this.dictionary, compressed, dst));
+        }
+    }
+
     @DebugOnly
     @Override
     public DebugStats.TileSnapshot stats() {
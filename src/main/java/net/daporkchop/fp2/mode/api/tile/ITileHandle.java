@@ -34,9 +34,13 @@ public interface ITileHandle<POS extends IFarPos, T extends IFarTile> extends IT
     POS pos();
 
     /**
+     * Gets a snapshot of this tile's current data and metadata.
+     * <p>
+     * The returned snapshot is owned by the caller, and must be released once it is no longer needed.
+     *
      * @return a snapshot of this tile's current data and metadata, or {@code null} if the tile hasn't been initialized
      */
-    ITileSnapshot<POS, T> snapshot();
+    RefCountedTileSnapshot<POS, T> snapshot();
 
     /**
      * Atomically sets this tile's contents to the given data.
@@ -20,12 +20,14 @@
 
 package net.daporkchop.fp2.mode.api.tile;
 
+import io.netty.buffer.ByteBuf;
 import lombok.NonNull;
 import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
 
 /**
  * A snapshot of the data stored at a given tile position.
@@ -54,13 +56,30 @@ public interface ITileSnapshot<POS extends IFarPos, T extends IFarTile> extends
     /**
      * @return this snapshot, with its tile data stored compressed in-memory
      */
-    ITileSnapshot<POS, T> compressed();
+    default ITileSnapshot<POS, T> compressed() {
+        return this.compressed(null);
+    }
+
+    /**
+     * @param dictionary the (possibly {@code null}) dictionary to compress the tile data with
+     * @return this snapshot, with its tile data stored compressed in-memory using the given dictionary
+     */
+    ITileSnapshot<POS, T> compressed(ZstdDictionary dictionary);
 
     /**
      * @return this snapshot, with its tile data stored in-memory without compression
      */
     ITileSnapshot<POS, T> uncompressed();
 
+    /**
+     * Writes this snapshot's position, timestamp and uncompressed tile data to the given {@link ByteBuf}.
+     * <p>
+     * The written data may be read back using {@link TileSnapshot#TileSnapshot(ByteBuf, net.daporkchop.fp2.mode.api.IFarRenderMode)}.
+     *
+     * @param dst the {@link ByteBuf} to write to
+     */
+    void write(@NonNull ByteBuf dst);
+
     @DebugOnly
     DebugStats.TileSnapshot stats();
 }
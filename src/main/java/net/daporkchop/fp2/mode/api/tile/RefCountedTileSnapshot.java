@@ -0,0 +1,154 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.api.tile;
+
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import net.daporkchop.fp2.debug.util.DebugStats;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.util.SimpleRecycler;
+import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.lib.common.misc.refcount.AbstractRefCounted;
+import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
+
+import java.util.Objects;
+
+/**
+ * Implementation of {@link ITileSnapshot} whose tile data is stored in a {@link ByteBuf}, which will typically be a pooled direct buffer that the data was read into
+ * directly from storage.
+ * <p>
+ * Tiles are decoded directly from the buffer without any intermediate copies. Instances are reference-counted, so a single snapshot (and therefore a single buffer) may be
+ * shared between multiple users, each of which must {@link #release()} it once it is no longer needed.
+ *
+ * @author DaPorkchop_
+ */
+@Getter
+public class RefCountedTileSnapshot<POS extends IFarPos, T extends IFarTile> extends AbstractRefCounted implements ITileSnapshot<POS, T> {
+    @NonNull
+    protected final POS pos;
+    protected final long timestamp;
+
+    @Getter(AccessLevel.NONE)
+    protected final ByteBuf data;
+
+    //the result of the most recent call to compressed(ZstdDictionary). the same snapshot is typically sent to many players, so caching this allows the data to be compressed
+    //  only once rather than once per recipient
+    @Getter(AccessLevel.NONE)
+    protected volatile CompressedTileSnapshot<POS, T> compressed;
+
+    /**
+     * @param pos       the tile position
+     * @param timestamp the tile timestamp
+     * @param data      a {@link ByteBuf} containing the tile data, or {@code null} if the tile is empty. Ownership of the buffer is transferred to the snapshot.
+     */
+    public RefCountedTileSnapshot(@NonNull POS pos, long timestamp, ByteBuf data) {
+        this.pos = pos;
+        this.timestamp = timestamp;
+        this.data = data;
+    }
+
+    @Override
+    public RefCountedTileSnapshot<POS, T> retain() throws AlreadyReleasedException {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    protected void doRelease() {
+        if (this.data != null) {
+            this.data.release();
+        }
+    }
+
+    @Override
+    public T loadTile(@NonNull SimpleRecycler<T> recycler) {
+        if (this.data != null) {
+            T tile = recycler.allocate();
+            tile.read(this.data.duplicate()); //duplicate the buffer to avoid modifying its reader index, allowing multiple threads to read from it at once
+            return tile;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.data == null;
+    }
+
+    /**
+     * @return the size of this snapshot's tile data, in bytes
+     */
+    public int dataSize() {
+        return this.data != null ? this.data.readableBytes() : 0;
+    }
+
+    @Override
+    public CompressedTileSnapshot<POS, T> compressed(ZstdDictionary dictionary) {
+        CompressedTileSnapshot<POS, T> compressed = this.compressed;
+        if (compressed == null || !Objects.equals(compressed.dictionary(), dictionary)) { //the data hasn't been compressed using this dictionary yet
+            //this isn't synchronized, so if multiple threads get here at once the data might be compressed more than once. that's harmless, and much less likely than
+            //  the common case where the snapshot is compressed once and then sent to many players
+            this.compressed = compressed = new CompressedTileSnapshot<>(this.pos, this.timestamp, this.data, dictionary);
+        }
+        return compressed;
+    }
+
+    @Override
+    public ITileSnapshot<POS, T> uncompressed() {
+        byte[] uncompressedData = null;
+        if (this.data != null) { //copy data into a byte[] so that the returned snapshot isn't bound to this snapshot's lifetime
+            uncompressedData = new byte[this.data.readableBytes()];
+            this.data.getBytes(this.data.readerIndex(), uncompressedData);
+        }
+        return new TileSnapshot<>(this.pos, this.timestamp, uncompressedData);
+    }
+
+    @Override
+    public void write(@NonNull ByteBuf dst) {
+        this.pos.writePos(dst);
+        dst.writeLongLE(this.timestamp);
+
+        if (this.data == null) { //no data!
+            dst.writeIntLE(-1);
+        } else { //tile data is present, write it to the buffer
+            dst.writeIntLE(this.data.readableBytes()).writeBytes(this.data, this.data.readerIndex(), this.data.readableBytes());
+        }
+    }
+
+    @DebugOnly
+    @Override
+    public DebugStats.TileSnapshot stats() {
+        if (this.data == null) { //this tile is empty!
+            return DebugStats.TileSnapshot.ZERO;
+        } else {
+            return DebugStats.TileSnapshot.builder()
+                    .allocatedSpace(this.data.capacity())
+                    .totalSpace(this.data.readableBytes())
+                    .uncompressedSize(this.data.readableBytes())
+                    .build();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
 
 /**
  * @author DaPorkchop_
@@ -59,6 +60,7 @@ public class TileSnapshot<POS extends IFarPos, T extends IFarTile> implements IT
         }
     }
 
+    @Override
     public void write(@NonNull ByteBuf dst) {
         this.pos.writePos(dst);
         dst.writeLongLE(this.timestamp);
@@ -87,8 +89,8 @@ public class TileSnapshot<POS extends IFarPos, T extends IFarTile> implements IT
     }
 
     @Override
-    public ITileSnapshot<POS, T> compressed() {
-        return new CompressedTileSnapshot<>(this);
+    public ITileSnapshot<POS, T> compressed(ZstdDictionary dictionary) {
+        return new CompressedTileSnapshot<>(this, dictionary);
     }
 
     @Override
@@ -86,6 +86,7 @@ public abstract class AbstractFarRenderer<POS extends IFarPos, T extends IFarTil
         checkGLError("pre fp2 select");
 
         this.gl.runCleanup();
+        this.bakeManager.scheduleDeferredBakes();
         this.bakeManager.index.select(frustum, partialTicks);
 
         checkGLError("post fp2 select");
@@ -103,7 +104,7 @@ public abstract class AbstractFarRenderer<POS extends IFarPos, T extends IFarTil
     @DebugOnly
     @Override
     public DebugStats.Renderer stats() {
-        return this.bakeManager.index.stats();
+        return this.bakeManager.index.stats().add(this.bakeManager.stats());
     }
 
     @Override
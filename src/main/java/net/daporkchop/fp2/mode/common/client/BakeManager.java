@@ -22,16 +22,20 @@ package net.daporkchop.fp2.mode.common.client;
 
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import net.daporkchop.fp2.config.FP2Config;
+import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.client.IFarTileCache;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
 import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
 import net.daporkchop.fp2.mode.common.client.bake.IBakeOutput;
 import net.daporkchop.fp2.mode.common.client.bake.IRenderBaker;
 import net.daporkchop.fp2.mode.common.client.index.IRenderIndex;
 import net.daporkchop.fp2.mode.common.client.strategy.IFarRenderStrategy;
-import net.daporkchop.fp2.util.SimpleRecycler;
+import net.daporkchop.fp2.util.annotation.CalledFromClientThread;
+import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
 import net.daporkchop.fp2.util.threading.scheduler.NoFutureScheduler;
@@ -43,16 +47,21 @@ import net.minecraft.world.World;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import static java.util.concurrent.TimeUnit.*;
 import static net.daporkchop.fp2.util.Constants.*;
 import static net.daporkchop.lib.common.util.PorkUtil.*;
 
@@ -78,6 +87,20 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
     protected final AtomicBoolean isBulkUpdateQueued = new AtomicBoolean();
     protected final Semaphore dataUpdatesLock = new Semaphore(FP2Config.global().performance().maxBakesProcessedPerFrame());
 
+    //the timestamps of the input tiles which the most recent bake output at each position was built from
+    protected final Map<POS, long[]> bakedInputTimestamps = new ConcurrentHashMap<>();
+
+    //positions whose re-bake has been deferred in order to coalesce it with updates to neighboring tiles which are likely to arrive soon
+    protected final Map<POS, Boolean> deferredBakePositions = new ConcurrentHashMap<>();
+    protected final Queue<DeferredBake<POS>> deferredBakes = new ConcurrentLinkedQueue<>(); //approximately ordered by deadline, since all deferrals have the same length
+
+    @DebugOnly
+    protected final LongAdder debug_receivedTiles = new LongAdder();
+    @DebugOnly
+    protected final LongAdder debug_bakes = new LongAdder();
+    @DebugOnly
+    protected final LongAdder debug_skippedBakes = new LongAdder();
+
     public BakeManager(@NonNull AbstractFarRenderer<POS, T> renderer, @NonNull IFarTileCache<POS, T> tileCache) {
         this.renderer = renderer;
         this.strategy = renderer.strategy();
@@ -112,11 +135,13 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
 
     @Override
     public void tileAdded(@NonNull ITileSnapshot<POS, T> tile) {
+        this.debug_receivedTiles.increment();
         this.notifyOutputs(tile.pos());
     }
 
     @Override
     public void tileModified(@NonNull ITileSnapshot<POS, T> tile) {
+        this.debug_receivedTiles.increment();
         this.notifyOutputs(tile.pos());
     }
 
@@ -127,17 +152,40 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
     }
 
     protected void notifyOutputs(@NonNull POS pos) {
+        //neighboring tiles usually arrive in quick succession, so rather than re-baking each output as soon as any one of its inputs changes we wait a short time
+        //  to give the other inputs a chance to arrive as well
+        long delay = MILLISECONDS.toNanos(FP2Config.global().performance().bakeCoalesceDelay());
+        long deadline = System.nanoTime() + delay;
+
         //schedule all of the positions affected by the tile for re-bake
         this.baker.bakeOutputs(pos).forEach(outputPos -> {
             if (outputPos.level() < 0 || outputPos.level() >= MAX_LODS) { //output tile is at an invalid zoom level, skip it
                 return;
             }
 
-            //schedule tile for baking
-            this.bakeScheduler.schedule(outputPos);
+            if (delay <= 0L) { //deferral is disabled, schedule tile for baking immediately
+                this.bakeScheduler.schedule(outputPos);
+            } else if (this.deferredBakePositions.putIfAbsent(outputPos, Boolean.TRUE) == null) { //the tile's bake isn't deferred yet
+                this.deferredBakes.add(new DeferredBake<>(outputPos, deadline));
+            }
         });
     }
 
+    /**
+     * Schedules all deferred bakes whose deadline has passed for baking.
+     */
+    @CalledFromClientThread
+    public void scheduleDeferredBakes() {
+        long now = System.nanoTime();
+        for (DeferredBake<POS> bake; (bake = this.deferredBakes.peek()) != null && bake.deadline - now <= 0L; ) {
+            this.deferredBakes.poll();
+
+            //remove the position from the set before scheduling it, so that any inputs which change after this point will cause it to be deferred again
+            this.deferredBakePositions.remove(bake.pos);
+            this.bakeScheduler.schedule(bake.pos);
+        }
+    }
+
     /**
      * Bakes the tile at the given position.
      *
@@ -150,18 +198,33 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
         this.checkParentsRenderable(pos);
 
         ITileSnapshot<POS, T>[] compressedInputTiles = uncheckedCast(this.tileCache.getTilesCached(this.baker.bakeInputs(pos)).toArray(ITileSnapshot[]::new));
+
+        //skip the bake entirely if none of the inputs have changed since the last time this tile was baked
+        long[] inputTimestamps = new long[compressedInputTiles.length];
+        for (int i = 0; i < compressedInputTiles.length; i++) {
+            inputTimestamps[i] = compressedInputTiles[i] != null ? compressedInputTiles[i].timestamp() : ITileMetadata.TIMESTAMP_BLANK;
+        }
+        if (compressedInputTiles[0] == null) { //tile isn't cached any more, there's no reason to remember what it was baked from
+            this.bakedInputTimestamps.remove(pos);
+        } else if (Arrays.equals(this.bakedInputTimestamps.get(pos), inputTimestamps)) {
+            this.debug_skippedBakes.increment();
+            return;
+        }
+
         if (compressedInputTiles[0] == null //tile isn't cached any more
             || compressedInputTiles[0].isEmpty()) { //tile data is empty
             this.updateData(pos, Optional.empty());
+            this.recordBakedInputs(pos, compressedInputTiles, inputTimestamps);
             return;
         }
 
-        SimpleRecycler<T> recycler = this.renderer.mode().tileRecycler();
+        this.debug_bakes.increment();
+
         T[] srcs = this.renderer.mode().tileArray(compressedInputTiles.length);
         try {
-            for (int i = 0; i < srcs.length; i++) { //inflate tiles
+            for (int i = 0; i < srcs.length; i++) { //inflate tiles. each tile is an input to multiple bakes, so this goes through the tile cache to avoid inflating it every time
                 if (compressedInputTiles[i] != null) {
-                    srcs[i] = compressedInputTiles[i].loadTile(recycler);
+                    srcs[i] = this.tileCache.acquireTile(compressedInputTiles[i]);
                 }
             }
 
@@ -170,18 +233,36 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
                 this.baker.bake(pos, srcs, uncheckedCast(output));
 
                 this.updateData(pos, !output.isEmpty() ? Optional.of(output.retain()) : Optional.empty());
+                this.recordBakedInputs(pos, compressedInputTiles, inputTimestamps);
             } finally {
                 output.release();
             }
         } finally { //release tiles again
             for (T src : srcs) {
                 if (src != null) {
-                    recycler.release(src);
+                    this.tileCache.releaseTile(src);
                 }
             }
         }
     }
 
+    protected void recordBakedInputs(@NonNull POS pos, @NonNull ITileSnapshot<POS, T>[] compressedInputTiles, @NonNull long[] inputTimestamps) {
+        //this is only done once the bake output has been handed off, so that if baking fails part way through the next bake request for this position won't be
+        //  skipped as unchanged
+        if (compressedInputTiles[0] != null) {
+            this.bakedInputTimestamps.put(pos, inputTimestamps);
+        }
+    }
+
+    @DebugOnly
+    public DebugStats.Renderer stats() {
+        return DebugStats.Renderer.builder()
+                .receivedTiles(this.debug_receivedTiles.sum())
+                .bakes(this.debug_bakes.sum())
+                .skippedBakes(this.debug_skippedBakes.sum())
+                .build();
+    }
+
     protected void checkParentsRenderable(@NonNull POS posIn) {
         PorkUtil.<Stream<POS>>uncheckedCast(posIn.up().allPositionsInBB(1, 1)).forEach(this::checkSelfRenderable);
     }
@@ -253,4 +334,16 @@ public class BakeManager<POS extends IFarPos, T extends IFarTile> extends Abstra
             }
         });
     }
+
+    /**
+     * A bake which has been deferred until the given deadline.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static final class DeferredBake<POS extends IFarPos> {
+        @NonNull
+        protected final POS pos;
+        protected final long deadline; //the System#nanoTime() at which the tile should be scheduled for baking
+    }
 }
@@ -20,25 +20,39 @@
 
 package net.daporkchop.fp2.mode.common.client;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import lombok.NonNull;
+import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.client.IFarTileCache;
+import net.daporkchop.fp2.mode.api.tile.CompressedTileSnapshot;
 import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
+import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.fp2.util.annotation.RemovalPolicy;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.lib.unsafe.util.AbstractReleasable;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Stream;
 
 import static net.daporkchop.lib.common.util.PValidation.*;
@@ -52,19 +66,39 @@ import static net.daporkchop.lib.common.util.PValidation.*;
 //TODO: this still has some race conditions - it's possible that addListener/removeListener might cause the listener to be notified twice for tiles that are
 // received/unloaded during the initial notification pass
 public class FarTileCache<POS extends IFarPos, T extends IFarTile> extends AbstractReleasable implements IFarTileCache<POS, T>, Function<POS, ITileSnapshot<POS, T>> {
+    protected final IFarRenderMode<POS, T> mode;
+
     protected final Map<POS, ITileSnapshot<POS, T>> tiles = new ConcurrentHashMap<>();
     protected final Collection<Listener<POS, T>> listeners = new CopyOnWriteArraySet<>();
 
+    protected final InflatedTileCache<POS, T> inflatedTiles;
+
+    protected volatile FarTileDiskCache<POS, T> diskCache; //the (possibly null) cache to persist received tiles to
+
     @DebugOnly
     protected final AtomicReference<DebugStats.TileSnapshot> debug_tileStats = new AtomicReference<>(DebugStats.TileSnapshot.ZERO);
     @DebugOnly
     protected final LongAdder debug_nonEmptyTileCount = new LongAdder();
 
+    public FarTileCache(@NonNull IFarRenderMode<POS, T> mode) {
+        this.mode = mode;
+        this.inflatedTiles = new InflatedTileCache<>(mode, FP2Config.global().performance().inflatedTileCacheSize() * (1L << 20L));
+    }
+
     @Override
     public void receiveTile(@NonNull ITileSnapshot<POS, T> tile) {
         this.assertNotReleased();
+        if (this.diskCache != null) {
+            this.diskCache.store(tile);
+        }
+
+        this.putTile(tile);
+    }
+
+    protected void putTile(@NonNull ITileSnapshot<POS, T> tile) {
         this.tiles.compute(tile.pos(), (pos, old) -> {
             this.debug_updateStats(old, tile);
+            this.inflatedTiles.invalidate(pos);
 
             if (old == null) {
                 this.listeners.forEach(listener -> listener.tileAdded(tile));
@@ -80,12 +114,106 @@ public class FarTileCache<POS extends IFarPos, T extends IFarTile> extends Abstr
         this.assertNotReleased();
         this.tiles.computeIfPresent(_pos, (pos, old) -> {
             this.debug_updateStats(old, null);
+            this.inflatedTiles.invalidate(pos);
 
             this.listeners.forEach(listener -> listener.tileRemoved(pos));
             return null;
         });
     }
 
+    @Override
+    public boolean patchTile(@NonNull TileDelta<POS> delta) {
+        this.assertNotReleased();
+        ITileSnapshot<POS, T> tile = this.tiles.computeIfPresent(delta.pos(), (pos, old) -> {
+            if (old.timestamp() != delta.baseTimestamp()) { //the delta can't be applied to this version of the tile
+                return old;
+            }
+
+            ITileSnapshot<POS, T> patched = this.patch(old, delta);
+            this.debug_updateStats(old, patched);
+            this.inflatedTiles.invalidate(pos);
+
+            if (this.diskCache != null) {
+                this.diskCache.store(patched);
+            }
+
+            this.listeners.forEach(listener -> listener.tileModified(patched));
+            return patched;
+        });
+        return tile != null && tile.timestamp() == delta.timestamp();
+    }
+
+    @Override
+    public void enablePersistence(@NonNull File directory, ZstdDictionary dictionary, @NonNull UUID storageId) {
+        this.assertNotReleased();
+        checkState(this.diskCache == null, "persistence is already enabled!");
+        checkState(this.tiles.isEmpty(), "tiles have already been received!");
+
+        this.diskCache = new FarTileDiskCache<>(this.mode, directory, dictionary, storageId);
+    }
+
+    @Override
+    public void forEachPersistedTile(@NonNull IntAxisAlignedBB[] bounds, @NonNull ObjLongConsumer<POS> action) {
+        //this may be called from any thread, so the disk cache must only be read once. if it's closed concurrently, the iteration will simply stop early
+        FarTileDiskCache<POS, T> diskCache = this.diskCache;
+        if (diskCache != null) {
+            diskCache.forEachTimestamp(bounds, action);
+        }
+    }
+
+    @Override
+    public boolean receivePersistedTile(@NonNull POS pos, long timestamp) {
+        this.assertNotReleased();
+        if (this.diskCache == null) {
+            return false;
+        }
+
+        ITileSnapshot<POS, T> tile = this.diskCache.load(pos);
+        if (tile == null || tile.timestamp() != timestamp) { //the given version of the tile isn't stored on disk
+            return false;
+        }
+
+        //the tile is already on disk, so there's no need to store it again
+        this.putTile(tile);
+        return true;
+    }
+
+    protected ITileSnapshot<POS, T> patch(@NonNull ITileSnapshot<POS, T> old, @NonNull TileDelta<POS> delta) {
+        SimpleRecycler<T> recycler = this.mode.tileRecycler();
+        T tile = old.loadTile(recycler);
+        if (tile == null) { //the old tile was empty
+            tile = recycler.allocate();
+        }
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            tile.applyDelta(Unpooled.wrappedBuffer(delta.data()));
+
+            RefCountedTileSnapshot<POS, T> snapshot = new RefCountedTileSnapshot<>(delta.pos(), delta.timestamp(), tile.write(buf) ? null : buf.retain());
+            try { //store the patched tile the same way as the tile it replaces
+                return old instanceof CompressedTileSnapshot
+                        ? snapshot.compressed(((CompressedTileSnapshot<POS, T>) old).dictionary())
+                        : snapshot.uncompressed();
+            } finally {
+                snapshot.release();
+            }
+        } finally {
+            buf.release();
+            recycler.release(tile);
+        }
+    }
+
+    @Override
+    public T acquireTile(@NonNull ITileSnapshot<POS, T> snapshot) {
+        this.assertNotReleased();
+        return this.inflatedTiles.acquire(snapshot);
+    }
+
+    @Override
+    public void releaseTile(@NonNull T tile) {
+        this.inflatedTiles.release(tile);
+    }
+
     @Override
     public void addListener(@NonNull Listener<POS, T> listener, boolean notifyForExisting) {
         this.assertNotReleased();
@@ -138,7 +266,8 @@ public class FarTileCache<POS extends IFarPos, T extends IFarTile> extends Abstr
                 .allocatedSpace(snapshotStats.allocatedSpace())
                 .totalSpace(snapshotStats.allocatedSpace())
                 .uncompressedSize(snapshotStats.uncompressedSize())
-                .build();
+                .build()
+                .add(this.inflatedTiles.stats());
     }
 
     /**
@@ -155,5 +284,11 @@ public class FarTileCache<POS extends IFarPos, T extends IFarTile> extends Abstr
         this.tiles.forEach((pos, tile) -> this.listeners.forEach(listener -> listener.tileRemoved(pos)));
         this.tiles.clear();
         this.listeners.clear();
+        this.inflatedTiles.clear();
+
+        if (this.diskCache != null) {
+            this.diskCache.close();
+            this.diskCache = null;
+        }
     }
 }
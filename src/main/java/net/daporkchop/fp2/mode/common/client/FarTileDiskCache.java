@@ -0,0 +1,192 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.CompressedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.common.server.storage.StorageIds;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
+import net.daporkchop.lib.common.misc.file.PFiles;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Persistently stores the tiles received from the server on disk, so that they don't have to be sent again when the client starts a new session in the same world.
+ * <p>
+ * Tiles are stored exactly as they were received: as single Zstd frames compressed using the session's tile dictionary, along with their timestamps. If a session
+ * uses a different dictionary than the one the cached tiles were compressed with, or its tiles come from a different server-side storage (e.g. because the world
+ * was re-created under the same name), the cache is discarded.
+ *
+ * @author DaPorkchop_
+ */
+@SideOnly(Side.CLIENT)
+public class FarTileDiskCache<POS extends IFarPos, T extends IFarTile> implements AutoCloseable {
+    protected static final Options OPTIONS;
+
+    static {
+        RocksDB.loadLibrary();
+
+        //tile data is already compressed, there's no point in having rocksdb compress it again
+        OPTIONS = new Options()
+                .setCreateIfMissing(true)
+                .setKeepLogFileNum(1L)
+                .setCompressionType(CompressionType.NO_COMPRESSION);
+    }
+
+    protected static final String MARKER_FILE_NAME = "v1";
+    protected static final String DICTIONARY_FILE_NAME = "tile_data.dict";
+
+    protected final IFarRenderMode<POS, T> mode;
+    @Getter
+    protected final ZstdDictionary dictionary;
+
+    protected final RocksDB db;
+
+    protected volatile boolean closed;
+
+    @SneakyThrows({ IOException.class, RocksDBException.class })
+    public FarTileDiskCache(@NonNull IFarRenderMode<POS, T> mode, @NonNull File root, ZstdDictionary dictionary, @NonNull UUID storageId) {
+        this.mode = mode;
+        this.dictionary = dictionary;
+
+        File markerFile = new File(root, MARKER_FILE_NAME);
+        File dictionaryFile = new File(root, DICTIONARY_FILE_NAME);
+        File storageIdFile = new File(root, StorageIds.FILE_NAME);
+        if (PFiles.checkDirectoryExists(root)
+                && (!PFiles.checkFileExists(markerFile) || !Objects.equals(ZstdDictionary.load(dictionaryFile), dictionary)
+                    || !storageId.equals(StorageIds.load(storageIdFile)))) {
+            //the cache is from an old version, the cached tiles were compressed using a different dictionary than the one used by the server now, or the
+            //  cached tiles came from a different storage (even if their timestamps happen to match, they could contain completely different terrain)
+            FP2_LOG.info("discarding outdated client tile cache at {}", root);
+            PFiles.rmContentsParallel(root);
+        }
+        PFiles.ensureDirectoryExists(root);
+
+        if (dictionary != null) {
+            dictionary.save(dictionaryFile);
+        }
+        StorageIds.save(storageIdFile, storageId);
+
+        this.db = RocksDB.open(OPTIONS, root.getPath());
+
+        PFiles.ensureFileExists(markerFile); //create marker file
+    }
+
+    /**
+     * Iterates over the positions and timestamps of all the tiles in this cache which are contained by the given per-level bounds.
+     * <p>
+     * May be called from any thread. If this cache is closed while the iteration is in progress, the iteration stops early.
+     *
+     * @param bounds the bounds to check tile positions against, indexed by detail level. Tiles at levels beyond the end of the array are skipped
+     * @param action the callback function
+     */
+    public synchronized void forEachTimestamp(@NonNull IntAxisAlignedBB[] bounds, @NonNull ObjLongConsumer<POS> action) {
+        if (this.closed) {
+            return;
+        }
+
+        try (RocksIterator itr = this.db.newIterator()) {
+            for (itr.seekToFirst(); itr.isValid() && !this.closed; itr.next()) {
+                POS pos = this.mode.readPos(Unpooled.wrappedBuffer(itr.key()));
+                if (pos.level() < bounds.length && pos.containedBy(bounds)) {
+                    action.accept(pos, Unpooled.wrappedBuffer(itr.value()).readLongLE());
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the tile at the given position from this cache.
+     *
+     * @param pos the position of the tile
+     * @return the cached tile, or {@code null} if the tile isn't cached
+     */
+    @SneakyThrows(RocksDBException.class)
+    public CompressedTileSnapshot<POS, T> load(@NonNull POS pos) {
+        byte[] value = this.db.get(pos.toBytes());
+        if (value == null) { //the tile isn't cached
+            return null;
+        }
+
+        ByteBuf buf = Unpooled.wrappedBuffer(value);
+        long timestamp = buf.readLongLE();
+
+        byte[] data = null;
+        if (buf.isReadable()) { //the tile isn't empty
+            data = new byte[buf.readableBytes()];
+            buf.readBytes(data);
+        }
+        return CompressedTileSnapshot.wrapCompressed(pos, timestamp, data, this.dictionary);
+    }
+
+    /**
+     * Stores the given tile in this cache, replacing any previously cached version of the tile.
+     *
+     * @param tile the tile
+     */
+    @SneakyThrows(RocksDBException.class)
+    public void store(@NonNull ITileSnapshot<POS, T> tile) {
+        //tiles received from the server are already compressed using the session's dictionary, so this usually doesn't need to re-compress anything
+        ITileSnapshot<POS, T> compressed = tile.compressed(this.dictionary);
+        checkState(compressed instanceof CompressedTileSnapshot, "compressed snapshot has unexpected type: %s", compressed);
+        byte[] data = ((CompressedTileSnapshot<POS, T>) compressed).compressedData();
+
+        byte[] value = new byte[Long.BYTES + (data != null ? data.length : 0)];
+        ByteBuf buf = Unpooled.wrappedBuffer(value).clear().writeLongLE(tile.timestamp());
+        if (data != null) {
+            buf.writeBytes(data);
+        }
+
+        this.db.put(tile.pos().toBytes(), value);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true; //make any iteration which is currently in progress stop early, rather than waiting for it to finish
+
+        synchronized (this) {
+            this.db.close();
+        }
+    }
+}
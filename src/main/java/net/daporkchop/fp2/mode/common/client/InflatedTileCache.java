@@ -0,0 +1,210 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.client;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.debug.util.DebugStats;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.util.SimpleRecycler;
+import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A bounded cache of inflated tiles, allowing a tile snapshot's data to be decompressed and decoded once and then shared by all of the bakes which use it as an input.
+ * <p>
+ * Entries are keyed by position, and are only re-used for the exact same snapshot instance they were inflated from. Once the total size of the cached tiles exceeds
+ * the configured limit, the least recently used entries are evicted and their tiles are returned to the mode's {@link SimpleRecycler}. Tiles which are still in use
+ * when they're evicted are only recycled once they've been released.
+ * <p>
+ * Tiles returned by this cache are shared between threads, and therefore must not be modified.
+ *
+ * @author DaPorkchop_
+ */
+@SideOnly(Side.CLIENT)
+public class InflatedTileCache<POS extends IFarPos, T extends IFarTile> {
+    protected final IFarRenderMode<POS, T> mode;
+    protected final long maxSize;
+
+    //all the fields below are guarded by this instance's monitor
+    protected final Map<POS, Entry<POS, T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected final Map<T, Entry<POS, T>> acquired = new IdentityHashMap<>();
+    protected long size;
+
+    @DebugOnly
+    protected final LongAdder debug_hits = new LongAdder();
+    @DebugOnly
+    protected final LongAdder debug_misses = new LongAdder();
+
+    public InflatedTileCache(@NonNull IFarRenderMode<POS, T> mode, long maxSize) {
+        this.mode = mode;
+        this.maxSize = notNegative(maxSize, "maxSize");
+    }
+
+    /**
+     * Gets the inflated tile for the given snapshot, inflating it if it isn't already cached.
+     * <p>
+     * The returned tile must be released using {@link #release(IFarTile)} once it's no longer needed.
+     *
+     * @param snapshot the snapshot
+     * @return the inflated tile, or {@code null} if the snapshot is empty
+     */
+    public T acquire(@NonNull ITileSnapshot<POS, T> snapshot) {
+        synchronized (this) {
+            Entry<POS, T> entry = this.entries.get(snapshot.pos());
+            if (entry != null && entry.snapshot == snapshot) { //the snapshot has already been inflated
+                this.debug_hits.increment();
+                return this.retain(entry);
+            }
+        }
+
+        this.debug_misses.increment();
+
+        //inflate the tile without holding the lock, since it's comparatively expensive
+        SimpleRecycler<T> recycler = this.mode.tileRecycler();
+        T tile = snapshot.loadTile(recycler);
+        if (tile == null) { //the snapshot is empty, there's nothing to cache
+            return null;
+        }
+
+        synchronized (this) {
+            Entry<POS, T> entry = this.entries.get(snapshot.pos());
+            if (entry != null && entry.snapshot == snapshot) { //another thread inflated the same snapshot while we were doing so, use theirs instead
+                recycler.release(tile);
+                return this.retain(entry);
+            }
+
+            Entry<POS, T> created = new Entry<>(snapshot, tile);
+            this.replace(this.entries.put(snapshot.pos(), created));
+            this.size += tile.memoryUsage();
+
+            //retain the new entry before evicting anything, so that it isn't recycled if it happens to be evicted immediately
+            T result = this.retain(created);
+            this.evict();
+            return result;
+        }
+    }
+
+    /**
+     * Releases a tile previously returned by {@link #acquire(ITileSnapshot)}.
+     *
+     * @param tile the tile
+     */
+    public synchronized void release(@NonNull T tile) {
+        Entry<POS, T> entry = this.acquired.get(tile);
+        checkArg(entry != null, "tile %s isn't acquired!", tile);
+
+        if (--entry.refCnt == 0) {
+            this.acquired.remove(tile);
+            if (entry.evicted) { //the entry was evicted while the tile was in use, so it's our responsibility to recycle it
+                this.mode.tileRecycler().release(tile);
+            }
+        }
+    }
+
+    /**
+     * Discards the cached tile at the given position, if any.
+     * <p>
+     * This should be called when the tile at the given position is changed or removed, as the old data would never be used again.
+     *
+     * @param pos the position
+     */
+    public synchronized void invalidate(@NonNull POS pos) {
+        this.replace(this.entries.remove(pos));
+    }
+
+    /**
+     * Discards all cached tiles.
+     */
+    public synchronized void clear() {
+        this.entries.values().forEach(this::replace);
+        this.entries.clear();
+    }
+
+    protected T retain(@NonNull Entry<POS, T> entry) {
+        if (entry.refCnt++ == 0) {
+            this.acquired.put(entry.tile, entry);
+        }
+        return entry.tile;
+    }
+
+    protected void replace(Entry<POS, T> entry) {
+        if (entry != null) { //the entry was removed from the map
+            this.size -= entry.tile.memoryUsage();
+            entry.evicted = true;
+
+            if (entry.refCnt == 0) { //the tile isn't in use, recycle it immediately
+                this.mode.tileRecycler().release(entry.tile);
+            }
+        }
+    }
+
+    protected void evict() {
+        for (Iterator<Entry<POS, T>> itr = this.entries.values().iterator(); this.size > this.maxSize && itr.hasNext(); ) {
+            Entry<POS, T> entry = itr.next();
+            itr.remove();
+            this.replace(entry);
+        }
+    }
+
+    @DebugOnly
+    public DebugStats.TileCache stats() {
+        long size;
+        long count;
+        synchronized (this) {
+            size = this.size;
+            count = this.entries.size();
+        }
+
+        return DebugStats.TileCache.builder()
+                .inflatedTileCount(count)
+                .inflatedSize(size)
+                .inflatedHits(this.debug_hits.sum())
+                .inflatedMisses(this.debug_misses.sum())
+                .build();
+    }
+
+    /**
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static final class Entry<POS extends IFarPos, T extends IFarTile> {
+        @NonNull
+        protected final ITileSnapshot<POS, T> snapshot;
+        @NonNull
+        protected final T tile;
+
+        protected int refCnt;
+        protected boolean evicted;
+    }
+}
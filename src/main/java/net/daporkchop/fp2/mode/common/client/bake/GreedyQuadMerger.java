@@ -0,0 +1,109 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.client.bake;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Greedily merges cells on a 2D grid of coplanar quads into larger rectangles.
+ * <p>
+ * Each cell of the grid is assigned a key. Cells with a negative key are never merged, while adjacent cells with the same non-negative key may be merged
+ * into a single rectangle. It is the caller's responsibility to ensure that quads with the same key are actually interchangeable (i.e. that they have the same
+ * vertex attributes, apart from their position, and lie on the same plane).
+ * <p>
+ * Grids are stored in u-major order, i.e. the cell at {@code (u, v)} is at index {@code offset + u * sizeV + v}.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class GreedyQuadMerger {
+    /**
+     * The number of {@code int}s used to describe a single rectangle.
+     * <p>
+     * Each rectangle is stored as {@code u, v, width, height, key}, where {@code width} is the rectangle's size along the u axis and {@code height} is its size
+     * along the v axis.
+     */
+    public static final int RECT_SIZE = 5;
+
+    /**
+     * Merges the cells in the given grid into rectangles.
+     * <p>
+     * Every cell with a non-negative key will be covered by exactly one rectangle, and every rectangle will only cover cells with the same key. The contents of
+     * the grid are consumed by this operation: all cells will have a negative key once this method returns.
+     *
+     * @param keys   the array containing the grid
+     * @param offset the index of the first cell of the grid in the array
+     * @param sizeU  the size of the grid along the u axis
+     * @param sizeV  the size of the grid along the v axis
+     * @param rects  the array to write the merged rectangles to. Must have space for at least {@code sizeU * sizeV} rectangles
+     * @return the number of rectangles written
+     */
+    public static int merge(@NonNull int[] keys, int offset, int sizeU, int sizeV, @NonNull int[] rects) {
+        checkRangeLen(keys.length, offset, positive(sizeU, "sizeU") * positive(sizeV, "sizeV"));
+        checkArg(rects.length >= sizeU * sizeV * RECT_SIZE, "rects must have space for at least %d rectangles", sizeU * sizeV);
+
+        int count = 0;
+        for (int u = 0; u < sizeU; u++) {
+            for (int v = 0; v < sizeV; v++) {
+                int key = keys[offset + u * sizeV + v];
+                if (key < 0) { //cell is unset or has already been merged
+                    continue;
+                }
+
+                //extend the rectangle along the v axis as far as possible
+                int height = 1;
+                while (v + height < sizeV && keys[offset + u * sizeV + v + height] == key) {
+                    height++;
+                }
+
+                //extend the rectangle along the u axis for as long as the entire next row matches
+                int width = 1;
+                EXTEND:
+                while (u + width < sizeU) {
+                    for (int i = offset + (u + width) * sizeV + v, end = i + height; i < end; i++) {
+                        if (keys[i] != key) {
+                            break EXTEND;
+                        }
+                    }
+                    width++;
+                }
+
+                //consume all of the merged cells
+                for (int du = 0; du < width; du++) {
+                    for (int i = offset + (u + du) * sizeV + v, end = i + height; i < end; i++) {
+                        keys[i] = -1;
+                    }
+                }
+
+                int rect = count++ * RECT_SIZE;
+                rects[rect + 0] = u;
+                rects[rect + 1] = v;
+                rects[rect + 2] = width;
+                rects[rect + 3] = height;
+                rects[rect + 4] = key;
+            }
+        }
+        return count;
+    }
+}
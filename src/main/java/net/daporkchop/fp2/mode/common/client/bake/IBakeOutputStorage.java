@@ -30,6 +30,8 @@ import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.lib.common.misc.refcount.RefCounted;
 import net.daporkchop.lib.unsafe.util.exception.AlreadyReleasedException;
 
+import java.util.function.IntConsumer;
+
 /**
  * Stores data contained in multiple {@link IBakeOutput}.
  *
@@ -64,6 +66,17 @@ public interface IBakeOutputStorage<BO extends IBakeOutput, DB extends DrawBindi
      */
     DC[] toDrawCommands(int handle);
 
+    /**
+     * Incrementally compacts this storage's internal buffers by relocating data towards the start of each buffer.
+     * <p>
+     * Relocating data invalidates any draw commands previously obtained from {@link #toDrawCommands(int)} for the affected handles, so the given callback
+     * is notified with the handle of each bake output which was moved.
+     *
+     * @param maxMoves the maximum number of relocations to perform
+     * @param moved    a callback function to notify with the handle of each moved bake output
+     */
+    void compact(int maxMoves, @NonNull IntConsumer moved);
+
     DrawBindingBuilder<DB> createDrawBinding(@NonNull DrawLayout layout, int pass);
 
     @Override
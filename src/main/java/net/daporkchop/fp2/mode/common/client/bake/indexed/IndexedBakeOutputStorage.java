@@ -20,6 +20,8 @@
 
 package net.daporkchop.fp2.mode.common.client.bake.indexed;
 
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import lombok.Getter;
 import lombok.NonNull;
 import net.daporkchop.fp2.common.util.alloc.Allocator;
@@ -41,8 +43,10 @@ import net.daporkchop.fp2.mode.common.client.bake.IBakeOutputStorage;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.lib.unsafe.PUnsafe;
 
+import java.util.function.IntConsumer;
 import java.util.stream.Stream;
 
+import static java.lang.Math.*;
 import static net.daporkchop.fp2.client.gl.OpenGL.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 
@@ -103,6 +107,10 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
         PUnsafe.putInt(pass + _PASS_COUNT_OFFSET, count);
     }
 
+    protected static final double COMPACT_START_THRESHOLD = 0.25d; //start compacting a heap once at least this fraction of it is made up of holes
+    protected static final double COMPACT_STOP_THRESHOLD = 0.05d; //stop compacting a heap once less than this fraction of it is made up of holes
+    protected static final int COMPACT_MAX_BACKOFF = 256; //the maximum number of calls to compact() for which a heap is skipped after it couldn't be compacted
+
     protected final Allocator alloc;
 
     protected final Allocator slotAlloc;
@@ -111,12 +119,18 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
 
     protected final AttributeBuffer<SG> globalBuffer;
 
-    protected final Allocator vertexAlloc;
+    protected final SequentialVariableSizedAllocator vertexAlloc;
     protected final AttributeBuffer<SL> vertexBuffer;
+    protected final Int2IntMap vertexOwners = new Int2IntOpenHashMap(); //baseVertex -> handle
 
     protected final int indexSize;
-    protected final Allocator[] indexAllocs;
+    protected final SequentialVariableSizedAllocator[] indexAllocs;
     protected final IndexBuffer[] indexBuffers;
+    protected final Int2IntMap[] indexOwners; //firstIndex -> handle, for each pass
+
+    protected final boolean[] compacting; //whether or not each heap is currently being compacted (index 0 is the vertex heap, followed by the index heap for each pass)
+    protected final int[] compactBackoff; //the number of calls for which each heap will be skipped the next time it can't be compacted
+    protected final int[] compactDelay; //the remaining number of calls for which each heap will be skipped
 
     @Getter
     protected final int passes;
@@ -138,12 +152,18 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
         this.vertexBuffer = vertexFormat.createBuffer(BufferUsage.STATIC_DRAW);
         this.vertexAlloc = new SequentialVariableSizedAllocator(1L, Allocator.SequentialHeapManager.unified(capacity -> this.vertexBuffer.resize(toInt(capacity))));
 
-        this.indexAllocs = new Allocator[passes];
+        this.indexAllocs = new SequentialVariableSizedAllocator[passes];
         this.indexBuffers = new IndexBuffer[passes];
+        this.indexOwners = new Int2IntMap[passes];
         for (int pass = 0; pass < passes; pass++) {
             IndexBuffer indexBuffer = this.indexBuffers[pass] = indexFormat.createBuffer(BufferUsage.STATIC_DRAW);
             this.indexAllocs[pass] = new SequentialVariableSizedAllocator(1L, Allocator.SequentialHeapManager.unified(capacity -> indexBuffer.resize(toInt(capacity))));
+            this.indexOwners[pass] = new Int2IntOpenHashMap();
         }
+
+        this.compacting = new boolean[1 + passes];
+        this.compactBackoff = new int[1 + passes];
+        this.compactDelay = new int[1 + passes];
     }
 
     @Override
@@ -174,6 +194,7 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
         //allocate and upload vertex data
         int baseVertex = toInt(this.vertexAlloc.alloc(output.verts.size()));
         _slot_baseVertex(slotAddr, baseVertex);
+        this.vertexOwners.put(baseVertex, handle);
         this.vertexBuffer.set(baseVertex, output.verts);
 
         //for each pass, allocate and upload index data if needed
@@ -186,6 +207,7 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
             if (indices.size() > 0) {
                 count = indices.size();
                 firstIndex = toInt(this.indexAllocs[i].alloc(indices.size()));
+                this.indexOwners[i].put(firstIndex, handle);
 
                 this.indexBuffers[i].set(firstIndex, indices);
             }
@@ -204,14 +226,18 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
         long slotAddr = this.slotsAddr + handle * this.slotSize;
 
         //free vertex data
-        this.vertexAlloc.free(_slot_baseVertex(slotAddr));
+        int baseVertex = _slot_baseVertex(slotAddr);
+        this.vertexAlloc.free(baseVertex);
+        this.vertexOwners.remove(baseVertex);
 
         //for each pass, free index data if needed
         for (int i = 0; i < this.passes; i++) {
             long passAddr = _slot_pass(slotAddr, i);
 
             if (_pass_count(passAddr) > 0) {
-                this.indexAllocs[i].free(_pass_firstIndex(passAddr));
+                int firstIndex = _pass_firstIndex(passAddr);
+                this.indexAllocs[i].free(firstIndex);
+                this.indexOwners[i].remove(firstIndex);
             }
         }
 
@@ -231,6 +257,73 @@ public class IndexedBakeOutputStorage<SU, SG, SL> extends AbstractBakeOutputStor
         return commands;
     }
 
+    @Override
+    public void compact(int maxMoves, @NonNull IntConsumer moved) {
+        //compact vertex data
+        maxMoves -= this.compactHeap(0, this.vertexAlloc, maxMoves, (oldAddress, newAddress, size) -> {
+            int oldBaseVertex = toInt(oldAddress);
+            int newBaseVertex = toInt(newAddress);
+            this.vertexBuffer.copy(oldBaseVertex, newBaseVertex, toInt(size));
+
+            int handle = this.vertexOwners.remove(oldBaseVertex);
+            this.vertexOwners.put(newBaseVertex, handle);
+            _slot_baseVertex(this.slotsAddr + handle * this.slotSize, newBaseVertex);
+            moved.accept(handle);
+        });
+
+        //compact index data for each pass
+        for (int i = 0; i < this.passes; i++) {
+            int pass = i;
+            maxMoves -= this.compactHeap(1 + pass, this.indexAllocs[pass], maxMoves, (oldAddress, newAddress, size) -> {
+                int oldFirstIndex = toInt(oldAddress);
+                int newFirstIndex = toInt(newAddress);
+                this.indexBuffers[pass].copy(oldFirstIndex, newFirstIndex, toInt(size));
+
+                int handle = this.indexOwners[pass].remove(oldFirstIndex);
+                this.indexOwners[pass].put(newFirstIndex, handle);
+                _pass_firstIndex(_slot_pass(this.slotsAddr + handle * this.slotSize, pass), newFirstIndex);
+                moved.accept(handle);
+            });
+        }
+    }
+
+    protected int compactHeap(int heap, @NonNull SequentialVariableSizedAllocator alloc, int maxMoves, @NonNull SequentialVariableSizedAllocator.MoveListener listener) {
+        if (this.compactDelay[heap] > 0) { //the last attempt to compact this heap failed, wait a while before scanning it again
+            this.compactDelay[heap]--;
+            return 0;
+        }
+
+        if (!this.compacting[heap]) {
+            if (alloc.fragmentedSpace() < alloc.capacity() * COMPACT_START_THRESHOLD) { //the heap isn't fragmented enough to be worth compacting, but there may be some unused space at the end
+                alloc.shrink();
+                return 0;
+            }
+            this.compacting[heap] = true;
+        }
+
+        int moves = 0;
+        boolean stuck = false;
+        while (moves < maxMoves && alloc.fragmentedSpace() >= alloc.capacity() * COMPACT_STOP_THRESHOLD) {
+            if (!alloc.compact(listener)) {
+                stuck = true;
+                break;
+            }
+            moves++;
+        }
+
+        if (stuck && moves == 0) { //nothing could be moved, so there's no point in trying again until the heap has had a chance to change
+            this.compactDelay[heap] = this.compactBackoff[heap] = min(max(this.compactBackoff[heap] << 1, 1), COMPACT_MAX_BACKOFF);
+        } else if (moves > 0) {
+            this.compactBackoff[heap] = 0;
+        }
+
+        if (moves < maxMoves) { //either the heap is sufficiently defragmented or nothing else can be moved, stop compacting and release the unused space at the end
+            this.compacting[heap] = false;
+            alloc.shrink();
+        }
+        return moves;
+    }
+
     @DebugOnly
     @Override
     public DebugStats.Renderer stats() {
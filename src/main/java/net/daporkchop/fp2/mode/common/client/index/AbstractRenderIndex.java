@@ -118,7 +118,11 @@ public abstract class AbstractRenderIndex<POS extends IFarPos, BO extends IBakeO
 
     @Override
     public void select(@NonNull IFrustum frustum, float partialTicks) {
+        int maxCompactionMoves = FP2Config.global().performance().maxCompactionMovesPerFrame();
         for (Level level : this.levels) {
+            if (maxCompactionMoves > 0) {
+                level.compact(maxCompactionMoves);
+            }
             level.select(frustum, partialTicks);
         }
     }
@@ -268,6 +272,22 @@ public abstract class AbstractRenderIndex<POS extends IFarPos, BO extends IBakeO
             }
         }
 
+        public void compact(int maxMoves) {
+            //relocate some bake outputs in order to defragment the storage, and refresh the draw commands of any which were moved
+            this.storage.compact(maxMoves, this::refreshDrawCommands);
+        }
+
+        protected void refreshDrawCommands(int handle) {
+            POS pos = this.directPosAccess.loadPos(this.positionsAddr + handle * this.positionSize);
+
+            //only overwrite the draw commands if they're currently set
+            if (pos.level() == 0 || AbstractRenderIndex.this.renderablePositions.contains(pos)) {
+                this.addDrawCommands(handle);
+            }
+
+            this.dirty = true;
+        }
+
         public void select(@NonNull IFrustum frustum, float partialTicks) {
             if (this.positionsToHandles.isEmpty()) { //nothing to do
                 return;
@@ -60,7 +60,7 @@ public abstract class AbstractFarClientContext<POS extends IFarPos, T extends IF
     }
 
     protected IFarTileCache<POS, T> tileCache0() {
-        return new FarTileCache<>();
+        return new FarTileCache<>(this.mode);
     }
 
     protected abstract IFarRenderer renderer0(IFarRenderer old, @NonNull FP2Config config);
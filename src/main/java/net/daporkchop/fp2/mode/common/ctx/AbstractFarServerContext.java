@@ -24,6 +24,7 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Synchronized;
 import net.daporkchop.fp2.config.FP2Config;
+import net.daporkchop.fp2.debug.util.DebugStats;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.IFarTile;
@@ -32,18 +33,35 @@ import net.daporkchop.fp2.mode.api.ctx.IFarWorldServer;
 import net.daporkchop.fp2.mode.api.player.IFarPlayerServer;
 import net.daporkchop.fp2.mode.api.server.IFarTileProvider;
 import net.daporkchop.fp2.mode.api.server.tracking.IFarTracker;
-import net.daporkchop.fp2.mode.api.tile.TileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
+import net.daporkchop.fp2.mode.common.server.AbstractFarTileProvider;
+import net.daporkchop.fp2.mode.common.server.tracking.AbstractTrackerManager;
 import net.daporkchop.fp2.net.packet.debug.server.SPacketDebugUpdateStatistics;
-import net.daporkchop.fp2.net.packet.standard.server.SPacketTileData;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileCached;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDataBatch;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDelta;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUnloadTile;
 import net.daporkchop.fp2.util.annotation.CalledFromServerThread;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.fp2.util.annotation.RemovalPolicy;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.TreeMap;
+import java.util.Set;
 
+import static java.lang.Math.*;
 import static net.daporkchop.fp2.debug.FP2Debug.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 
@@ -54,6 +72,33 @@ import static net.daporkchop.lib.common.util.PValidation.*;
  */
 @Getter
 public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IFarTile> implements IFarServerContext<POS, T> {
+    /**
+     * The minimum value the adaptive send budget may be reduced to while the player's connection is congested.
+     */
+    protected static final long MIN_SEND_BUDGET = 16384L;
+
+    /**
+     * A rough estimate of the number of bytes added to each tile's data when it's sent to the client.
+     */
+    protected static final long TILE_PACKET_OVERHEAD = 16L;
+
+    /**
+     * The maximum total size of the (compressed) tile data to include in a single {@link SPacketTileDataBatch}.
+     * <p>
+     * A single tile larger than this will still be sent, but in a batch of its own.
+     */
+    protected static final long MAX_BATCH_SIZE = 262144L;
+
+    /**
+     * The maximum number of tiles requested by {@link #resendTiles(Collection)} which may start being loaded per tick.
+     */
+    protected static final int MAX_RESENDS_PER_TICK = 64;
+
+    /**
+     * The maximum number of tiles requested by {@link #resendTiles(Collection)} which may be loading at once.
+     */
+    protected static final int MAX_RESENDS_IN_FLIGHT = 256;
+
     protected final IFarPlayerServer player;
     protected final IFarWorldServer world;
     protected final IFarRenderMode<POS, T> mode;
@@ -61,7 +106,28 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
 
     protected final IFarTracker<POS, T> tracker;
 
-    protected final Map<POS, Optional<TileSnapshot<POS, T>>> sendQueue = new TreeMap<>();
+    protected final int sessionModeId;
+    protected final ZstdDictionary tileDictionary;
+
+    //tile data which is waiting to be sent. all the fields below are guarded by sendQueue's monitor
+    protected final Map<POS, RefCountedTileSnapshot<POS, T>> sendQueue = new HashMap<>();
+    //positions which the client should unload on the next flush
+    protected final Set<POS> unloadQueue = new HashSet<>();
+    //deltas against the version of the tile which was broadcast before the snapshot in sendQueue, if any
+    protected final Map<POS, TileDelta<POS>> deltaQueue = new HashMap<>();
+    //the timestamps of the tile data which has been sent to the client for each position which hasn't been unloaded since
+    protected final Map<POS, Long> sentTimestamps = new HashMap<>();
+    //the timestamps of the tiles in the client's persistent tile cache. this is only populated if the client has advertised that it has a persistent tile cache, and
+    //  only contains tiles which are (or recently were) visible to the player
+    protected final Map<POS, Long> cachedTimestamps = new HashMap<>();
+    //positions which the client asked to have re-sent in full, but which haven't started being loaded yet
+    protected final Set<POS> resendQueue = new LinkedHashSet<>();
+    protected int resendsInFlight; //the number of re-sent tiles which are currently being loaded
+    protected boolean clientCachesTiles;
+
+    protected long pendingBytes; //the estimated total encoded size of all the snapshots in sendQueue
+    protected long sendBudget; //the number of bytes which may currently be sent per tick. this adapts to congestion on the player's connection
+    protected long sendCredit; //the number of bytes which may be sent right now. this may be negative if a tile larger than the remaining credit was sent
 
     protected FP2Config config;
 
@@ -76,7 +142,14 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
         this.mode = mode;
         this.config = config;
 
+        this.sendBudget = FP2Config.global().performance().maxBytesSentPerTick();
+
         this.tileProvider = world.fp2_IFarWorldServer_tileProviderFor(mode);
+
+        this.sessionModeId = Arrays.asList(SPacketSessionBegin.sessionModeNames()).indexOf(mode.name());
+        checkState(this.sessionModeId >= 0, "render mode %s isn't registered", mode);
+        this.tileDictionary = this.tileProvider.storage().compressionDictionary();
+
         this.tracker = this.tileProvider.trackerManager().beginTracking(this);
     }
 
@@ -89,6 +162,102 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
         //no reason to bother scheduling an update immediately, it'll happen on the next server tick anyway
     }
 
+    @CalledFromServerThread
+    @Override
+    @Synchronized("sendQueue")
+    public void notifyCachedTiles(@NonNull Map<POS, Long> timestamps) {
+        checkState(!this.closed, "already closed!");
+
+        this.clientCachesTiles = true;
+
+        //the client may advertise arbitrarily many tiles, so only remember the ones which the tracker could actually send, up to a fixed limit
+        boolean pruned = false;
+        for (Map.Entry<POS, Long> entry : timestamps.entrySet()) {
+            if (!this.tracker.isVisible(entry.getKey())) {
+                continue;
+            }
+
+            if (this.cachedTimestamps.size() >= CPacketCachedTiles.MAX_TILES_PER_SESSION && !this.cachedTimestamps.containsKey(entry.getKey())) {
+                if (pruned) { //we've already made as much room as we can
+                    break;
+                }
+
+                //the player may have moved since the older tiles were advertised, so forget the ones which have gone out of range before giving up
+                this.cachedTimestamps.keySet().removeIf(pos -> !this.tracker.isVisible(pos));
+                pruned = true;
+                if (this.cachedTimestamps.size() >= CPacketCachedTiles.MAX_TILES_PER_SESSION) {
+                    break;
+                }
+            }
+
+            //tiles which are already queued will be checked against these timestamps when they're actually sent
+            this.cachedTimestamps.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @CalledFromServerThread
+    @Override
+    @Synchronized("sendQueue")
+    public void resendTiles(@NonNull Collection<POS> positions) {
+        checkState(!this.closed, "already closed!");
+
+        for (POS pos : positions) {
+            if (!this.sentTimestamps.containsKey(pos)) { //the tile isn't loaded on the client, so there's nothing to re-send
+                continue;
+            }
+
+            //the client still has some version of the tile (which it'll need to unload later), but it can't be used as a delta base or a cached copy any more
+            this.sentTimestamps.put(pos, ITileMetadata.TIMESTAMP_BLANK);
+            this.cachedTimestamps.remove(pos);
+            this.deltaQueue.remove(pos);
+
+            if (this.sendQueue.containsKey(pos)) { //a newer version of the tile is already waiting to be sent, and will now be sent in full
+                continue;
+            }
+
+            //loading the tile may hit the disk, so it's done asynchronously and at a limited rate by processResends()
+            this.resendQueue.add(pos);
+        }
+    }
+
+    @Synchronized("sendQueue")
+    protected void processResends() {
+        Iterator<POS> itr = this.resendQueue.iterator();
+        for (int i = 0; i < MAX_RESENDS_PER_TICK && this.resendsInFlight < MAX_RESENDS_IN_FLIGHT && itr.hasNext(); i++) {
+            POS pos = itr.next();
+            itr.remove();
+
+            this.resendsInFlight++;
+            this.tileProvider.requestLoad(pos).whenComplete((handle, cause) -> {
+                RefCountedTileSnapshot<POS, T> snapshot = null;
+                try {
+                    if (cause == null) {
+                        snapshot = handle.snapshot();
+                    }
+                } finally {
+                    this.finishResend(pos, snapshot);
+                }
+            });
+        }
+    }
+
+    @Synchronized("sendQueue")
+    protected void finishResend(@NonNull POS pos, RefCountedTileSnapshot<POS, T> snapshot) {
+        try {
+            this.resendsInFlight--;
+
+            //the tile may have been unloaded or had a newer version queued while it was loading, in which case there's no need to send it again
+            Long sentTimestamp = this.sentTimestamps.get(pos);
+            if (snapshot != null && !this.closed && !this.sendQueue.containsKey(pos) && sentTimestamp != null && sentTimestamp == ITileMetadata.TIMESTAMP_BLANK) {
+                this.sendTile(snapshot, null);
+            }
+        } finally {
+            if (snapshot != null) {
+                snapshot.release();
+            }
+        }
+    }
+
     @CalledFromServerThread
     @Override
     public void update() {
@@ -96,18 +265,138 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
 
         this.tracker.update();
 
+        this.processResends();
         this.flushSendQueue();
         this.debugUpdate();
     }
 
     @Synchronized("sendQueue")
     protected void flushSendQueue() {
-        if (!this.sendQueue.isEmpty()) {
-            this.sendQueue.forEach((pos, optionalSnapshot) -> this.player.fp2_IFarPlayer_sendPacket(optionalSnapshot.isPresent()
-                    ? new SPacketTileData().mode(this.mode).tile(optionalSnapshot.get())
-                    : new SPacketUnloadTile().mode(this.mode).pos(pos)));
+        //unload packets are tiny, and delaying them behind tile data would only make the client hold on to tiles it no longer needs
+        if (!this.unloadQueue.isEmpty()) {
+            this.unloadQueue.forEach(pos -> this.player.fp2_IFarPlayer_sendPacket(new SPacketUnloadTile().mode(this.mode).pos(pos)));
+            this.unloadQueue.clear();
+        }
+
+        //adapt the send budget to the connection's backpressure: increase it additively while the connection keeps up, and halve it whenever data starts piling up in the
+        //  channel's outbound buffer
+        long maxBudget = FP2Config.global().performance().maxBytesSentPerTick();
+        if (!this.player.fp2_IFarPlayerServer_isWritable()) {
+            this.sendBudget = max(this.sendBudget >> 1L, min(MIN_SEND_BUDGET, maxBudget));
+            return; //don't send anything else until the connection has drained
+        }
+
+        this.sendBudget = min(this.sendBudget + max(maxBudget >> 3L, 1L), maxBudget);
+        this.sendCredit = min(this.sendCredit + this.sendBudget, this.sendBudget); //unused credit doesn't accumulate across ticks, to prevent bursts
+
+        if (this.sendQueue.isEmpty() || this.sendCredit <= 0L) {
+            return;
+        }
+
+        if (this.pendingBytes <= this.sendCredit) { //everything fits into this tick's budget, so there's no need to bother sorting anything
+            this.sendSnapshots(new ArrayList<>(this.sendQueue.values()));
             this.sendQueue.clear();
+            this.sendCredit -= this.pendingBytes;
+            this.pendingBytes = 0L;
+            return;
+        }
+
+        //send tiles in order of priority until the budget for this tick is used up
+        List<POS> positions = new ArrayList<>(this.sendQueue.keySet());
+        positions.sort(this.tracker.priorityComparator());
+        List<RefCountedTileSnapshot<POS, T>> snapshots = new ArrayList<>();
+        for (int i = 0; i < positions.size() && this.sendCredit > 0L; i++) {
+            RefCountedTileSnapshot<POS, T> snapshot = this.sendQueue.remove(positions.get(i));
+            long size = this.encodedSize(snapshot);
+            this.pendingBytes -= size;
+            this.sendCredit -= size;
+            snapshots.add(snapshot);
         }
+        this.sendSnapshots(snapshots);
+    }
+
+    protected void sendSnapshots(@NonNull List<RefCountedTileSnapshot<POS, T>> snapshots) {
+        try {
+            //if the client still has the tile version a delta was computed against, send the delta instead of the whole tile
+            snapshots.removeIf(snapshot -> {
+                TileDelta<POS> delta = this.usableDelta(snapshot);
+                if (delta == null) {
+                    return false;
+                }
+
+                this.player.fp2_IFarPlayer_sendPacket(new SPacketTileDelta().modeId(this.sessionModeId).delta(delta));
+                this.markSent(snapshot);
+                this.sendCredit += this.encodedSize(snapshot) - (TILE_PACKET_OVERHEAD + delta.data().length); //refund the difference between the tile's size and the delta's
+                snapshot.release();
+                return true;
+            });
+
+            //if the client already has this exact version of the tile in its persistent tile cache, tell it to load the tile from there instead of sending the data
+            Map<POS, Long> cached = new HashMap<>();
+            snapshots.removeIf(snapshot -> {
+                Long cachedTimestamp = this.cachedTimestamps.get(snapshot.pos());
+                if (cachedTimestamp == null || cachedTimestamp != snapshot.timestamp()) {
+                    return false;
+                }
+
+                cached.put(snapshot.pos(), snapshot.timestamp());
+                this.markSent(snapshot);
+                this.sendCredit += this.encodedSize(snapshot) - TILE_PACKET_OVERHEAD; //refund the tile's data, which doesn't need to be sent
+                snapshot.release();
+                return true;
+            });
+            if (!cached.isEmpty()) { //split the list up to stay within the client's limit
+                Map<POS, Long> packetTimestamps = new HashMap<>();
+                for (Map.Entry<POS, Long> entry : cached.entrySet()) {
+                    packetTimestamps.put(entry.getKey(), entry.getValue());
+                    if (packetTimestamps.size() >= SPacketTileCached.MAX_TILES_PER_PACKET) {
+                        this.player.fp2_IFarPlayer_sendPacket(new SPacketTileCached().modeId(this.sessionModeId).mode(this.mode).timestamps(packetTimestamps));
+                        packetTimestamps = new HashMap<>();
+                    }
+                }
+                if (!packetTimestamps.isEmpty()) {
+                    this.player.fp2_IFarPlayer_sendPacket(new SPacketTileCached().modeId(this.sessionModeId).mode(this.mode).timestamps(packetTimestamps));
+                }
+            }
+
+            //split the remaining snapshots into batches of limited size
+            for (int start = 0, end; start < snapshots.size(); start = end) {
+                long batchSize = this.encodedSize(snapshots.get(start));
+                for (end = start + 1; end < snapshots.size() && batchSize + this.encodedSize(snapshots.get(end)) <= MAX_BATCH_SIZE; end++) {
+                    batchSize += this.encodedSize(snapshots.get(end));
+                }
+
+                List<RefCountedTileSnapshot<POS, T>> batch = snapshots.subList(start, end);
+                this.player.fp2_IFarPlayer_sendPacket(new SPacketTileDataBatch().modeId(this.sessionModeId).mode(this.mode).dictionary(this.tileDictionary).tiles(batch));
+                batch.forEach(this::markSent);
+            }
+        } finally { //packets are encoded synchronously, so the snapshots may be released as soon as they've been sent
+            snapshots.forEach(RefCountedTileSnapshot::release);
+        }
+    }
+
+    protected void markSent(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+        this.sentTimestamps.put(snapshot.pos(), snapshot.timestamp());
+
+        if (this.clientCachesTiles) { //the client will store the new version of the tile in its persistent tile cache
+            this.cachedTimestamps.put(snapshot.pos(), snapshot.timestamp());
+        }
+    }
+
+    protected TileDelta<POS> usableDelta(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+        TileDelta<POS> delta = this.deltaQueue.remove(snapshot.pos());
+        if (delta == null || delta.timestamp() != snapshot.timestamp()) { //there is no delta for this version of the tile
+            return null;
+        }
+
+        Long sentTimestamp = this.sentTimestamps.get(snapshot.pos());
+        return sentTimestamp != null && sentTimestamp == delta.baseTimestamp() ? delta : null;
+    }
+
+    protected long encodedSize(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+        //the snapshot caches its compressed form, so the data is only compressed once no matter how many players it's sent to
+        byte[] data = snapshot.compressed(this.tileDictionary).compressedData();
+        return TILE_PACKET_OVERHEAD + (data != null ? data.length : 0);
     }
 
     @DebugOnly(RemovalPolicy.DROP)
@@ -120,7 +409,10 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
         if (++this.debugLastUpdateSent == 20) { //send a debug statistics update packet once every 20s
             this.debugLastUpdateSent = 0;
 
-            this.player.fp2_IFarPlayer_debugSendPacket(new SPacketDebugUpdateStatistics().tracking(this.tracker.debugStats()));
+            this.player.fp2_IFarPlayer_debugSendPacket(new SPacketDebugUpdateStatistics()
+                    .tracking(this.tracker.debugStats())
+                    .terrainWorkers(AbstractFarTileProvider.TERRAIN_WORKER_POOL.stats().toArray(new DebugStats.WorkerGroup[0]))
+                    .trackerWorkers(AbstractTrackerManager.TRACKER_WORKER_POOL.stats().toArray(new DebugStats.WorkerGroup[0])));
         }
     }
 
@@ -131,16 +423,38 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
         this.closed = true;
 
         this.tracker.close();
+
+        this.releaseSendQueue();
+    }
+
+    @Synchronized("sendQueue")
+    protected void releaseSendQueue() {
+        this.sendQueue.values().forEach(RefCountedTileSnapshot::release);
+        this.sendQueue.clear();
+        this.deltaQueue.clear();
+        this.unloadQueue.clear();
+        this.sentTimestamps.clear();
+        this.cachedTimestamps.clear();
+        this.resendQueue.clear();
+        this.pendingBytes = 0L;
     }
 
     @Override
     @Synchronized("sendQueue")
-    public void sendTile(@NonNull TileSnapshot<POS, T> snapshot) {
+    public void sendTile(@NonNull RefCountedTileSnapshot<POS, T> snapshot, TileDelta<POS> delta) {
         if (this.closed) { //this context has been closed - silently discard all tile data
             return;
         }
 
-        this.sendQueue.put(snapshot.pos(), Optional.of(snapshot));
+        //retain the snapshot, since it'll be kept in the send queue
+        this.releaseQueued(this.sendQueue.put(snapshot.pos(), snapshot.retain()));
+        this.pendingBytes += this.encodedSize(snapshot);
+
+        if (delta != null) {
+            this.deltaQueue.put(snapshot.pos(), delta);
+        } else {
+            this.deltaQueue.remove(snapshot.pos());
+        }
     }
 
     @Override
@@ -150,7 +464,7 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
             return;
         }
 
-        this.sendQueue.put(pos, Optional.empty());
+        this.queueUnload(pos);
     }
 
     @Override
@@ -160,6 +474,28 @@ public abstract class AbstractFarServerContext<POS extends IFarPos, T extends IF
             return;
         }
 
-        positions.forEach(pos -> this.sendQueue.put(pos, Optional.empty()));
+        positions.forEach(this::queueUnload);
+    }
+
+    protected void queueUnload(@NonNull POS pos) {
+        //drop any tile data which is still waiting to be sent
+        this.releaseQueued(this.sendQueue.remove(pos));
+        this.deltaQueue.remove(pos);
+
+        //the tile is no longer visible, so the client's cached copy won't be needed again unless the player comes back (in which case it'll simply be re-sent)
+        this.cachedTimestamps.remove(pos);
+        this.resendQueue.remove(pos);
+
+        //if the client never received any data for this tile, there's nothing for it to unload
+        if (this.sentTimestamps.remove(pos) != null) {
+            this.unloadQueue.add(pos);
+        }
+    }
+
+    protected void releaseQueued(RefCountedTileSnapshot<POS, T> replaced) {
+        if (replaced != null) { //release the snapshot which was previously queued for this position, if any
+            this.pendingBytes -= this.encodedSize(replaced);
+            replaced.release();
+        }
     }
 }
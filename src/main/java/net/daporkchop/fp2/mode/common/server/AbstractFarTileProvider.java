@@ -36,14 +36,17 @@ import net.daporkchop.fp2.mode.api.server.gen.IFarScaler;
 import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
 import net.daporkchop.fp2.mode.api.server.tracking.IFarTrackerManager;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.common.server.storage.mapped.MappedStorage;
+import net.daporkchop.fp2.mode.common.server.storage.memory.MemoryStorage;
 import net.daporkchop.fp2.mode.common.server.storage.rocksdb.RocksStorage;
 import net.daporkchop.fp2.server.worldlistener.IWorldChangeListener;
 import net.daporkchop.fp2.server.worldlistener.WorldChangeListenerManager;
 import net.daporkchop.fp2.util.Constants;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
 import net.daporkchop.fp2.util.threading.asyncblockaccess.IAsyncBlockAccess;
-import net.daporkchop.fp2.util.threading.scheduler.ApproximatelyPrioritizedSharedFutureScheduler;
 import net.daporkchop.fp2.util.threading.scheduler.Scheduler;
+import net.daporkchop.fp2.util.threading.scheduler.WorkStealingSharedFutureScheduler;
+import net.daporkchop.fp2.util.threading.workergroup.SharedWorkerPool;
 import net.daporkchop.lib.common.misc.string.PStrings;
 import net.daporkchop.lib.common.misc.threadfactory.PThreadFactories;
 import net.minecraft.world.WorldServer;
@@ -66,6 +69,13 @@ import static net.daporkchop.lib.common.util.PorkUtil.*;
  */
 @Getter
 public abstract class AbstractFarTileProvider<POS extends IFarPos, T extends IFarTile> implements IFarTileProvider<POS, T>, IWorldChangeListener {
+    /**
+     * The worker pool shared by the tile schedulers of every render mode in every dimension.
+     */
+    public static final SharedWorkerPool TERRAIN_WORKER_POOL = ThreadingHelper.sharedWorkerPool(
+            () -> FP2Config.global().performance().terrainThreads(),
+            PThreadFactories.builder().daemon().minPriority().collapsingId().name("FP2 Terrain Worker #%d").build());
+
     protected final WorldServer world;
     protected final IFarRenderMode<POS, T> mode;
     protected final File root;
@@ -78,7 +88,7 @@ public abstract class AbstractFarTileProvider<POS extends IFarPos, T extends IFa
 
     protected final IFarTrackerManager<POS, T> trackerManager;
 
-    protected final Scheduler<PriorityTask<POS>, ITileHandle<POS, T>> scheduler; //TODO: make this global rather than per-mode and per-dimension
+    protected final Scheduler<PriorityTask<POS>, ITileHandle<POS, T>> scheduler;
 
     protected final boolean lowResolution;
 
@@ -103,9 +113,9 @@ public abstract class AbstractFarTileProvider<POS extends IFarPos, T extends IFa
         this.scaler = this.createScaler();
 
         this.root = new File(world.getChunkSaveLocation(), "fp2/" + this.mode().name().toLowerCase());
-        this.storage = new RocksStorage<>(this, this.root);
+        this.storage = this.createStorage();
 
-        this.scheduler = new ApproximatelyPrioritizedSharedFutureScheduler<>(
+        this.scheduler = new WorkStealingSharedFutureScheduler<>(
                 scheduler -> task -> {
                     switch (task.stage()) {
                         case LOAD:
@@ -116,11 +126,9 @@ public abstract class AbstractFarTileProvider<POS extends IFarPos, T extends IFa
                             throw new IllegalArgumentException("unknown or stage in task: " + task);
                     }
                 },
-                ThreadingHelper.workerGroupBuilder()
-                        .world(this.world)
-                        .threads(FP2Config.global().performance().terrainThreads())
-                        .threadFactory(PThreadFactories.builder().daemon().minPriority().collapsingId()
-                                .name(PStrings.fastFormat("FP2 %s DIM%d Worker #%%d", mode.name(), world.provider.getDimension())).build()),
+                TERRAIN_WORKER_POOL.workerGroupBuilder()
+                        .name(PStrings.fastFormat("%s DIM%d", mode.name(), world.provider.getDimension()))
+                        .world(this.world),
                 PriorityTask.approxComparator());
 
         this.trackerManager = this.createTracker();
@@ -130,6 +138,25 @@ public abstract class AbstractFarTileProvider<POS extends IFarPos, T extends IFa
 
     protected abstract IFarScaler<POS, T> createScaler();
 
+    protected IFarStorage<POS, T> createStorage() {
+        FP2Config.Performance.StorageBackend backend = FP2Config.global().performance().storageBackend();
+        switch (backend) {
+            case ROCKSDB:
+                return new RocksStorage<>(this, this.root);
+            case MAPPED: //use a separate directory, as RocksStorage would delete the region files if the backend were switched back
+                return new MappedStorage<>(this.mode::readPos, new File(this.root.getParentFile(), this.root.getName() + "_mapped"), this.maxEncodedTileSize());
+            case MEMORY:
+                return new MemoryStorage<>();
+            default:
+                throw new IllegalArgumentException("unknown storage backend: " + backend);
+        }
+    }
+
+    /**
+     * @return the maximum size of a tile encoded using {@link IFarTile#write(io.netty.buffer.ByteBuf)}, in bytes
+     */
+    protected abstract int maxEncodedTileSize();
+
     protected abstract IFarTrackerManager<POS, T> createTracker();
 
     protected abstract boolean anyVanillaTerrainExistsAt(@NonNull POS pos);
@@ -20,6 +20,8 @@
 
 package net.daporkchop.fp2.mode.common.server;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
@@ -27,14 +29,17 @@ import net.daporkchop.fp2.compat.vanilla.IBlockHeightAccess;
 import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.server.gen.IFarGeneratorRough;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
 import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
 import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.threading.futurecache.GenerationNotAllowedException;
 import net.daporkchop.fp2.util.threading.scheduler.Scheduler;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3i;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -64,6 +69,13 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
 
     protected abstract long minimumTimestamp();
 
+    /**
+     * Gets the minimum timestamp which a task of the same type as this one would require the given tile to have.
+     *
+     * @param handle the tile's {@link ITileHandle}
+     */
+    protected abstract long minimumTimestampFor(@NonNull ITileHandle<POS, T> handle);
+
     protected abstract boolean allowNewGeneration();
 
     protected abstract PriorityTask<POS> taskFor(@NonNull POS pos);
@@ -78,7 +90,7 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
             return this.handle;
         }
 
-        if (!(FP2_DEBUG && !FP2Config.global().debug().exactGeneration()) && this.world.anyVanillaTerrainExistsAt(this.pos)) {
+        if (this.canUseVanillaTerrainAt(this.pos)) {
             //there's some terrain at the given position, let's try to generate something with it
             if (this.pos.level() == 0) {
                 //the position is at detail level 0, do exact generation
@@ -122,17 +134,57 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
         }
     }
 
+    protected boolean canUseVanillaTerrainAt(@NonNull POS pos) {
+        return !(FP2_DEBUG && !FP2Config.global().debug().exactGeneration()) && this.world.anyVanillaTerrainExistsAt(pos);
+    }
+
     protected void generateRough(long minimumTimestamp) {
         checkArg(this.pos.level() == 0 || this.world.canGenerateRough(this.pos), "cannot do rough generation at %s!", this.pos);
 
+        //find other tiles in the same batch generation group which are also waiting for rough generation, so that we can generate them all at once. their own
+        //  tasks will notice that they've already been generated and return immediately once they're executed.
+        IFarGeneratorRough<POS, T> generatorRough = this.world.generatorRough();
+        List<POS> positions = new ArrayList<>();
+        List<ITileHandle<POS, T>> handles = new ArrayList<>();
+        LongList timestamps = new LongArrayList();
+        positions.add(this.pos);
+        handles.add(this.handle);
+        timestamps.add(minimumTimestamp);
+        generatorRough.batchGenerationGroup(this.pos).forEach(pos -> {
+            if (!this.pos.equals(pos) && this.scheduler.isQueued(this.taskFor(pos)) && this.world.canGenerateRough(pos) && !this.canUseVanillaTerrainAt(pos)) {
+                ITileHandle<POS, T> handle = this.world.storage().handleFor(pos);
+                long timestamp = this.minimumTimestampFor(handle);
+                if (handle.timestamp() < timestamp) {
+                    positions.add(pos);
+                    handles.add(handle);
+                    timestamps.add(timestamp);
+                }
+            }
+        });
+
         SimpleRecycler<T> tileRecycler = this.world.mode().tileRecycler();
-        T tile = tileRecycler.allocate();
+        T[] tiles = this.world.mode().tileArray(positions.size());
         try {
-            this.world.generatorRough().generate(this.pos, tile);
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = tileRecycler.allocate();
+            }
 
-            this.handle.set(ITileMetadata.ofTimestamp(minimumTimestamp), tile);
+            if (tiles.length == 1) {
+                generatorRough.generate(this.pos, tiles[0]);
+            } else {
+                generatorRough.generate(positions.toArray(this.world.mode().posArray(positions.size())), tiles);
+            }
+
+            for (int i = 0; i < tiles.length; i++) {
+                //each tile gets the timestamp its own task would have given it, not the one for this task's tile
+                handles.get(i).set(ITileMetadata.ofTimestamp(timestamps.getLong(i)), tiles[i]);
+            }
         } finally {
-            tileRecycler.release(tile);
+            for (T tile : tiles) {
+                if (tile != null) {
+                    tileRecycler.release(tile);
+                }
+            }
         }
     }
 
@@ -169,7 +221,12 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
         SimpleRecycler<T> tileRecycler = this.world.mode().tileRecycler();
         T[] srcs = this.world.mode().tileArray(srcHandles.size());
         for (int i = 0; i < srcHandles.size(); i++) {
-            srcs[i] = srcHandles.get(i).snapshot().loadTile(tileRecycler);
+            RefCountedTileSnapshot<POS, T> snapshot = srcHandles.get(i).snapshot();
+            try {
+                srcs[i] = snapshot.loadTile(tileRecycler);
+            } finally {
+                snapshot.release();
+            }
         }
 
         if (this.handle.timestamp() >= minimumTimestamp) { //break out early if tile is already done
@@ -205,6 +262,11 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
             return ITileMetadata.TIMESTAMP_GENERATED;
         }
 
+        @Override
+        protected long minimumTimestampFor(@NonNull ITileHandle<POS, T> handle) {
+            return ITileMetadata.TIMESTAMP_GENERATED;
+        }
+
         @Override
         protected boolean allowNewGeneration() {
             return true;
@@ -226,8 +288,13 @@ public abstract class AbstractTileTask<POS extends IFarPos, T extends IFarTile>
         public Update(@NonNull AbstractFarTileProvider<POS, T> world, @NonNull Scheduler<PriorityTask<POS>, ITileHandle<POS, T>> scheduler, @NonNull POS pos) {
             super(world, scheduler, pos);
 
-            long minimumTimestamp = this.handle.dirtyTimestamp();
-            this.minimumTimestamp = minimumTimestamp == ITileMetadata.TIMESTAMP_BLANK ? ITileMetadata.TIMESTAMP_GENERATED : minimumTimestamp;
+            this.minimumTimestamp = this.minimumTimestampFor(this.handle);
+        }
+
+        @Override
+        protected long minimumTimestampFor(@NonNull ITileHandle<POS, T> handle) {
+            long minimumTimestamp = handle.dirtyTimestamp();
+            return minimumTimestamp == ITileMetadata.TIMESTAMP_BLANK ? ITileMetadata.TIMESTAMP_GENERATED : minimumTimestamp;
         }
 
         @Override
@@ -0,0 +1,89 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Helpers for persisting {@link IFarStorage#storageId() storage IDs}.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class StorageIds {
+    /**
+     * The name of the file which a storage's ID is kept in, relative to the storage's root directory.
+     */
+    public static final String FILE_NAME = "storage.id";
+
+    /**
+     * Loads a storage ID from the given file.
+     *
+     * @param file the file
+     * @return the storage ID, or {@code null} if the file doesn't exist or doesn't contain a valid ID
+     */
+    public UUID load(@NonNull File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return UUID.fromString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim());
+        } catch (IllegalArgumentException e) { //the file is corrupt
+            return null;
+        }
+    }
+
+    /**
+     * Atomically saves the given storage ID to the given file.
+     *
+     * @param file the file
+     * @param id   the storage ID
+     */
+    public void save(@NonNull File file, @NonNull UUID id) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Files.write(tmpFile.toPath(), id.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the storage ID from the given file, or generates a new random one and saves it to the file if the file doesn't contain one yet.
+     *
+     * @param file the file
+     * @return the storage ID
+     */
+    public UUID loadOrCreate(@NonNull File file) throws IOException {
+        UUID id = load(file);
+        if (id == null) { //this is a new storage (or its ID was lost), so it must not be confused with any other storage
+            save(file, id = UUID.randomUUID());
+        }
+        return id;
+    }
+}
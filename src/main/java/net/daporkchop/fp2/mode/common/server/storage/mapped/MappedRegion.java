@@ -0,0 +1,257 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.mapped;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import lombok.Getter;
+import lombok.NonNull;
+import net.daporkchop.lib.unsafe.PUnsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static net.daporkchop.fp2.mode.api.tile.ITileMetadata.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A single memory-mapped region file, containing a fixed-size slot for each of the {@link #SLOT_COUNT} tiles in the region.
+ * <p>
+ * A tile's slot index is given by the lowest {@link #SLOT_BITS} bits of the Morton code in its encoded position, which means that each region contains a
+ * contiguous range of Morton codes. For 2D positions, this is a square of 32x32 tiles, and the inputs for any tile at the next level up are always contained
+ * in the same region.
+ * <p>
+ * Each slot consists of a header, followed by space for the largest possible encoded tile:
+ * <ul>
+ *     <li>{@code long timestamp}</li>
+ *     <li>{@code long dirtyTimestamp}</li>
+ *     <li>{@code int dataLength}, or {@code -1} if the tile is empty</li>
+ *     <li>{@code int padding}</li>
+ *     <li>{@code byte data[maxTileSize]}</li>
+ * </ul>
+ * Timestamps are stored XOR-ed with {@link #TIMESTAMP_BLANK}, so that the all-zero contents of a newly created file represent blank slots.
+ * <p>
+ * All methods are synchronized, so each individual slot operation is atomic.
+ * <p>
+ * The mapping must be released explicitly using {@link #close()}: otherwise it would remain valid (and the file would remain locked on some platforms) until the buffer
+ * is garbage-collected.
+ *
+ * @author DaPorkchop_
+ */
+public class MappedRegion implements AutoCloseable {
+    public static final int SLOT_BITS = 10;
+    public static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+    protected static final int HEADER_SIZE = 24;
+    protected static final int OFFSET_TIMESTAMP = 0;
+    protected static final int OFFSET_DIRTY_TIMESTAMP = 8;
+    protected static final int OFFSET_DATA_LENGTH = 16;
+
+    protected static final int DATA_LENGTH_EMPTY = -1;
+
+    @Getter
+    protected final byte[] key;
+    protected final MappedByteBuffer buffer;
+
+    protected final int maxTileSize;
+    protected final int slotSize;
+
+    protected boolean closed;
+
+    public MappedRegion(@NonNull byte[] key, @NonNull File file, int maxTileSize) throws IOException {
+        this.key = key;
+        this.maxTileSize = positive(maxTileSize, "maxTileSize");
+        this.slotSize = (HEADER_SIZE + maxTileSize + 7) & ~7; //keep headers 8-byte aligned
+
+        long size = (long) this.slotSize * SLOT_COUNT;
+        checkArg(size <= Integer.MAX_VALUE, "region size (%d) may not exceed 2GiB! (maxTileSize=%d)", size, maxTileSize);
+
+        //the mapping remains valid after the channel is closed, so we don't need to keep a file descriptor open for every region. if the file is smaller than
+        //  the requested size, it will be extended (on most platforms this creates a sparse file, so space for unused slots isn't actually allocated).
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        }
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    protected void ensureOpen() {
+        //accessing the buffer after it's been unmapped would crash the jvm, so we need to check this every time
+        checkState(!this.closed, "region has been closed!");
+    }
+
+    protected int slotOffset(int slot) {
+        this.ensureOpen();
+        return checkIndex(SLOT_COUNT, slot) * this.slotSize;
+    }
+
+    protected long getTimestamp(int offset) {
+        return this.buffer.getLong(offset) ^ TIMESTAMP_BLANK;
+    }
+
+    protected void putTimestamp(int offset, long timestamp) {
+        this.buffer.putLong(offset, timestamp ^ TIMESTAMP_BLANK);
+    }
+
+    public synchronized long timestamp(int slot) {
+        return this.getTimestamp(this.slotOffset(slot) + OFFSET_TIMESTAMP);
+    }
+
+    public synchronized long dirtyTimestamp(int slot) {
+        return this.getTimestamp(this.slotOffset(slot) + OFFSET_DIRTY_TIMESTAMP);
+    }
+
+    /**
+     * Copies the data stored in the given slot into a new buffer.
+     *
+     * @param slot         the slot index
+     * @param timestampOut a single-element array which the tile's timestamp will be stored in
+     * @return a buffer containing the tile's data, or {@code null} if the tile is empty
+     */
+    public synchronized ByteBuf read(int slot, @NonNull long[] timestampOut) {
+        int offset = this.slotOffset(slot);
+        timestampOut[0] = this.getTimestamp(offset + OFFSET_TIMESTAMP);
+
+        int length = this.buffer.getInt(offset + OFFSET_DATA_LENGTH);
+        if (length == DATA_LENGTH_EMPTY || timestampOut[0] == TIMESTAMP_BLANK) {
+            return null;
+        }
+
+        //the tile data must be copied out of the mapping, since the slot may be overwritten while the caller is still using it
+        ByteBuf data = ByteBufAllocator.DEFAULT.directBuffer(length, length);
+        this.buffer.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + length);
+        try {
+            data.writeBytes(this.buffer);
+        } finally {
+            this.buffer.clear();
+        }
+        return data;
+    }
+
+    /**
+     * Sets the contents of the given slot.
+     *
+     * @param slot      the slot index
+     * @param timestamp the tile's new timestamp
+     * @param data      the tile's new data, or {@code null} if the tile is empty
+     * @return whether or not the operation was able to be applied
+     * @see net.daporkchop.fp2.mode.api.tile.ITileHandle#set
+     */
+    public synchronized boolean write(int slot, long timestamp, ByteBuf data) {
+        int offset = this.slotOffset(slot);
+        if (data != null) {
+            checkArg(data.readableBytes() <= this.maxTileSize, "encoded tile size (%d) exceeds maximum (%d)", data.readableBytes(), this.maxTileSize);
+        }
+
+        if (timestamp <= this.getTimestamp(offset + OFFSET_TIMESTAMP)) { //the new timestamp isn't newer than the existing one, so we can't replace it
+            return false;
+        }
+
+        if (data != null) {
+            int length = data.readableBytes();
+            this.buffer.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + length);
+            try {
+                data.getBytes(data.readerIndex(), this.buffer);
+            } finally {
+                this.buffer.clear();
+            }
+            this.buffer.putInt(offset + OFFSET_DATA_LENGTH, length);
+        } else {
+            this.buffer.putInt(offset + OFFSET_DATA_LENGTH, DATA_LENGTH_EMPTY);
+        }
+
+        this.putTimestamp(offset + OFFSET_TIMESTAMP, timestamp);
+        if (timestamp >= this.getTimestamp(offset + OFFSET_DIRTY_TIMESTAMP)) { //the new timestamp is newer than the dirty timestamp, so the tile is no longer dirty
+            this.putTimestamp(offset + OFFSET_DIRTY_TIMESTAMP, TIMESTAMP_BLANK);
+        }
+        return true;
+    }
+
+    /**
+     * @see net.daporkchop.fp2.mode.api.tile.ITileHandle#markDirty(long)
+     */
+    public synchronized boolean markDirty(int slot, long dirtyTimestamp) {
+        int offset = this.slotOffset(slot);
+        long timestamp = this.getTimestamp(offset + OFFSET_TIMESTAMP);
+
+        if (timestamp == TIMESTAMP_BLANK //the tile doesn't exist, so we can't mark it as dirty
+            || dirtyTimestamp <= timestamp || dirtyTimestamp <= this.getTimestamp(offset + OFFSET_DIRTY_TIMESTAMP)) { //the new dirty timestamp isn't newer than the existing one, so we can't replace it
+            return false;
+        }
+
+        this.putTimestamp(offset + OFFSET_DIRTY_TIMESTAMP, dirtyTimestamp);
+        return true;
+    }
+
+    /**
+     * @see net.daporkchop.fp2.mode.api.tile.ITileHandle#clearDirty()
+     */
+    public synchronized boolean clearDirty(int slot) {
+        int offset = this.slotOffset(slot);
+        if (this.getTimestamp(offset + OFFSET_DIRTY_TIMESTAMP) == TIMESTAMP_BLANK) { //the tile isn't dirty
+            return false;
+        }
+
+        this.putTimestamp(offset + OFFSET_DIRTY_TIMESTAMP, TIMESTAMP_BLANK);
+        return true;
+    }
+
+    /**
+     * @return the indices of all the slots which are currently dirty
+     */
+    public synchronized IntList dirtySlots() {
+        this.ensureOpen();
+        IntList out = new IntArrayList();
+        for (int slot = 0, offset = 0; slot < SLOT_COUNT; slot++, offset += this.slotSize) {
+            if (this.getTimestamp(offset + OFFSET_DIRTY_TIMESTAMP) != TIMESTAMP_BLANK) {
+                out.add(slot);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Forces any changes made to this region to be written to disk.
+     */
+    public synchronized void flush() {
+        this.ensureOpen();
+        this.buffer.force();
+    }
+
+    /**
+     * Flushes any changes made to this region and releases the mapping.
+     * <p>
+     * Once closed, the region may no longer be used.
+     */
+    @Override
+    public synchronized void close() {
+        if (!this.closed) {
+            this.buffer.force();
+            this.closed = true;
+            PUnsafe.pork_releaseBuffer(this.buffer);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.mapped;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.common.server.storage.StorageIds;
+import net.daporkchop.lib.common.misc.file.PFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static net.daporkchop.fp2.mode.common.server.storage.mapped.MappedRegion.*;
+
+/**
+ * Implementation of {@link IFarStorage} which stores tiles in fixed-size slots in memory-mapped region files.
+ * <p>
+ * Tile data is stored uncompressed, and reading a tile is simply a copy out of the page cache. This trades a large amount of disk space for very cheap reads
+ * and writes.
+ *
+ * @author DaPorkchop_
+ * @see MappedRegion
+ */
+public class MappedStorage<POS extends IFarPos, T extends IFarTile> implements IFarStorage<POS, T> {
+    protected static final String REGION_FILE_EXTENSION = ".region";
+
+    protected final Function<ByteBuf, POS> posReader;
+    protected final File root;
+    protected final int maxTileSize;
+    protected final UUID storageId;
+
+    protected final Map<String, MappedRegion> regions = new ConcurrentHashMap<>();
+
+    protected final Set<Listener<POS, T>> listeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * @param posReader   a function for decoding positions which were written using {@link IFarPos#writePos(ByteBuf)}
+     * @param root        the directory to store region files in
+     * @param maxTileSize the maximum size of an encoded tile, in bytes
+     */
+    @SneakyThrows(IOException.class)
+    public MappedStorage(@NonNull Function<ByteBuf, POS> posReader, @NonNull File root, int maxTileSize) {
+        PFiles.ensureDirectoryExists(root);
+
+        this.posReader = posReader;
+        this.root = root;
+        this.maxTileSize = maxTileSize;
+        this.storageId = StorageIds.loadOrCreate(new File(root, StorageIds.FILE_NAME));
+    }
+
+    /**
+     * Gets the slot index of the tile with the given encoded position in its region.
+     *
+     * @param keyBytes the tile's encoded position
+     * @return the tile's slot index
+     */
+    protected static int slot(@NonNull byte[] keyBytes) {
+        int len = keyBytes.length;
+        return (((keyBytes[len - 2] & 0xFF) << 8) | (keyBytes[len - 1] & 0xFF)) & (SLOT_COUNT - 1);
+    }
+
+    protected static String regionName(@NonNull byte[] regionKey) {
+        StringBuilder builder = new StringBuilder(regionKey.length << 1);
+        for (byte b : regionKey) {
+            builder.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    protected static byte[] regionKey(@NonNull String regionName) {
+        byte[] regionKey = new byte[regionName.length() >> 1];
+        for (int i = 0; i < regionKey.length; i++) {
+            regionKey[i] = (byte) Integer.parseInt(regionName.substring(i << 1, (i << 1) + 2), 16);
+        }
+        return regionKey;
+    }
+
+    /**
+     * Gets the region containing the tile with the given encoded position, opening it if necessary.
+     *
+     * @param keyBytes the tile's encoded position
+     * @return the region
+     */
+    protected MappedRegion region(@NonNull byte[] keyBytes) {
+        //the region key is the tile's key with the slot bits cleared
+        byte[] regionKey = keyBytes.clone();
+        int len = regionKey.length;
+        regionKey[len - 1] &= (byte) ~(SLOT_COUNT - 1);
+        regionKey[len - 2] &= (byte) ~((SLOT_COUNT - 1) >>> 8);
+
+        return this.region(regionKey, regionName(regionKey));
+    }
+
+    protected MappedRegion region(@NonNull byte[] regionKey, @NonNull String regionName) {
+        MappedRegion region = this.regions.get(regionName);
+        return region != null ? region : this.regions.computeIfAbsent(regionName, name -> this.openRegion(regionKey, name));
+    }
+
+    @SneakyThrows(IOException.class)
+    protected MappedRegion openRegion(@NonNull byte[] regionKey, @NonNull String regionName) {
+        return new MappedRegion(regionKey, new File(this.root, regionName + REGION_FILE_EXTENSION), this.maxTileSize);
+    }
+
+    @Override
+    public UUID storageId() {
+        return this.storageId;
+    }
+
+    @Override
+    public ITileHandle<POS, T> handleFor(@NonNull POS pos) {
+        return new MappedTileHandle<>(pos, this);
+    }
+
+    @Override
+    public void forEachDirtyPos(@NonNull Consumer<POS> callback) {
+        File[] files = this.root.listFiles((dir, name) -> name.endsWith(REGION_FILE_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String regionName = file.getName().substring(0, file.getName().length() - REGION_FILE_EXTENSION.length());
+            MappedRegion region = this.region(regionKey(regionName), regionName);
+
+            //find dirty slots first so that we don't hold the region's lock while running the callback
+            for (IntIterator itr = region.dirtySlots().iterator(); itr.hasNext(); ) {
+                int slot = itr.nextInt();
+
+                byte[] keyBytes = region.key().clone();
+                int len = keyBytes.length;
+                keyBytes[len - 1] |= (byte) slot;
+                keyBytes[len - 2] |= (byte) (slot >>> 8);
+                callback.accept(this.posReader.apply(Unpooled.wrappedBuffer(keyBytes)));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        //unmap all regions explicitly rather than waiting for them to be garbage-collected, so that the files are released as soon as the storage is closed
+        this.regions.values().forEach(MappedRegion::close);
+        this.regions.clear();
+    }
+
+    @Override
+    public void addListener(@NonNull Listener<POS, T> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(@NonNull Listener<POS, T> listener) {
+        this.listeners.remove(listener);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.mapped;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.Getter;
+import lombok.NonNull;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+
+import java.util.stream.Stream;
+
+/**
+ * @author DaPorkchop_
+ */
+public class MappedTileHandle<POS extends IFarPos, T extends IFarTile> implements ITileHandle<POS, T> {
+    @Getter
+    protected final POS pos;
+    protected final MappedStorage<POS, T> storage;
+
+    protected final MappedRegion region;
+    protected final int slot;
+
+    public MappedTileHandle(@NonNull POS pos, @NonNull MappedStorage<POS, T> storage) {
+        this.pos = pos;
+        this.storage = storage;
+
+        byte[] keyBytes = pos.toBytes();
+        this.region = storage.region(keyBytes);
+        this.slot = MappedStorage.slot(keyBytes);
+    }
+
+    @Override
+    public long timestamp() {
+        return this.region.timestamp(this.slot);
+    }
+
+    @Override
+    public RefCountedTileSnapshot<POS, T> snapshot() {
+        long[] timestamp = new long[1];
+        ByteBuf data = this.region.read(this.slot, timestamp);
+        if (timestamp[0] == TIMESTAMP_BLANK) { //the tile doesn't exist
+            return null;
+        }
+        return new RefCountedTileSnapshot<>(this.pos, timestamp[0], data);
+    }
+
+    @Override
+    public boolean set(@NonNull ITileMetadata metadata, @NonNull T tile) {
+        boolean applied;
+
+        //encode tile outside of the region lock
+        ByteBuf buf = ByteBufAllocator.DEFAULT.directBuffer();
+        try {
+            applied = this.region.write(this.slot, metadata.timestamp(), tile.write(buf) ? null : buf);
+        } finally {
+            buf.release();
+        }
+
+        if (applied) {
+            this.storage.listeners.forEach(listener -> listener.tilesChanged(Stream.of(this.pos)));
+        }
+        return applied;
+    }
+
+    @Override
+    public long dirtyTimestamp() {
+        return this.region.dirtyTimestamp(this.slot);
+    }
+
+    @Override
+    public boolean markDirty(long dirtyTimestamp) {
+        if (this.region.markDirty(this.slot, dirtyTimestamp)) {
+            this.storage.listeners.forEach(listener -> listener.tilesDirty(Stream.of(this.pos)));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean clearDirty() {
+        return this.region.clearDirty(this.slot);
+    }
+
+    @Override
+    public boolean anyVanillaExists() {
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.memory;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+import static net.daporkchop.fp2.mode.api.tile.ITileMetadata.*;
+
+/**
+ * Implementation of {@link IFarStorage} which keeps all tiles in memory.
+ * <p>
+ * Nothing is ever persisted, so all tiles are lost once the storage is closed. Intended for use in unit tests and ephemeral worlds.
+ *
+ * @author DaPorkchop_
+ */
+public class MemoryStorage<POS extends IFarPos, T extends IFarTile> implements IFarStorage<POS, T> {
+    //entries are immutable and are only ever replaced atomically using Map#compute, which makes each individual tile operation atomic without any additional locking
+    protected final Map<POS, Entry> entries = new ConcurrentHashMap<>();
+
+    protected final Set<Listener<POS, T>> listeners = new CopyOnWriteArraySet<>();
+
+    //nothing outlives this instance, so every instance is a new storage
+    protected final UUID storageId = UUID.randomUUID();
+
+    @Override
+    public UUID storageId() {
+        return this.storageId;
+    }
+
+    @Override
+    public ITileHandle<POS, T> handleFor(@NonNull POS pos) {
+        return new MemoryTileHandle<>(pos, this);
+    }
+
+    @Override
+    public void forEachDirtyPos(@NonNull Consumer<POS> callback) {
+        this.entries.forEach((pos, entry) -> {
+            if (entry.dirtyTimestamp != TIMESTAMP_BLANK) {
+                callback.accept(pos);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        this.entries.clear();
+    }
+
+    @Override
+    public void addListener(@NonNull Listener<POS, T> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(@NonNull Listener<POS, T> listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * The state of a single tile.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static final class Entry {
+        protected final long timestamp;
+        protected final long dirtyTimestamp;
+        protected final byte[] data; //null if the tile is empty
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.memory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+
+import java.util.stream.Stream;
+
+/**
+ * @author DaPorkchop_
+ */
+@RequiredArgsConstructor
+public class MemoryTileHandle<POS extends IFarPos, T extends IFarTile> implements ITileHandle<POS, T> {
+    @Getter
+    @NonNull
+    protected final POS pos;
+    @NonNull
+    protected final MemoryStorage<POS, T> storage;
+
+    @Override
+    public long timestamp() {
+        MemoryStorage.Entry entry = this.storage.entries.get(this.pos);
+        return entry != null ? entry.timestamp : TIMESTAMP_BLANK;
+    }
+
+    @Override
+    public RefCountedTileSnapshot<POS, T> snapshot() {
+        MemoryStorage.Entry entry = this.storage.entries.get(this.pos);
+        if (entry == null) { //the tile doesn't exist
+            return null;
+        }
+
+        //entries are never modified, so the data can be shared with the snapshot without copying it
+        return new RefCountedTileSnapshot<>(this.pos, entry.timestamp, entry.data != null ? Unpooled.wrappedBuffer(entry.data) : null);
+    }
+
+    @Override
+    public boolean set(@NonNull ITileMetadata metadata, @NonNull T tile) {
+        long newTimestamp = metadata.timestamp();
+
+        //encode tile outside of the map lock
+        byte[] data;
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            if (tile.write(buf)) { //the tile was empty
+                data = null;
+            } else { //the tile was non-empty, copy its contents into a byte[] of the exact size
+                data = new byte[buf.readableBytes()];
+                buf.readBytes(data);
+            }
+        } finally {
+            buf.release();
+        }
+
+        boolean[] applied = new boolean[1];
+        this.storage.entries.compute(this.pos, (pos, existing) -> {
+            if (existing != null && newTimestamp <= existing.timestamp) { //the new timestamp isn't newer than the existing one, so we can't replace it
+                return existing;
+            }
+
+            applied[0] = true;
+
+            //clear the dirty timestamp if the new timestamp is newer than it
+            long dirtyTimestamp = existing != null && existing.dirtyTimestamp > newTimestamp ? existing.dirtyTimestamp : TIMESTAMP_BLANK;
+            return new MemoryStorage.Entry(newTimestamp, dirtyTimestamp, data);
+        });
+
+        if (applied[0]) {
+            this.storage.listeners.forEach(listener -> listener.tilesChanged(Stream.of(this.pos)));
+        }
+        return applied[0];
+    }
+
+    @Override
+    public long dirtyTimestamp() {
+        MemoryStorage.Entry entry = this.storage.entries.get(this.pos);
+        return entry != null ? entry.dirtyTimestamp : TIMESTAMP_BLANK;
+    }
+
+    @Override
+    public boolean markDirty(long dirtyTimestamp) {
+        boolean[] applied = new boolean[1];
+        this.storage.entries.computeIfPresent(this.pos, (pos, existing) -> {
+            if (dirtyTimestamp <= existing.timestamp || dirtyTimestamp <= existing.dirtyTimestamp) { //the new dirty timestamp isn't newer than the existing one, so we can't replace it
+                return existing;
+            }
+
+            applied[0] = true;
+            return new MemoryStorage.Entry(existing.timestamp, dirtyTimestamp, existing.data);
+        });
+
+        if (applied[0]) {
+            this.storage.listeners.forEach(listener -> listener.tilesDirty(Stream.of(this.pos)));
+        }
+        return applied[0];
+    }
+
+    @Override
+    public boolean clearDirty() {
+        boolean[] applied = new boolean[1];
+        this.storage.entries.computeIfPresent(this.pos, (pos, existing) -> {
+            if (existing.dirtyTimestamp == TIMESTAMP_BLANK) { //the tile isn't dirty
+                return existing;
+            }
+
+            applied[0] = true;
+            return new MemoryStorage.Entry(existing.timestamp, TIMESTAMP_BLANK, existing.data);
+        });
+        return applied[0];
+    }
+
+    @Override
+    public boolean anyVanillaExists() {
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.rocksdb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
+import org.rocksdb.RocksIterator;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Helpers for working with the tile position keys used by {@link RocksStorage}.
+ * <p>
+ * Keys consist of the tile's level, followed by the Morton code of the tile's coordinates with each coordinate's sign bit flipped (see {@link IFarPos#toBytes()}).
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class RocksKeys {
+    /**
+     * Converts a key from the v4 storage format to the current one.
+     * <p>
+     * v4 encoded tile coordinates without flipping their sign bits, so the only difference is that the most significant bit of every coordinate is inverted.
+     *
+     * @param key the v4 key
+     * @return the converted key
+     */
+    public byte[] migrateV4Key(@NonNull byte[] key) {
+        //keys consist of the level followed by the morton code of some number of 32-bit coordinates, so the number of dimensions can be inferred from the
+        //  key's length. the coordinates' sign bits are the most significant bits of the morton code, and therefore the top bits of the first byte after the level.
+        int dims = ((key.length - 1) << 3) >> 5;
+        checkArg(dims > 0 && dims < 8 && ((key.length - 1) << 3) == dims << 5, "invalid v4 key length: %d", key.length);
+
+        byte[] migrated = key.clone();
+        migrated[1] ^= (byte) (0xFF << (8 - dims));
+        return migrated;
+    }
+
+    /**
+     * Iterates over every entry whose key is a position at the given level inside the given bounding box.
+     * <p>
+     * All of the positions inside the bounding box are confined to a single range of keys. This walks through that range, and whenever it encounters a
+     * position outside of the bounding box it seeks straight to the next key which could possibly be inside of it (see {@link IFarPos#nextContainedBy}).
+     *
+     * @param itr         an iterator over a column family keyed by tile positions
+     * @param readPos     a function for decoding a tile position from a key
+     * @param level       the level
+     * @param coordLimits the bounding box
+     * @param callback    the callback function to run for each position and its value
+     */
+    public <POS extends IFarPos> void forEachInBB(@NonNull RocksIterator itr, @NonNull Function<ByteBuf, POS> readPos, int level, @NonNull IntAxisAlignedBB coordLimits,
+                                                  @NonNull BiConsumer<POS, byte[]> callback) {
+        itr.seek(new byte[]{ toByte(level) });
+        while (itr.isValid()) {
+            byte[] key = itr.key();
+            if ((key[0] & 0xFF) != level) { //we've reached the end of the level
+                break;
+            }
+
+            POS pos = readPos.apply(Unpooled.wrappedBuffer(key));
+            if (pos.containedBy(coordLimits)) {
+                callback.accept(pos, itr.value());
+                itr.next();
+            } else {
+                IFarPos next = pos.nextContainedBy(coordLimits);
+                if (next == null) { //there are no more positions inside the limits
+                    break;
+                }
+                itr.seek(next.toBytes());
+            }
+        }
+    }
+}
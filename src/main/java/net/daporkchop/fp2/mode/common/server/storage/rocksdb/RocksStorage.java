@@ -35,15 +35,25 @@ import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
 import net.daporkchop.fp2.mode.common.server.AbstractFarTileProvider;
+import net.daporkchop.fp2.mode.common.server.storage.StorageIds;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.daporkchop.fp2.util.compression.ZstdDictionaryTrainer;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.lib.common.misc.file.PFiles;
 import net.daporkchop.lib.common.system.PlatformInfo;
 import net.daporkchop.lib.unsafe.PUnsafe;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionOptions;
 import org.rocksdb.CompressionType;
 import org.rocksdb.DBOptions;
+import org.rocksdb.DataBlockIndexType;
 import org.rocksdb.FlushOptions;
+import org.rocksdb.LRUCache;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
@@ -51,16 +61,20 @@ import org.rocksdb.RocksIterator;
 import org.rocksdb.Transaction;
 import org.rocksdb.TransactionDB;
 import org.rocksdb.TransactionDBOptions;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteBufferManager;
 import org.rocksdb.WriteOptions;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -68,22 +82,76 @@ import java.util.stream.Stream;
 
 import static java.lang.Math.*;
 import static net.daporkchop.fp2.mode.api.tile.ITileMetadata.*;
+import static net.daporkchop.fp2.util.Constants.*;
 import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
  * @author DaPorkchop_
  */
 public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IFarStorage<POS, T> {
-    protected static final DBOptions DB_OPTIONS = new DBOptions()
-            .setCreateIfMissing(true)
-            .setCreateMissingColumnFamilies(true)
-            .setAllowConcurrentMemtableWrite(true)
-            .setKeepLogFileNum(1L);
-
-    protected static final TransactionDBOptions TX_DB_OPTIONS = new TransactionDBOptions();
-
-    protected static final ColumnFamilyOptions CF_OPTIONS = new ColumnFamilyOptions()
-            .setCompressionType(CompressionType.ZSTD_COMPRESSION);
+    protected static final FP2Config.Performance.StorageProfile PROFILE;
+
+    //shared between all storages in order to keep total memory usage bounded, regardless of how many dimensions and render modes are loaded
+    protected static final Cache BLOCK_CACHE;
+    protected static final WriteBufferManager WRITE_BUFFER_MANAGER;
+
+    protected static final DBOptions DB_OPTIONS;
+
+    protected static final TransactionDBOptions TX_DB_OPTIONS;
+
+    protected static final ColumnFamilyOptions CF_OPTIONS;
+    protected static final ColumnFamilyOptions CF_OPTIONS_TIMESTAMP;
+    protected static final ColumnFamilyOptions CF_OPTIONS_TILE_DATA;
+
+    static {
+        RocksDB.loadLibrary();
+
+        PROFILE = FP2Config.global().performance().storageProfile();
+
+        BLOCK_CACHE = new LRUCache(PROFILE.blockCacheSize() * (1L << 20L));
+        WRITE_BUFFER_MANAGER = new WriteBufferManager(PROFILE.writeBufferSize() * (1L << 20L), BLOCK_CACHE); //charge memtable memory to the block cache
+
+        DB_OPTIONS = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setAllowConcurrentMemtableWrite(true)
+                .setKeepLogFileNum(1L)
+                .setWriteBufferManager(WRITE_BUFFER_MANAGER);
+
+        TX_DB_OPTIONS = new TransactionDBOptions();
+
+        CF_OPTIONS = new ColumnFamilyOptions()
+                .setCompressionType(CompressionType.ZSTD_COMPRESSION)
+                .setTableFormatConfig(new BlockBasedTableConfig()
+                        .setBlockCache(BLOCK_CACHE));
+
+        //the timestamp column families only contain tiny fixed-size values which are almost exclusively accessed by point lookups. compressing 8-byte values is
+        //  pointless, and bloom filters allow lookups for tiles which don't exist to skip reading data blocks entirely.
+        CF_OPTIONS_TIMESTAMP = new ColumnFamilyOptions()
+                .setCompressionType(CompressionType.NO_COMPRESSION)
+                .setTableFormatConfig(new BlockBasedTableConfig()
+                        .setBlockCache(BLOCK_CACHE)
+                        .setCacheIndexAndFilterBlocks(true)
+                        .setPinL0FilterAndIndexBlocksInCache(true)
+                        .setFilterPolicy(new BloomFilter(10.0d, false))
+                        .setWholeKeyFiltering(true)
+                        .setDataBlockIndexType(DataBlockIndexType.kDataBlockBinaryAndHash));
+
+        //tile data is large and highly self-similar, so we use larger blocks and have zstd train a compression dictionary for each sst file
+        CompressionOptions tileDataCompressionOptions = new CompressionOptions()
+                .setMaxDictBytes(16 << 10)
+                .setZStdMaxTrainBytes(100 * (16 << 10))
+                .setEnabled(true);
+        CF_OPTIONS_TILE_DATA = new ColumnFamilyOptions()
+                .setCompressionType(CompressionType.ZSTD_COMPRESSION)
+                .setCompressionOptions(tileDataCompressionOptions)
+                .setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION)
+                .setBottommostCompressionOptions(tileDataCompressionOptions)
+                .setTableFormatConfig(new BlockBasedTableConfig()
+                        .setBlockCache(BLOCK_CACHE)
+                        .setCacheIndexAndFilterBlocks(true)
+                        .setBlockSize(PROFILE.tileDataBlockSize()));
+    }
 
     protected static final ReadOptions READ_OPTIONS = new ReadOptions();
     protected static final WriteOptions WRITE_OPTIONS = new WriteOptions();
@@ -94,17 +162,32 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
     protected static final byte[] COLUMN_NAME_TILE_DATA = "tile_data".getBytes(StandardCharsets.UTF_8);
     protected static final byte[] COLUMN_NAME_ANY_VANILLA_EXISTS = "tile_any_vanilla_terrain_exists".getBytes(StandardCharsets.UTF_8);
 
+    protected static final String MARKER_FILE_NAME = "v5";
+    protected static final String MARKER_FILE_NAME_V4 = "v4";
+
+    protected static final long MIGRATION_BATCH_SIZE = 16L << 20L;
+
+    protected static final String DICTIONARY_FILE_NAME = "tile_data.dict";
+    protected static final int DICTIONARY_SIZE = 64 << 10;
+    protected static final int DICTIONARY_MIN_SAMPLES = 256;
+    protected static final int DICTIONARY_MAX_SAMPLES = 8192;
+    protected static final int DICTIONARY_MAX_SAMPLE_BYTES = 16 << 20;
+
     //
     // rocksdb helper methods
     //
 
-    @SneakyThrows(RocksDBException.class)
     protected static ByteBuf get(@NonNull RocksDB db, @NonNull ColumnFamilyHandle handle, @NonNull ByteBuf key, int preallocateBytes) {
+        return get(db, handle, READ_OPTIONS, key, preallocateBytes);
+    }
+
+    @SneakyThrows(RocksDBException.class)
+    protected static ByteBuf get(@NonNull RocksDB db, @NonNull ColumnFamilyHandle handle, @NonNull ReadOptions readOptions, @NonNull ByteBuf key, int preallocateBytes) {
         ByteBuffer keyNioBuffer = key.nioBuffer();
 
         ByteBuf value = ByteBufAllocator.DEFAULT.directBuffer(preallocateBytes);
 
-        int len = db.get(handle, READ_OPTIONS, keyNioBuffer, value.nioBuffer(value.readerIndex(), value.capacity()));
+        int len = db.get(handle, readOptions, keyNioBuffer, value.nioBuffer(value.readerIndex(), value.capacity()));
 
         if (len == RocksDB.NOT_FOUND) { //value wasn't found
             value.release();
@@ -114,7 +197,7 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
             value.ensureWritable(len);
 
             keyNioBuffer.rewind();
-            len = db.get(handle, READ_OPTIONS, keyNioBuffer, value.nioBuffer(value.readerIndex(), value.capacity()));
+            len = db.get(handle, readOptions, keyNioBuffer, value.nioBuffer(value.readerIndex(), value.capacity()));
         }
         return value.writerIndex(len);
     }
@@ -164,6 +247,14 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
 
     protected final Set<Listener<POS, T>> listeners = new CopyOnWriteArraySet<>();
 
+    protected final RocksTileWriteQueue<POS, T> writeQueue;
+
+    protected final ZstdDictionary compressionDictionary;
+    protected final UUID storageId;
+
+    //the size of the most recently read tile's data, used as an estimate of how large a buffer to allocate when reading the next one
+    protected int tileDataSizeHint = 4096;
+
     protected final int version;
 
     protected final LoadingCache<POS, ITileHandle<POS, T>> handleCache = CacheBuilder.newBuilder()
@@ -171,23 +262,28 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
             .weakValues()
             .build(CacheLoader.from(pos -> new RocksTileHandle<>(pos, this)));
 
-    @SneakyThrows(RocksDBException.class)
+    @SneakyThrows({ IOException.class, RocksDBException.class })
     public RocksStorage(@NonNull AbstractFarTileProvider<POS, T> world, @NonNull File storageRoot) {
         this.world = world;
         this.version = world.mode().storageVersion();
 
-        File markerFile = new File(storageRoot, "v4");
-        if (PFiles.checkDirectoryExists(storageRoot) && !PFiles.checkFileExists(markerFile)) { //it's an old storage
-            PFiles.rmContentsParallel(storageRoot);
+        List<ColumnFamilyDescriptor> descriptors = Arrays.asList(
+                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, CF_OPTIONS),
+                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_TIMESTAMP, CF_OPTIONS_TIMESTAMP),
+                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_DIRTY_TIMESTAMP, CF_OPTIONS_TIMESTAMP),
+                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_DATA, CF_OPTIONS_TILE_DATA),
+                new ColumnFamilyDescriptor(COLUMN_NAME_ANY_VANILLA_EXISTS, CF_OPTIONS_TIMESTAMP));
+
+        File markerFile = new File(storageRoot, MARKER_FILE_NAME);
+        if (PFiles.checkDirectoryExists(storageRoot) && !PFiles.checkFileExists(markerFile)) {
+            if (PFiles.checkFileExists(new File(storageRoot, MARKER_FILE_NAME_V4))) { //v4 only differs in the key encoding, so we can upgrade it
+                migrateV4(storageRoot, descriptors);
+            } else { //it's an old storage
+                PFiles.rmContentsParallel(storageRoot);
+            }
         }
         PFiles.ensureDirectoryExists(storageRoot);
 
-        List<ColumnFamilyDescriptor> descriptors = Arrays.asList(
-                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, CF_OPTIONS),
-                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_TIMESTAMP, CF_OPTIONS),
-                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_DIRTY_TIMESTAMP, CF_OPTIONS),
-                new ColumnFamilyDescriptor(COLUMN_NAME_TILE_DATA, CF_OPTIONS),
-                new ColumnFamilyDescriptor(COLUMN_NAME_ANY_VANILLA_EXISTS, CF_OPTIONS));
         this.handles = new ArrayList<>(descriptors.size());
 
         this.db = TransactionDB.open(DB_OPTIONS, TX_DB_OPTIONS, storageRoot.getPath(), descriptors, this.handles);
@@ -198,6 +294,157 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
         this.cfAnyVanillaExists = this.handles.get(4);
 
         PFiles.ensureFileExists(markerFile); //create marker file
+
+        this.compressionDictionary = this.loadOrTrainDictionary(new File(storageRoot, DICTIONARY_FILE_NAME));
+        this.storageId = StorageIds.loadOrCreate(new File(storageRoot, StorageIds.FILE_NAME));
+
+        this.writeQueue = new RocksTileWriteQueue<>(this, FP2Config.global().performance().maxQueuedTileWrites());
+    }
+
+    /**
+     * Upgrades a v4 storage to the current format.
+     * <p>
+     * v4 encoded tile coordinates without flipping their sign bits, so the only difference is that the most significant bit of every coordinate is inverted.
+     * The data is copied into a new db and then moved into place, as flipping the bits in-place could overwrite keys which have not yet been migrated.
+     *
+     * @param storageRoot the storage root directory
+     * @param descriptors the column families to migrate. The first one (the default column family) is assumed to be unused.
+     */
+    @SneakyThrows({ IOException.class, RocksDBException.class })
+    protected static void migrateV4(@NonNull File storageRoot, @NonNull List<ColumnFamilyDescriptor> descriptors) {
+        File tmpRoot = new File(storageRoot.getParentFile(), storageRoot.getName() + "-migration");
+        if (PFiles.checkDirectoryExists(tmpRoot)) { //a previous migration attempt was interrupted
+            PFiles.rmContentsParallel(tmpRoot);
+        }
+        PFiles.ensureDirectoryExists(tmpRoot);
+
+        FP2_LOG.info("upgrading tile storage at {} from v4 to {}", storageRoot, MARKER_FILE_NAME);
+        long count = 0L;
+
+        List<ColumnFamilyHandle> srcHandles = new ArrayList<>(descriptors.size());
+        List<ColumnFamilyHandle> dstHandles = new ArrayList<>(descriptors.size());
+        try (RocksDB src = RocksDB.open(DB_OPTIONS, storageRoot.getPath(), descriptors, srcHandles);
+             RocksDB dst = RocksDB.open(DB_OPTIONS, tmpRoot.getPath(), descriptors, dstHandles)) {
+            try {
+                for (int i = 1; i < descriptors.size(); i++) {
+                    try (RocksIterator itr = src.newIterator(srcHandles.get(i));
+                         WriteBatch batch = new WriteBatch()) {
+                        for (itr.seekToFirst(); itr.isValid(); itr.next(), count++) {
+                            batch.put(dstHandles.get(i), RocksKeys.migrateV4Key(itr.key()), itr.value());
+
+                            if (batch.getDataSize() >= MIGRATION_BATCH_SIZE) {
+                                dst.write(WRITE_OPTIONS, batch);
+                                batch.clear();
+                            }
+                        }
+                        dst.write(WRITE_OPTIONS, batch);
+                    }
+                }
+                dst.flush(FLUSH_OPTIONS, dstHandles);
+            } finally {
+                srcHandles.forEach(ColumnFamilyHandle::close);
+                dstHandles.forEach(ColumnFamilyHandle::close);
+            }
+        }
+
+        //tile data itself is unchanged, so the dictionary is still valid and clients' cached tiles may still be used
+        for (String fileName : new String[]{ DICTIONARY_FILE_NAME, StorageIds.FILE_NAME }) {
+            File file = new File(storageRoot, fileName);
+            if (PFiles.checkFileExists(file)) {
+                Files.copy(file.toPath(), new File(tmpRoot, fileName).toPath());
+            }
+        }
+
+        //swap the migrated db into place. the marker file is created last, so if we crash part way through the storage will simply be discarded on the next
+        //  startup rather than being opened in an inconsistent state.
+        PFiles.rmContentsParallel(storageRoot);
+        for (File file : tmpRoot.listFiles()) {
+            Files.move(file.toPath(), new File(storageRoot, file.getName()).toPath());
+        }
+        PFiles.ensureFileExists(new File(storageRoot, MARKER_FILE_NAME));
+        checkState(tmpRoot.delete(), "unable to delete %s", tmpRoot);
+
+        FP2_LOG.info("upgraded {} entries in tile storage at {}", count, storageRoot);
+    }
+
+    /**
+     * Reads the timestamp of the tile with the given key directly from the db, ignoring any queued writes.
+     *
+     * @param keyBytes the tile's key bytes
+     * @return the tile's timestamp, or {@link #TIMESTAMP_BLANK} if the tile doesn't exist
+     */
+    @SneakyThrows(RocksDBException.class)
+    protected long readTimestamp(@NonNull byte[] keyBytes) {
+        byte[] timestampBytes = this.db.get(this.cfTileTimestamp, keyBytes);
+        return timestampBytes != null
+                ? readLongLE(timestampBytes) //timestamp for this tile exists, extract it from the byte array
+                : TIMESTAMP_BLANK;
+    }
+
+    /**
+     * Loads the tile data compression dictionary from the given file, or trains a new one from the tiles in the db if it doesn't exist.
+     * <p>
+     * Training only happens here, when the storage is opened. If the db doesn't contain enough tiles yet, the storage runs without a dictionary until it is next opened
+     * (e.g. the next time the world is loaded), at which point training is attempted again.
+     * <p>
+     * The dictionary is never changed once it has been trained: sessions and tracked tile snapshots hold onto tile data compressed with it for as long as the storage
+     * is open. A dictionary can be retrained by deleting {@link #DICTIONARY_FILE_NAME} while the world is unloaded; clients automatically discard any cached tiles
+     * which were compressed with the old dictionary.
+     *
+     * @param file the dictionary file
+     * @return the dictionary, or {@code null} if the db doesn't contain enough tiles to train one yet
+     */
+    @SneakyThrows({ IOException.class, RocksDBException.class })
+    protected ZstdDictionary loadOrTrainDictionary(@NonNull File file) {
+        ZstdDictionary dictionary = ZstdDictionary.load(file);
+        if (dictionary != null) { //the dictionary has already been trained
+            return dictionary;
+        }
+
+        //sample tiles evenly across the whole key space
+        long estimatedCount = this.db.getLongProperty(this.cfTileData, "rocksdb.estimate-num-keys");
+        if (estimatedCount < DICTIONARY_MIN_SAMPLES) { //not enough tiles to train a useful dictionary
+            return null;
+        }
+        long stride = max(estimatedCount / DICTIONARY_MAX_SAMPLES, 1L);
+
+        List<byte[]> samples = new ArrayList<>();
+        long sampleBytes = 0L;
+        try (RocksIterator itr = this.db.newIterator(this.cfTileData)) {
+            long i = 0L;
+            for (itr.seekToFirst(); itr.isValid() && samples.size() < DICTIONARY_MAX_SAMPLES && sampleBytes < DICTIONARY_MAX_SAMPLE_BYTES; itr.next()) {
+                if (i++ % stride == 0L) {
+                    byte[] sample = itr.value();
+                    samples.add(sample);
+                    sampleBytes += sample.length;
+                }
+            }
+        }
+
+        if (samples.size() < DICTIONARY_MIN_SAMPLES) {
+            return null;
+        }
+
+        byte[] dictionaryData = ZstdDictionaryTrainer.train(samples, DICTIONARY_SIZE);
+        if (dictionaryData == null) {
+            return null;
+        }
+
+        dictionary = new ZstdDictionary(dictionaryData);
+        dictionary.save(file);
+        FP2_LOG.info("trained {} byte tile compression dictionary from {} samples ({} bytes) for {} in DIM{}",
+                dictionaryData.length, samples.size(), sampleBytes, this.world.mode().name(), this.world.world().provider.getDimension());
+        return dictionary;
+    }
+
+    @Override
+    public ZstdDictionary compressionDictionary() {
+        return this.compressionDictionary;
+    }
+
+    @Override
+    public UUID storageId() {
+        return this.storageId;
     }
 
     @Override
@@ -211,12 +458,31 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
 
         try (RocksIterator itr = this.db.newIterator(this.cfTileDirtyTimestamp)) {
             for (itr.seekToFirst(); itr.isValid(); itr.next()) {
-                byte[] key = itr.key();
-                callback.accept(mode.readPos(Unpooled.wrappedBuffer(key)));
+                POS pos = mode.readPos(Unpooled.wrappedBuffer(itr.key()));
+                if (this.isDirty(pos, itr.value())) {
+                    callback.accept(pos);
+                }
             }
         }
     }
 
+    @Override
+    public void forEachDirtyPos(int level, @NonNull IntAxisAlignedBB coordLimits, @NonNull Consumer<POS> callback) {
+        try (RocksIterator itr = this.db.newIterator(this.cfTileDirtyTimestamp)) {
+            RocksKeys.forEachInBB(itr, this.world.mode()::readPos, level, coordLimits, (pos, dirtyTimestampBytes) -> {
+                if (this.isDirty(pos, dirtyTimestampBytes)) {
+                    callback.accept(pos);
+                }
+            });
+        }
+    }
+
+    protected boolean isDirty(@NonNull POS pos, @NonNull byte[] dirtyTimestampBytes) {
+        RocksTileWriteQueue.QueuedWrite queuedWrite = this.writeQueue.queued(pos);
+        //a queued write will clear the dirty timestamp once it's flushed
+        return queuedWrite == null || queuedWrite.timestamp < readLongLE(dirtyTimestampBytes);
+    }
+
     @Override
     @SneakyThrows(RocksDBException.class)
     public Stream<POS> markAllDirty(@NonNull Stream<POS> positionsIn, long dirtyTimestamp) {
@@ -280,6 +546,12 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
                         ? readLongLE(timestampBytes) //timestamp for this tile exists, extract it from the byte array
                         : TIMESTAMP_BLANK;
 
+                //a write for this tile may still be queued. we check this after acquiring the lock, since the write queue only removes writes once they're committed
+                RocksTileWriteQueue.QueuedWrite queuedWrite = this.writeQueue.queued(positions.get(i));
+                if (queuedWrite != null) {
+                    timestamp = max(timestamp, queuedWrite.timestamp);
+                }
+
                 byte[] dirtyTimestampBytes = get[(i << 1) + 1];
                 long existingDirtyTimestamp = dirtyTimestampBytes != null
                         ? readLongLE(dirtyTimestampBytes) //dirty timestamp for this tile exists, extract it from the byte array
@@ -366,6 +638,8 @@ public class RocksStorage<POS extends IFarPos, T extends IFarTile> implements IF
 
     @Override
     public void close() throws IOException {
+        this.writeQueue.close(); //block until all queued writes have been flushed
+
         try {
             this.db.flush(FLUSH_OPTIONS, this.handles);
             this.handles.forEach(ColumnFamilyHandle::close); //close column families before db
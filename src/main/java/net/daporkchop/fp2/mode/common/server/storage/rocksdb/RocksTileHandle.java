@@ -33,15 +33,15 @@ import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
 import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
-import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
-import net.daporkchop.fp2.mode.api.tile.TileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.Snapshot;
 import org.rocksdb.Transaction;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.stream.Stream;
 
+import static java.lang.Math.*;
 import static net.daporkchop.fp2.mode.common.server.storage.rocksdb.RocksStorage.*;
 
 /**
@@ -56,93 +56,69 @@ public class RocksTileHandle<POS extends IFarPos, T extends IFarTile> implements
     protected final RocksStorage<POS, T> storage;
 
     @Override
-    @SneakyThrows(RocksDBException.class)
     public long timestamp() {
-        byte[] timestampBytes = this.storage.db.get(this.storage.cfTileTimestamp, this.pos.toBytes());
-        return timestampBytes != null
-                ? readLongLE(timestampBytes) //timestamp for this tile exists, extract it from the byte array
-                : TIMESTAMP_BLANK;
+        return this.storage.writeQueue.timestamp(this.pos, this.pos.toBytes());
     }
 
     @Override
-    @SneakyThrows(RocksDBException.class)
-    public ITileSnapshot<POS, T> snapshot() {
-        byte[] keyBytes = this.pos.toBytes();
-
-        //read timestamp and tile bytes using multiGet to ensure coherency
-        List<byte[]> valueBytes = this.storage.db.multiGetAsList(
-                ImmutableList.of(this.storage.cfTileTimestamp, this.storage.cfTileData),
-                ImmutableList.of(keyBytes, keyBytes));
-
-        byte[] timestampBytes = valueBytes.get(0);
-        byte[] tileBytes = valueBytes.get(1);
-
-        return timestampBytes != null
-                ? new TileSnapshot<>(this.pos, readLongLE(timestampBytes), tileBytes)
-                : null;
-    }
-
-    @Override
-    @SneakyThrows(RocksDBException.class)
-    public boolean set(@NonNull ITileMetadata metadata, @NonNull T tile) {
-        try (Transaction txn = this.storage.db.beginTransaction(WRITE_OPTIONS)) {
-            byte[] keyBytes = this.pos.toBytes();
-
-            //obtain an exclusive lock on both timestamp keys to ensure coherency
-            byte[][] get = txn.multiGetForUpdate(READ_OPTIONS,
-                    ImmutableList.of(this.storage.cfTileTimestamp, this.storage.cfTileDirtyTimestamp),
-                    new byte[][]{ keyBytes, keyBytes });
-
-            byte[] timestampBytes = get[0];
-            long timestamp = timestampBytes != null
-                    ? readLongLE(timestampBytes) //timestamp for this tile exists, extract it from the byte array
-                    : TIMESTAMP_BLANK;
-
-            byte[] dirtyTimestampBytes = get[1];
-            long dirtyTimestamp = dirtyTimestampBytes != null
-                    ? readLongLE(dirtyTimestampBytes) //dirty timestamp for this tile exists, extract it from the byte array
-                    : TIMESTAMP_BLANK;
-
-            if (metadata.timestamp() <= timestamp) { //the new timestamp isn't newer than the existing one, so we can't replace it
-                //exit without committing the transaction
-                return false;
-            }
+    public RefCountedTileSnapshot<POS, T> snapshot() {
+        RocksTileWriteQueue.QueuedWrite queuedWrite = this.storage.writeQueue.queued(this.pos);
+        if (queuedWrite != null) { //the tile's most recent contents haven't been written to the db yet
+            return new RefCountedTileSnapshot<>(this.pos, queuedWrite.timestamp, queuedWrite.data != null ? Unpooled.wrappedBuffer(queuedWrite.data) : null);
+        }
 
-            //store new timestamp in db
-            txn.put(this.storage.cfTileTimestamp, keyBytes, writeLongLE(metadata.timestamp()));
+        ByteBuf key = ByteBufAllocator.DEFAULT.directBuffer();
+        Snapshot dbSnapshot = this.storage.db.getSnapshot();
+        try (ReadOptions readOptions = new ReadOptions().setSnapshot(dbSnapshot)) {
+            this.pos.writePos(key);
 
-            //clear dirty timestamp if needed
-            if (metadata.timestamp() >= dirtyTimestamp) {
-                txn.delete(this.storage.cfTileDirtyTimestamp, keyBytes);
+            //read timestamp and tile data from the same db snapshot to ensure coherency
+            ByteBuf timestampBuf = get(this.storage.db, this.storage.cfTileTimestamp, readOptions, key, Long.BYTES);
+            if (timestampBuf == null) { //the tile doesn't exist
+                return null;
             }
 
-            //encode tile and store it in db
-            ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+            long timestamp;
             try {
-                if (tile.write(buf)) { //the tile was empty, remove it from the db!
-                    txn.delete(this.storage.cfTileData, keyBytes);
-                } else { //the tile was non-empty, store it in the db
-                    txn.put(this.storage.cfTileData, keyBytes, Arrays.copyOfRange(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.writerIndex()));
-                }
+                timestamp = timestampBuf.readLongLE();
             } finally {
-                buf.release();
+                timestampBuf.release();
             }
 
-            //commit transaction and report that a change was made
-            txn.commit();
-
-            this.storage.listeners.forEach(listener -> listener.tilesChanged(Stream.of(this.pos)));
-            return true;
+            //the tile data is read directly into a pooled direct buffer, ownership of which is transferred to the snapshot
+            ByteBuf data = get(this.storage.db, this.storage.cfTileData, readOptions, key, this.storage.tileDataSizeHint);
+            if (data != null) {
+                this.storage.tileDataSizeHint = data.readableBytes();
+            }
+            return new RefCountedTileSnapshot<>(this.pos, timestamp, data);
+        } finally {
+            this.storage.db.releaseSnapshot(dbSnapshot);
+            key.release();
         }
     }
 
+    @Override
+    public boolean set(@NonNull ITileMetadata metadata, @NonNull T tile) {
+        return this.storage.writeQueue.set(this.pos, metadata, tile);
+    }
+
     @Override
     @SneakyThrows(RocksDBException.class)
     public long dirtyTimestamp() {
+        //the queue must be checked before the db: the write queue only removes writes once they're committed, so if no write is queued now, any write which was
+        //  queued earlier has already cleared the dirty timestamp in the db
+        RocksTileWriteQueue.QueuedWrite queuedWrite = this.storage.writeQueue.queued(this.pos);
+
         byte[] dirtyTimestampBytes = this.storage.db.get(this.storage.cfTileDirtyTimestamp, this.pos.toBytes());
-        return dirtyTimestampBytes != null
-                ? Unpooled.wrappedBuffer(dirtyTimestampBytes).readLongLE() //dirty timestamp for this tile exists, extract it from the byte array
-                : TIMESTAMP_BLANK;
+        if (dirtyTimestampBytes == null) { //the tile isn't dirty
+            return TIMESTAMP_BLANK;
+        }
+
+        long dirtyTimestamp = Unpooled.wrappedBuffer(dirtyTimestampBytes).readLongLE(); //dirty timestamp for this tile exists, extract it from the byte array
+
+        return queuedWrite != null && queuedWrite.timestamp >= dirtyTimestamp
+                ? TIMESTAMP_BLANK //a queued write will clear the dirty timestamp once it's flushed
+                : dirtyTimestamp;
     }
 
     @Override
@@ -161,6 +137,12 @@ public class RocksTileHandle<POS extends IFarPos, T extends IFarTile> implements
                     ? Unpooled.wrappedBuffer(timestampBytes).readLongLE() //timestamp for this tile exists, extract it from the byte array
                     : TIMESTAMP_BLANK;
 
+            //a write for this tile may still be queued. we check this after acquiring the lock, since the write queue only removes writes once they're committed
+            RocksTileWriteQueue.QueuedWrite queuedWrite = this.storage.writeQueue.queued(this.pos);
+            if (queuedWrite != null) {
+                timestamp = max(timestamp, queuedWrite.timestamp);
+            }
+
             byte[] dirtyTimestampBytes = get[1];
             long existingDirtyTimestamp = dirtyTimestampBytes != null
                     ? Unpooled.wrappedBuffer(dirtyTimestampBytes).readLongLE() //dirty timestamp for this tile exists, extract it from the byte array
@@ -0,0 +1,393 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.storage.rocksdb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.lib.common.misc.string.PStrings;
+import net.daporkchop.lib.common.misc.threadfactory.PThreadFactories;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Transaction;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static java.lang.Math.*;
+import static net.daporkchop.fp2.mode.api.tile.ITileMetadata.*;
+import static net.daporkchop.fp2.mode.common.server.storage.rocksdb.RocksStorage.*;
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Write-behind stage for a {@link RocksStorage}.
+ * <p>
+ * Tile writes submitted from any number of threads are buffered in memory and flushed to the database in groups by a single dedicated thread, meaning that the cost of
+ * acquiring key locks and committing a transaction is paid once per group rather than once per tile.
+ * <p>
+ * Queued writes are visible to readers immediately: {@link RocksTileHandle} consults {@link #queued(IFarPos)} before falling back to the database, and the compare-and-set
+ * semantics of {@link RocksTileHandle#set(ITileMetadata, IFarTile)} are evaluated against the most recent queued timestamp.
+ *
+ * @author DaPorkchop_
+ */
+public class RocksTileWriteQueue<POS extends IFarPos, T extends IFarTile> implements AutoCloseable {
+    /**
+     * The maximum number of tiles to write in a single group.
+     * <p>
+     * Also serves as a workaround for https://github.com/facebook/rocksdb/issues/9006 (see {@link RocksStorage#markAllDirty(Stream, long)}).
+     */
+    protected static final int MAX_GROUP_SIZE = 4096;
+
+    /**
+     * The maximum number of consecutive attempts to write a group while the queue is being closed before giving up and discarding all remaining writes.
+     * <p>
+     * While the queue is open, failed groups are retried indefinitely: the writes have already been reported as successful to the storage's listeners, so discarding
+     * them would leave trackers (and clients) believing in tile versions which never reached the disk.
+     */
+    protected static final int MAX_WRITE_ATTEMPTS = 16;
+
+    /**
+     * The delay before the first retry of a group which couldn't be written (in milliseconds). The delay is doubled after each consecutive failure.
+     */
+    protected static final long RETRY_DELAY = 100L;
+
+    /**
+     * The maximum delay between consecutive attempts to write a group (in milliseconds).
+     */
+    protected static final long MAX_RETRY_DELAY = 10000L;
+
+    protected final RocksStorage<POS, T> storage;
+    protected final int capacity;
+
+    protected final Map<POS, QueuedWrite> queued = new ConcurrentHashMap<>();
+    protected final AtomicInteger size = new AtomicInteger();
+    protected final AtomicLong generation = new AtomicLong(); //incremented every time committed writes are about to be removed from the queue
+
+    protected final Lock lock = new ReentrantLock();
+    protected final Condition notEmpty = this.lock.newCondition();
+    protected final Condition notFull = this.lock.newCondition();
+
+    protected final Thread thread;
+    protected volatile boolean running = true;
+
+    public RocksTileWriteQueue(@NonNull RocksStorage<POS, T> storage, int capacity) {
+        this.storage = storage;
+        this.capacity = positive(capacity, "capacity");
+
+        this.thread = PThreadFactories.builder().daemon().minPriority()
+                .name(PStrings.fastFormat("FP2 %s DIM%d Storage Writer", storage.world.mode().name(), storage.world.world().provider.getDimension())).build()
+                .newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the most recent queued write for the tile at the given position.
+     *
+     * @param pos the position
+     * @return the most recent queued write, or {@code null} if no write is queued for the given position
+     */
+    public QueuedWrite queued(@NonNull POS pos) {
+        return this.queued.get(pos);
+    }
+
+    /**
+     * Gets the effective timestamp of the tile at the given position, taking any queued writes into account.
+     *
+     * @param pos      the position
+     * @param keyBytes the position's key bytes
+     * @return the effective timestamp
+     */
+    public long timestamp(@NonNull POS pos, @NonNull byte[] keyBytes) {
+        QueuedWrite write = this.queued.get(pos);
+        return write != null ? write.timestamp : this.storage.readTimestamp(keyBytes);
+    }
+
+    /**
+     * Queues the given tile data to be written to the given position.
+     *
+     * @see RocksTileHandle#set(ITileMetadata, IFarTile)
+     */
+    public boolean set(@NonNull POS pos, @NonNull ITileMetadata metadata, @NonNull T tile) {
+        checkState(this.running, "write queue has been closed!");
+
+        long newTimestamp = metadata.timestamp();
+        byte[] keyBytes = pos.toBytes();
+
+        //encode tile outside of the map lock
+        byte[] data;
+        ByteBuf buf = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            if (tile.write(buf)) { //the tile was empty, it'll be removed from the db
+                data = null;
+            } else { //the tile was non-empty, copy its contents into a byte[] of the exact size
+                data = new byte[buf.readableBytes()];
+                buf.readBytes(data);
+            }
+        } finally {
+            buf.release();
+        }
+
+        this.awaitCapacity();
+
+        QueuedWrite newWrite = new QueuedWrite(keyBytes, newTimestamp, data);
+        int[] result = new int[1]; //0=retry, 1=applied, 2=rejected
+        do {
+            //read the timestamp from the db before entering compute(), so that we don't hold the map's bin lock while doing native i/o
+            long generation = this.generation.get();
+            boolean dbTimestampValid = this.queued.get(pos) == null;
+            long dbTimestamp = dbTimestampValid ? this.storage.readTimestamp(keyBytes) : TIMESTAMP_BLANK;
+
+            this.queued.compute(pos, (k, existing) -> {
+                long timestamp;
+                if (existing != null) {
+                    timestamp = existing.timestamp;
+                } else if (dbTimestampValid && generation == this.generation.get()) {
+                    //the writer thread only removes writes from the queue once they've been committed, and increments the generation before doing so. if there
+                    //  was no queued write when we read the db and the generation hasn't changed since, the value we read is still authoritative
+                    timestamp = dbTimestamp;
+                } else { //a queued write was committed in the meantime, the value we read from the db may be outdated
+                    result[0] = 0;
+                    return null;
+                }
+
+                if (newTimestamp <= timestamp) { //the new timestamp isn't newer than the existing one, so we can't replace it
+                    result[0] = 2;
+                    return existing;
+                }
+
+                result[0] = 1;
+                if (existing == null) {
+                    this.size.incrementAndGet();
+                }
+                return newWrite;
+            });
+        } while (result[0] == 0);
+
+        if (result[0] != 1) {
+            return false;
+        }
+
+        this.lock.lock();
+        try {
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.storage.listeners.forEach(listener -> listener.tilesChanged(Stream.of(pos)));
+        return true;
+    }
+
+    protected void awaitCapacity() {
+        if (this.size.get() < this.capacity) { //fast path: don't bother acquiring the lock
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            while (this.running && this.size.get() >= this.capacity) {
+                this.notFull.awaitUninterruptibly();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    protected void run() {
+        List<Map.Entry<POS, QueuedWrite>> group = new ArrayList<>(MAX_GROUP_SIZE);
+        int failedAttempts = 0;
+
+        while (true) {
+            this.lock.lock();
+            try {
+                while (this.running && this.size.get() == 0) {
+                    this.notEmpty.awaitUninterruptibly();
+                }
+
+                if (!this.running && this.size.get() == 0) { //we've been closed and the queue has been drained
+                    return;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+
+            //collect a group of queued writes
+            for (Map.Entry<POS, QueuedWrite> entry : this.queued.entrySet()) {
+                group.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                if (group.size() >= MAX_GROUP_SIZE) {
+                    break;
+                }
+            }
+
+            try {
+                this.write(group);
+                failedAttempts = 0;
+            } catch (Throwable t) {
+                failedAttempts++;
+                if (this.running || failedAttempts < MAX_WRITE_ATTEMPTS) {
+                    //keep the writes queued (and therefore visible to readers) and try again later. if the error persists, the queue will eventually fill up and
+                    //  block callers of set() until the db accepts writes again
+                    FP2_LOG.error(PStrings.fastFormat("unable to write %d tiles to storage (attempt %d), retrying...", group.size(), failedAttempts), t);
+                    group.clear();
+
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(min(RETRY_DELAY << min(failedAttempts - 1, 16), MAX_RETRY_DELAY));
+                    } catch (InterruptedException e) {
+                        //the writer thread is private to this queue and nobody else has any business interrupting it. we don't restore the interrupted state, since
+                        //  doing so would cause every subsequent sleep to fail immediately and the retry loop to spin
+                    }
+                    continue;
+                }
+
+                //we're being closed and the error appears to be persistent. there's nobody left to observe the tiles anyway, so give up on all of the remaining writes
+                //  rather than blocking forever, which would prevent the storage from ever being closed
+                FP2_LOG.error(PStrings.fastFormat("unable to write %d tiles to storage after %d attempts while closing, discarding all %d remaining queued tile writes!",
+                        group.size(), failedAttempts, this.size.get()), t);
+                group.clear();
+                group.addAll(this.queued.entrySet());
+            }
+
+            this.dequeue(group);
+        }
+    }
+
+    protected void dequeue(@NonNull List<Map.Entry<POS, QueuedWrite>> group) {
+        //remove the written entries from the queue, unless they were replaced by a newer write in the meantime
+        this.generation.incrementAndGet();
+        int removed = 0;
+        for (Map.Entry<POS, QueuedWrite> entry : group) {
+            if (this.queued.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        group.clear();
+
+        this.lock.lock();
+        try {
+            this.size.addAndGet(-removed);
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @SneakyThrows(RocksDBException.class)
+    protected void write(@NonNull List<Map.Entry<POS, QueuedWrite>> group) {
+        int length = group.size();
+        if (length == 0) {
+            return;
+        }
+
+        try (Transaction txn = this.storage.db.beginTransaction(WRITE_OPTIONS)) {
+            //obtain an exclusive lock on all of the dirty timestamp keys at once to ensure coherency with concurrent calls to markDirty
+            ColumnFamilyHandle[] handles = new ColumnFamilyHandle[length];
+            Arrays.fill(handles, this.storage.cfTileDirtyTimestamp);
+            byte[][] keys = new byte[length][];
+            for (int i = 0; i < length; i++) {
+                keys[i] = group.get(i).getValue().keyBytes;
+            }
+
+            byte[][] dirtyTimestamps = txn.multiGetForUpdate(READ_OPTIONS, Arrays.asList(handles), keys);
+
+            for (int i = 0; i < length; i++) {
+                QueuedWrite write = group.get(i).getValue();
+
+                //store new timestamp in db
+                txn.put(this.storage.cfTileTimestamp, write.keyBytes, writeLongLE(write.timestamp));
+
+                //clear dirty timestamp if needed
+                byte[] dirtyTimestampBytes = dirtyTimestamps[i];
+                if (dirtyTimestampBytes != null && write.timestamp >= readLongLE(dirtyTimestampBytes)) {
+                    txn.delete(this.storage.cfTileDirtyTimestamp, write.keyBytes);
+                }
+
+                //store tile data in db
+                if (write.data == null) { //the tile was empty, remove it from the db!
+                    txn.delete(this.storage.cfTileData, write.keyBytes);
+                } else { //the tile was non-empty, store it in the db
+                    txn.put(this.storage.cfTileData, write.keyBytes, write.data);
+                }
+            }
+
+            txn.commit();
+        }
+    }
+
+    /**
+     * Closes this write queue, blocking until all queued writes have been flushed.
+     * <p>
+     * If the database repeatedly fails to accept writes, the remaining queued writes are discarded and an error is logged rather than blocking forever.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.running = false;
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) { //restore interrupted state
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A tile write which has been queued, but not necessarily written to the database yet.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    public static final class QueuedWrite {
+        @NonNull
+        protected final byte[] keyBytes;
+        protected final long timestamp;
+        protected final byte[] data;
+    }
+}
@@ -23,28 +23,32 @@ package net.daporkchop.fp2.mode.common.server.tracking;
 import lombok.NonNull;
 import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.debug.util.DebugStats;
+import net.daporkchop.fp2.mode.api.IFarDirectPosAccess;
 import net.daporkchop.fp2.mode.api.IFarPos;
 import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.IFarTile;
 import net.daporkchop.fp2.mode.api.ctx.IFarServerContext;
 import net.daporkchop.fp2.mode.api.ctx.IFarWorldServer;
 import net.daporkchop.fp2.mode.api.server.tracking.IFarTracker;
-import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
 import net.daporkchop.fp2.util.annotation.CalledFromAnyThread;
 import net.daporkchop.fp2.util.annotation.CalledFromServerThread;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.fp2.util.annotation.RemovalPolicy;
-import net.daporkchop.fp2.util.datastructure.RecyclingArrayDeque;
+import net.daporkchop.fp2.util.datastructure.Datastructures;
+import net.daporkchop.fp2.util.datastructure.NDimensionalIntSet;
 import net.daporkchop.fp2.util.datastructure.SimpleSet;
 import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
 import net.daporkchop.lib.unsafe.PUnsafe;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
@@ -65,15 +69,25 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
      */
     protected static final double UPDATE_TRIGGER_DISTANCE_SQUARED = sq(T_VOXELS >> 1);
 
+    /**
+     * The maximum size of a tracker's {@link AdaptiveLoadWindow}, as a multiple of the number of terrain threads.
+     */
+    protected static final int MAX_LOAD_WINDOW_FACTOR = 16;
+
     protected final AbstractTrackerManager<POS, T> manager;
     protected final IFarRenderMode<POS, T> mode;
 
     protected final IFarServerContext<POS, T> context;
     protected final IntAxisAlignedBB[] coordLimits;
 
-    protected final RecyclingArrayDeque<POS> queuedPositions = new RecyclingArrayDeque<>();
-    protected final SimpleSet<POS> loadedPositions;
-    protected final Set<POS> waitingPositions = ConcurrentHashMap.newKeySet();
+    protected final int axisCount;
+
+    //positions are queued and tracked as loaded in primitive form (one int per axis, see IFarDirectPosAccess#getAxisHeap), and are only turned into POS instances
+    // when they're actually handed to the tracker manager
+    protected final ShellQueue queuedPositions;
+    protected final ShellOrder[] shellOrders = new ShellOrder[MAX_LODS]; //the orders retained from the manager for each level of the queue
+    protected final NDimensionalIntSet[] loadedPositions = new NDimensionalIntSet[MAX_LODS];
+    protected final Map<POS, Long> waitingPositions = new ConcurrentHashMap<>(); //value is the System#nanoTime() at which the tracker started waiting on the tile
     protected final Queue<POS> doneWaitingPositions = new ConcurrentLinkedQueue<>();
 
     //these are using a single object reference instead of flattened fields to allow the value to be replaced atomically. to ensure coherent access to the values,
@@ -81,11 +95,22 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
     protected volatile STATE lastState;
     protected volatile STATE nextState;
 
+    //the comparator for lastState, cached so that users of priorityComparator() see the same instance until the tracking state changes
+    protected volatile Comparator<POS> priorityComparator;
+
+    protected final AdaptiveLoadWindow loadWindow;
+
     protected volatile boolean queuePaused = false;
     protected volatile boolean closed = false;
 
+    //scratch buffers, may only be used while holding this tracker's monitor
+    protected final int[] queueBuffer;
+    protected final int[] posBuffer;
+
     @DebugOnly(RemovalPolicy.DROP)
     protected long lastUpdateTime;
+    @DebugOnly(RemovalPolicy.DROP)
+    protected volatile long visibleCount;
 
     public AbstractTracker(@NonNull AbstractTrackerManager<POS, T> manager, @NonNull IFarServerContext<POS, T> context) {
         this.manager = manager;
@@ -94,7 +119,21 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
         this.context = context;
         this.coordLimits = ((IFarWorldServer) manager.tileProvider().world()).fp2_IFarWorld_coordLimits();
 
-        this.loadedPositions = this.mode.directPosAccess().newPositionSet();
+        this.axisCount = this.mode.directPosAccess().axisCount();
+        this.queuedPositions = new ShellQueue(this.axisCount);
+
+        //start out with the same window size as there are worker threads, which is what a single player would need to keep all of them busy
+        int terrainThreads = FP2Config.global().performance().terrainThreads();
+        this.loadWindow = new AdaptiveLoadWindow(1, terrainThreads, terrainThreads * MAX_LOAD_WINDOW_FACTOR);
+
+        NDimensionalIntSet.Builder builder = Datastructures.INSTANCE.nDimensionalIntSet()
+                .dimensions(this.axisCount).threadSafe(false);
+        for (int level = 0; level < MAX_LODS; level++) {
+            this.loadedPositions[level] = builder.build();
+        }
+
+        this.queueBuffer = new int[this.axisCount];
+        this.posBuffer = new int[this.axisCount];
     }
 
     @CalledFromServerThread
@@ -102,7 +141,7 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
     public void update() {
         STATE lastState = this.lastState;
         STATE nextState = this.currentState(this.context);
-        if (lastState == null || this.shouldTriggerUpdate(lastState, nextState)) {
+        if (lastState == null || this.shouldTriggerUpdate(lastState, nextState) || this.shouldTriggerReorder(lastState, nextState)) {
             //set nextPos to be used while updating
             this.nextState = nextState;
 
@@ -122,7 +161,17 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
         { //check if we need to update tracking state
             STATE lastState = this.lastState;
             STATE nextState = this.nextState;
-            if (nextState != null && (lastState == null || this.shouldTriggerUpdate(lastState, nextState))) {
+            if (nextState != null && lastState != null && !this.shouldTriggerUpdate(lastState, nextState) && this.shouldTriggerReorder(lastState, nextState)
+                && this.sameVisibleBounds(lastState, nextState)) {
+                this.lastState = nextState;
+                this.nextState = null;
+
+                //only the load order has changed, so the visible area is the same and the tiles which are currently being waited on can stay tracked
+                this.reorder(nextState);
+            } else if (nextState != null
+                       && (lastState == null || this.shouldTriggerUpdate(lastState, nextState) || this.shouldTriggerReorder(lastState, nextState))) {
+                //this is also done if only the load order has changed, but the visible area has changed slightly as well
+
                 //inform the server thread that this update has started, by updating the current state and clearing the next one
                 this.lastState = nextState;
                 this.nextState = null;
@@ -141,7 +190,7 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
                     untrackingPositions.forEach(pos -> this.manager.stopTracking(this, pos));
                 }
 
-                checkState(this.waitingPositions.isEmpty(), "load queue isn't empty?!? %s", this.waitingPositions);
+                checkState(this.waitingPositions.isEmpty(), "load queue isn't empty?!? %s", this.waitingPositions.keySet());
 
                 //unpause the queue so that we can fill it up again
                 this.unpauseQueue();
@@ -154,31 +203,168 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
     protected synchronized void updateState(STATE lastState, @NonNull STATE nextState, @NonNull SimpleSet<POS> untrackingPositions) {
         long startTime = System.nanoTime();
 
-        if (lastState != null) { //if lastState exists, we can diff the positions (which is faster than iterating over all of them)
-            //unqueue all positions which are no longer visible.
-            //  this is O(n), whereas removing them during the deltaPositions 'removed' callback would be O(n*m) (where n=queue size, m=number of positions in render
-            //  distance). the savings from this are significant - when flying around with 1level@400cutoff, tracker updates are reduced from 5000-10000ms to about 40-50ms.
-            this.queuedPositions.removeIf(pos -> !this.isVisible(nextState, pos));
-
-            //figure out which positions were added/removed
-            this.deltaPositions(lastState, nextState,
-                    this.queuedPositions::add,
-                    pos -> {
-                        //untrack the tile if needed
-                        if (this.loadedPositions.remove(pos)) {
-                            untrackingPositions.add(pos);
-                        }
-                    });
-        } else { //no positions have been added so far, so we need to iterate over them all
-            this.allPositions(nextState, this.queuedPositions::add);
+        IFarDirectPosAccess<POS> directPosAccess = this.mode.directPosAccess();
+        int[] oldMin = new int[this.axisCount];
+        int[] oldMax = new int[this.axisCount];
+        int[] newMin = new int[this.axisCount];
+        int[] newMax = new int[this.axisCount];
+        int[] axes = new int[this.axisCount];
+
+        if (lastState != null) {
+            for (int level = 0; level < MAX_LODS; level++) {
+                boolean newVisible = this.visibleBounds(nextState, level, newMin, newMax);
+                if (this.visibleBounds(lastState, level, oldMin, oldMax)
+                    && (!newVisible || !Arrays.equals(oldMin, newMin) || !Arrays.equals(oldMax, newMax))) { //the visible area at this level changed
+                    //untrack every loaded position which was visible in the old state but no longer is
+                    NDimensionalIntSet loadedPositions = this.loadedPositions[level];
+                    if (!loadedPositions.isEmpty()) {
+                        System.arraycopy(oldMin, 0, axes, 0, this.axisCount);
+                        do {
+                            if ((!newVisible || !contains(newMin, newMax, axes)) && loadedPositions.remove(axes)) {
+                                untrackingPositions.add(directPosAccess.fromAxes(level, axes));
+                            }
+                        } while (next(oldMin, oldMax, axes));
+                    }
+                }
+            }
         }
 
-        //sort queue
-        this.queuedPositions.sort(this.comparatorFor(nextState));
+        this.rebuildQueue(nextState);
 
         this.lastUpdateTime = System.nanoTime() - startTime;
     }
 
+    /**
+     * Changes the order in which tiles are loaded without changing which tiles are tracked.
+     * <p>
+     * Unlike a full tracking update, this doesn't untrack the tiles which are currently being waited on.
+     *
+     * @param state the new {@link STATE}
+     */
+    protected synchronized void reorder(@NonNull STATE state) {
+        long startTime = System.nanoTime();
+
+        this.rebuildQueue(state);
+
+        this.lastUpdateTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Replaces the load queue's contents with the positions visible in the given {@link STATE}, in the order defined by that state.
+     * <p>
+     * Must be called while holding this tracker's monitor.
+     *
+     * @param state the {@link STATE}
+     */
+    protected void rebuildQueue(@NonNull STATE state) {
+        int[] min = new int[this.axisCount];
+        int[] max = new int[this.axisCount];
+        int[] origin = new int[this.axisCount];
+        double[] direction = new double[this.axisCount];
+
+        //the queue is regenerated lazily from the visible bounds, so there's no need to diff or sort anything here. positions which are already loaded or being
+        //  waited on will simply be skipped when they're polled.
+        this.queuedPositions.clear();
+        ShellOrder[] oldShellOrders = this.shellOrders.clone();
+        Arrays.fill(this.shellOrders, null);
+
+        long visibleCount = 0L;
+        for (int level = 0; level < MAX_LODS; level++) {
+            if (this.visibleBounds(state, level, min, max)) {
+                this.origin(state, level, origin);
+                this.direction(state, level, direction);
+
+                //the order only depends on the size of the visible area relative to the origin, so it can be shared with other trackers regardless of where their players
+                //  are or where they're looking. the origin and direction are applied by the queue itself.
+                this.shellOrders[level] = this.manager.retainShellOrder(ShellOrder.Key.of(min, max, origin));
+                this.queuedPositions.addLevel(level, this.shellOrders[level], origin, min, max, direction);
+                visibleCount += volume(min, max);
+            }
+        }
+
+        //release the old orders only now, so that any which are still needed aren't discarded and re-created
+        for (ShellOrder order : oldShellOrders) {
+            if (order != null) {
+                this.manager.releaseShellOrder(order);
+            }
+        }
+
+        this.queuedPositions.rewind();
+        this.priorityComparator = this.comparatorFor(state);
+        this.visibleCount = visibleCount;
+    }
+
+    protected boolean sameVisibleBounds(@NonNull STATE a, @NonNull STATE b) {
+        int[] minA = new int[this.axisCount];
+        int[] maxA = new int[this.axisCount];
+        int[] minB = new int[this.axisCount];
+        int[] maxB = new int[this.axisCount];
+        for (int level = 0; level < MAX_LODS; level++) {
+            boolean visibleA = this.visibleBounds(a, level, minA, maxA);
+            boolean visibleB = this.visibleBounds(b, level, minB, maxB);
+            if (visibleA != visibleB || (visibleA && (!Arrays.equals(minA, minB) || !Arrays.equals(maxA, maxB)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static long volume(@NonNull int[] min, @NonNull int[] max) {
+        long volume = 1L;
+        for (int axis = 0; axis < min.length; axis++) {
+            volume *= max[axis] - min[axis] + 1L;
+        }
+        return volume;
+    }
+
+    protected static boolean contains(@NonNull int[] min, @NonNull int[] max, @NonNull int[] axes) {
+        for (int axis = 0; axis < axes.length; axis++) {
+            if (axes[axis] < min[axis] || axes[axis] > max[axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Advances the given point to the next point in the given box, in the same order as nested {@code for} loops over each axis would.
+     *
+     * @return whether or not there was a next point
+     */
+    protected static boolean next(@NonNull int[] min, @NonNull int[] max, @NonNull int[] axes) {
+        for (int axis = axes.length - 1; axis >= 0; axis--) {
+            if (++axes[axis] <= max[axis]) {
+                return true;
+            }
+            axes[axis] = min[axis];
+        }
+        return false;
+    }
+
+    protected int[] axes(@NonNull POS pos, @NonNull int[] dst) {
+        IFarDirectPosAccess<POS> directPosAccess = this.mode.directPosAccess();
+        for (int axis = 0; axis < this.axisCount; axis++) {
+            dst[axis] = directPosAccess.getAxisHeap(pos, axis);
+        }
+        return dst;
+    }
+
+    protected void forEachLoaded(@NonNull Consumer<POS> callback) {
+        IFarDirectPosAccess<POS> directPosAccess = this.mode.directPosAccess();
+        for (int level = 0; level < MAX_LODS; level++) {
+            int _level = level;
+            this.loadedPositions[level].forEach(axes -> callback.accept(directPosAccess.fromAxes(_level, axes)));
+        }
+    }
+
+    protected long loadedCount() {
+        long count = 0L;
+        for (NDimensionalIntSet loadedPositions : this.loadedPositions) {
+            count += loadedPositions.count();
+        }
+        return count;
+    }
+
     /**
      * Unpauses the load queue, allowing waiting positions to be added again.
      * <p>
@@ -196,34 +382,33 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
     }
 
     /**
-     * Stops tracking all tiles that are being waited on and re-adds them to the queue.
+     * Stops tracking all tiles that are being waited on.
      * <p>
-     * The queue must be paused (using {@link #pauseQueue()}) when this method is called.
+     * They don't need to be re-added to the queue, as it will be rewound by the next tracking update anyway. The queue must be paused (using {@link #pauseQueue()}) when this method is called.
      */
     protected synchronized void clearWaiting() {
         //move completed positions from waitingPositions to loadedPositions
         for (POS pos; (pos = this.doneWaitingPositions.poll()) != null; ) {
             this.waitingPositions.remove(pos);
-            this.loadedPositions.add(pos);
+            this.loadedPositions[pos.level()].add(this.axes(pos, this.posBuffer));
         }
 
-        //remove the rest of the waiting positions, stop tracking them and re-add them to the load queue
-        List<POS> waitingPositions = new ArrayList<>(this.waitingPositions);
+        //remove the rest of the waiting positions and stop tracking them
+        List<POS> waitingPositions = new ArrayList<>(this.waitingPositions.keySet());
         this.waitingPositions.clear();
 
         //stop tracking all positions in the set
         waitingPositions.forEach(pos -> this.manager.stopTracking(this, pos));
-
-        //re-add all of the now cancelled tasks to the queue
-        this.queuedPositions.addAll(waitingPositions);
     }
 
     /**
      * Mark completed tiles as loaded, and replaces them by beginning to wait on new positions from the queue (if possible).
      */
     protected void updateWaiting() {
-        int targetLoadQueueSize = FP2Config.global().performance().terrainThreads();
+        IFarDirectPosAccess<POS> directPosAccess = this.mode.directPosAccess();
+        int targetLoadQueueSize = this.loadWindow.window();
         List<POS> positions = new ArrayList<>();
+        boolean exhausted;
 
         do {
             if (this.queuePaused) { //the tracker update thread has specifically requested to pause queue polling, so we shouldn't do anything here
@@ -243,31 +428,37 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
                 //move completed positions from waitingPositions to loadedPositions
                 for (POS pos; (pos = this.doneWaitingPositions.poll()) != null; ) {
                     this.waitingPositions.remove(pos);
-                    this.loadedPositions.add(pos);
-                }
-
-                if (this.queuedPositions.isEmpty()) { //the queue is empty, so there's nothing left to do
-                    return;
+                    this.loadedPositions[pos.level()].add(this.axes(pos, this.posBuffer));
                 }
 
                 //keep adding positions from the queue until waitingPositions has targetLoadQueueSize elements or the queue is drained
+                exhausted = false;
                 for (int count = targetLoadQueueSize - this.waitingPositions.size(); count > 0; count--) {
-                    POS pos = this.queuedPositions.poll();
-                    if (pos == null) { //nothing left in the queue, therefore nothing left to do!
+                    int level = this.queuedPositions.poll(this.queueBuffer, (lvl, axes) -> this.loadedPositions[lvl].contains(axes)
+                                                                                           || (!this.waitingPositions.isEmpty() && this.waitingPositions.containsKey(directPosAccess.fromAxes(lvl, axes))));
+                    if (level < 0) { //nothing left in the queue, therefore nothing left to do!
+                        exhausted = true;
                         break;
                     }
 
                     //buffer the positions we want to add in a list (we don't want to being tracking them while holding the monitor since that could deadlock)
-                    positions.add(pos);
+                    positions.add(directPosAccess.fromAxes(level, this.queueBuffer));
                 }
+
+                //mark the positions as waiting before releasing the monitor, so that they're skipped if the queue is reordered and rewound in the meantime
+                long now = System.nanoTime();
+                positions.forEach(pos -> this.waitingPositions.put(pos, now));
             } finally {
                 PUnsafe.monitorExit(this);
             }
 
             //begin tracking all of the added positions
-            this.waitingPositions.addAll(positions);
             positions.forEach(pos -> this.manager.beginTracking(this, pos));
             positions.clear();
+
+            if (exhausted) { //the queue is empty, so there's nothing left to do
+                return;
+            }
         } while (!this.doneWaitingPositions.isEmpty() || this.waitingPositions.size() < targetLoadQueueSize);
     }
 
@@ -276,15 +467,30 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
      * <p>
      * This is also called when initially loading a tile.
      *
-     * @param snapshot a snapshot of the tile data
+     * @param snapshot a snapshot of the tile data. The snapshot remains owned by the caller.
+     */
+    @CalledFromAnyThread
+    protected void notifyChanged(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+        this.notifyChanged(snapshot, null);
+    }
+
+    /**
+     * Notifies the tracker that the tile data at the given position has been modified.
+     *
+     * @param snapshot a snapshot of the tile data. The snapshot remains owned by the caller.
+     * @param delta    the (possibly {@code null}) differences between the previously broadcast version of the tile and the given snapshot
      */
     @CalledFromAnyThread
-    protected void notifyChanged(@NonNull ITileSnapshot<POS, T> snapshot) {
+    protected void notifyChanged(@NonNull RefCountedTileSnapshot<POS, T> snapshot, TileDelta<POS> delta) {
         try {
-            this.context.sendTile(uncheckedCast(snapshot));
+            this.context.sendTile(snapshot, delta);
 
             POS pos = snapshot.pos();
-            if (this.waitingPositions.contains(pos)) { //this tile has been initially loaded
+            Long waitingSince = this.waitingPositions.get(pos);
+            if (waitingSince != null) { //this tile has been initially loaded
+                //adjust the load window based on how long we had to wait
+                this.loadWindow.loadCompleted(System.nanoTime() - waitingSince, this.manager.loadsCongested());
+
                 //mark the position as done waiting
                 checkState(this.doneWaitingPositions.add(pos), "couldn't mark completed position as done waiting: ", pos);
 
@@ -319,33 +525,66 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
         this.pauseQueue();
 
         //tell the client to unload all tiles
-        this.context.sendMultiTileUnload(this.loadedPositions);
+        List<POS> loadedPositions = new ArrayList<>();
+        this.forEachLoaded(loadedPositions::add);
+        this.context.sendMultiTileUnload(loadedPositions);
 
         //untrack all positions
         //  (using temporary set to avoid CME)
         try (SimpleSet<POS> tmp = this.mode.directPosAccess().newPositionSet()) {
-            this.waitingPositions.forEach(tmp::add);
-            this.loadedPositions.forEach(tmp::add);
+            this.waitingPositions.keySet().forEach(tmp::add);
+            loadedPositions.forEach(tmp::add);
 
             tmp.forEach(pos -> this.manager.stopTracking(this, pos));
         }
 
         //release everything
-        this.queuedPositions.close();
-        this.loadedPositions.close();
+        this.queuedPositions.clear();
+        for (int level = 0; level < MAX_LODS; level++) {
+            if (this.shellOrders[level] != null) {
+                this.manager.releaseShellOrder(this.shellOrders[level]);
+                this.shellOrders[level] = null;
+            }
+        }
+        for (NDimensionalIntSet set : this.loadedPositions) {
+            set.release();
+        }
         this.waitingPositions.clear();
         this.doneWaitingPositions.clear();
     }
 
+    @Override
+    public Comparator<POS> priorityComparator() {
+        Comparator<POS> comparator = this.priorityComparator;
+        return comparator != null ? comparator : Comparator.naturalOrder(); //the tracker hasn't been updated yet
+    }
+
+    @Override
+    public boolean isVisible(@NonNull POS pos) {
+        STATE state = this.lastState;
+        if (state == null) { //the tracker hasn't been updated yet
+            return true;
+        }
+
+        int[] min = new int[this.axisCount];
+        int[] max = new int[this.axisCount];
+        return this.visibleBounds(state, pos.level(), min, max) && contains(min, max, this.axes(pos, new int[this.axisCount]));
+    }
+
     @DebugOnly
     @Override
     public DebugStats.Tracking debugStats() {
         //i don't care that i'm calling #count() and #size() in a not thread-safe manner - worst-case scenario, the count is reported incorrectly for a split second
 
+        long loaded = this.loadedCount();
+        int loading = this.waitingPositions.size();
+
         return DebugStats.Tracking.builder()
-                .tilesLoaded(this.loadedPositions.count())
-                .tilesLoading(this.waitingPositions.size())
-                .tilesQueued(this.queuedPositions.size())
+                .tilesLoaded(loaded)
+                .tilesLoading(loading)
+                .tilesQueued(Math.max(this.visibleCount - loaded - loading, 0L))
+                .loadWindow(this.loadWindow.window())
+                .avgLoadLatency(this.loadWindow.averageLatency())
                 .tilesTrackedGlobal(this.manager.entries().size())
                 .lastUpdateDuration(this.lastUpdateTime)
                 .avgUpdateDuration(this.lastUpdateTime)
@@ -370,31 +609,52 @@ public abstract class AbstractTracker<POS extends IFarPos, T extends IFarTile, S
     protected abstract boolean shouldTriggerUpdate(@NonNull STATE oldState, @NonNull STATE newState);
 
     /**
-     * Enumerates every tile position visible in the given {@link STATE}.
+     * Checks whether or not the difference between two given {@link STATE}s only affects the order in which tiles should be loaded, and is sufficiently drastic to
+     * warrant re-ordering the load queue.
+     * <p>
+     * This is only checked if {@link #shouldTriggerUpdate(Object, Object)} returned {@code false}. If the {@link #visibleBounds(Object, int, int[], int[]) visible bounds}
+     * of the two states differ, a full tracking update will be done instead.
      *
-     * @param state    the {@link STATE}
-     * @param callback a callback function which should be called once for every visible tile position
+     * @param oldState the old {@link STATE}
+     * @param newState the new {@link STATE}
+     * @return whether or not the load queue should be re-ordered
      */
-    protected abstract void allPositions(@NonNull STATE state, @NonNull Consumer<POS> callback);
+    protected boolean shouldTriggerReorder(@NonNull STATE oldState, @NonNull STATE newState) {
+        return false;
+    }
 
     /**
-     * Computes the tile positions whose visibility changed between two given {@link STATE}s.
+     * Gets the bounding box of the tile positions at the given level which are visible in the given {@link STATE}.
+     * <p>
+     * Bounds are given as offsets along each axis, in the same order as {@link IFarDirectPosAccess#getAxisHeap(IFarPos, int)}.
      *
-     * @param oldState the old {@link STATE}
-     * @param newState the new {@link STATE}
-     * @param added    a callback function which should be called once for every tile position which was not visible in the old state but is now visible
-     * @param removed  a callback function which should be called once for every tile position which was visible in the old state but is no longer visible
+     * @param state the {@link STATE}
+     * @param level the detail level
+     * @param min   an array to store the minimum visible offset along each axis (inclusive) in
+     * @param max   an array to store the maximum visible offset along each axis (inclusive) in
+     * @return whether or not any tile positions at the given level are visible. If {@code false}, the contents of {@code min} and {@code max} are undefined
      */
-    protected abstract void deltaPositions(@NonNull STATE oldState, @NonNull STATE newState, @NonNull Consumer<POS> added, @NonNull Consumer<POS> removed);
+    protected abstract boolean visibleBounds(@NonNull STATE state, int level, @NonNull int[] min, @NonNull int[] max);
 
     /**
-     * Checks whether or not the given tile position is visible in the given state.
+     * Gets the point at the given level which tiles visible in the given {@link STATE} should be loaded outwards from.
+     *
+     * @param state the {@link STATE}
+     * @param level the detail level
+     * @param dst   an array to store the offset along each axis in
+     */
+    protected abstract void origin(@NonNull STATE state, int level, @NonNull int[] dst);
+
+    /**
+     * Gets the direction at the given level in which tiles visible in the given {@link STATE} should be prioritized.
+     * <p>
+     * Of the tiles at the same distance from the {@link #origin(Object, int, int[]) origin}, the ones closest to this direction will be loaded first.
      *
      * @param state the {@link STATE}
-     * @param pos   the tile position to check
-     * @return whether or not the tile position is visible
+     * @param level the detail level
+     * @param dst   an array to store the direction vector in. Need not be normalized, may be all zeroes if there is no preferred direction
      */
-    protected abstract boolean isVisible(@NonNull STATE state, @NonNull POS pos);
+    protected abstract void direction(@NonNull STATE state, int level, @NonNull double[] dst);
 
     /**
      * Gets a {@link Comparator} which can be used for sorting the tile positions visible in the given {@link STATE} by their load priority.
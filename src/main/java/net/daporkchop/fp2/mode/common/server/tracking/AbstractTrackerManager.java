@@ -20,6 +20,8 @@
 
 package net.daporkchop.fp2.mode.common.server.tracking;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -36,22 +38,26 @@ import net.daporkchop.fp2.mode.api.server.tracking.IFarTrackerManager;
 import net.daporkchop.fp2.mode.api.tile.ITileHandle;
 import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
 import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
+import net.daporkchop.fp2.util.SimpleRecycler;
 import net.daporkchop.fp2.util.annotation.CalledFromServerThread;
 import net.daporkchop.fp2.util.annotation.DebugOnly;
 import net.daporkchop.fp2.util.datastructure.CompactReferenceArraySet;
+import net.daporkchop.fp2.util.datastructure.LockingEntryMap;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
 import net.daporkchop.fp2.util.threading.scheduler.NoFutureScheduler;
 import net.daporkchop.fp2.util.threading.scheduler.Scheduler;
+import net.daporkchop.fp2.util.threading.workergroup.SharedWorkerPool;
 import net.daporkchop.lib.common.misc.string.PStrings;
 import net.daporkchop.lib.common.misc.threadfactory.PThreadFactories;
-import net.daporkchop.lib.unsafe.PUnsafe;
 
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiFunction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -64,24 +70,45 @@ import static net.daporkchop.lib.common.util.PValidation.*;
  */
 @Getter
 public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFarTile> implements IFarTrackerManager<POS, T>, IFarStorage.Listener<POS, T> {
+    /**
+     * The worker pool shared by the tracker managers of every render mode in every dimension.
+     */
+    public static final SharedWorkerPool TRACKER_WORKER_POOL = ThreadingHelper.sharedWorkerPool(
+            () -> FP2Config.global().performance().trackingThreads(),
+            PThreadFactories.builder().daemon().minPriority().collapsingId().name("FP2 Tracker #%d").build());
+
+    /**
+     * The number of pending tile loads per terrain thread above which tile loading is considered to be congested.
+     * <p>
+     * Pending loads are deliberately counted over all of this manager's trackers rather than per tracker: congestion is a property of the terrain workers, which are
+     * shared by everyone, and a tile which several players are waiting on only has to be loaded once. Each tracker's own share of the work is already limited by its
+     * {@link AdaptiveLoadWindow}, so a tracker waiting on many tiles doesn't need to be penalized any more than the others when the workers fall behind.
+     */
+    protected static final int CONGESTED_LOADS_FACTOR = 4;
+
     protected final IFarTileProvider<POS, T> tileProvider;
 
-    protected final Map<POS, Entry> entries = new ConcurrentHashMap<>();
+    protected final LockingEntryMap<POS, Entry> entries = new LockingEntryMap<>();
     protected final Map<IFarServerContext<POS, T>, AbstractTracker<POS, T, ?>> trackers = new IdentityHashMap<>();
 
-    protected final Scheduler<AbstractTracker<POS, T, ?>, Void> scheduler; //TODO: make this global rather than per-mode and per-dimension
+    //shell orders are shared between all trackers whose visible area at a level fits into the same cube around their origin, which is the case for most players with the
+    //  same render distance
+    protected final Map<ShellOrder.Key, ShellOrder> shellOrders = new HashMap<>();
+
+    protected final Scheduler<AbstractTracker<POS, T, ?>, Void> scheduler;
 
     protected final int generationThreads = FP2Config.global().performance().terrainThreads();
 
+    //the number of tiles which are currently being loaded for at least one tracker
+    protected final AtomicInteger pendingLoads = new AtomicInteger();
+
     public AbstractTrackerManager(@NonNull IFarTileProvider<POS, T> tileProvider) {
         this.tileProvider = tileProvider;
 
         this.scheduler = new NoFutureScheduler<>(AbstractTracker::doUpdate,
-                ThreadingHelper.workerGroupBuilder()
-                        .world(tileProvider.world())
-                        .threads(FP2Config.global().performance().trackingThreads())
-                        .threadFactory(PThreadFactories.builder().daemon().minPriority().collapsingId()
-                                .name(PStrings.fastFormat("FP2 %s DIM%d Tracker #%%d", tileProvider.mode().name(), ((IFarWorldServer) tileProvider.world()).fp2_IFarWorld_dimensionId())).build()));
+                TRACKER_WORKER_POOL.workerGroupBuilder()
+                        .name(PStrings.fastFormat("%s DIM%d", tileProvider.mode().name(), ((IFarWorldServer) tileProvider.world()).fp2_IFarWorld_dimensionId()))
+                        .world(tileProvider.world()));
 
         tileProvider.storage().addListener(this);
     }
@@ -104,6 +131,15 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
         });
     }
 
+    /**
+     * Checks whether or not the tile scheduler is overloaded, in which case trackers should reduce the number of tiles they're waiting on at once.
+     *
+     * @return whether or not tile loading is congested
+     */
+    public boolean loadsCongested() {
+        return this.pendingLoads.get() > this.generationThreads * CONGESTED_LOADS_FACTOR;
+    }
+
     /**
      * Creates a new {@link AbstractTracker} instance for the given {@link IFarServerContext}.
      *
@@ -166,98 +202,63 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
         //TODO: this
     }
 
-    protected void beginTracking(@NonNull AbstractTracker<POS, T, ?> tracker, @NonNull POS posIn) {
-        class State implements BiFunction<POS, Entry, Entry>, Runnable {
-            Entry entry;
-
-            @Override
-            public Entry apply(@NonNull POS pos, Entry entry) {
-                if (entry == null) { //no entry exists at this position, so we should make a new one
-                    entry = new Entry(pos);
-                } else if (PUnsafe.tryMonitorEnter(entry)) {
-                    this.entry = entry;
-                }
-
-                return entry;
-            }
-
-            @Override
-            public void run() {
-                try {
-                    this.entry.addTracker(tracker);
-                } finally {
-                    PUnsafe.monitorExit(this.entry);
-                }
-            }
+    /**
+     * Gets the {@link ShellOrder} with the given parameters, creating it if it doesn't exist.
+     * <p>
+     * The returned order must be released using {@link #releaseShellOrder(ShellOrder)} once no longer needed.
+     *
+     * @param key the parameters
+     * @return the {@link ShellOrder}
+     */
+    protected ShellOrder retainShellOrder(@NonNull ShellOrder.Key key) {
+        synchronized (this.shellOrders) {
+            ShellOrder order = this.shellOrders.computeIfAbsent(key, ShellOrder::new);
+            order.refCnt++;
+            return order;
         }
-
-        State state = new State();
-        do {
-            this.entries.compute(posIn, state);
-        } while (state.entry == null);
-        state.run();
     }
 
-    protected void stopTracking(@NonNull AbstractTracker<POS, T, ?> tracker, @NonNull POS posIn) {
-        class State implements BiFunction<POS, Entry, Entry> {
-            boolean spin;
-
-            @Override
-            public Entry apply(@NonNull POS pos, Entry entry) {
-                checkState(entry != null, "cannot remove player %s from non-existent tracking entry at %s", tracker, pos);
-
-                if (!PUnsafe.tryMonitorEnter(entry)) { //failed to acquire a lock, break out and spin
-                    this.spin = true;
-                    return entry;
-                }
-
-                try {
-                    this.spin = false;
-                    return entry.removeTracker(tracker);
-                } finally {
-                    PUnsafe.monitorExit(entry);
-                }
+    /**
+     * Releases a {@link ShellOrder} previously returned by {@link #retainShellOrder(ShellOrder.Key)}.
+     *
+     * @param order the {@link ShellOrder}
+     */
+    protected void releaseShellOrder(@NonNull ShellOrder order) {
+        synchronized (this.shellOrders) {
+            checkState(order.refCnt > 0, "shell order %s has already been released!", order.key());
+            if (--order.refCnt == 0) { //nobody is using the order any more, remove it
+                checkState(this.shellOrders.remove(order.key(), order), "failed to remove shell order %s", order.key());
             }
         }
+    }
 
-        State state = new State();
-        do {
-            this.entries.compute(posIn, state);
-        } while (state.spin);
+    protected void beginTracking(@NonNull AbstractTracker<POS, T, ?> tracker, @NonNull POS pos) {
+        this.entries.runLocked(pos, Entry::new, entry -> {
+            entry.addTracker(tracker);
+            return false;
+        });
+    }
+
+    protected void stopTracking(@NonNull AbstractTracker<POS, T, ?> tracker, @NonNull POS pos) {
+        //the entry is removed once no trackers are left
+        checkState(this.entries.runLockedIfPresent(pos, entry -> entry.removeTracker(tracker) == null),
+                "cannot remove player %s from non-existent tracking entry at %s", tracker, pos);
     }
 
     /**
      * @author DaPorkchop_
      */
     @RequiredArgsConstructor
-    protected abstract class AbstractEntryOperation_VoidIfPresent implements BiFunction<POS, Entry, Entry>, Runnable {
+    protected abstract class AbstractEntryOperation_VoidIfPresent implements Runnable {
         @NonNull
         protected final POS pos;
 
-        protected Entry entry;
-        protected boolean spin;
-
-        @Override
-        public Entry apply(@NonNull POS pos, @NonNull Entry entry) {
-            this.entry = entry;
-            this.spin = !PUnsafe.tryMonitorEnter(entry);
-
-            return entry;
-        }
-
         @Override
         public void run() {
-            do {
-                AbstractTrackerManager.this.entries.computeIfPresent(this.pos, this);
-            } while (this.spin);
-
-            if (this.entry != null) {
-                try {
-                    this.run(this.entry);
-                } finally {
-                    PUnsafe.monitorExit(this.entry);
-                }
-            }
+            AbstractTrackerManager.this.entries.runLockedIfPresent(this.pos, entry -> {
+                this.run(entry);
+                return false;
+            });
         }
 
         protected abstract void run(@NonNull Entry entry);
@@ -282,6 +283,8 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
         protected Set<AbstractTracker<POS, T, ?>> trackersWaitingForLoad; //all tracker instances which are waiting for the load future to be completed, or null if empty
 
         protected long lastSentTimestamp = ITileMetadata.TIMESTAMP_BLANK;
+        protected ITileSnapshot<POS, T> deltaBase; //the most recently broadcast version of the tile, kept compressed in order to compute a delta against it. this is only
+        //  taken once the tile is scheduled for an update, and is dropped again once the update has been broadcast or the tile is no longer dirty
 
         public Entry(@NonNull POS pos) {
             this.pos = pos;
@@ -307,6 +310,7 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
                     this.updateFuture.cancel(false);
                     this.updateFuture = null;
                 }
+                this.deltaBase = null;
 
                 //this entry should be replaced with null
                 return null;
@@ -323,11 +327,18 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
             checkState(this.trackersWaitingForLoad.add(tracker), "already waiting for load: %s", tracker);
 
             if (this.loadFuture == null) { //loadFuture isn't set, schedule a new one
+                AbstractTrackerManager.this.pendingLoads.incrementAndGet();
                 this.loadFuture = AbstractTrackerManager.this.tileProvider.requestLoad(this.pos);
                 this.loadFuture.thenAccept(this);
             }
         }
 
+        protected void clearLoadFuture() {
+            this.loadFuture.cancel(false);
+            this.loadFuture = null;
+            AbstractTrackerManager.this.pendingLoads.decrementAndGet();
+        }
+
         protected boolean isWaitingForLoad(@NonNull AbstractTracker<POS, T, ?> tracker) {
             return this.trackersWaitingForLoad != null && this.trackersWaitingForLoad.contains(tracker);
         }
@@ -338,8 +349,7 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
                     this.trackersWaitingForLoad = null;
 
                     //cancel the load future since it's no longer needed
-                    this.loadFuture.cancel(false);
-                    this.loadFuture = null;
+                    this.clearLoadFuture();
                 }
                 return true;
             } else {
@@ -364,21 +374,24 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
             checkState(handle.isInitialized(), "handle at %s hasn't been initialized yet!", this.pos);
 
             if (this.loadFuture != null) { //cancel loadFuture if needed
-                this.loadFuture.cancel(false);
-                this.loadFuture = null;
+                this.clearLoadFuture();
             }
 
-            ITileSnapshot<POS, T> snapshot = handle.snapshot();
-            if (snapshot.timestamp() > this.lastSentTimestamp) { //tile is newer than the tile previously sent to all trackers, so we'll broadcast it to everyone
-                this.lastSentTimestamp = snapshot.timestamp();
+            RefCountedTileSnapshot<POS, T> snapshot = handle.snapshot();
+            try {
+                if (snapshot.timestamp() > this.lastSentTimestamp) { //tile is newer than the tile previously sent to all trackers, so we'll broadcast it to everyone
+                    TileDelta<POS> delta = this.updateLastSent(snapshot);
 
-                super.forEach(tracker -> tracker.notifyChanged(snapshot));
+                    super.forEach(tracker -> tracker.notifyChanged(snapshot, delta));
 
-                //all of the trackers which were waiting for load have been notified as well
-                this.trackersWaitingForLoad = null;
-            } else if (this.trackersWaitingForLoad != null) { //notify only the players which were waiting for the tile to be loaded
-                this.trackersWaitingForLoad.forEach(tracker -> tracker.notifyChanged(snapshot));
-                this.trackersWaitingForLoad = null;
+                    //all of the trackers which were waiting for load have been notified as well
+                    this.trackersWaitingForLoad = null;
+                } else if (this.trackersWaitingForLoad != null) { //notify only the players which were waiting for the tile to be loaded
+                    this.trackersWaitingForLoad.forEach(tracker -> tracker.notifyChanged(snapshot));
+                    this.trackersWaitingForLoad = null;
+                }
+            } finally {
+                snapshot.release();
             }
 
             this.checkDirty(handle);
@@ -391,21 +404,64 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
             checkState(this.updateFuture.isDone(), "tileUpdated called at %s even though it wasn't complete!", this.pos);
             this.updateFuture = null;
 
-            ITileSnapshot<POS, T> snapshot = handle.snapshot();
-            if (snapshot.timestamp() > this.lastSentTimestamp) { //tile is newer than the tile previously sent to all trackers, so we'll broadcast it to all the trackers
-                //  which aren't waiting for an initial load
-                this.lastSentTimestamp = snapshot.timestamp();
-
-                super.forEach(tracker -> {
-                    if (!this.isWaitingForLoad(tracker)) {
-                        tracker.notifyChanged(snapshot);
-                    }
-                });
+            RefCountedTileSnapshot<POS, T> snapshot = handle.snapshot();
+            try {
+                if (snapshot.timestamp() > this.lastSentTimestamp) { //tile is newer than the tile previously sent to all trackers, so we'll broadcast it to all the trackers
+                    //  which aren't waiting for an initial load
+                    TileDelta<POS> delta = this.updateLastSent(snapshot);
+
+                    super.forEach(tracker -> {
+                        if (!this.isWaitingForLoad(tracker)) {
+                            tracker.notifyChanged(snapshot, delta);
+                        }
+                    });
+                }
+            } finally {
+                snapshot.release();
             }
 
             this.checkDirty(handle);
         }
 
+        /**
+         * Marks the given snapshot as the most recently broadcast version of the tile.
+         *
+         * @param snapshot the snapshot which is about to be broadcast
+         * @return the differences between the previously broadcast version of the tile and the given snapshot, or {@code null} if no delta base was taken or sending the
+         * differences wouldn't be any cheaper than sending the whole tile
+         */
+        protected TileDelta<POS> updateLastSent(@NonNull RefCountedTileSnapshot<POS, T> snapshot) {
+            ITileSnapshot<POS, T> base = this.deltaBase;
+            long baseTimestamp = this.lastSentTimestamp;
+
+            this.lastSentTimestamp = snapshot.timestamp();
+            this.deltaBase = null;
+
+            if (base == null || base.timestamp() != baseTimestamp || base.isEmpty() || snapshot.isEmpty()) { //a delta would be unusable or no smaller than the tile itself
+                return null;
+            }
+
+            SimpleRecycler<T> recycler = AbstractTrackerManager.this.tileProvider.mode().tileRecycler();
+            T baseTile = base.loadTile(recycler);
+            T tile = snapshot.loadTile(recycler);
+            ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+            try {
+                tile.writeDelta(baseTile, buf);
+
+                if (buf.readableBytes() >= snapshot.dataSize()) { //the delta is no smaller than the tile itself, it's not worth sending
+                    return null;
+                }
+
+                byte[] data = new byte[buf.readableBytes()];
+                buf.readBytes(data);
+                return new TileDelta<>(this.pos, base.timestamp(), snapshot.timestamp(), data);
+            } finally {
+                buf.release();
+                recycler.release(tile);
+                recycler.release(baseTile);
+            }
+        }
+
         public void tileDirty() {
             this.checkDirty(AbstractTrackerManager.this.tileProvider.storage().handleFor(this.pos));
         }
@@ -415,11 +471,28 @@ public abstract class AbstractTrackerManager<POS extends IFarPos, T extends IFar
                 this.updateFuture = null;
             }
 
-            if (this.updateFuture != null //tile is still being loaded or is already being updated, we shouldn't try to update it again
-                || handle.dirtyTimestamp() == ITileMetadata.TIMESTAMP_BLANK) { //tile isn't dirty, no need to update
+            if (this.updateFuture != null) { //tile is still being loaded or is already being updated, we shouldn't try to update it again
+                return;
+            } else if (handle.dirtyTimestamp() == ITileMetadata.TIMESTAMP_BLANK) { //tile isn't dirty, no need to update
+                this.deltaBase = null;
                 return;
             }
 
+            if (this.deltaBase == null && this.lastSentTimestamp != ITileMetadata.TIMESTAMP_BLANK) {
+                //the tile is about to change, so take a snapshot of the version which was last broadcast in order to be able to compute a delta against it once the update
+                //  is complete. the stored tile data doesn't change until then, so this is only possible if the tile hasn't been updated since it was broadcast.
+                RefCountedTileSnapshot<POS, T> snapshot = handle.snapshot();
+                if (snapshot != null) {
+                    try {
+                        if (snapshot.timestamp() == this.lastSentTimestamp) {
+                            this.deltaBase = snapshot.compressed(AbstractTrackerManager.this.tileProvider.storage().compressionDictionary());
+                        }
+                    } finally {
+                        snapshot.release();
+                    }
+                }
+            }
+
             //schedule a new update task for this tile
             this.updateFuture = AbstractTrackerManager.this.tileProvider.requestUpdate(this.pos);
             this.updateFuture.thenApply(this);
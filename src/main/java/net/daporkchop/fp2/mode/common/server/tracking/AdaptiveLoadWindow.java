@@ -0,0 +1,105 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.tracking;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Controls the number of tiles a single tracker may be waiting on at once, in a manner similar to TCP congestion control.
+ * <p>
+ * The window widens quickly while loads complete quickly (which generally means the tile was already generated and only had to be read from disk), widens slowly
+ * while loads are slow but the tile scheduler isn't overloaded, and is halved (at most once per average load latency) when loads are slow and the tile scheduler is
+ * overloaded.
+ * <p>
+ * Thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public class AdaptiveLoadWindow {
+    /**
+     * Loads which complete faster than this are considered to have been cheap.
+     */
+    public static final long FAST_LOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+
+    /**
+     * The weight given to each new sample when updating the average load latency (the same value TCP uses for smoothing round-trip time).
+     */
+    protected static final double LATENCY_SMOOTHING = 1.0d / 8.0d;
+
+    protected final int minWindow;
+    protected final int maxWindow;
+
+    protected volatile double window;
+    protected volatile long averageLatency;
+    protected long lastDecreaseTime;
+
+    public AdaptiveLoadWindow(int minWindow, int initialWindow, int maxWindow) {
+        this.minWindow = positive(minWindow, "minWindow");
+        this.maxWindow = maxWindow;
+        checkArg(initialWindow >= minWindow && initialWindow <= maxWindow, "initialWindow (%s) must be in range [%s, %s]", initialWindow, minWindow, maxWindow);
+
+        this.window = initialWindow;
+        this.lastDecreaseTime = System.nanoTime();
+    }
+
+    /**
+     * @return the maximum number of tiles which may be loading at once
+     */
+    public int window() {
+        return (int) this.window;
+    }
+
+    /**
+     * @return the average time taken for a tile to load, in nanoseconds
+     */
+    public long averageLatency() {
+        return this.averageLatency;
+    }
+
+    /**
+     * Updates the window after a load has completed.
+     *
+     * @param latency   the time taken for the tile to load, in nanoseconds
+     * @param congested whether or not the tile scheduler is currently overloaded
+     */
+    public synchronized void loadCompleted(long latency, boolean congested) {
+        long averageLatency = this.averageLatency;
+        this.averageLatency = averageLatency == 0L ? latency : averageLatency + (long) ((latency - averageLatency) * LATENCY_SMOOTHING);
+
+        double window = this.window;
+        if (latency <= FAST_LOAD_NANOS) { //cheap load: widen quickly
+            window += 1.0d;
+        } else if (congested) { //expensive load while the scheduler is overloaded: back off, but only once per average latency so that we don't collapse the window
+            //  in response to a single burst of slow loads
+            long now = System.nanoTime();
+            if (now - this.lastDecreaseTime >= this.averageLatency) {
+                this.lastDecreaseTime = now;
+                window *= 0.5d;
+            }
+        } else { //expensive load, but there's still capacity to spare: widen slowly
+            window += 1.0d / window;
+        }
+        this.window = max(min(window, this.maxWindow), this.minWindow);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.tracking;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.math.PMath.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * The tile positions inside a cube centered on the origin, in order of Manhattan distance from the origin.
+ * <p>
+ * Positions are generated lazily, one distance "shell" at a time. Since the order only depends on the size of the cube, instances are shared between all trackers whose
+ * visible area at a level fits into the same cube around their load origin (see {@link AbstractTrackerManager#retainShellOrder(Key)}), regardless of where the players
+ * actually are or which direction they're facing. Each tracker keeps its own cursor into the shared order, and translates and filters the positions it gets from it
+ * (see {@link ShellQueue}); a shell is cached for as long as any tracker is still consuming it.
+ * <p>
+ * A position is represented by an {@code int[]} containing its offset from the origin along each axis (in the same order as
+ * {@link net.daporkchop.fp2.mode.api.IFarDirectPosAccess#getAxisHeap(net.daporkchop.fp2.mode.api.IFarPos, int)}). Shells are stored as consecutive groups of
+ * {@code axisCount} ints, and must not be modified.
+ *
+ * @author DaPorkchop_
+ */
+public class ShellOrder {
+    /**
+     * The maximum number of ints which may be cached by a single instance. Once exceeded, shells will be generated separately for each tracker.
+     * <p>
+     * This limits memory usage when one tracker falls far behind the others.
+     */
+    public static final long MAX_CACHED_INTS = 1L << 20L;
+
+    /**
+     * The step to which the radius of a {@link Key} is rounded up.
+     * <p>
+     * Coarser values allow more players to share the same order, at the cost of more positions outside of each tracker's visible area being generated and skipped.
+     */
+    public static final int RADIUS_STEP = 8;
+
+    protected static final int[] EMPTY_SHELL = new int[0];
+
+    @Getter
+    protected final Key key;
+    @Getter
+    protected final int axisCount;
+    @Getter
+    protected final int maxDistance;
+
+    protected final Int2ObjectMap<int[]> shells = new Int2ObjectOpenHashMap<>();
+    protected long cachedInts;
+
+    //the number of trackers currently consuming each shell, indexed by distance
+    protected final int[] cursors;
+    protected int minCursor;
+
+    protected int refCnt; //guarded by the AbstractTrackerManager's shellOrders map
+
+    protected final int[] scratch;
+    protected int[] buffer;
+    protected int bufferSize;
+
+    public ShellOrder(@NonNull Key key) {
+        this.key = key;
+        this.axisCount = key.axisCount;
+
+        //the corners of the cube are the farthest positions from the origin
+        this.maxDistance = toInt(key.radius * (long) this.axisCount, "maxDistance");
+
+        this.cursors = new int[this.maxDistance + 1];
+        this.minCursor = this.maxDistance + 1;
+
+        this.scratch = new int[this.axisCount];
+        this.buffer = new int[this.axisCount << 6];
+    }
+
+    /**
+     * Notifies this order that a tracker has started consuming it at distance {@code 0}.
+     */
+    public synchronized void enter() {
+        this.cursors[0]++;
+        this.minCursor = 0;
+    }
+
+    /**
+     * Notifies this order that a tracker has finished consuming the shell at the given distance, and is moving on to the next one.
+     *
+     * @param distance the distance of the shell the tracker has finished consuming
+     */
+    public synchronized void advance(int distance) {
+        checkState(this.cursors[distance]-- > 0, "no tracker at distance %s!", distance);
+        this.cursors[distance + 1]++;
+        this.trim();
+    }
+
+    /**
+     * Notifies this order that a tracker has stopped consuming it.
+     *
+     * @param distance the distance of the shell the tracker was consuming
+     */
+    public synchronized void leave(int distance) {
+        checkState(this.cursors[distance]-- > 0, "no tracker at distance %s!", distance);
+        this.trim();
+    }
+
+    protected void trim() {
+        //drop every shell which no tracker is still consuming
+        while (this.minCursor <= this.maxDistance && this.cursors[this.minCursor] == 0) {
+            int[] shell = this.shells.remove(this.minCursor++);
+            if (shell != null) {
+                this.cachedInts -= shell.length;
+            }
+        }
+    }
+
+    /**
+     * @return the total number of ints in all of the shells currently cached by this order
+     */
+    public synchronized long cachedInts() {
+        return this.cachedInts;
+    }
+
+    /**
+     * Gets the shell at the given distance, generating it if needed.
+     *
+     * @param distance the distance
+     * @return the shell. Must not be modified!
+     */
+    public synchronized int[] shell(int distance) {
+        checkIndex(this.maxDistance + 1, distance);
+
+        int[] shell = this.shells.get(distance);
+        if (shell == null) {
+            this.bufferSize = 0;
+            this.generateShell(0, distance);
+            shell = this.bufferSize == 0 ? EMPTY_SHELL : Arrays.copyOf(this.buffer, this.bufferSize);
+
+            if (this.cachedInts + shell.length <= MAX_CACHED_INTS) {
+                this.shells.put(distance, shell);
+                this.cachedInts += shell.length;
+            }
+        }
+        return shell;
+    }
+
+    protected void generateShell(int axis, int remaining) {
+        int radius = this.key.radius;
+
+        if (axis == this.axisCount - 1) { //the offset along the last axis is determined by the remaining distance
+            if (remaining <= radius) {
+                this.emit(remaining);
+                if (remaining != 0) {
+                    this.emit(-remaining);
+                }
+            }
+        } else {
+            for (int delta = -min(radius, remaining), end = min(radius, remaining); delta <= end; delta++) {
+                this.scratch[axis] = delta;
+                this.generateShell(axis + 1, remaining - abs(delta));
+            }
+        }
+    }
+
+    protected void emit(int last) {
+        if (this.bufferSize + this.axisCount > this.buffer.length) { //grow buffer
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length << 1);
+        }
+
+        this.scratch[this.axisCount - 1] = last;
+        System.arraycopy(this.scratch, 0, this.buffer, this.bufferSize, this.axisCount);
+        this.bufferSize += this.axisCount;
+    }
+
+    /**
+     * The parameters which uniquely identify a {@link ShellOrder}.
+     *
+     * @author DaPorkchop_
+     */
+    @Data
+    public static final class Key {
+        /**
+         * Gets the {@link Key} of the order which should be used for enumerating the positions in the given box around the given origin.
+         *
+         * @param min    the minimum offset along each axis (inclusive)
+         * @param max    the maximum offset along each axis (inclusive)
+         * @param origin the origin
+         * @return the {@link Key}
+         */
+        public static Key of(@NonNull int[] min, @NonNull int[] max, @NonNull int[] origin) {
+            checkArg(min.length == origin.length && max.length == origin.length, "all arrays must have the same length");
+
+            int radius = 0;
+            for (int axis = 0; axis < origin.length; axis++) {
+                radius = max(radius, max(origin[axis] - min[axis], max[axis] - origin[axis]));
+            }
+            return new Key(origin.length, roundUp(radius, RADIUS_STEP));
+        }
+
+        protected final int axisCount;
+        protected final int radius;
+
+        public Key(int axisCount, int radius) {
+            this.axisCount = positive(axisCount, "axisCount");
+            this.radius = notNegative(radius, "radius");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.mode.common.server.tracking;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Lazily enumerates the tile positions inside an axis-aligned box at each level, in order of load priority: first by level, then by Manhattan distance from the level's
+ * origin, and then (optionally) by how closely they are aligned with the level's direction.
+ * <p>
+ * The positions themselves are generated by the (potentially shared) {@link ShellOrder}s, this class only keeps track of how far along them it is. It moves each shell to
+ * its own origin, skips the positions outside of its own box and applies its own direction, so an order can be shared by trackers anywhere in the world. A position is
+ * represented by its level and an {@code int[]} containing its offset along each axis.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public class ShellQueue {
+    /**
+     * The number of groups into which the positions in a shell are divided according to the angle between them and the direction. Groups closer to the direction are
+     * returned first, the order of the positions in a group is unspecified.
+     */
+    public static final int DIRECTION_BUCKETS = 8;
+
+    protected static final byte OUTSIDE_BOX = -1;
+
+    /**
+     * A predicate which is tested against each position as it's polled from the queue.
+     *
+     * @author DaPorkchop_
+     */
+    @FunctionalInterface
+    public interface Filter {
+        /**
+         * @param level the position's level
+         * @param axes  the position's offset along each axis. Must not be modified!
+         * @return whether or not the position should be skipped
+         */
+        boolean skip(int level, @NonNull int[] axes);
+    }
+
+    protected final int axisCount;
+
+    protected final ShellOrder[] orders = new ShellOrder[MAX_LODS];
+    protected final int[][] origins = new int[MAX_LODS][];
+    protected final int[][] mins = new int[MAX_LODS][];
+    protected final int[][] maxs = new int[MAX_LODS][];
+    protected final double[][] directions = new double[MAX_LODS][]; //normalized, or null if there is no preferred direction at the level
+    protected final int[] maxDistances = new int[MAX_LODS];
+
+    protected int level;
+    protected ShellOrder order; //the order currently being consumed, or null if none
+    protected int distance;
+
+    protected int[] shell;
+    protected int shellIndex;
+    protected int bucket;
+    protected int bucketCount; //one more than the highest direction bucket used by any position in the current shell
+    protected byte[] buckets = new byte[64]; //the direction bucket of each position in the current shell, or OUTSIDE_BOX
+
+    public ShellQueue(int axisCount) {
+        this.axisCount = positive(axisCount, "axisCount");
+
+        this.rewind();
+    }
+
+    /**
+     * Removes all levels from this queue.
+     */
+    public void clear() {
+        this.rewind();
+        Arrays.fill(this.orders, null);
+        Arrays.fill(this.origins, null);
+        Arrays.fill(this.mins, null);
+        Arrays.fill(this.maxs, null);
+        Arrays.fill(this.directions, null);
+    }
+
+    /**
+     * Adds the given level to this queue.
+     * <p>
+     * {@link #rewind()} must be called before any positions at the level will be returned.
+     *
+     * @param level     the level
+     * @param order     the {@link ShellOrder} which will generate the positions. Its cube must contain the whole box when centered on the origin
+     * @param origin    the position which will be returned first
+     * @param min       the minimum position along each axis (inclusive)
+     * @param max       the maximum position along each axis (inclusive)
+     * @param direction the direction in which positions at the same distance from the origin should be prioritized. Need not be normalized, may be {@code null} or all
+     *                  zeroes if there is no preferred direction
+     */
+    public void addLevel(int level, @NonNull ShellOrder order, @NonNull int[] origin, @NonNull int[] min, @NonNull int[] max, double[] direction) {
+        checkIndex(MAX_LODS, level);
+        checkArg(order.axisCount() == this.axisCount, "order must have exactly %s axes", this.axisCount);
+        checkArg(origin.length == this.axisCount && min.length == this.axisCount && max.length == this.axisCount, "all arrays must have exactly %s elements", this.axisCount);
+        checkArg(direction == null || direction.length == this.axisCount, "all arrays must have exactly %s elements", this.axisCount);
+
+        //the farthest corner of the box determines the largest distance at which there may still be positions
+        int maxDistance = 0;
+        for (int axis = 0; axis < this.axisCount; axis++) {
+            int reach = max(abs(origin[axis] - min[axis]), abs(max[axis] - origin[axis]));
+            checkArg(reach <= order.key().radius(), "box doesn't fit into %s around %s", order.key(), Arrays.toString(origin));
+            maxDistance += reach;
+        }
+
+        double[] normalizedDirection = null;
+        if (direction != null) {
+            double length = 0.0d;
+            for (double d : direction) {
+                length += d * d;
+            }
+            if (length != 0.0d) {
+                length = sqrt(length);
+                normalizedDirection = new double[this.axisCount];
+                for (int axis = 0; axis < this.axisCount; axis++) {
+                    normalizedDirection[axis] = direction[axis] / length;
+                }
+            }
+        }
+
+        this.orders[level] = order;
+        this.origins[level] = origin.clone();
+        this.mins[level] = min.clone();
+        this.maxs[level] = max.clone();
+        this.directions[level] = normalizedDirection;
+        this.maxDistances[level] = maxDistance;
+    }
+
+    /**
+     * Resets this queue to the highest-priority position.
+     */
+    public void rewind() {
+        this.leave();
+
+        this.level = -1;
+        this.shell = null;
+        this.shellIndex = 0;
+        this.bucket = 0;
+        this.bucketCount = 0;
+    }
+
+    protected void leave() {
+        if (this.order != null) { //notify the current order that we're no longer consuming it
+            this.order.leave(this.distance);
+            this.order = null;
+        }
+    }
+
+    /**
+     * Gets the next position from this queue which isn't skipped by the given {@link Filter}.
+     *
+     * @param dst    an array to store the position's offset along each axis in
+     * @param filter the {@link Filter}
+     * @return the position's level, or {@code -1} if the queue is exhausted
+     */
+    public int poll(@NonNull int[] dst, @NonNull Filter filter) {
+        do {
+            int[] shell = this.shell;
+            if (shell != null) {
+                int[] origin = this.origins[this.level];
+                int count = shell.length / this.axisCount;
+                for (; this.bucket < this.bucketCount; this.bucket++, this.shellIndex = 0) {
+                    while (this.shellIndex < count) {
+                        int index = this.shellIndex++;
+                        if (this.buckets[index] != this.bucket) {
+                            continue;
+                        }
+
+                        for (int axis = 0, base = index * this.axisCount; axis < this.axisCount; axis++) {
+                            dst[axis] = origin[axis] + shell[base + axis];
+                        }
+                        if (!filter.skip(this.level, dst)) {
+                            return this.level;
+                        }
+                    }
+                }
+            }
+        } while (this.nextShell());
+
+        return -1;
+    }
+
+    protected boolean nextShell() {
+        this.shellIndex = 0;
+        this.bucket = 0;
+        this.bucketCount = 0;
+
+        if (this.order != null && this.distance < this.maxDistances[this.level]) { //advance to the next shell at the current level
+            this.order.advance(this.distance++);
+        } else { //the current level is exhausted, advance to the next one
+            this.leave();
+
+            do {
+                if (++this.level >= MAX_LODS) { //there are no levels left
+                    this.level = MAX_LODS;
+                    this.shell = null;
+                    return false;
+                }
+            } while (this.orders[this.level] == null);
+
+            this.order = this.orders[this.level];
+            this.order.enter();
+            this.distance = 0;
+        }
+
+        this.shell = this.order.shell(this.distance);
+        this.assignBuckets();
+        return true;
+    }
+
+    protected void assignBuckets() {
+        int axisCount = this.axisCount;
+        int[] shell = this.shell;
+        int[] origin = this.origins[this.level];
+        int[] min = this.mins[this.level];
+        int[] max = this.maxs[this.level];
+        double[] direction = this.directions[this.level];
+
+        int count = shell.length / axisCount;
+        if (this.buckets.length < count) { //grow buckets array
+            this.buckets = new byte[max(count, this.buckets.length << 1)];
+        }
+        byte[] buckets = this.buckets;
+
+        int bucketCount = 0;
+        for (int i = 0, base = 0; i < count; i++, base += axisCount) {
+            double dot = 0.0d;
+            double lengthSq = 0.0d;
+            boolean inside = true;
+            for (int axis = 0; axis < axisCount; axis++) {
+                int d = shell[base + axis];
+                int pos = origin[axis] + d;
+                inside &= pos >= min[axis] && pos <= max[axis];
+                if (direction != null) {
+                    dot += d * direction[axis];
+                    lengthSq += d * d;
+                }
+            }
+
+            if (!inside) {
+                buckets[i] = OUTSIDE_BOX;
+                continue;
+            }
+
+            int bucket = 0; //positions are all in the same bucket if there is no direction, and the origin itself always comes first
+            if (lengthSq != 0.0d) { //map the cosine of the angle between the position and the direction from [1, -1] to [0, DIRECTION_BUCKETS)
+                double cos = dot / sqrt(lengthSq);
+                bucket = min((int) ((1.0d - cos) * (DIRECTION_BUCKETS * 0.5d)), DIRECTION_BUCKETS - 1);
+            }
+            buckets[i] = (byte) bucket;
+            bucketCount = max(bucketCount, bucket + 1);
+        }
+        this.bucketCount = bucketCount;
+    }
+}
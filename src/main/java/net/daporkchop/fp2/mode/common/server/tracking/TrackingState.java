@@ -37,11 +37,49 @@ import static net.daporkchop.fp2.util.math.MathUtil.*;
  */
 @Data
 public class TrackingState {
+    /**
+     * The fraction of the cutoff distance by which the load origin is moved in the direction the player is looking.
+     */
+    public static final double LOOK_AHEAD_FACTOR = 1.0d / 8.0d;
+
+    /**
+     * The number of ticks of movement at the player's current velocity by which the load origin is moved ahead of the player.
+     */
+    public static final int PREDICTION_TICKS = 20;
+
+    /**
+     * The minimum speed (in blocks/tick) at which the player's velocity is taken into account.
+     * <p>
+     * Below this speed, the player would move less than a single tile during {@link #PREDICTION_TICKS} ticks.
+     */
+    public static final double MIN_PREDICTED_SPEED = (double) T_VOXELS / PREDICTION_TICKS;
+
+    /**
+     * The maximum speed (in blocks/tick) at which the player's velocity is taken into account.
+     * <p>
+     * Anything faster than this is almost certainly a teleport rather than actual movement.
+     */
+    public static final double MAX_PREDICTED_SPEED = 8.0d;
+
+    /**
+     * The cosine of the angle by which the player's view or travel direction must change in order to trigger a tracking update.
+     */
+    public static final double DIRECTION_TRIGGER_COS = 0.7071067811865476d; //cos(45°)
+
     public static TrackingState createDefault(@NonNull IFarServerContext<?, ?> context) {
         Vec3d pos = context.player().fp2_IFarPlayer_position();
+        Vec3d look = context.player().fp2_IFarPlayer_lookVector();
+        Vec3d velocity = context.player().fp2_IFarPlayer_velocity();
         FP2Config config = context.config();
 
+        double speedSq = sq(velocity.x()) + sq(velocity.y()) + sq(velocity.z());
+        if (speedSq < MIN_PREDICTED_SPEED * MIN_PREDICTED_SPEED || speedSq > MAX_PREDICTED_SPEED * MAX_PREDICTED_SPEED) { //ignore velocity
+            velocity = Vec3d.of(0.0d, 0.0d, 0.0d);
+        }
+
         return new TrackingState(pos.x(), pos.y(), pos.z(),
+                look.x(), look.y(), look.z(),
+                velocity.x(), velocity.y(), velocity.z(),
                 asrRound(config.cutoffDistance(), T_SHIFT),
                 FP2_DEBUG && !config.debug().levelZeroTracking() ? 1 : 0,
                 config.maxLevels());
@@ -51,6 +89,16 @@ public class TrackingState {
     protected final double y;
     protected final double z;
 
+    //unit vector
+    protected final double lookX;
+    protected final double lookY;
+    protected final double lookZ;
+
+    //in blocks/tick, zero if the player isn't moving fast enough for it to matter
+    protected final double velocityX;
+    protected final double velocityY;
+    protected final double velocityZ;
+
     protected final int cutoff;
 
     protected final int minLevel;
@@ -65,4 +113,54 @@ public class TrackingState {
     public boolean hasLevel(int level) {
         return level >= this.minLevel && level < this.maxLevel;
     }
+
+    /**
+     * Gets the number of tiles at the given level by which the player is expected to move along an axis during the next {@link #PREDICTION_TICKS} ticks.
+     *
+     * @param velocity the player's velocity along the axis
+     * @param level    the level
+     * @return the predicted movement, in tiles
+     */
+    public int predictedOffset(double velocity, int level) {
+        int limit = this.cutoff >> 1;
+        long offset = Math.round(velocity * PREDICTION_TICKS / ((double) T_VOXELS * (1L << level)));
+        return (int) Math.max(Math.min(offset, limit), -limit);
+    }
+
+    /**
+     * Gets the number of tiles by which tile loading should be shifted along an axis to prioritize what the player is looking at.
+     *
+     * @param look the player's look vector along the axis
+     * @return the offset, in tiles
+     */
+    public int lookAheadOffset(double look) {
+        return (int) Math.round(look * this.cutoff * LOOK_AHEAD_FACTOR);
+    }
+
+    /**
+     * @return whether or not the player is moving fast enough for their velocity to affect tile loading
+     */
+    public boolean moving() {
+        return this.velocityX != 0.0d || this.velocityY != 0.0d || this.velocityZ != 0.0d;
+    }
+
+    /**
+     * Checks whether or not the direction the player is looking or travelling in has changed significantly between this state and the given one.
+     *
+     * @param other the other {@link TrackingState}
+     * @return whether or not the direction has changed
+     */
+    public boolean directionChanged(@NonNull TrackingState other) {
+        if (this.lookX * other.lookX + this.lookY * other.lookY + this.lookZ * other.lookZ < DIRECTION_TRIGGER_COS) {
+            return true;
+        } else if (this.moving() != other.moving()) {
+            return true;
+        } else if (!this.moving()) {
+            return false;
+        }
+
+        double dot = this.velocityX * other.velocityX + this.velocityY * other.velocityY + this.velocityZ * other.velocityZ;
+        double lengthSq = (sq(this.velocityX) + sq(this.velocityY) + sq(this.velocityZ)) * (sq(other.velocityX) + sq(other.velocityY) + sq(other.velocityZ));
+        return dot < DIRECTION_TRIGGER_COS * Math.sqrt(lengthSq);
+    }
 }
@@ -118,6 +118,12 @@ public class HeightmapDirectPosAccess implements IFarDirectPosAccess<HeightmapPo
         }
     }
 
+    @Override
+    public HeightmapPos fromAxes(int level, @NonNull int[] axes) {
+        checkArg(axes.length == 2, "expected 2 axes, but found %s", axes.length);
+        return new HeightmapPos(level, axes[0], axes[1]);
+    }
+
     @Override
     public int getAxisDirect(long addr, int axis) {
         return PUnsafe.getInt(addr + (long) checkIndex(2, axis) * INT_SIZE);
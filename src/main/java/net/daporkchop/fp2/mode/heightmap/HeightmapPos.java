@@ -54,14 +54,15 @@ public class HeightmapPos implements IFarPos {
     public HeightmapPos(@NonNull ByteBuf buf) {
         this.level = buf.readUnsignedByte();
 
+        //sign bits are flipped so that the encoded positions are ordered the same way as their coordinates
         long interleaved = buf.readLong();
-        this.x = MathUtil.uninterleave2_0(interleaved);
-        this.z = MathUtil.uninterleave2_1(interleaved);
+        this.x = MathUtil.uninterleave2_0(interleaved) ^ Integer.MIN_VALUE;
+        this.z = MathUtil.uninterleave2_1(interleaved) ^ Integer.MIN_VALUE;
     }
 
     @Override
     public void writePos(@NonNull ByteBuf dst) {
-        dst.writeByte(toByte(this.level)).writeLong(MathUtil.interleaveBits(this.x, this.z));
+        dst.writeByte(toByte(this.level)).writeLong(MathUtil.interleaveBits(this.x ^ Integer.MIN_VALUE, this.z ^ Integer.MIN_VALUE));
     }
 
     @Override
@@ -142,6 +143,20 @@ public class HeightmapPos implements IFarPos {
         return coordLimits[this.level].contains2d(this.x, this.z);
     }
 
+    @Override
+    public HeightmapPos nextContainedBy(@NonNull IntAxisAlignedBB coordLimits) {
+        //z is the most significant axis in the interleaved bits
+        int[] next = new int[2];
+        if (!MathUtil.zOrderBigMin(
+                new int[]{ this.z ^ Integer.MIN_VALUE, this.x ^ Integer.MIN_VALUE },
+                new int[]{ coordLimits.minZ() ^ Integer.MIN_VALUE, coordLimits.minX() ^ Integer.MIN_VALUE },
+                new int[]{ coordLimits.maxZ() ^ Integer.MIN_VALUE, coordLimits.maxX() ^ Integer.MIN_VALUE },
+                next)) {
+            return null;
+        }
+        return new HeightmapPos(this.level, next[1] ^ Integer.MIN_VALUE, next[0] ^ Integer.MIN_VALUE);
+    }
+
     @Override
     public Stream<HeightmapPos> allPositionsInBB(int offsetMin, int offsetMax) {
         notNegative(offsetMin, "offsetMin");
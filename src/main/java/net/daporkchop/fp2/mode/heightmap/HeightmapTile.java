@@ -76,6 +76,8 @@ public class HeightmapTile implements IFarTile {
     public static final int ENTRY_SIZE_BYTES = INDEX_SIZE_BYTES + LAYER_SIZE_BYTES * MAX_LAYERS;
     public static final int TILE_SIZE_BYTES = ENTRY_SIZE_BYTES * ENTRY_COUNT;
 
+    public static final int MAX_ENCODED_SIZE = TILE_SIZE_BYTES; //tiles are always encoded in their entirety
+
     public static int layerFlag(int layer) {
         checkArg(layer >= 0 && layer < MAX_LAYERS, "layer index out of bounds (%d)", layer);
         return 1 << layer;
@@ -222,6 +224,58 @@ public class HeightmapTile implements IFarTile {
         return false; //the heightmap renderer has no concept of an "empty" tile
     }
 
+    @Override
+    public void writeDelta(@NonNull IFarTile baseIn, @NonNull ByteBuf dst) {
+        HeightmapTile base = (HeightmapTile) baseIn;
+
+        int countIndex = dst.writerIndex();
+        dst.writeIntLE(-1);
+
+        //write every column which differs from the base tile, prefixed with the distance from the previous changed column
+        int count = 0;
+        for (int i = 0, last = 0; i < ENTRY_COUNT; i++) {
+            long entry = this.addr + i * (long) ENTRY_SIZE_BYTES;
+            long baseEntry = base.addr + i * (long) ENTRY_SIZE_BYTES;
+            if (entryEquals(entry, baseEntry)) {
+                continue;
+            }
+
+            writeVarInt(dst, i - last);
+            last = i;
+            for (int j = 0; j < ENTRY_SIZE; j++) {
+                dst.writeIntLE(PUnsafe.getInt(entry + j * (long) INT_SIZE));
+            }
+            count++;
+        }
+
+        dst.setIntLE(countIndex, count);
+    }
+
+    protected static boolean entryEquals(long entry, long baseEntry) {
+        for (int j = 0; j < ENTRY_SIZE; j++) {
+            if (PUnsafe.getInt(entry + j * (long) INT_SIZE) != PUnsafe.getInt(baseEntry + j * (long) INT_SIZE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void applyDelta(@NonNull ByteBuf src) {
+        for (int count = src.readIntLE(), i = 0, column = 0; i < count; i++) {
+            column += readVarInt(src);
+            long entry = this.addr + checkIndex(ENTRY_COUNT, column) * (long) ENTRY_SIZE_BYTES;
+            for (int j = 0; j < ENTRY_SIZE; j++) {
+                PUnsafe.putInt(entry + j * (long) INT_SIZE, src.readIntLE());
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return TILE_SIZE_BYTES;
+    }
+
     @Override
     public long extra() {
         return 0L; //heightmap renderer doesn't use the extra data field
@@ -21,8 +21,13 @@
 package net.daporkchop.fp2.mode.heightmap.client;
 
 import lombok.NonNull;
-import net.daporkchop.fp2.client.texture.TextureUVs;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.client.texture.StateBiomeTable;
+import net.daporkchop.fp2.compat.vanilla.FastRegistry;
+import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.gl.attribute.AttributeWriter;
+import net.daporkchop.fp2.gl.draw.index.IndexWriter;
+import net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger;
 import net.daporkchop.fp2.mode.common.client.bake.IRenderBaker;
 import net.daporkchop.fp2.mode.common.client.bake.indexed.IndexedBakeOutput;
 import net.daporkchop.fp2.mode.heightmap.HeightmapData;
@@ -30,13 +35,13 @@ import net.daporkchop.fp2.mode.heightmap.HeightmapPos;
 import net.daporkchop.fp2.mode.heightmap.HeightmapTile;
 import net.daporkchop.fp2.mode.heightmap.client.struct.HeightmapGlobalAttributes;
 import net.daporkchop.fp2.mode.heightmap.client.struct.HeightmapLocalAttributes;
-import net.daporkchop.fp2.util.SingleBiomeBlockAccess;
-import net.minecraft.util.math.BlockPos;
+import net.daporkchop.lib.common.pool.array.ArrayAllocator;
 
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.stream.Stream;
 
+import static net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger.*;
 import static net.daporkchop.fp2.mode.heightmap.HeightmapConstants.*;
 import static net.daporkchop.fp2.mode.heightmap.HeightmapTile.*;
 import static net.daporkchop.fp2.util.BlockType.*;
@@ -48,6 +53,13 @@ import static net.daporkchop.fp2.util.Constants.*;
  * @author DaPorkchop_
  */
 public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile, IndexedBakeOutput<HeightmapGlobalAttributes, HeightmapLocalAttributes>> {
+    protected static final int VERTEX_ABSENT = -1;
+    protected static final int VERTEX_UNWRITTEN = -2;
+
+    protected static final int SIGNATURE_SIZE = 2;
+
+    protected static final long COLOR_UNKNOWN = -1L;
+
     protected static int vertexMapIndex(int x, int z, int layer) {
         return (x * T_VERTS + z) * MAX_LAYERS + layer;
     }
@@ -93,19 +105,21 @@ public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile,
         //write globals
         output.globals().put(new HeightmapGlobalAttributes(pos.x(), pos.z(), pos.level()));
 
-        final int level = pos.level();
-        final int blockX = pos.blockX();
-        final int blockZ = pos.blockZ();
-
-        final BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
-        final SingleBiomeBlockAccess biomeAccess = new SingleBiomeBlockAccess();
         final HeightmapData data = new HeightmapData();
-        final HeightmapLocalAttributes attributes = new HeightmapLocalAttributes();
+        final boolean greedy = FP2Config.global().performance().greedyMeshing();
 
         final int[] map = new int[T_VERTS * T_VERTS * MAX_LAYERS];
-        Arrays.fill(map, -1);
+        Arrays.fill(map, VERTEX_ABSENT);
+
+        final long[] signatures = greedy ? new long[T_VERTS * T_VERTS * MAX_LAYERS * SIGNATURE_SIZE] : null;
 
-        //write vertices and build index
+        //computing a color multiplier may be expensive, so each vertex's color is only computed once and then cached here
+        final long[] colors = new long[T_VERTS * T_VERTS * MAX_LAYERS];
+        Arrays.fill(colors, COLOR_UNKNOWN);
+
+        final LazyVertices vertices = new LazyVertices(srcs, map, colors, output.verts(), StateBiomeTable.get(), pos.blockX(), pos.blockZ(), pos.level());
+
+        //find all vertices. vertices aren't written until they're actually referenced by a quad, so vertices which are merged away are never written at all
         for (int i = 0; i < 4; i++) {
             HeightmapTile src = srcs[i];
             if (src == null) {
@@ -125,7 +139,11 @@ public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile,
                         int x = dx + (((i >> 1) & 1) << T_SHIFT);
                         int z = dz + ((i & 1) << T_SHIFT);
 
-                        map[vertexMapIndex(x, z, layer)] = this.writeVertex(blockX, blockZ, level, src, x, z, layer, output.verts(), blockPos, biomeAccess, data, attributes);
+                        int index = vertexMapIndex(x, z, layer);
+                        map[index] = VERTEX_UNWRITTEN;
+                        if (greedy) {
+                            vertices.signature(index, signatures);
+                        }
                     }
                 }
             }
@@ -133,24 +151,29 @@ public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile,
 
         final BitSet rendered = new BitSet(T_VERTS * T_VERTS * MAX_LAYERS);
 
+        if (greedy) { //merge flat quads before doing anything else
+            this.mergeQuads(srcs[0], map, signatures, rendered, output.indices(), vertices);
+        }
+
         //write indices
         for (int x = 0; x < T_VOXELS; x++) {
             for (int z = 0; z < T_VOXELS; z++) {
                 for (int layerFlags = srcs[0]._getLayerFlags(x, z), layer = 0; layer < MAX_LAYERS; layer++) {
-                    if ((layerFlags & layerFlag(layer)) == 0) { //layer is unset
+                    if ((layerFlags & layerFlag(layer)) == 0 //layer is unset
+                        || rendered.get(vertexMapIndex(x, z, layer))) { //quad was already merged
                         continue;
                     }
                     srcs[0]._getLayerUnchecked(x, z, layer, data);
 
                     int oppositeCorner, c0, c1, provoking;
-                    if ((provoking = map[vertexMapIndex(x, z, layer)]) < 0
-                        || ((c0 = map[vertexMapIndex(x, z + 1, layer)]) < 0 && (c0 = map[vertexMapIndex(x, z + 1, data.secondaryConnection)]) < 0)
-                        || ((c1 = map[vertexMapIndex(x + 1, z, layer)]) < 0 && (c1 = map[vertexMapIndex(x + 1, z, data.secondaryConnection)]) < 0)
-                        || ((oppositeCorner = map[vertexMapIndex(x + 1, z + 1, layer)]) < 0 && (oppositeCorner = map[vertexMapIndex(x + 1, z + 1, data.secondaryConnection)]) < 0)) {
+                    if ((provoking = present(map, vertexMapIndex(x, z, layer))) < 0
+                        || ((c0 = present(map, vertexMapIndex(x, z + 1, layer))) < 0 && (c0 = present(map, vertexMapIndex(x, z + 1, data.secondaryConnection))) < 0)
+                        || ((c1 = present(map, vertexMapIndex(x + 1, z, layer))) < 0 && (c1 = present(map, vertexMapIndex(x + 1, z, data.secondaryConnection))) < 0)
+                        || ((oppositeCorner = present(map, vertexMapIndex(x + 1, z + 1, layer))) < 0 && (oppositeCorner = present(map, vertexMapIndex(x + 1, z + 1, data.secondaryConnection))) < 0)) {
                         continue; //skip if any of the vertices are missing
                     }
 
-                    output.indices()[renderType(data.state)].appendQuad(oppositeCorner, c1, c0, provoking);
+                    output.indices()[renderType(data.state)].appendQuad(vertices.vertex(oppositeCorner), vertices.vertex(c1), vertices.vertex(c0), vertices.vertex(provoking));
                     rendered.set(vertexMapIndex(x, z, layer));
                 }
             }
@@ -170,7 +193,7 @@ public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile,
                     }
 
                     src._getLayerUnchecked(x & T_MASK, z & T_MASK, layer, data);
-                    int provoking = map[vertexMapIndex(x, z, layer)];
+                    int provoking = vertexMapIndex(x, z, layer);
 
                     for (int dx = -1; dx <= 1; dx += 2) {
                         for (int dz = -1; dz <= 1; dz += 2) {
@@ -178,45 +201,172 @@ public class HeightmapBaker implements IRenderBaker<HeightmapPos, HeightmapTile,
                             if ((dx | dz) >= 0 //at least one offset must be negative - the +,+ quadrant is always handled properly by the first pass
                                 || x + dx == T_VERTS || z + dz == T_VERTS //avoid out of bounds (will never happen in negative direction)
                                 || rendered.get(vertexMapIndex(x + dx, z + dz, layer)) //face behind was rendered correctly
-                                || ((c0 = map[vertexMapIndex(x, z + dz, layer)]) < 0 && (c0 = map[vertexMapIndex(x, z + dz, data.secondaryConnection)]) < 0)
-                                || ((c1 = map[vertexMapIndex(x + dx, z, layer)]) < 0 && (c1 = map[vertexMapIndex(x + dx, z, data.secondaryConnection)]) < 0)
-                                || ((oppositeCorner = map[vertexMapIndex(x + dx, z + dz, layer)]) < 0 && (oppositeCorner = map[vertexMapIndex(x + dx, z + dz, data.secondaryConnection)]) < 0)) {
+                                || ((c0 = present(map, vertexMapIndex(x, z + dz, layer))) < 0 && (c0 = present(map, vertexMapIndex(x, z + dz, data.secondaryConnection))) < 0)
+                                || ((c1 = present(map, vertexMapIndex(x + dx, z, layer))) < 0 && (c1 = present(map, vertexMapIndex(x + dx, z, data.secondaryConnection))) < 0)
+                                || ((oppositeCorner = present(map, vertexMapIndex(x + dx, z + dz, layer))) < 0 && (oppositeCorner = present(map, vertexMapIndex(x + dx, z + dz, data.secondaryConnection))) < 0)) {
                                 continue; //skip if any of the vertices are missing
                             }
 
-                            output.indices()[renderType(data.state)].appendQuad(oppositeCorner, c1, c0, provoking);
+                            output.indices()[renderType(data.state)].appendQuad(vertices.vertex(oppositeCorner), vertices.vertex(c1), vertices.vertex(c0), vertices.vertex(provoking));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Greedily merges adjacent flat quads on the same layer into larger quads.
+     * <p>
+     * A quad is flat if all four of its corners are on its own layer and have identical vertex attributes (apart from their horizontal position). Any two
+     * adjacent flat quads share two corners, and are therefore guaranteed to be interchangeable.
+     */
+    protected void mergeQuads(HeightmapTile src, int[] map, long[] signatures, BitSet rendered, IndexWriter[] indices, LazyVertices vertices) {
+        final HeightmapData data = new HeightmapData();
+
+        ArrayAllocator<int[]> alloc = ALLOC_INT.get();
+        int[] keys = alloc.atLeast(T_VOXELS * T_VOXELS);
+        int[] rects = alloc.atLeast(T_VOXELS * T_VOXELS * RECT_SIZE);
+        try {
+            for (int layer = 0; layer < MAX_LAYERS; layer++) {
+                //key each flat quad by its render type, so that quads from different render passes aren't merged together
+                for (int x = 0; x < T_VOXELS; x++) {
+                    for (int z = 0; z < T_VOXELS; z++) {
+                        int key = -1;
+                        if ((src._getLayerFlags(x, z) & layerFlag(layer)) != 0 && isFlat(map, signatures, x, z, layer)) {
+                            src._getLayerUnchecked(x, z, layer, data);
+                            key = renderType(data.state);
+                        }
+                        keys[x * T_VOXELS + z] = key;
+                    }
+                }
+
+                for (int i = 0, count = GreedyQuadMerger.merge(keys, 0, T_VOXELS, T_VOXELS, rects); i < count; i++) {
+                    int x = rects[i * RECT_SIZE + 0];
+                    int z = rects[i * RECT_SIZE + 1];
+                    int width = rects[i * RECT_SIZE + 2];
+                    int height = rects[i * RECT_SIZE + 3];
+                    int renderType = rects[i * RECT_SIZE + 4];
+
+                    indices[renderType].appendQuad(
+                            vertices.vertex(vertexMapIndex(x + width, z + height, layer)),
+                            vertices.vertex(vertexMapIndex(x + width, z, layer)),
+                            vertices.vertex(vertexMapIndex(x, z + height, layer)),
+                            vertices.vertex(vertexMapIndex(x, z, layer)));
+
+                    for (int dx = 0; dx < width; dx++) {
+                        for (int dz = 0; dz < height; dz++) {
+                            rendered.set(vertexMapIndex(x + dx, z + dz, layer));
                         }
                     }
                 }
             }
+        } finally {
+            alloc.release(rects);
+            alloc.release(keys);
         }
     }
 
-    private int writeVertex(int baseX, int baseZ, int level, HeightmapTile tile, int x, int z, int layer, AttributeWriter<HeightmapLocalAttributes> out, BlockPos.MutableBlockPos pos, SingleBiomeBlockAccess biomeAccess, HeightmapData data, HeightmapLocalAttributes attributes) {
-        baseX += (x & T_VOXELS) << level;
-        baseZ += (z & T_VOXELS) << level;
+    protected static int present(int[] map, int index) {
+        return map[index] != VERTEX_ABSENT ? index : -1;
+    }
 
-        tile._getLayerUnchecked(x & T_MASK, z & T_MASK, layer, data);
+    protected static boolean isFlat(int[] map, long[] signatures, int x, int z, int layer) {
+        int provoking = vertexMapIndex(x, z, layer);
+        return map[provoking] != VERTEX_ABSENT
+               && sameSignature(map, signatures, provoking, vertexMapIndex(x, z + 1, layer))
+               && sameSignature(map, signatures, provoking, vertexMapIndex(x + 1, z, layer))
+               && sameSignature(map, signatures, provoking, vertexMapIndex(x + 1, z + 1, layer));
+    }
 
-        final int blockX = baseX + ((x & T_MASK) << level);
-        final int blockZ = baseZ + ((z & T_MASK) << level);
+    protected static boolean sameSignature(int[] map, long[] signatures, int a, int b) {
+        return map[b] != VERTEX_ABSENT
+               && signatures[a * SIGNATURE_SIZE + 0] == signatures[b * SIGNATURE_SIZE + 0]
+               && signatures[a * SIGNATURE_SIZE + 1] == signatures[b * SIGNATURE_SIZE + 1];
+    }
 
-        pos.setPos(blockX, data.height_int, blockZ);
-        biomeAccess.biome(data.biome);
+    /**
+     * Writes vertices on demand, the first time they are referenced by a quad.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static class LazyVertices {
+        @NonNull
+        protected final HeightmapTile[] srcs;
+        @NonNull
+        protected final int[] map;
+        @NonNull
+        protected final long[] colors;
+        @NonNull
+        protected final AttributeWriter<HeightmapLocalAttributes> out;
+        @NonNull
+        protected final StateBiomeTable table;
+        protected final int blockX;
+        protected final int blockZ;
+        protected final int level;
+
+        protected final HeightmapData data = new HeightmapData();
+        protected final HeightmapLocalAttributes attributes = new HeightmapLocalAttributes();
+
+        /**
+         * Gets the index of the vertex at the given vertex map index, writing it if it hasn't been written yet.
+         *
+         * @param index the vertex map index
+         * @return the index of the vertex
+         */
+        public int vertex(int index) {
+            int vertex = this.map[index];
+            if (vertex == VERTEX_UNWRITTEN) {
+                this.load(index);
+                this.map[index] = vertex = this.out.put(this.attributes);
+            }
+            return vertex;
+        }
+
+        /**
+         * Computes the signature of the vertex at the given vertex map index. Two vertices have the same signature if and only if all of their attributes
+         * apart from their horizontal position are identical.
+         *
+         * @param index      the vertex map index
+         * @param signatures the array to store the signature in
+         */
+        public void signature(int index, long[] signatures) {
+            this.load(index);
+
+            HeightmapLocalAttributes attributes = this.attributes;
+            signatures[index * SIGNATURE_SIZE + 0] = ((long) attributes.heightInt << 32L) | (attributes.color & 0xFFFFFFFFL);
+            signatures[index * SIGNATURE_SIZE + 1] = ((long) attributes.state << 24L) | ((attributes.lightBlock & 0xFF) << 16) | ((attributes.lightSky & 0xFF) << 8) | (attributes.heightFrac & 0xFF);
+        }
 
-        attributes.state = TextureUVs.STATEID_TO_INDEXID.get(data.state);
+        protected void load(int index) {
+            int layer = index % MAX_LAYERS;
+            int x = index / (T_VERTS * MAX_LAYERS);
+            int z = (index / MAX_LAYERS) % T_VERTS;
 
-        int blockLight = data.light & 0xF;
-        int skyLight = data.light >> 4;
-        attributes.lightBlock = (byte) (blockLight | (blockLight << 4));
-        attributes.lightSky = (byte) (skyLight | (skyLight << 4));
-        attributes.color = MC.getBlockColors().colorMultiplier(data.state, biomeAccess, pos, 0);
+            HeightmapData data = this.data;
+            HeightmapLocalAttributes attributes = this.attributes;
 
-        attributes.posHorizX = (byte) x;
-        attributes.posHorizZ = (byte) z;
-        attributes.heightInt = data.height_int;
-        attributes.heightFrac = (byte) data.height_frac;
+            this.srcs[((x >> T_SHIFT) << 1) | (z >> T_SHIFT)]._getLayerUnchecked(x & T_MASK, z & T_MASK, layer, data);
 
-        return out.put(attributes);
+            int state = FastRegistry.getId(data.state);
+            attributes.state = this.table.indexId(state);
+            long color = this.colors[index];
+            if (color == COLOR_UNKNOWN) {
+                this.colors[index] = color = this.table.color(state, data.biome != null ? FastRegistry.getId(data.biome) : -1,
+                        this.blockX + (x << this.level), data.height_int, this.blockZ + (z << this.level)) & 0xFFFFFFFFL;
+            }
+            attributes.color = (int) color;
+
+            int blockLight = data.light & 0xF;
+            int skyLight = data.light >> 4;
+            attributes.lightBlock = (byte) (blockLight | (blockLight << 4));
+            attributes.lightSky = (byte) (skyLight | (skyLight << 4));
+
+            attributes.posHorizX = (byte) x;
+            attributes.posHorizZ = (byte) z;
+            attributes.heightInt = data.height_int;
+            attributes.heightFrac = (byte) data.height_frac;
+        }
     }
 }
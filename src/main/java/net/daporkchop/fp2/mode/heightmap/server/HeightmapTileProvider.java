@@ -48,6 +48,11 @@ public abstract class HeightmapTileProvider extends AbstractFarTileProvider<Heig
         return new HeightmapScalerMinMax();
     }
 
+    @Override
+    protected int maxEncodedTileSize() {
+        return HeightmapTile.MAX_ENCODED_SIZE;
+    }
+
     @Override
     protected IFarTrackerManager<HeightmapPos, HeightmapTile> createTracker() {
         return new HeightmapTrackerManager(this);
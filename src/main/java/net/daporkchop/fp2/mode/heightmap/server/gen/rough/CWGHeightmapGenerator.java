@@ -33,10 +33,13 @@ import net.minecraft.init.Blocks;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.biome.Biome;
 
+import java.util.stream.Stream;
+
 import static net.daporkchop.fp2.mode.heightmap.HeightmapConstants.*;
 import static net.daporkchop.fp2.util.Constants.*;
 import static net.daporkchop.fp2.util.math.MathUtil.*;
 import static net.daporkchop.lib.common.math.PMath.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
  * @author DaPorkchop_
@@ -57,17 +60,25 @@ public class CWGHeightmapGenerator extends AbstractRoughHeightmapGenerator {
             heightsIndex(HMAP_MIN + 1, HMAP_MIN + 1)
     };
 
+    public static final int BATCH_SHIFT = 1;
+    public static final int BATCH_TILES = 1 << BATCH_SHIFT; //the number of tiles along each axis in a batch generation group
+
+    protected static final int BATCH_HMAP_SIZE = (BATCH_TILES - 1) * T_VOXELS + HMAP_SIZE; //adjacent tiles' padding overlaps, so it only needs to be included once
+
     protected static int heightsIndex(int x, int z) {
         return (x - HMAP_MIN) * HMAP_SIZE + z - HMAP_MIN;
     }
 
     protected final Cached<CWGContext> ctx;
+    protected final Cached<CWGContext> batchCtx;
     protected final Cached<double[]> hmapCache = Cached.threadLocal(() -> new double[sq(HMAP_SIZE)], ReferenceStrength.WEAK);
+    protected final Cached<double[]> batchHmapCache = Cached.threadLocal(() -> new double[sq(BATCH_HMAP_SIZE)], ReferenceStrength.WEAK);
 
     public CWGHeightmapGenerator(@NonNull WorldServer world) {
         super(world);
 
         this.ctx = Cached.threadLocal(() -> new CWGContext(world, HMAP_SIZE, 2), ReferenceStrength.WEAK);
+        this.batchCtx = Cached.threadLocal(() -> new CWGContext(world, BATCH_HMAP_SIZE, 2), ReferenceStrength.WEAK);
     }
 
     @Override
@@ -78,17 +89,75 @@ public class CWGHeightmapGenerator extends AbstractRoughHeightmapGenerator {
     @Override
     public void generate(@NonNull HeightmapPos posIn, @NonNull HeightmapTile tile) {
         int level = posIn.level();
-        int baseX = posIn.blockX();
-        int baseZ = posIn.blockZ();
-
-        HeightmapData data = new HeightmapData();
 
         CWGContext ctx = this.ctx.get();
-        ctx.init(baseX + (HMAP_MIN << level), baseZ + (HMAP_MIN << level), level);
+        ctx.init(posIn.blockX() + (HMAP_MIN << level), posIn.blockZ() + (HMAP_MIN << level), level);
 
         double[] hmap = this.hmapCache.get();
         ctx.getHeights(hmap);
 
+        this.generateFromHeights(ctx, posIn, tile, hmap);
+    }
+
+    @Override
+    public Stream<HeightmapPos> batchGenerationGroup(@NonNull HeightmapPos pos) {
+        int level = pos.level();
+        int baseX = pos.x() & -BATCH_TILES;
+        int baseZ = pos.z() & -BATCH_TILES;
+
+        HeightmapPos[] positions = new HeightmapPos[sq(BATCH_TILES)];
+        for (int i = 0, dx = 0; dx < BATCH_TILES; dx++) {
+            for (int dz = 0; dz < BATCH_TILES; dz++) {
+                positions[i++] = new HeightmapPos(level, baseX + dx, baseZ + dz);
+            }
+        }
+        return Stream.of(positions);
+    }
+
+    @Override
+    public void generate(@NonNull HeightmapPos[] positions, @NonNull HeightmapTile[] tiles) {
+        checkArg(positions.length == tiles.length, "positions (%d) and tiles (%d) must have the same length", positions.length, tiles.length);
+        if (positions.length == 1) { //no point in generating a whole batch for a single tile
+            this.generate(positions[0], tiles[0]);
+            return;
+        }
+
+        HeightmapPos origin = positions[0];
+        int level = origin.level();
+        origin = new HeightmapPos(level, origin.x() & -BATCH_TILES, origin.z() & -BATCH_TILES);
+        for (HeightmapPos pos : positions) {
+            checkArg(pos.level() == level && (pos.x() & -BATCH_TILES) == origin.x() && (pos.z() & -BATCH_TILES) == origin.z(),
+                    "%s isn't in the same batch generation group as %s", pos, origin);
+        }
+
+        //estimate the heights for the entire batch at once
+        CWGContext ctx = this.batchCtx.get();
+        ctx.init(origin.blockX() + (HMAP_MIN << level), origin.blockZ() + (HMAP_MIN << level), level);
+        double[] batchHmap = this.batchHmapCache.get();
+        ctx.getHeights(batchHmap);
+
+        double[] hmap = this.hmapCache.get();
+        for (int i = 0; i < positions.length; i++) {
+            HeightmapPos pos = positions[i];
+            int offsetX = (pos.x() - origin.x()) * T_VOXELS;
+            int offsetZ = (pos.z() - origin.z()) * T_VOXELS;
+
+            //copy this tile's part of the batch height map
+            for (int x = 0; x < HMAP_SIZE; x++) {
+                System.arraycopy(batchHmap, (offsetX + x) * BATCH_HMAP_SIZE + offsetZ, hmap, x * HMAP_SIZE, HMAP_SIZE);
+            }
+
+            this.generateFromHeights(ctx, pos, tiles[i], hmap);
+        }
+    }
+
+    protected void generateFromHeights(@NonNull CWGContext ctx, @NonNull HeightmapPos pos, @NonNull HeightmapTile tile, @NonNull double[] hmap) {
+        int level = pos.level();
+        int baseX = pos.blockX();
+        int baseZ = pos.blockZ();
+
+        HeightmapData data = new HeightmapData();
+
         for (int x = 0; x < T_VOXELS; x++) {
             for (int z = 0, inIdx = heightsIndex(x, z); z < T_VOXELS; z++, inIdx++) {
                 double height = hmap[inIdx];
@@ -30,7 +30,6 @@ import net.daporkchop.fp2.mode.heightmap.HeightmapTile;
 import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 
 import java.util.Comparator;
-import java.util.function.Consumer;
 
 import static java.lang.Math.*;
 import static net.daporkchop.fp2.util.Constants.*;
@@ -41,12 +40,6 @@ import static net.daporkchop.lib.common.math.PMath.*;
  * @author DaPorkchop_
  */
 public class HeightmapTracker extends AbstractTracker<HeightmapPos, HeightmapTile, TrackingState> {
-    protected static boolean overlaps(int x0, int z0, int x1, int z1, int radius) {
-        int dx = abs(x0 - x1);
-        int dz = abs(z0 - z1);
-        return dx <= radius && dz <= radius;
-    }
-
     public HeightmapTracker(@NonNull AbstractTrackerManager<HeightmapPos, HeightmapTile> manager, @NonNull IFarServerContext<HeightmapPos, HeightmapTile> context) {
         super(manager, context);
     }
@@ -65,88 +58,42 @@ public class HeightmapTracker extends AbstractTracker<HeightmapPos, HeightmapTil
     }
 
     @Override
-    protected void allPositions(@NonNull TrackingState state, @NonNull Consumer<HeightmapPos> callback) {
-        final int playerX = floorI(state.x());
-        final int playerZ = floorI(state.z());
-
-        for (int lvl = state.minLevel(); lvl < state.maxLevel(); lvl++) {
-            final int baseX = asrRound(playerX, T_SHIFT + lvl);
-            final int baseZ = asrRound(playerZ, T_SHIFT + lvl);
-
-            IntAxisAlignedBB limits = this.coordLimits[lvl];
-            int minX = max(baseX - state.cutoff(), limits.minX());
-            int minZ = max(baseZ - state.cutoff(), limits.minZ());
-            int maxX = min(baseX + state.cutoff(), limits.maxX());
-            int maxZ = min(baseZ + state.cutoff(), limits.maxZ());
-
-            for (int x = minX; x <= maxX; x++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    callback.accept(new HeightmapPos(lvl, x, z));
-                }
-            }
-        }
+    protected boolean shouldTriggerReorder(@NonNull TrackingState oldState, @NonNull TrackingState newState) {
+        return oldState.directionChanged(newState);
     }
 
     @Override
-    protected void deltaPositions(@NonNull TrackingState oldState, @NonNull TrackingState newState, @NonNull Consumer<HeightmapPos> added, @NonNull Consumer<HeightmapPos> removed) {
-        final int oldPlayerX = floorI(oldState.x());
-        final int oldPlayerZ = floorI(oldState.z());
-        final int newPlayerX = floorI(newState.x());
-        final int newPlayerZ = floorI(newState.z());
-
-        for (int lvl = min(oldState.minLevel(), newState.minLevel()); lvl < max(oldState.maxLevel(), newState.maxLevel()); lvl++) {
-            final int oldBaseX = asrRound(oldPlayerX, T_SHIFT + lvl);
-            final int oldBaseZ = asrRound(oldPlayerZ, T_SHIFT + lvl);
-            final int newBaseX = asrRound(newPlayerX, T_SHIFT + lvl);
-            final int newBaseZ = asrRound(newPlayerZ, T_SHIFT + lvl);
-
-            if (oldState.hasLevel(lvl) && newState.hasLevel(lvl) && oldState.cutoff() == newState.cutoff()
-                && oldBaseX == newBaseX && oldBaseZ == newBaseZ) { //nothing changed, skip this level
-                continue;
-            }
+    protected boolean visibleBounds(@NonNull TrackingState state, int level, @NonNull int[] min, @NonNull int[] max) {
+        if (!state.hasLevel(level)) {
+            return false;
+        }
 
-            IntAxisAlignedBB limits = this.coordLimits[lvl];
-
-            //removed positions
-            if (!newState.hasLevel(lvl) || oldState.hasLevel(lvl)) {
-                int minX = max(oldBaseX - oldState.cutoff(), limits.minX());
-                int minZ = max(oldBaseZ - oldState.cutoff(), limits.minZ());
-                int maxX = min(oldBaseX + oldState.cutoff(), limits.maxX());
-                int maxZ = min(oldBaseZ + oldState.cutoff(), limits.maxZ());
-
-                for (int x = minX; x <= maxX; x++) {
-                    for (int z = minZ; z <= maxZ; z++) {
-                        if (!newState.hasLevel(lvl) || !overlaps(x, z, newBaseX, newBaseZ, newState.cutoff())) {
-                            removed.accept(new HeightmapPos(lvl, x, z));
-                        }
-                    }
-                }
-            }
+        final int baseX = asrRound(floorI(state.x()), T_SHIFT + level);
+        final int baseZ = asrRound(floorI(state.z()), T_SHIFT + level);
 
-            //added positions
-            if (!oldState.hasLevel(lvl) || newState.hasLevel(lvl)) {
-                int minX = max(newBaseX - newState.cutoff(), limits.minX());
-                int minZ = max(newBaseZ - newState.cutoff(), limits.minZ());
-                int maxX = min(newBaseX + newState.cutoff(), limits.maxX());
-                int maxZ = min(newBaseZ + newState.cutoff(), limits.maxZ());
-
-                for (int x = minX; x <= maxX; x++) {
-                    for (int z = minZ; z <= maxZ; z++) {
-                        if (!oldState.hasLevel(lvl) || !overlaps(x, z, oldBaseX, oldBaseZ, oldState.cutoff())) {
-                            added.accept(new HeightmapPos(lvl, x, z));
-                        }
-                    }
-                }
-            }
-        }
+        IntAxisAlignedBB limits = this.coordLimits[level];
+        min[0] = max(baseX - state.cutoff(), limits.minX());
+        min[1] = max(baseZ - state.cutoff(), limits.minZ());
+        max[0] = min(baseX + state.cutoff(), limits.maxX());
+        max[1] = min(baseZ + state.cutoff(), limits.maxZ());
+
+        return min[0] <= max[0] && min[1] <= max[1];
+    }
+
+    @Override
+    protected void origin(@NonNull TrackingState state, int level, @NonNull int[] dst) {
+        //move the origin towards where the player is looking and travelling. the player's velocity only affects the order in which tiles are loaded, not which tiles
+        //  are tracked, so that tiles don't need to be untracked again as soon as the player stops moving
+        dst[0] = asrRound(floorI(state.x()), T_SHIFT + level) + state.lookAheadOffset(state.lookX()) + state.predictedOffset(state.velocityX(), level);
+        dst[1] = asrRound(floorI(state.z()), T_SHIFT + level) + state.lookAheadOffset(state.lookZ()) + state.predictedOffset(state.velocityZ(), level);
     }
 
     @Override
-    protected boolean isVisible(@NonNull TrackingState state, @NonNull HeightmapPos pos) {
-        return state.hasLevel(pos.level())
-               && this.coordLimits[pos.level()].contains2d(pos.x(), pos.z())
-               && abs(pos.x() - asrRound(floorI(state.x()), T_SHIFT + pos.level())) <= state.cutoff()
-               && abs(pos.z() - asrRound(floorI(state.z()), T_SHIFT + pos.level())) <= state.cutoff();
+    protected void direction(@NonNull TrackingState state, int level, @NonNull double[] dst) {
+        //combine the view and travel directions, giving them equal weight
+        double speed = sqrt(sq(state.velocityX()) + sq(state.velocityY()) + sq(state.velocityZ()));
+        dst[0] = state.lookX() + (speed != 0.0d ? state.velocityX() / speed : 0.0d);
+        dst[1] = state.lookZ() + (speed != 0.0d ? state.velocityZ() / speed : 0.0d);
     }
 
     @Override
@@ -166,6 +113,8 @@ public class HeightmapTracker extends AbstractTracker<HeightmapPos, HeightmapTil
             }
         }
 
-        return new HeightmapPosAndComparator(0, asrRound(floorI(state.x()), T_SHIFT), asrRound(floorI(state.z()), T_SHIFT));
+        int[] origin = new int[2];
+        this.origin(state, 0, origin);
+        return new HeightmapPosAndComparator(0, origin[0], origin[1]);
     }
 }
@@ -131,6 +131,12 @@ public class VoxelDirectPosAccess implements IFarDirectPosAccess<VoxelPos> {
         }
     }
 
+    @Override
+    public VoxelPos fromAxes(int level, @NonNull int[] axes) {
+        checkArg(axes.length == 3, "expected 3 axes, but found %s", axes.length);
+        return new VoxelPos(level, axes[0], axes[1], axes[2]);
+    }
+
     @Override
     public int getAxisDirect(long addr, int axis) {
         return PUnsafe.getInt(addr + (long) checkIndex(3, axis) * INT_SIZE);
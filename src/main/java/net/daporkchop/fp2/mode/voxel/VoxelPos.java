@@ -54,18 +54,22 @@ public class VoxelPos implements IFarPos {
     public VoxelPos(@NonNull ByteBuf buf) {
         this.level = buf.readUnsignedByte();
 
+        //sign bits are flipped so that the encoded positions are ordered the same way as their coordinates
         int interleavedHigh = buf.readInt();
         long interleavedLow = buf.readLong();
-        this.x = MathUtil.uninterleave3_0(interleavedLow, interleavedHigh);
-        this.y = MathUtil.uninterleave3_1(interleavedLow, interleavedHigh);
-        this.z = MathUtil.uninterleave3_2(interleavedLow, interleavedHigh);
+        this.x = MathUtil.uninterleave3_0(interleavedLow, interleavedHigh) ^ Integer.MIN_VALUE;
+        this.y = MathUtil.uninterleave3_1(interleavedLow, interleavedHigh) ^ Integer.MIN_VALUE;
+        this.z = MathUtil.uninterleave3_2(interleavedLow, interleavedHigh) ^ Integer.MIN_VALUE;
     }
 
     @Override
     public void writePos(@NonNull ByteBuf dst) {
+        int x = this.x ^ Integer.MIN_VALUE;
+        int y = this.y ^ Integer.MIN_VALUE;
+        int z = this.z ^ Integer.MIN_VALUE;
         dst.writeByte(toByte(this.level))
-                .writeInt(MathUtil.interleaveBitsHigh(this.x, this.y, this.z))
-                .writeLong(MathUtil.interleaveBits(this.x, this.y, this.z));
+                .writeInt(MathUtil.interleaveBitsHigh(x, y, z))
+                .writeLong(MathUtil.interleaveBits(x, y, z));
     }
 
     @Override
@@ -151,6 +155,20 @@ public class VoxelPos implements IFarPos {
         return coordLimits[this.level].contains(this.x, this.y, this.z);
     }
 
+    @Override
+    public VoxelPos nextContainedBy(@NonNull IntAxisAlignedBB coordLimits) {
+        //z is the most significant axis in the interleaved bits, followed by y and then x
+        int[] next = new int[3];
+        if (!MathUtil.zOrderBigMin(
+                new int[]{ this.z ^ Integer.MIN_VALUE, this.y ^ Integer.MIN_VALUE, this.x ^ Integer.MIN_VALUE },
+                new int[]{ coordLimits.minZ() ^ Integer.MIN_VALUE, coordLimits.minY() ^ Integer.MIN_VALUE, coordLimits.minX() ^ Integer.MIN_VALUE },
+                new int[]{ coordLimits.maxZ() ^ Integer.MIN_VALUE, coordLimits.maxY() ^ Integer.MIN_VALUE, coordLimits.maxX() ^ Integer.MIN_VALUE },
+                next)) {
+            return null;
+        }
+        return new VoxelPos(this.level, next[2] ^ Integer.MIN_VALUE, next[1] ^ Integer.MIN_VALUE, next[0] ^ Integer.MIN_VALUE);
+    }
+
     @Override
     public Stream<VoxelPos> allPositionsInBB(int offsetMin, int offsetMax) {
         notNegative(offsetMin, "offsetMin");
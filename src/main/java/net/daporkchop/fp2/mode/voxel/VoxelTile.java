@@ -25,6 +25,7 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.lib.common.system.PlatformInfo;
 import net.daporkchop.lib.unsafe.PCleaner;
 import net.daporkchop.lib.unsafe.PUnsafe;
 
@@ -57,6 +58,8 @@ public class VoxelTile implements IFarTile {
     public static final int ENTRY_FULL_SIZE_BYTES = ENTRY_DATA_SIZE * 4 + 2;
     public static final int TILE_SIZE = INDEX_SIZE + ENTRY_FULL_SIZE_BYTES * ENTRY_COUNT;
 
+    public static final int MAX_ENCODED_SIZE = INT_SIZE + ENTRY_FULL_SIZE_BYTES * ENTRY_COUNT; //voxel count followed by every voxel
+
     static int index(int x, int y, int z) {
         checkArg(x >= 0 && x < T_VOXELS && y >= 0 && y < T_VOXELS && z >= 0 && z < T_VOXELS, "coordinates out of bounds (x=%d, y=%d, z=%d)", x, y, z);
         return (x * T_VOXELS + y) * T_VOXELS + z;
@@ -158,12 +161,38 @@ public class VoxelTile implements IFarTile {
         int index = PUnsafe.getShort(indexAddr);
         if (index < 0) { //index is unset, allocate new one
             PUnsafe.putShort(indexAddr, (short) (index = this.count++));
+            PUnsafe.putChar(this.addr + VoxelTile.INDEX_SIZE + index * VoxelTile.ENTRY_FULL_SIZE_BYTES, (char) VoxelTile.index(x, y, z)); //prefix data with pos
         }
 
-        VoxelTile.writeData(this.addr + VoxelTile.INDEX_SIZE + index * VoxelTile.ENTRY_DATA_SIZE_BYTES, data);
+        VoxelTile.writeData(this.addr + VoxelTile.INDEX_SIZE + index * VoxelTile.ENTRY_FULL_SIZE_BYTES + 2L, data);
         return this;
     }
 
+    /**
+     * Removes the voxel at the given position, if any.
+     * <p>
+     * The last voxel is moved into the removed voxel's data slot, so this invalidates any voxel indices previously obtained from this tile.
+     *
+     * @param pos the position of the voxel to remove (combined XYZ coords)
+     */
+    protected void remove(int pos) {
+        long indexAddr = this.addr + checkIndex(ENTRY_COUNT, pos) * 2L;
+        int index = PUnsafe.getShort(indexAddr);
+        if (index < 0) { //voxel is already unset
+            return;
+        }
+
+        PUnsafe.putShort(indexAddr, (short) -1);
+
+        int last = --this.count;
+        if (index != last) { //move the last voxel into the now-unused data slot to keep the data contiguous
+            long dst = this.addr + INDEX_SIZE + index * ENTRY_FULL_SIZE_BYTES;
+            long src = this.addr + INDEX_SIZE + last * ENTRY_FULL_SIZE_BYTES;
+            PUnsafe.copyMemory(src, dst, ENTRY_FULL_SIZE_BYTES);
+            PUnsafe.putShort(this.addr + PUnsafe.getChar(dst) * 2L, (short) index);
+        }
+    }
+
     @Override
     public void reset() {
         this.extra = 0L;
@@ -182,6 +211,24 @@ public class VoxelTile implements IFarTile {
         int count = this.count = src.readIntLE();
 
         long addr = this.addr + INDEX_SIZE;
+        if (PlatformInfo.IS_LITTLE_ENDIAN && (src.hasMemoryAddress() || src.hasArray())) {
+            //the encoded entries have exactly the same layout as the in-memory ones, so we can copy all of them at once straight out of the source buffer
+            int size = count * ENTRY_FULL_SIZE_BYTES;
+            checkRangeLen(src.writerIndex(), src.readerIndex(), size);
+
+            if (src.hasMemoryAddress()) {
+                PUnsafe.copyMemory(src.memoryAddress() + src.readerIndex(), addr, size);
+            } else {
+                PUnsafe.copyMemory(src.array(), PUnsafe.ARRAY_BYTE_BASE_OFFSET + src.arrayOffset() + src.readerIndex(), null, addr, size);
+            }
+            src.skipBytes(size);
+
+            for (int i = 0; i < count; i++, addr += ENTRY_FULL_SIZE_BYTES) { //rebuild index from the positions prefixed to each entry
+                PUnsafe.putShort(this.addr + PUnsafe.getChar(addr) * 2L, (short) i);
+            }
+            return;
+        }
+
         for (int i = 0; i < count; i++) { //copy data
             int pos = src.readShortLE();
             PUnsafe.putShort(this.addr + pos * 2L, (short) i); //put data slot into index
@@ -208,7 +255,7 @@ public class VoxelTile implements IFarTile {
             int index = PUnsafe.getShort(this.addr + i * 2L);
             if (index >= 0) { //voxel is set
                 dst.writeShortLE(i); //write position
-                long base = this.addr + VoxelTile.INDEX_SIZE + index * VoxelTile.ENTRY_DATA_SIZE_BYTES;
+                long base = this.addr + VoxelTile.INDEX_SIZE + index * VoxelTile.ENTRY_FULL_SIZE_BYTES + 2L;
                 for (int j = 0; j < VoxelTile.ENTRY_DATA_SIZE; j++) { //write voxel data
                     dst.writeIntLE(PUnsafe.getInt(base + j * 4L));
                 }
@@ -220,6 +267,79 @@ public class VoxelTile implements IFarTile {
         return false;
     }
 
+    @Override
+    public void writeDelta(@NonNull IFarTile baseIn, @NonNull ByteBuf dst) {
+        VoxelTile base = (VoxelTile) baseIn;
+
+        int countIndex = dst.writerIndex();
+        dst.writeIntLE(-1);
+
+        //each changed voxel is prefixed with the distance from the previous changed voxel, shifted left by one with the low bit indicating whether it was removed
+        int count = 0;
+        for (int i = 0, last = 0; i < ENTRY_COUNT; i++) {
+            int index = PUnsafe.getShort(this.addr + i * 2L);
+            int baseIndex = PUnsafe.getShort(base.addr + i * 2L);
+            if (index < 0 && baseIndex < 0) { //voxel is unset in both tiles
+                continue;
+            }
+
+            long data = this.addr + INDEX_SIZE + index * ENTRY_FULL_SIZE_BYTES + 2L;
+            if (index >= 0 && baseIndex >= 0 && dataEquals(data, base.addr + INDEX_SIZE + baseIndex * ENTRY_FULL_SIZE_BYTES + 2L)) { //voxel is unchanged
+                continue;
+            }
+
+            writeVarInt(dst, ((i - last) << 1) | (index < 0 ? 1 : 0));
+            last = i;
+            if (index >= 0) { //voxel was added or modified, write the new voxel data
+                for (int j = 0; j < ENTRY_DATA_SIZE; j++) {
+                    dst.writeIntLE(PUnsafe.getInt(data + j * 4L));
+                }
+            }
+            count++;
+        }
+
+        dst.setIntLE(countIndex, count);
+    }
+
+    protected static boolean dataEquals(long data, long baseData) {
+        for (int j = 0; j < ENTRY_DATA_SIZE; j++) {
+            if (PUnsafe.getInt(data + j * 4L) != PUnsafe.getInt(baseData + j * 4L)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void applyDelta(@NonNull ByteBuf src) {
+        for (int count = src.readIntLE(), i = 0, pos = 0; i < count; i++) {
+            int header = readVarInt(src);
+            pos += header >>> 1;
+
+            if ((header & 1) != 0) { //voxel was removed
+                this.remove(pos);
+                continue;
+            }
+
+            long indexAddr = this.addr + checkIndex(ENTRY_COUNT, pos) * 2L;
+            int index = PUnsafe.getShort(indexAddr);
+            if (index < 0) { //index is unset, allocate new one
+                PUnsafe.putShort(indexAddr, (short) (index = this.count++));
+                PUnsafe.putChar(this.addr + INDEX_SIZE + index * ENTRY_FULL_SIZE_BYTES, (char) pos); //prefix data with pos
+            }
+
+            long data = this.addr + INDEX_SIZE + index * ENTRY_FULL_SIZE_BYTES + 2L;
+            for (int j = 0; j < ENTRY_DATA_SIZE; j++) {
+                PUnsafe.putInt(data + j * 4L, src.readIntLE());
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return TILE_SIZE;
+    }
+
     public int getOnlyPosAndReturnEdges(int x, int y, int z, double[] dst, int dstOff)   {
         int index = PUnsafe.getShort(this.addr + index(x, y, z) * 2L);
         if (index < 0)  { //index is unset, don't read data
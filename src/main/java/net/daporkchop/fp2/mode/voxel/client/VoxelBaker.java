@@ -21,10 +21,13 @@
 package net.daporkchop.fp2.mode.voxel.client;
 
 import lombok.NonNull;
-import net.daporkchop.fp2.client.texture.TextureUVs;
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.client.texture.StateBiomeTable;
 import net.daporkchop.fp2.compat.vanilla.FastRegistry;
+import net.daporkchop.fp2.config.FP2Config;
 import net.daporkchop.fp2.gl.attribute.AttributeWriter;
 import net.daporkchop.fp2.gl.draw.index.IndexWriter;
+import net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger;
 import net.daporkchop.fp2.mode.common.client.bake.IRenderBaker;
 import net.daporkchop.fp2.mode.common.client.bake.indexed.IndexedBakeOutput;
 import net.daporkchop.fp2.mode.voxel.VoxelData;
@@ -32,16 +35,14 @@ import net.daporkchop.fp2.mode.voxel.VoxelPos;
 import net.daporkchop.fp2.mode.voxel.VoxelTile;
 import net.daporkchop.fp2.mode.voxel.client.struct.VoxelGlobalAttributes;
 import net.daporkchop.fp2.mode.voxel.client.struct.VoxelLocalAttributes;
-import net.daporkchop.fp2.util.SingleBiomeBlockAccess;
 import net.daporkchop.lib.common.pool.array.ArrayAllocator;
 import net.minecraft.block.state.IBlockState;
-import net.minecraft.init.Biomes;
 import net.minecraft.init.Blocks;
-import net.minecraft.util.math.BlockPos;
 
 import java.util.Arrays;
 import java.util.stream.Stream;
 
+import static net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger.*;
 import static net.daporkchop.fp2.mode.voxel.VoxelConstants.*;
 import static net.daporkchop.fp2.util.BlockType.*;
 import static net.daporkchop.fp2.util.Constants.*;
@@ -53,13 +54,49 @@ import static net.daporkchop.fp2.util.math.MathUtil.*;
  * @author DaPorkchop_
  */
 public class VoxelBaker implements IRenderBaker<VoxelPos, VoxelTile, IndexedBakeOutput<VoxelGlobalAttributes, VoxelLocalAttributes>> {
+    protected static final int VERTEX_ABSENT = -1;
+    protected static final int VERTEX_UNWRITTEN = -2;
+
+    protected static final int SIGNATURE_SIZE = 2;
+
+    protected static final long COLOR_UNKNOWN = -1L;
+
+    protected static int vertexMapIndex(int x, int y, int z, int edge) {
+        return ((x * T_VERTS + y) * T_VERTS + z) * EDGE_COUNT + edge;
+    }
+
     protected static int vertexMapIndex(int dx, int dy, int dz, int i, int edge) {
         int j = CONNECTION_INDICES[i];
-        int ddx = dx + ((j >> 2) & 1);
-        int ddy = dy + ((j >> 1) & 1);
-        int ddz = dz + (j & 1);
+        return vertexMapIndex(dx + ((j >> 2) & 1), dy + ((j >> 1) & 1), dz + (j & 1), edge);
+    }
 
-        return ((ddx * T_VERTS + ddy) * T_VERTS + ddz) * EDGE_COUNT + edge;
+    //the faces on each edge are arranged on a 2D grid, where the u axis points towards the face's c1 corner and the v axis points towards its c0 corner (see
+    // CONNECTION_INDICES). the remaining axis selects the plane the face is on.
+
+    protected static int faceKeyIndex(int edge, int dx, int dy, int dz) {
+        switch (edge) {
+            case 0:
+                return ((edge * T_VOXELS + dx) * T_VOXELS + dy) * T_VOXELS + dz;
+            case 1:
+                return ((edge * T_VOXELS + dy) * T_VOXELS + dx) * T_VOXELS + dz;
+            case 2:
+                return ((edge * T_VOXELS + dz) * T_VOXELS + dx) * T_VOXELS + dy;
+            default:
+                throw new IllegalArgumentException("edge: " + edge);
+        }
+    }
+
+    protected static int faceVertexMapIndex(int edge, int plane, int u, int v) {
+        switch (edge) {
+            case 0:
+                return vertexMapIndex(plane, u, v, edge);
+            case 1:
+                return vertexMapIndex(u, plane, v, edge);
+            case 2:
+                return vertexMapIndex(u, v, plane, edge);
+            default:
+                throw new IllegalArgumentException("edge: " + edge);
+        }
     }
 
     @Override
@@ -109,28 +146,42 @@ public class VoxelBaker implements IRenderBaker<VoxelPos, VoxelTile, IndexedBake
         //write globals
         output.globals().put(new VoxelGlobalAttributes(pos.x(), pos.y(), pos.z(), pos.level()));
 
+        final boolean greedy = FP2Config.global().performance().greedyMeshing();
+
         ArrayAllocator<int[]> alloc = ALLOC_INT.get();
         int[] map = alloc.atLeast(cb(T_VERTS) * EDGE_COUNT);
-        Arrays.fill(map, 0, cb(T_VERTS) * EDGE_COUNT, -1);
+        Arrays.fill(map, 0, cb(T_VERTS) * EDGE_COUNT, VERTEX_ABSENT);
+
+        ArrayAllocator<long[]> longAlloc = ALLOC_LONG.get();
+        long[] signatures = greedy ? longAlloc.atLeast(cb(T_VERTS) * EDGE_COUNT * SIGNATURE_SIZE) : null;
+
+        //computing a color multiplier may be expensive, so each vertex's color is only computed once and then cached here
+        long[] colors = longAlloc.atLeast(cb(T_VERTS) * EDGE_COUNT);
+        Arrays.fill(colors, 0, cb(T_VERTS) * EDGE_COUNT, COLOR_UNKNOWN);
 
         try {
-            //step 1: write vertices for all source tiles, and assign indices
-            this.writeVertices(srcs, pos.blockX(), pos.blockY(), pos.blockZ(), pos.level(), map, output.verts());
+            StateBiomeTable table = StateBiomeTable.get();
+
+            //step 1: find the vertices for all source tiles. vertices aren't written until they're actually referenced by a quad, so vertices which are merged
+            // away are never written at all
+            this.findVertices(srcs, pos, map, signatures, colors, table);
 
             //step 2: write indices to actually connect the vertices and build the mesh
-            this.writeIndices(srcs[0], map, output.indices());
+            this.writeIndices(srcs[0], map, signatures, output.indices(),
+                    new LazyVertices(srcs, map, colors, output.verts(), table, pos.blockX(), pos.blockY(), pos.blockZ(), pos.level()));
         } finally {
+            longAlloc.release(colors);
+            if (signatures != null) {
+                longAlloc.release(signatures);
+            }
             alloc.release(map);
         }
     }
 
-    protected void writeVertices(VoxelTile[] srcs, int blockX, int blockY, int blockZ, int level, int[] map, AttributeWriter<VoxelLocalAttributes> verts) {
-        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
-        final SingleBiomeBlockAccess biomeAccess = new SingleBiomeBlockAccess();
+    protected void findVertices(VoxelTile[] srcs, VoxelPos pos, int[] map, long[] signatures, long[] colors, StateBiomeTable table) {
         final VoxelData data = new VoxelData();
-        final VoxelLocalAttributes attributes = new VoxelLocalAttributes();
+        final int level = pos.level();
 
-        int indexCounter = 0;
         for (int i = 0; i < 8; i++) {
             VoxelTile src = srcs[i];
             if (src == null) {
@@ -147,102 +198,251 @@ public class VoxelBaker implements IRenderBaker<VoxelPos, VoxelTile, IndexedBake
                             continue;
                         }
 
-                        indexCounter = this.writeVertex(blockX, blockY, blockZ, level, dx + (((i >> 2) & 1) << T_SHIFT), dy + (((i >> 1) & 1) << T_SHIFT), dz + ((i & 1) << T_SHIFT), data, verts, pos, biomeAccess, attributes, map, indexCounter);
+                        int x = dx + (((i >> 2) & 1) << T_SHIFT);
+                        int y = dy + (((i >> 1) & 1) << T_SHIFT);
+                        int z = dz + ((i & 1) << T_SHIFT);
+                        int baseMapIndex = vertexMapIndex(x, y, z, 0);
+                        for (int edge = 0; edge < EDGE_COUNT; edge++) {
+                            map[baseMapIndex + edge] = VERTEX_UNWRITTEN;
+                            if (signatures != null) { //compute the vertex's signature, which will be needed for merging
+                                int color = color(colors, table, data, baseMapIndex, edge, pos.blockX() + (x << level), pos.blockY() + (y << level), pos.blockZ() + (z << level));
+                                signatures[(baseMapIndex + edge) * SIGNATURE_SIZE + 0] = ((long) table.indexId(data.states[edge]) << 32L) | (color & 0xFFFFFFFFL);
+                                signatures[(baseMapIndex + edge) * SIGNATURE_SIZE + 1] = (data.light << 12) | (data.x << 8) | (data.y << 4) | data.z;
+                            }
+                        }
                     }
                 }
             }
         }
     }
 
-    protected int writeVertex(int baseX, int baseY, int baseZ, int level, int x, int y, int z, VoxelData data, AttributeWriter<VoxelLocalAttributes> vertices, BlockPos.MutableBlockPos pos, SingleBiomeBlockAccess biomeAccess, VoxelLocalAttributes attributes, int[] map, int indexCounter) {
-        baseX += (x & T_VOXELS) << level;
-        baseY += (y & T_VOXELS) << level;
-        baseZ += (z & T_VOXELS) << level;
+    protected void writeIndices(VoxelTile src, int[] map, long[] signatures, IndexWriter[] indices, LazyVertices vertices) {
+        final VoxelData data = new VoxelData();
+
+        ArrayAllocator<int[]> alloc = ALLOC_INT.get();
+        int[] faceKeys = null;
+        if (signatures != null) {
+            faceKeys = alloc.atLeast(EDGE_COUNT * cb(T_VOXELS));
+            Arrays.fill(faceKeys, 0, EDGE_COUNT * cb(T_VOXELS), -1);
+        }
 
-        int baseMapIndex = ((x * T_VERTS + y) * T_VERTS + z) * 3;
+        try {
+            for (int j = 0; j < src.count(); j++) {
+                int voxelPos = src.get(j, data);
+                int dx = (voxelPos >> (T_SHIFT << 1)) & T_MASK;
+                int dy = (voxelPos >> T_SHIFT) & T_MASK;
+                int dz = voxelPos & T_MASK;
+
+                int edges = data.edges;
+                if ((((edges >> 2) ^ (edges >> 3)) & 1) != 0) { //for some reason y is backwards... let's invert it
+                    edges ^= EDGE_DIR_MASK << 2;
+                }
+                for (int edge = 0; edge < EDGE_COUNT; edge++) {
+                    int dirs = (edges >> (edge << 1)) & EDGE_DIR_MASK;
+                    if (dirs == EDGE_DIR_NONE) {
+                        continue;
+                    }
 
-        final int blockX = baseX + ((x & ~(x & T_VOXELS)) << level);
-        final int blockY = baseY + ((y & ~(y & T_VOXELS)) << level);
-        final int blockZ = baseZ + ((z & ~(z & T_VOXELS)) << level);
+                    int base = edge * CONNECTION_INDEX_COUNT;
+                    int oppositeCorner, c0, c1, provoking;
+                    if ((provoking = present(map, vertexMapIndex(dx, dy, dz, base, edge))) < 0
+                        || (c0 = present(map, vertexMapIndex(dx, dy, dz, base + 1, edge))) < 0
+                        || (c1 = present(map, vertexMapIndex(dx, dy, dz, base + 2, edge))) < 0
+                        || (oppositeCorner = present(map, vertexMapIndex(dx, dy, dz, base + 3, edge))) < 0) {
+                        continue; //skip if any of the vertices are missing
+                    }
 
-        pos.setPos(blockX, blockY, blockZ);
-        biomeAccess.biome(FastRegistry.getBiome(data.biome, Biomes.PLAINS));
+                    IBlockState state = FastRegistry.getBlockState(data.states[edge]);
+                    int renderType = renderType(state);
 
-        int blockLight = data.light & 0xF;
-        int skyLight = data.light >> 4;
-        attributes.lightBlock = (byte) (blockLight | (blockLight << 4));
-        attributes.lightSky = (byte) (skyLight | (skyLight << 4));
+                    boolean water = state.getBlock() == Blocks.WATER;
+                    if (water) {
+                        dirs = EDGE_DIR_BOTH;
+                    }
 
-        attributes.posX = (byte) ((x << POS_FRACT_SHIFT) + data.x);
-        attributes.posY = (byte) ((y << POS_FRACT_SHIFT) + data.y);
-        attributes.posZ = (byte) ((z << POS_FRACT_SHIFT) + data.z);
+                    if (faceKeys != null
+                        && sameSignature(signatures, provoking, c0) && sameSignature(signatures, provoking, c1) && sameSignature(signatures, provoking, oppositeCorner)) {
+                        //the face is flat and all of its corners have identical attributes, defer it until it can be merged with its neighbors.
+                        // faces are keyed by their render type and direction, as neither of those are part of the vertex attributes
+                        faceKeys[faceKeyIndex(edge, dx, dy, dz)] = (renderType << 2) | dirs;
+                        continue;
+                    }
 
-        EDGES:
-        for (int edge = 0; edge < EDGE_COUNT; edge++) {
-            for (int j = 0; j < edge; j++) {
-                if (data.states[j] == data.states[edge]) { //states match, don't duplicate vertex data for this edge
-                    map[baseMapIndex + edge] = map[baseMapIndex + j];
-                    continue EDGES;
+                    this.writeFace(indices[renderType], dirs, vertices.vertex(oppositeCorner), vertices.vertex(c0), vertices.vertex(c1), vertices.vertex(provoking));
+                }
+            }
+
+            if (faceKeys != null) { //merge flat faces
+                this.mergeFaces(faceKeys, indices, vertices);
+            }
+        } finally {
+            if (faceKeys != null) {
+                alloc.release(faceKeys);
+            }
+        }
+    }
+
+    /**
+     * Greedily merges adjacent flat faces on the same plane into larger faces.
+     * <p>
+     * A face is flat if all four of its corners have identical vertex attributes (apart from the integer part of their position). Any two adjacent flat faces
+     * share two corners, and are therefore guaranteed to be interchangeable if they have the same render type and direction.
+     */
+    protected void mergeFaces(int[] faceKeys, IndexWriter[] indices, LazyVertices vertices) {
+        ArrayAllocator<int[]> alloc = ALLOC_INT.get();
+        int[] rects = alloc.atLeast(sq(T_VOXELS) * RECT_SIZE);
+        try {
+            for (int edge = 0; edge < EDGE_COUNT; edge++) {
+                for (int plane = 0; plane < T_VOXELS; plane++) {
+                    for (int i = 0, count = GreedyQuadMerger.merge(faceKeys, (edge * T_VOXELS + plane) * sq(T_VOXELS), T_VOXELS, T_VOXELS, rects); i < count; i++) {
+                        int u = rects[i * RECT_SIZE + 0];
+                        int v = rects[i * RECT_SIZE + 1];
+                        int width = rects[i * RECT_SIZE + 2];
+                        int height = rects[i * RECT_SIZE + 3];
+                        int key = rects[i * RECT_SIZE + 4];
+
+                        this.writeFace(indices[key >> 2], key & EDGE_DIR_MASK,
+                                vertices.vertex(faceVertexMapIndex(edge, plane, u + width, v + height)),
+                                vertices.vertex(faceVertexMapIndex(edge, plane, u, v + height)),
+                                vertices.vertex(faceVertexMapIndex(edge, plane, u + width, v)),
+                                vertices.vertex(faceVertexMapIndex(edge, plane, u, v)));
+                    }
                 }
             }
+        } finally {
+            alloc.release(rects);
+        }
+    }
 
-            IBlockState state = FastRegistry.getBlockState(data.states[edge]);
-            attributes.state = TextureUVs.STATEID_TO_INDEXID.get(state);
-            attributes.color = MC.getBlockColors().colorMultiplier(state, biomeAccess, pos, 0);
+    protected void writeFace(IndexWriter buf, int dirs, int oppositeCorner, int c0, int c1, int provoking) {
+        if ((dirs & EDGE_DIR_NEGATIVE) != 0) { //the face has the negative bit set
+            if ((dirs & EDGE_DIR_POSITIVE) != 0) { //the positive bit is set as well, output the face once before flipping
+                buf.appendQuad(oppositeCorner, c0, c1, provoking);
+            }
 
-            map[baseMapIndex + edge] = vertices.put(attributes);
+            //flip the face around
+            int i = c0;
+            c0 = c1;
+            c1 = i;
         }
-        return indexCounter;
+
+        buf.appendQuad(oppositeCorner, c0, c1, provoking);
     }
 
-    protected void writeIndices(VoxelTile src, int[] map, IndexWriter[] indices) {
-        final VoxelData data = new VoxelData();
+    protected static int present(int[] map, int index) {
+        return map[index] != VERTEX_ABSENT ? index : -1;
+    }
 
-        for (int j = 0; j < src.count(); j++) {
-            int voxelPos = src.get(j, data);
-            int dx = (voxelPos >> (T_SHIFT << 1)) & T_MASK;
-            int dy = (voxelPos >> T_SHIFT) & T_MASK;
-            int dz = voxelPos & T_MASK;
+    /**
+     * Gets the color multiplier of a vertex, computing it if it isn't cached yet.
+     *
+     * @param colors        the cached colors, indexed by vertex map index
+     * @param table         the {@link StateBiomeTable}
+     * @param data          the voxel data at the vertex's position
+     * @param baseMapIndex  the vertex map index of the vertex's position for edge {@code 0}
+     * @param edge          the vertex's edge
+     * @param blockX        the X coordinate of the vertex's position
+     * @param blockY        the Y coordinate of the vertex's position
+     * @param blockZ        the Z coordinate of the vertex's position
+     * @return the vertex's color multiplier
+     */
+    protected static int color(long[] colors, StateBiomeTable table, VoxelData data, int baseMapIndex, int edge, int blockX, int blockY, int blockZ) {
+        long color = colors[baseMapIndex + edge];
+        if (color == COLOR_UNKNOWN) {
+            //all the vertices at a position share the same biome, so vertices with the same state will always have the same color
+            for (int j = 0; j < edge && color == COLOR_UNKNOWN; j++) {
+                if (data.states[j] == data.states[edge]) {
+                    color = colors[baseMapIndex + j];
+                }
+            }
 
-            int edges = data.edges;
-            if ((((edges >> 2) ^ (edges >> 3)) & 1) != 0) { //for some reason y is backwards... let's invert it
-                edges ^= EDGE_DIR_MASK << 2;
+            if (color == COLOR_UNKNOWN) {
+                color = table.color(data.states[edge], data.biome, blockX, blockY, blockZ) & 0xFFFFFFFFL;
             }
-            for (int edge = 0; edge < EDGE_COUNT; edge++) {
-                if ((edges & (EDGE_DIR_MASK << (edge << 1))) == EDGE_DIR_NONE) {
-                    continue;
-                }
+            colors[baseMapIndex + edge] = color;
+        }
+        return (int) color;
+    }
 
-                int base = edge * CONNECTION_INDEX_COUNT;
-                int oppositeCorner, c0, c1, provoking;
-                if ((provoking = map[vertexMapIndex(dx, dy, dz, base, edge)]) < 0
-                    || (c0 = map[vertexMapIndex(dx, dy, dz, base + 1, edge)]) < 0
-                    || (c1 = map[vertexMapIndex(dx, dy, dz, base + 2, edge)]) < 0
-                    || (oppositeCorner = map[vertexMapIndex(dx, dy, dz, base + 3, edge)]) < 0) {
-                    continue; //skip if any of the vertices are missing
-                }
+    protected static boolean sameSignature(long[] signatures, int a, int b) {
+        return signatures[a * SIGNATURE_SIZE + 0] == signatures[b * SIGNATURE_SIZE + 0]
+               && signatures[a * SIGNATURE_SIZE + 1] == signatures[b * SIGNATURE_SIZE + 1];
+    }
 
-                IBlockState state = FastRegistry.getBlockState(data.states[edge]);
-                IndexWriter buf = indices[renderType(state)];
+    /**
+     * Writes vertices on demand, the first time they are referenced by a quad.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static class LazyVertices {
+        @NonNull
+        protected final VoxelTile[] srcs;
+        @NonNull
+        protected final int[] map;
+        @NonNull
+        protected final long[] colors;
+        @NonNull
+        protected final AttributeWriter<VoxelLocalAttributes> out;
+        @NonNull
+        protected final StateBiomeTable table;
+        protected final int blockX;
+        protected final int blockY;
+        protected final int blockZ;
+        protected final int level;
+
+        protected final VoxelData data = new VoxelData();
+        protected final VoxelLocalAttributes attributes = new VoxelLocalAttributes();
+
+        /**
+         * Gets the index of the vertex at the given vertex map index, writing it if it hasn't been written yet.
+         *
+         * @param index the vertex map index
+         * @return the index of the vertex
+         */
+        public int vertex(int index) {
+            int vertex = this.map[index];
+            if (vertex != VERTEX_UNWRITTEN) {
+                return vertex;
+            }
 
-                boolean water = state.getBlock() == Blocks.WATER;
-                if (water) {
-                    edges |= EDGE_DIR_BOTH << (edge << 1);
-                }
+            int edge = index % EDGE_COUNT;
+            int x = index / (sq(T_VERTS) * EDGE_COUNT);
+            int y = (index / (T_VERTS * EDGE_COUNT)) % T_VERTS;
+            int z = (index / EDGE_COUNT) % T_VERTS;
 
-                if ((edges & (EDGE_DIR_NEGATIVE << (edge << 1))) != 0) { //the face has the negative bit set
-                    if ((edges & (EDGE_DIR_POSITIVE << (edge << 1))) != 0) { //the positive bit is set as well, output the face once before flipping
-                        buf.appendQuad(oppositeCorner, c0, c1, provoking);
-                    }
+            VoxelData data = this.data;
+            this.srcs[((x >> T_SHIFT) << 2) | ((y >> T_SHIFT) << 1) | (z >> T_SHIFT)].get(x & T_MASK, y & T_MASK, z & T_MASK, data);
 
-                    //flip the face around
-                    int i = c0;
-                    c0 = c1;
-                    c1 = i;
-                }
+            int blockX = this.blockX + (x << this.level);
+            int blockY = this.blockY + (y << this.level);
+            int blockZ = this.blockZ + (z << this.level);
 
-                buf.appendQuad(oppositeCorner, c0, c1, provoking);
+            int baseMapIndex = index - edge;
+            int indexId = this.table.indexId(data.states[edge]);
+            int color = color(this.colors, this.table, data, baseMapIndex, edge, blockX, blockY, blockZ);
+
+            for (int j = 0; j < edge; j++) {
+                if (this.table.indexId(data.states[j]) == indexId
+                    && color(this.colors, this.table, data, baseMapIndex, j, blockX, blockY, blockZ) == color) { //vertex data would be identical, don't duplicate it for this edge
+                    return this.map[index] = this.vertex(baseMapIndex + j);
+                }
             }
+
+            VoxelLocalAttributes attributes = this.attributes;
+            attributes.state = indexId;
+            attributes.color = color;
+
+            int blockLight = data.light & 0xF;
+            int skyLight = data.light >> 4;
+            attributes.lightBlock = (byte) (blockLight | (blockLight << 4));
+            attributes.lightSky = (byte) (skyLight | (skyLight << 4));
+
+            attributes.posX = (byte) ((x << POS_FRACT_SHIFT) + data.x);
+            attributes.posY = (byte) ((y << POS_FRACT_SHIFT) + data.y);
+            attributes.posZ = (byte) ((z << POS_FRACT_SHIFT) + data.z);
+
+            return this.map[index] = this.out.put(attributes);
         }
     }
 }
@@ -48,6 +48,11 @@ public abstract class VoxelTileProvider extends AbstractFarTileProvider<VoxelPos
         return new VoxelScalerIntersection();
     }
 
+    @Override
+    protected int maxEncodedTileSize() {
+        return VoxelTile.MAX_ENCODED_SIZE;
+    }
+
     @Override
     protected IFarTrackerManager<VoxelPos, VoxelTile> createTracker() {
         return new VoxelTrackerManager(this);
@@ -35,20 +35,31 @@ import net.minecraft.init.Blocks;
 import net.minecraft.world.WorldServer;
 
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 import static java.lang.Math.*;
 import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.fp2.util.math.MathUtil.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
 
 /**
  * @author DaPorkchop_
  */
 public class CWGVoxelGenerator extends AbstractRoughVoxelGenerator<CWGContext> implements IFarGeneratorRough<VoxelPos, VoxelTile> {
+    public static final int BATCH_SHIFT = 1;
+    public static final int BATCH_TILES = 1 << BATCH_SHIFT; //the number of tiles along each axis in a batch generation group
+
+    protected static final int BATCH_CACHE_SIZE = (BATCH_TILES - 1) * T_VOXELS + CACHE_SIZE; //adjacent tiles' padding overlaps, so it only needs to be included once
+
     protected final Cached<CWGContext> ctx;
+    protected final Cached<CWGContext> batchCtx;
+    protected final Cached<double[]> batchDensityMapCache = Cached.threadLocal(() -> new double[cb(BATCH_CACHE_SIZE)], ReferenceStrength.WEAK);
 
     public CWGVoxelGenerator(@NonNull WorldServer world) {
         super(world);
 
         this.ctx = Cached.threadLocal(() -> new CWGContext(world, CACHE_SIZE, 2), ReferenceStrength.WEAK);
+        this.batchCtx = Cached.threadLocal(() -> new CWGContext(world, BATCH_CACHE_SIZE, 2), ReferenceStrength.WEAK);
     }
 
     @Override
@@ -63,12 +74,7 @@ public class CWGVoxelGenerator extends AbstractRoughVoxelGenerator<CWGContext> i
         double[][] densityMap = this.densityMapCache.get();
 
         //water
-        double scaleFactor = 1.0d / (1 << level);
-        for (int x = CACHE_MIN; x < CACHE_MAX; x++) {
-            for (int y = CACHE_MIN; y < CACHE_MAX; y++) {
-                Arrays.fill(densityMap[0], cacheIndex(x, y, CACHE_MIN), cacheIndex(x, y, CACHE_MAX), ((this.seaLevel - 0.125d) - (baseY + (y << level))) * scaleFactor);
-            }
-        }
+        this.fillWaterDensity(densityMap[0], baseY, level);
 
         //blocks
         ctx.get3d(densityMap[1], baseY + (CACHE_MIN << level));
@@ -77,6 +83,78 @@ public class CWGVoxelGenerator extends AbstractRoughVoxelGenerator<CWGContext> i
         this.dualContour(baseX, baseY, baseZ, level, tile, densityMap, ctx);
     }
 
+    @Override
+    public Stream<VoxelPos> batchGenerationGroup(@NonNull VoxelPos pos) {
+        int level = pos.level();
+        int baseX = pos.x() & -BATCH_TILES;
+        int baseY = pos.y() & -BATCH_TILES;
+        int baseZ = pos.z() & -BATCH_TILES;
+
+        VoxelPos[] positions = new VoxelPos[cb(BATCH_TILES)];
+        for (int i = 0, dx = 0; dx < BATCH_TILES; dx++) {
+            for (int dy = 0; dy < BATCH_TILES; dy++) {
+                for (int dz = 0; dz < BATCH_TILES; dz++) {
+                    positions[i++] = new VoxelPos(level, baseX + dx, baseY + dy, baseZ + dz);
+                }
+            }
+        }
+        return Stream.of(positions);
+    }
+
+    @Override
+    public void generate(@NonNull VoxelPos[] positions, @NonNull VoxelTile[] tiles) {
+        checkArg(positions.length == tiles.length, "positions (%d) and tiles (%d) must have the same length", positions.length, tiles.length);
+        if (positions.length == 1) { //no point in generating a whole batch for a single tile
+            this.generate(positions[0], tiles[0]);
+            return;
+        }
+
+        VoxelPos origin = positions[0];
+        int level = origin.level();
+        origin = new VoxelPos(level, origin.x() & -BATCH_TILES, origin.y() & -BATCH_TILES, origin.z() & -BATCH_TILES);
+        for (VoxelPos pos : positions) {
+            checkArg(pos.level() == level && (pos.x() & -BATCH_TILES) == origin.x() && (pos.y() & -BATCH_TILES) == origin.y() && (pos.z() & -BATCH_TILES) == origin.z(),
+                    "%s isn't in the same batch generation group as %s", pos, origin);
+        }
+
+        //generate the density values for the entire batch at once
+        CWGContext ctx = this.batchCtx.get();
+        ctx.init(origin.blockX() + (CACHE_MIN << level), origin.blockZ() + (CACHE_MIN << level), level);
+        double[] batchDensityMap = this.batchDensityMapCache.get();
+        ctx.get3d(batchDensityMap, origin.blockY() + (CACHE_MIN << level));
+
+        double[][] densityMap = this.densityMapCache.get();
+        for (int i = 0; i < positions.length; i++) {
+            VoxelPos pos = positions[i];
+            int offsetX = (pos.x() - origin.x()) * T_VOXELS;
+            int offsetY = (pos.y() - origin.y()) * T_VOXELS;
+            int offsetZ = (pos.z() - origin.z()) * T_VOXELS;
+
+            //water
+            this.fillWaterDensity(densityMap[0], pos.blockY(), level);
+
+            //blocks: copy this tile's part of the batch density map
+            for (int x = 0; x < CACHE_SIZE; x++) {
+                for (int y = 0; y < CACHE_SIZE; y++) {
+                    System.arraycopy(batchDensityMap, ((offsetX + x) * BATCH_CACHE_SIZE + offsetY + y) * BATCH_CACHE_SIZE + offsetZ,
+                            densityMap[1], cacheIndex(CACHE_MIN + x, CACHE_MIN + y, CACHE_MIN), CACHE_SIZE);
+                }
+            }
+
+            //actually create the mesh (using dual contouring)
+            this.dualContour(pos.blockX(), pos.blockY(), pos.blockZ(), level, tiles[i], densityMap, ctx);
+        }
+    }
+
+    protected void fillWaterDensity(@NonNull double[] densityMap, int baseY, int level) {
+        double scaleFactor = 1.0d / (1 << level);
+        for (int x = CACHE_MIN; x < CACHE_MAX; x++) {
+            for (int y = CACHE_MIN; y < CACHE_MAX; y++) {
+                Arrays.fill(densityMap, cacheIndex(x, y, CACHE_MIN), cacheIndex(x, y, CACHE_MAX), ((this.seaLevel - 0.125d) - (baseY + (y << level))) * scaleFactor);
+            }
+        }
+    }
+
     @Override
     protected int getFaceState(int blockX, int blockY, int blockZ, int level, double nx, double ny, double nz, double density0, double density1, int edge, int layer, CWGContext ctx) {
         if (layer == 0) { //layer 0 is always water lol
@@ -30,7 +30,6 @@ import net.daporkchop.fp2.mode.voxel.VoxelTile;
 import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 
 import java.util.Comparator;
-import java.util.function.Consumer;
 
 import static java.lang.Math.*;
 import static net.daporkchop.fp2.util.Constants.*;
@@ -41,13 +40,6 @@ import static net.daporkchop.lib.common.math.PMath.*;
  * @author DaPorkchop_
  */
 public class VoxelTracker extends AbstractTracker<VoxelPos, VoxelTile, TrackingState> {
-    protected static boolean overlaps(int x0, int y0, int z0, int x1, int y1, int z1, int radius) {
-        int dx = abs(x0 - x1);
-        int dy = abs(y0 - y1);
-        int dz = abs(z0 - z1);
-        return dx <= radius && dy <= radius && dz <= radius;
-    }
-
     public VoxelTracker(@NonNull AbstractTrackerManager<VoxelPos, VoxelTile> manager, @NonNull IFarServerContext<VoxelPos, VoxelTile> context) {
         super(manager, context);
     }
@@ -66,107 +58,47 @@ public class VoxelTracker extends AbstractTracker<VoxelPos, VoxelTile, TrackingS
     }
 
     @Override
-    protected void allPositions(@NonNull TrackingState state, @NonNull Consumer<VoxelPos> callback) {
-        final int playerX = floorI(state.x());
-        final int playerY = floorI(state.y());
-        final int playerZ = floorI(state.z());
-
-        for (int lvl = state.minLevel(); lvl < state.maxLevel(); lvl++) {
-            final int baseX = asrRound(playerX, T_SHIFT + lvl);
-            final int baseY = asrRound(playerY, T_SHIFT + lvl);
-            final int baseZ = asrRound(playerZ, T_SHIFT + lvl);
-
-            IntAxisAlignedBB limits = this.coordLimits[lvl];
-            int minX = max(baseX - state.cutoff(), limits.minX());
-            int minY = max(baseY - state.cutoff(), limits.minY());
-            int minZ = max(baseZ - state.cutoff(), limits.minZ());
-            int maxX = min(baseX + state.cutoff(), limits.maxX());
-            int maxY = min(baseY + state.cutoff(), limits.maxY());
-            int maxZ = min(baseZ + state.cutoff(), limits.maxZ());
-
-            for (int x = minX; x <= maxX; x++) {
-                for (int y = minY; y <= maxY; y++) {
-                    for (int z = minZ; z <= maxZ; z++) {
-                        callback.accept(new VoxelPos(lvl, x, y, z));
-                    }
-                }
-            }
-        }
+    protected boolean shouldTriggerReorder(@NonNull TrackingState oldState, @NonNull TrackingState newState) {
+        return oldState.directionChanged(newState);
     }
 
     @Override
-    protected void deltaPositions(@NonNull TrackingState oldState, @NonNull TrackingState newState, @NonNull Consumer<VoxelPos> added, @NonNull Consumer<VoxelPos> removed) {
-        final int oldPlayerX = floorI(oldState.x());
-        final int oldPlayerY = floorI(oldState.y());
-        final int oldPlayerZ = floorI(oldState.z());
-        final int newPlayerX = floorI(newState.x());
-        final int newPlayerY = floorI(newState.y());
-        final int newPlayerZ = floorI(newState.z());
-
-        for (int lvl = min(oldState.minLevel(), newState.minLevel()); lvl < max(oldState.maxLevel(), newState.maxLevel()); lvl++) {
-            final int oldBaseX = asrRound(oldPlayerX, T_SHIFT + lvl);
-            final int oldBaseY = asrRound(oldPlayerY, T_SHIFT + lvl);
-            final int oldBaseZ = asrRound(oldPlayerZ, T_SHIFT + lvl);
-            final int newBaseX = asrRound(newPlayerX, T_SHIFT + lvl);
-            final int newBaseY = asrRound(newPlayerY, T_SHIFT + lvl);
-            final int newBaseZ = asrRound(newPlayerZ, T_SHIFT + lvl);
-
-            if (oldState.hasLevel(lvl) && newState.hasLevel(lvl) && oldState.cutoff() == newState.cutoff()
-                && oldBaseX == newBaseX && oldBaseY == newBaseY && oldBaseZ == newBaseZ) { //nothing changed, skip this level
-                continue;
-            }
+    protected boolean visibleBounds(@NonNull TrackingState state, int level, @NonNull int[] min, @NonNull int[] max) {
+        if (!state.hasLevel(level)) {
+            return false;
+        }
 
-            IntAxisAlignedBB limits = this.coordLimits[lvl];
-
-            //removed positions
-            if (!newState.hasLevel(lvl) || oldState.hasLevel(lvl)) {
-                int minX = max(oldBaseX - oldState.cutoff(), limits.minX());
-                int minY = max(oldBaseY - oldState.cutoff(), limits.minY());
-                int minZ = max(oldBaseZ - oldState.cutoff(), limits.minZ());
-                int maxX = min(oldBaseX + oldState.cutoff(), limits.maxX());
-                int maxY = min(oldBaseY + oldState.cutoff(), limits.maxY());
-                int maxZ = min(oldBaseZ + oldState.cutoff(), limits.maxZ());
-
-                for (int x = minX; x <= maxX; x++) {
-                    for (int y = minY; y <= maxY; y++) {
-                        for (int z = minZ; z <= maxZ; z++) {
-                            if (!newState.hasLevel(lvl) || !overlaps(x, y, z, newBaseX, newBaseY, newBaseZ, newState.cutoff())) {
-                                removed.accept(new VoxelPos(lvl, x, y, z));
-                            }
-                        }
-                    }
-                }
-            }
+        final int baseX = asrRound(floorI(state.x()), T_SHIFT + level);
+        final int baseY = asrRound(floorI(state.y()), T_SHIFT + level);
+        final int baseZ = asrRound(floorI(state.z()), T_SHIFT + level);
 
-            //added positions
-            if (!oldState.hasLevel(lvl) || newState.hasLevel(lvl)) {
-                int minX = max(newBaseX - newState.cutoff(), limits.minX());
-                int minY = max(newBaseY - newState.cutoff(), limits.minY());
-                int minZ = max(newBaseZ - newState.cutoff(), limits.minZ());
-                int maxX = min(newBaseX + newState.cutoff(), limits.maxX());
-                int maxY = min(newBaseY + newState.cutoff(), limits.maxY());
-                int maxZ = min(newBaseZ + newState.cutoff(), limits.maxZ());
-
-                for (int x = minX; x <= maxX; x++) {
-                    for (int y = minY; y <= maxY; y++) {
-                        for (int z = minZ; z <= maxZ; z++) {
-                            if (!oldState.hasLevel(lvl) || !overlaps(x, y, z, oldBaseX, oldBaseY, oldBaseZ, oldState.cutoff())) {
-                                added.accept(new VoxelPos(lvl, x, y, z));
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        IntAxisAlignedBB limits = this.coordLimits[level];
+        min[0] = max(baseX - state.cutoff(), limits.minX());
+        min[1] = max(baseY - state.cutoff(), limits.minY());
+        min[2] = max(baseZ - state.cutoff(), limits.minZ());
+        max[0] = min(baseX + state.cutoff(), limits.maxX());
+        max[1] = min(baseY + state.cutoff(), limits.maxY());
+        max[2] = min(baseZ + state.cutoff(), limits.maxZ());
+
+        return min[0] <= max[0] && min[1] <= max[1] && min[2] <= max[2];
+    }
+
+    @Override
+    protected void origin(@NonNull TrackingState state, int level, @NonNull int[] dst) {
+        //move the origin towards where the player is looking and travelling. the player's velocity only affects the order in which tiles are loaded, not which tiles
+        //  are tracked, so that tiles don't need to be untracked again as soon as the player stops moving
+        dst[0] = asrRound(floorI(state.x()), T_SHIFT + level) + state.lookAheadOffset(state.lookX()) + state.predictedOffset(state.velocityX(), level);
+        dst[1] = asrRound(floorI(state.y()), T_SHIFT + level) + state.lookAheadOffset(state.lookY()) + state.predictedOffset(state.velocityY(), level);
+        dst[2] = asrRound(floorI(state.z()), T_SHIFT + level) + state.lookAheadOffset(state.lookZ()) + state.predictedOffset(state.velocityZ(), level);
     }
 
     @Override
-    protected boolean isVisible(@NonNull TrackingState state, @NonNull VoxelPos pos) {
-        return state.hasLevel(pos.level())
-               && this.coordLimits[pos.level()].contains(pos.x(), pos.y(), pos.z())
-               && abs(pos.x() - asrRound(floorI(state.x()), T_SHIFT + pos.level())) <= state.cutoff()
-               && abs(pos.y() - asrRound(floorI(state.y()), T_SHIFT + pos.level())) <= state.cutoff()
-               && abs(pos.z() - asrRound(floorI(state.z()), T_SHIFT + pos.level())) <= state.cutoff();
+    protected void direction(@NonNull TrackingState state, int level, @NonNull double[] dst) {
+        //combine the view and travel directions, giving them equal weight
+        double speed = sqrt(sq(state.velocityX()) + sq(state.velocityY()) + sq(state.velocityZ()));
+        dst[0] = state.lookX() + (speed != 0.0d ? state.velocityX() / speed : 0.0d);
+        dst[1] = state.lookY() + (speed != 0.0d ? state.velocityY() / speed : 0.0d);
+        dst[2] = state.lookZ() + (speed != 0.0d ? state.velocityZ() / speed : 0.0d);
     }
 
     @Override
@@ -186,6 +118,8 @@ public class VoxelTracker extends AbstractTracker<VoxelPos, VoxelTile, TrackingS
             }
         }
 
-        return new VoxelPosAndComparator(0, asrRound(floorI(state.x()), T_SHIFT), asrRound(floorI(state.y()), T_SHIFT), asrRound(floorI(state.z()), T_SHIFT));
+        int[] origin = new int[3];
+        this.origin(state, 0, origin);
+        return new VoxelPosAndComparator(0, origin[0], origin[1], origin[2]);
     }
 }
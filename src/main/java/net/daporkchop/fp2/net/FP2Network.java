@@ -25,11 +25,16 @@ import net.daporkchop.fp2.mode.api.player.IFarPlayerClient;
 import net.daporkchop.fp2.mode.api.player.IFarPlayerServer;
 import net.daporkchop.fp2.net.packet.debug.client.CPacketDebugDropAllTiles;
 import net.daporkchop.fp2.net.packet.debug.server.SPacketDebugUpdateStatistics;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
 import net.daporkchop.fp2.net.packet.standard.client.CPacketClientConfig;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketRequestTiles;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketHandshake;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionEnd;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileCached;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketTileData;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDataBatch;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDelta;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUnloadTile;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUnloadTiles;
 import net.daporkchop.fp2.net.packet.standard.server.SPacketUpdateConfig;
@@ -98,6 +103,8 @@ public class FP2Network {
 
         //serverbound packets
         PROTOCOL_FP2.registerMessage(serverboundHandler, CPacketClientConfig.class, id++, Side.SERVER);
+        PROTOCOL_FP2.registerMessage(serverboundHandler, CPacketCachedTiles.class, id++, Side.SERVER);
+        PROTOCOL_FP2.registerMessage(serverboundHandler, CPacketRequestTiles.class, id++, Side.SERVER);
 
         //clientbound packets
         PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketHandshake.class, id++, Side.CLIENT);
@@ -108,6 +115,9 @@ public class FP2Network {
         PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketUnloadTiles.class, id++, Side.CLIENT);
         PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketUpdateConfig.Merged.class, id++, Side.CLIENT);
         PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketUpdateConfig.Server.class, id++, Side.CLIENT);
+        PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketTileDataBatch.class, id++, Side.CLIENT);
+        PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketTileDelta.class, id++, Side.CLIENT);
+        PROTOCOL_FP2.registerMessage(clientboundHandler, SPacketTileCached.class, id++, Side.CLIENT);
     }
 
     @DebugOnly(RemovalPolicy.DROP)
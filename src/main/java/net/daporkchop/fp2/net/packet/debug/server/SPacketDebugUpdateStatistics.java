@@ -37,14 +37,20 @@ import static net.daporkchop.fp2.util.Constants.*;
 @DebugOnly
 public class SPacketDebugUpdateStatistics implements IMessage {
     protected DebugStats.Tracking tracking;
+    protected DebugStats.WorkerGroup[] terrainWorkers;
+    protected DebugStats.WorkerGroup[] trackerWorkers;
 
     @Override
     public void fromBytes(ByteBuf buf) {
         this.tracking = GSON.fromJson(readString(buf), DebugStats.Tracking.class);
+        this.terrainWorkers = GSON.fromJson(readString(buf), DebugStats.WorkerGroup[].class);
+        this.trackerWorkers = GSON.fromJson(readString(buf), DebugStats.WorkerGroup[].class);
     }
 
     @Override
     public void toBytes(ByteBuf buf) {
         writeString(buf, GSON.toJson(this.tracking));
+        writeString(buf, GSON.toJson(this.terrainWorkers));
+        writeString(buf, GSON.toJson(this.trackerWorkers));
     }
 }
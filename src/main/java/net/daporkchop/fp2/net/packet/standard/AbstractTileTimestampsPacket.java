@@ -0,0 +1,155 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.net.packet.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import net.daporkchop.fp2.mode.api.IFarDirectPosAccess;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
+import net.daporkchop.fp2.util.Constants;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.lib.common.util.PorkUtil.*;
+
+/**
+ * Base class for packets which carry a list of tile positions along with a timestamp for each of them.
+ * <p>
+ * The render mode is identified by its session-scoped ID (see {@link SPacketSessionBegin#modeNames()}), and the positions are sorted and delta-encoded in the same
+ * way as in {@link net.daporkchop.fp2.net.packet.standard.server.SPacketTileDataBatch}.
+ *
+ * @author DaPorkchop_
+ */
+@Getter
+@Setter
+public abstract class AbstractTileTimestampsPacket implements IMessage {
+    /**
+     * The maximum number of tiles which may be contained in a single packet. This also keeps the packet below vanilla's size limit for serverbound custom payloads.
+     * <p>
+     * Senders must split larger lists up into multiple packets.
+     */
+    public static final int MAX_TILES_PER_PACKET = 1024;
+
+    protected int modeId;
+
+    //only used when sending
+    protected IFarRenderMode<?, ?> mode;
+    protected Map<? extends IFarPos, Long> timestamps;
+
+    //only used when receiving
+    protected byte[] payload;
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.modeId = Constants.readVarInt(buf);
+
+        //we can't decode anything else until we know which mode the ID refers to, so keep the rest of the packet around for later
+        this.payload = new byte[buf.readableBytes()];
+        buf.readBytes(this.payload);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        checkState(this.mode != null && this.timestamps != null, "mode and timestamps must be set!");
+        this.write(buf, uncheckedCast(this.mode), uncheckedCast(this.timestamps));
+    }
+
+    protected <POS extends IFarPos> void write(@NonNull ByteBuf buf, @NonNull IFarRenderMode<POS, ?> mode, @NonNull Map<POS, Long> timestamps) {
+        checkState(timestamps.size() <= MAX_TILES_PER_PACKET, "too many tiles: %d", timestamps.size());
+
+        IFarDirectPosAccess<POS> directPosAccess = mode.directPosAccess();
+        int axisCount = directPosAccess.axisCount();
+
+        //sort the positions so that the deltas between consecutive positions are as small as possible
+        List<POS> sorted = new ArrayList<>(timestamps.keySet());
+        sorted.sort(POS::compareTo);
+
+        Constants.writeVarInt(buf, this.modeId);
+        Constants.writeVarInt(buf, sorted.size());
+
+        int lastLevel = 0;
+        int[] lastAxes = new int[axisCount];
+        long lastTimestamp = 0L;
+
+        for (POS pos : sorted) {
+            Constants.writeVarIntZigZag(buf, pos.level() - lastLevel);
+            lastLevel = pos.level();
+            for (int axis = 0; axis < axisCount; axis++) {
+                int value = directPosAccess.getAxisHeap(pos, axis);
+                Constants.writeVarIntZigZag(buf, value - lastAxes[axis]);
+                lastAxes[axis] = value;
+            }
+
+            long timestamp = timestamps.get(pos);
+            Constants.writeVarLongZigZag(buf, timestamp - lastTimestamp);
+            lastTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Decodes the positions and timestamps contained in this packet.
+     *
+     * @param mode the render mode identified by this packet's {@link #modeId()}
+     * @return the decoded timestamps, keyed by position
+     */
+    public <POS extends IFarPos> Map<POS, Long> decode(@NonNull IFarRenderMode<POS, ?> mode) {
+        checkState(this.payload != null, "packet hasn't been read!");
+
+        IFarDirectPosAccess<POS> directPosAccess = mode.directPosAccess();
+        ByteBuf buf = Unpooled.wrappedBuffer(this.payload);
+
+        //the count may come from the client, so make sure it's sane before doing anything else with it (every tile takes up at least one byte for its level and
+        //  timestamp, and for each axis)
+        int count = Constants.readVarInt(buf);
+        checkArg(count >= 0 && count <= min(MAX_TILES_PER_PACKET, buf.readableBytes() / (directPosAccess.axisCount() + 2)), "invalid tile count: %d", count);
+
+        Map<POS, Long> timestamps = new HashMap<>();
+
+        int level = 0;
+        int[] axes = new int[directPosAccess.axisCount()];
+        long timestamp = 0L;
+
+        for (int i = 0; i < count; i++) {
+            level += Constants.readVarIntZigZag(buf);
+            for (int axis = 0; axis < axes.length; axis++) {
+                axes[axis] += Constants.readVarIntZigZag(buf);
+            }
+            timestamp += Constants.readVarLongZigZag(buf);
+
+            timestamps.put(directPosAccess.fromAxes(level, axes), timestamp);
+        }
+
+        checkState(!buf.isReadable(), "%s trailing bytes in tile timestamp list", buf.readableBytes());
+        this.payload = null; //the payload isn't needed any more
+        return timestamps;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.net.packet.standard.client;
+
+import net.daporkchop.fp2.net.packet.standard.AbstractTileTimestampsPacket;
+
+/**
+ * Sent by the client at the beginning of a session to tell the server which tiles it already has in its persistent tile cache, along with their timestamps.
+ * <p>
+ * The server won't re-send the data for any of these tiles unless its copy is newer.
+ * <p>
+ * Large caches may be advertised using multiple packets. Clients should only advertise tiles which are near the player, since the server ignores tiles which it
+ * isn't currently tracking for the player.
+ *
+ * @author DaPorkchop_
+ */
+public class CPacketCachedTiles extends AbstractTileTimestampsPacket {
+    /**
+     * The maximum number of advertised tiles which the server will remember for a single session. Any tiles advertised beyond this limit are ignored.
+     */
+    public static final int MAX_TILES_PER_SESSION = 1 << 18;
+}
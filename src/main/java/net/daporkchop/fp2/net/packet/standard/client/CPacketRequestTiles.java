@@ -0,0 +1,109 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.net.packet.standard.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketSessionBegin;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDelta;
+import net.daporkchop.fp2.util.Constants;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Sent by the client to ask the server to send the full data for some tiles again, because the version of the tile the client has can no longer be relied upon (e.g. a
+ * {@link SPacketTileDelta} couldn't be applied to it).
+ * <p>
+ * The render mode is identified by its session-scoped ID (see {@link SPacketSessionBegin#modeNames()}).
+ *
+ * @author DaPorkchop_
+ */
+@Getter
+@Setter
+public class CPacketRequestTiles implements IMessage {
+    /**
+     * The maximum number of positions which may be contained in a single packet.
+     */
+    public static final int MAX_POSITIONS = 4096;
+
+    protected int modeId;
+
+    //only used when sending
+    protected Collection<? extends IFarPos> positions;
+
+    //only used when receiving
+    protected byte[] payload;
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.modeId = Constants.readVarInt(buf);
+
+        //we can't decode anything else until we know which mode the ID refers to, so keep the rest of the packet around for later
+        this.payload = new byte[buf.readableBytes()];
+        buf.readBytes(this.payload);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        checkState(this.positions != null, "positions must be set!");
+        checkState(this.positions.size() <= MAX_POSITIONS, "too many positions: %d", this.positions.size());
+
+        Constants.writeVarInt(buf, this.modeId);
+        Constants.writeVarInt(buf, this.positions.size());
+        this.positions.forEach(pos -> pos.writePos(buf));
+    }
+
+    /**
+     * Decodes the positions contained in this packet.
+     *
+     * @param mode the render mode identified by this packet's {@link #modeId()}
+     * @return the decoded positions
+     */
+    public <POS extends IFarPos> List<POS> decode(@NonNull IFarRenderMode<POS, ?> mode) {
+        checkState(this.payload != null, "packet hasn't been read!");
+
+        ByteBuf buf = Unpooled.wrappedBuffer(this.payload);
+
+        //the count comes from the client, so make sure it's sane before allocating anything for it (every position takes up at least one byte)
+        int count = Constants.readVarInt(buf);
+        checkArg(count >= 0 && count <= min(MAX_POSITIONS, buf.readableBytes()), "invalid tile position count: %d", count);
+
+        List<POS> positions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            positions.add(mode.readPos(buf));
+        }
+
+        checkState(!buf.isReadable(), "%s trailing bytes in tile position list", buf.readableBytes());
+        this.payload = null; //the payload isn't needed any more
+        return positions;
+    }
+}
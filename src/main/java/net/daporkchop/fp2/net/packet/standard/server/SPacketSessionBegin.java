@@ -24,14 +24,19 @@ import io.netty.buffer.ByteBuf;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
 import net.daporkchop.fp2.mode.api.ctx.IFarWorldClient;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+import net.daporkchop.fp2.util.Constants;
 import net.daporkchop.fp2.util.annotation.CalledFromClientThread;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
 import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
@@ -43,9 +48,38 @@ import java.util.function.Supplier;
 @Getter
 @Setter
 public class SPacketSessionBegin implements IMessage {
+    /**
+     * @return the names of all render modes registered on this side, indexed by the session-scoped mode ID used to refer to them in other packets
+     */
+    public static String[] sessionModeNames() {
+        return IFarRenderMode.REGISTRY.nameStream().toArray(String[]::new);
+    }
+
     @NonNull
     protected IntAxisAlignedBB[] coordLimits;
 
+    /**
+     * The ID of the dimension the session takes place in.
+     */
+    protected int dimension;
+
+    /**
+     * The dictionary used for compressing tile data during this session, or {@code null} if none.
+     */
+    protected ZstdDictionary tileDictionary;
+
+    /**
+     * The {@link IFarStorage#storageId() ID} of the storage which the session's tiles come from.
+     */
+    @NonNull
+    protected UUID storageId;
+
+    /**
+     * The names of the server's render modes, indexed by their session-scoped mode ID.
+     */
+    @NonNull
+    protected String[] modeNames = sessionModeNames();
+
     @Override
     public void fromBytes(ByteBuf buf) {
         int len = buf.readIntLE();
@@ -54,6 +88,15 @@ public class SPacketSessionBegin implements IMessage {
         for (int i = 0; i < len; i++) {
             this.coordLimits[i] = new IntAxisAlignedBB(buf.readIntLE(), buf.readIntLE(), buf.readIntLE(), buf.readIntLE(), buf.readIntLE(), buf.readIntLE());
         }
+
+        this.dimension = Constants.readVarIntZigZag(buf);
+        this.tileDictionary = ZstdDictionary.read(buf);
+        this.storageId = new UUID(buf.readLongLE(), buf.readLongLE());
+
+        this.modeNames = new String[Constants.readVarInt(buf)];
+        for (int i = 0; i < this.modeNames.length; i++) {
+            this.modeNames[i] = Constants.readString(buf);
+        }
     }
 
     @Override
@@ -64,11 +107,32 @@ public class SPacketSessionBegin implements IMessage {
             buf.writeIntLE(bb.minX()).writeIntLE(bb.minY()).writeIntLE(bb.minZ())
                     .writeIntLE(bb.maxX()).writeIntLE(bb.maxY()).writeIntLE(bb.maxZ());
         }
+
+        Constants.writeVarIntZigZag(buf, this.dimension);
+        ZstdDictionary.write(this.tileDictionary, buf);
+        buf.writeLongLE(this.storageId.getMostSignificantBits()).writeLongLE(this.storageId.getLeastSignificantBits());
+
+        Constants.writeVarInt(buf, this.modeNames.length);
+        for (String modeName : this.modeNames) {
+            Constants.writeString(buf, modeName);
+        }
+    }
+
+    /**
+     * @return the render modes identified by each session-scoped mode ID, with {@code null} elements for modes which aren't known on this side
+     */
+    public IFarRenderMode<?, ?>[] modes() {
+        IFarRenderMode<?, ?>[] modes = new IFarRenderMode[this.modeNames.length];
+        for (int i = 0; i < modes.length; i++) {
+            modes[i] = IFarRenderMode.REGISTRY.get(this.modeNames[i]);
+        }
+        return modes;
     }
 
     @SideOnly(Side.CLIENT)
     public IFarWorldClient fakeWorldClient() {
         IntAxisAlignedBB[] coordLimits = this.coordLimits;
+        int dimension = this.dimension;
 
         return new IFarWorldClient() {
             @CalledFromClientThread
@@ -88,6 +152,11 @@ public class SPacketSessionBegin implements IMessage {
                 return coordLimits;
             }
 
+            @Override
+            public int fp2_IFarWorld_dimensionId() {
+                return dimension;
+            }
+
             @Override
             public CompletableFuture<Void> fp2_IFarWorld_scheduleTask(@NonNull Runnable task) {
                 return ThreadingHelper.scheduleTaskInClientThread(task);
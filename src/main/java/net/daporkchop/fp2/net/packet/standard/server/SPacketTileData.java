@@ -25,6 +25,7 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
 import net.daporkchop.fp2.mode.api.tile.TileSnapshot;
 import net.daporkchop.fp2.util.Constants;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
@@ -38,7 +39,7 @@ public class SPacketTileData implements IMessage {
     @NonNull
     protected IFarRenderMode<?, ?> mode;
     @NonNull
-    protected TileSnapshot<?, ?> tile;
+    protected ITileSnapshot<?, ?> tile;
 
     @Override
     public void fromBytes(ByteBuf buf) {
@@ -0,0 +1,166 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.net.packet.standard.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import net.daporkchop.fp2.mode.api.IFarDirectPosAccess;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.CompressedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.util.Constants;
+import net.daporkchop.fp2.util.compression.ZstdDictionary;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+import static net.daporkchop.lib.common.util.PorkUtil.*;
+
+/**
+ * Carries the data for many tiles at once.
+ * <p>
+ * Unlike {@link SPacketTileData}, the render mode is identified by its session-scoped ID (see {@link SPacketSessionBegin#modeNames()}), positions are sorted and
+ * delta-encoded, and each tile's data is sent as an individual Zstd frame compressed using the session's tile dictionary. This allows the client to keep the received
+ * frames as {@link CompressedTileSnapshot}s without having to re-compress anything.
+ *
+ * @author DaPorkchop_
+ */
+@Getter
+@Setter
+public class SPacketTileDataBatch implements IMessage {
+    protected int modeId;
+
+    //only used when sending
+    protected IFarRenderMode<?, ?> mode;
+    protected ZstdDictionary dictionary;
+    protected Collection<? extends ITileSnapshot<?, ?>> tiles;
+
+    //only used when receiving
+    protected byte[] payload;
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.modeId = Constants.readVarInt(buf);
+
+        //we can't decode anything else until we know which mode the ID refers to, so keep the rest of the packet around for later
+        this.payload = new byte[buf.readableBytes()];
+        buf.readBytes(this.payload);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        checkState(this.mode != null && this.tiles != null, "mode and tiles must be set!");
+        this.write(buf, uncheckedCast(this.mode), uncheckedCast(this.tiles));
+    }
+
+    protected <POS extends IFarPos, T extends IFarTile> void write(@NonNull ByteBuf buf, @NonNull IFarRenderMode<POS, T> mode, @NonNull Collection<ITileSnapshot<POS, T>> tiles) {
+        IFarDirectPosAccess<POS> directPosAccess = mode.directPosAccess();
+        int axisCount = directPosAccess.axisCount();
+
+        //sort the tiles by position so that the deltas between consecutive positions are as small as possible
+        List<ITileSnapshot<POS, T>> sorted = new ArrayList<>(tiles);
+        sorted.sort((a, b) -> a.pos().compareTo(b.pos()));
+
+        Constants.writeVarInt(buf, this.modeId);
+        Constants.writeVarInt(buf, sorted.size());
+
+        int lastLevel = 0;
+        int[] lastAxes = new int[axisCount];
+        long lastTimestamp = 0L;
+
+        for (ITileSnapshot<POS, T> tile : sorted) {
+            POS pos = tile.pos();
+
+            //position and timestamp, as deltas relative to the previous tile
+            Constants.writeVarIntZigZag(buf, pos.level() - lastLevel);
+            lastLevel = pos.level();
+            for (int axis = 0; axis < axisCount; axis++) {
+                int value = directPosAccess.getAxisHeap(pos, axis);
+                Constants.writeVarIntZigZag(buf, value - lastAxes[axis]);
+                lastAxes[axis] = value;
+            }
+            Constants.writeVarLongZigZag(buf, tile.timestamp() - lastTimestamp);
+            lastTimestamp = tile.timestamp();
+
+            //compressed tile data, prefixed with its length + 1 (0 indicates that the tile is empty)
+            ITileSnapshot<POS, T> compressed = tile.compressed(this.dictionary);
+            checkState(compressed instanceof CompressedTileSnapshot, "compressed snapshot has unexpected type: %s", compressed);
+            byte[] data = ((CompressedTileSnapshot<POS, T>) compressed).compressedData();
+            if (data == null) {
+                Constants.writeVarInt(buf, 0);
+            } else {
+                Constants.writeVarInt(buf, data.length + 1);
+                buf.writeBytes(data);
+            }
+        }
+    }
+
+    /**
+     * Decodes the tiles contained in this packet.
+     *
+     * @param mode       the render mode identified by this packet's {@link #modeId()}
+     * @param dictionary the session's tile dictionary
+     * @return the decoded tiles
+     */
+    public <POS extends IFarPos, T extends IFarTile> List<CompressedTileSnapshot<POS, T>> decode(@NonNull IFarRenderMode<POS, T> mode, ZstdDictionary dictionary) {
+        checkState(this.payload != null, "packet hasn't been read!");
+
+        IFarDirectPosAccess<POS> directPosAccess = mode.directPosAccess();
+        ByteBuf buf = Unpooled.wrappedBuffer(this.payload);
+
+        int count = Constants.readVarInt(buf);
+        List<CompressedTileSnapshot<POS, T>> tiles = new ArrayList<>(count);
+
+        int level = 0;
+        int[] axes = new int[directPosAccess.axisCount()];
+        long timestamp = 0L;
+
+        for (int i = 0; i < count; i++) {
+            level += Constants.readVarIntZigZag(buf);
+            for (int axis = 0; axis < axes.length; axis++) {
+                axes[axis] += Constants.readVarIntZigZag(buf);
+            }
+            timestamp += Constants.readVarLongZigZag(buf);
+
+            byte[] data = null;
+            int length = Constants.readVarInt(buf) - 1;
+            if (length >= 0) {
+                data = new byte[length];
+                buf.readBytes(data);
+            }
+
+            //the frame was compressed using the session's dictionary, so it can be used as-is
+            tiles.add(CompressedTileSnapshot.wrapCompressed(directPosAccess.fromAxes(level, axes), timestamp, data, dictionary));
+        }
+
+        checkState(!buf.isReadable(), "%s trailing bytes in tile data batch", buf.readableBytes());
+        this.payload = null; //the payload isn't needed any more
+        return tiles;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.net.packet.standard.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.tile.TileDelta;
+import net.daporkchop.fp2.util.Constants;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Tells the client to patch a tile it already has, rather than re-sending the whole tile.
+ * <p>
+ * The render mode is identified by its session-scoped ID (see {@link SPacketSessionBegin#modeNames()}).
+ *
+ * @author DaPorkchop_
+ */
+@Getter
+@Setter
+public class SPacketTileDelta implements IMessage {
+    protected int modeId;
+
+    //only used when sending
+    protected TileDelta<?> delta;
+
+    //only used when receiving
+    protected byte[] payload;
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.modeId = Constants.readVarInt(buf);
+
+        //we can't decode the position until we know which mode the ID refers to, so keep the rest of the packet around for later
+        this.payload = new byte[buf.readableBytes()];
+        buf.readBytes(this.payload);
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        checkState(this.delta != null, "delta must be set!");
+
+        Constants.writeVarInt(buf, this.modeId);
+        this.delta.pos().writePos(buf);
+        Constants.writeVarLong(buf, this.delta.baseTimestamp());
+        Constants.writeVarLongZigZag(buf, this.delta.timestamp() - this.delta.baseTimestamp());
+        Constants.writeVarInt(buf, this.delta.data().length);
+        buf.writeBytes(this.delta.data());
+    }
+
+    /**
+     * Decodes the delta contained in this packet.
+     *
+     * @param mode the render mode identified by this packet's {@link #modeId()}
+     * @return the decoded delta
+     */
+    public <POS extends IFarPos> TileDelta<POS> decode(@NonNull IFarRenderMode<POS, ?> mode) {
+        checkState(this.payload != null, "packet hasn't been read!");
+
+        ByteBuf buf = Unpooled.wrappedBuffer(this.payload);
+        POS pos = mode.readPos(buf);
+        long baseTimestamp = Constants.readVarLong(buf);
+        long timestamp = baseTimestamp + Constants.readVarLongZigZag(buf);
+        byte[] data = new byte[Constants.readVarInt(buf)];
+        buf.readBytes(data);
+
+        checkState(!buf.isReadable(), "%s trailing bytes in tile delta", buf.readableBytes());
+        this.payload = null; //the payload isn't needed any more
+        return new TileDelta<>(pos, baseTimestamp, timestamp, data);
+    }
+}
@@ -123,6 +123,7 @@ public class Constants {
 
     public static final Cached<ArrayAllocator<byte[]>> ALLOC_BYTE = Cached.threadLocal(() -> ArrayAllocator.pow2(byte[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
     public static final Cached<ArrayAllocator<int[]>> ALLOC_INT = Cached.threadLocal(() -> ArrayAllocator.pow2(int[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
+    public static final Cached<ArrayAllocator<long[]>> ALLOC_LONG = Cached.threadLocal(() -> ArrayAllocator.pow2(long[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
     public static final Cached<ArrayAllocator<float[]>> ALLOC_FLOAT = Cached.threadLocal(() -> ArrayAllocator.pow2(float[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
     public static final Cached<ArrayAllocator<double[]>> ALLOC_DOUBLE = Cached.threadLocal(() -> ArrayAllocator.pow2(double[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
     public static final Cached<ArrayAllocator<Object[]>> ALLOC_OBJECT = Cached.threadLocal(() -> ArrayAllocator.pow2(Object[]::new, ReferenceStrength.STRONG, 32), ReferenceStrength.WEAK);
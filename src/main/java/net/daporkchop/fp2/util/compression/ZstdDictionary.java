@@ -0,0 +1,171 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.NonNull;
+import net.daporkchop.lib.common.misc.string.PStrings;
+import net.daporkchop.lib.compression.zstd.Zstd;
+import net.daporkchop.lib.compression.zstd.ZstdDeflateDictionary;
+import net.daporkchop.lib.compression.zstd.ZstdInflateDictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static net.daporkchop.fp2.util.Constants.*;
+
+/**
+ * A zstd dictionary used for compressing tile data.
+ * <p>
+ * The native dictionary objects are created lazily, since a dictionary which has been received from a server might never actually be used.
+ *
+ * @author DaPorkchop_
+ * @see ZstdDictionaryTrainer
+ */
+public final class ZstdDictionary {
+    /**
+     * Reads a dictionary which was written using {@link #write(ZstdDictionary, ByteBuf)}.
+     *
+     * @param src the {@link ByteBuf} to read from
+     * @return the dictionary, or {@code null} if none was written
+     */
+    public static ZstdDictionary read(@NonNull ByteBuf src) {
+        int len = src.readIntLE();
+        if (len < 0) { //no dictionary
+            return null;
+        }
+
+        byte[] data = new byte[len];
+        src.readBytes(data);
+        return new ZstdDictionary(data);
+    }
+
+    /**
+     * Writes the given (possibly {@code null}) dictionary to the given {@link ByteBuf}.
+     *
+     * @param dictionary the dictionary
+     * @param dst        the {@link ByteBuf} to write to
+     */
+    public static void write(ZstdDictionary dictionary, @NonNull ByteBuf dst) {
+        if (dictionary == null) { //no dictionary
+            dst.writeIntLE(-1);
+        } else {
+            dst.writeIntLE(dictionary.data.length).writeBytes(dictionary.data);
+        }
+    }
+
+    /**
+     * Loads a dictionary from the given file.
+     *
+     * @param file the file
+     * @return the dictionary, or {@code null} if the file doesn't exist
+     */
+    public static ZstdDictionary load(@NonNull File file) throws IOException {
+        return file.exists() ? new ZstdDictionary(Files.readAllBytes(file.toPath())) : null;
+    }
+
+    /**
+     * Compresses the data in the given source buffer into the given destination buffer, using the given (possibly {@code null}) dictionary.
+     *
+     * @return whether or not compression was successful
+     */
+    public static boolean compress(ZstdDictionary dictionary, @NonNull ByteBuf src, @NonNull ByteBuf dst) {
+        return dictionary != null
+                ? ZSTD_DEF.get().compress(src, dst, dictionary.deflateDictionary())
+                : ZSTD_DEF.get().compress(src, dst);
+    }
+
+    /**
+     * Decompresses the data in the given source buffer into the given destination buffer, using the given (possibly {@code null}) dictionary.
+     *
+     * @return whether or not decompression was successful
+     */
+    public static boolean decompress(ZstdDictionary dictionary, @NonNull ByteBuf src, @NonNull ByteBuf dst) {
+        return dictionary != null
+                ? ZSTD_INF.get().decompress(src, dst, dictionary.inflateDictionary())
+                : ZSTD_INF.get().decompress(src, dst);
+    }
+
+    @Getter
+    protected final byte[] data;
+
+    protected volatile ZstdDeflateDictionary deflateDictionary;
+    protected volatile ZstdInflateDictionary inflateDictionary;
+
+    public ZstdDictionary(@NonNull byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Atomically saves this dictionary to the given file.
+     *
+     * @param file the file
+     */
+    public void save(@NonNull File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Files.write(tmpFile.toPath(), this.data);
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public ZstdDeflateDictionary deflateDictionary() {
+        ZstdDeflateDictionary deflateDictionary = this.deflateDictionary;
+        if (deflateDictionary == null) {
+            synchronized (this) {
+                if ((deflateDictionary = this.deflateDictionary) == null) {
+                    this.deflateDictionary = deflateDictionary = Zstd.PROVIDER.loadDeflateDictionary(Unpooled.wrappedBuffer(this.data));
+                }
+            }
+        }
+        return deflateDictionary;
+    }
+
+    public ZstdInflateDictionary inflateDictionary() {
+        ZstdInflateDictionary inflateDictionary = this.inflateDictionary;
+        if (inflateDictionary == null) {
+            synchronized (this) {
+                if ((inflateDictionary = this.inflateDictionary) == null) {
+                    this.inflateDictionary = inflateDictionary = Zstd.PROVIDER.loadInflateDictionary(Unpooled.wrappedBuffer(this.data));
+                }
+            }
+        }
+        return inflateDictionary;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.data);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || (obj instanceof ZstdDictionary && Arrays.equals(this.data, ((ZstdDictionary) obj).data));
+    }
+
+    @Override
+    public String toString() {
+        return PStrings.fastFormat("ZstdDictionary(%d bytes)", this.data.length);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.compression;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import net.daporkchop.lib.unsafe.PUnsafe;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Trains raw-content zstd dictionaries from a set of sample inputs.
+ * <p>
+ * This is a simplified version of zstd's COVER algorithm: the concatenated samples are divided into one epoch per dictionary segment, and from each epoch the segment
+ * whose distinct {@link #DMER_SIZE}-byte substrings occur in the most samples is selected. Substrings which have already been selected are no longer counted, so that
+ * later segments favor content which isn't yet covered by the dictionary.
+ * <p>
+ * The resulting dictionary doesn't contain any entropy tables, and is therefore loaded by zstd as a raw content dictionary.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class ZstdDictionaryTrainer {
+    /**
+     * The length of the substrings whose frequencies are counted.
+     */
+    public static final int DMER_SIZE = Long.BYTES;
+
+    /**
+     * The size of each segment copied into the dictionary.
+     */
+    public static final int SEGMENT_SIZE = 1024;
+
+    /**
+     * Trains a new dictionary from the given samples.
+     *
+     * @param samples the samples to train the dictionary from
+     * @param maxSize the maximum size of the dictionary, in bytes
+     * @return the trained dictionary, or {@code null} if the samples didn't contain enough data to train a dictionary
+     */
+    public byte[] train(@NonNull List<byte[]> samples, int maxSize) {
+        positive(maxSize, "maxSize");
+
+        //concatenate all samples into a single array
+        long totalSize = samples.stream().mapToLong(sample -> sample.length).sum();
+        if (totalSize < max(maxSize, SEGMENT_SIZE) || totalSize > Integer.MAX_VALUE) { //there isn't enough sample data to train a useful dictionary (or there's way too much)
+            return null;
+        }
+
+        byte[] content = new byte[(int) totalSize];
+        int[] sampleEnds = new int[samples.size()];
+        for (int i = 0, offset = 0; i < samples.size(); i++) {
+            byte[] sample = samples.get(i);
+            System.arraycopy(sample, 0, content, offset, sample.length);
+            sampleEnds[i] = offset += sample.length;
+        }
+
+        //count the number of samples each dmer occurs in
+        Long2IntOpenHashMap frequencies = new Long2IntOpenHashMap();
+        LongOpenHashSet seen = new LongOpenHashSet();
+        for (int i = 0, start = 0; i < sampleEnds.length; start = sampleEnds[i++]) {
+            seen.clear();
+            for (int pos = start, end = sampleEnds[i] - DMER_SIZE; pos <= end; pos++) {
+                long dmer = dmer(content, pos);
+                if (seen.add(dmer)) {
+                    frequencies.addTo(dmer, 1);
+                }
+            }
+        }
+
+        //select the best segment from each epoch
+        int epochs = max(maxSize / SEGMENT_SIZE, 1);
+        int epochSize = content.length / epochs;
+        List<Segment> segments = new ArrayList<>(epochs);
+        Long2IntOpenHashMap window = new Long2IntOpenHashMap();
+
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            int epochStart = epoch * epochSize;
+            int epochEnd = min(epochStart + epochSize, content.length);
+            if (epochEnd - epochStart < SEGMENT_SIZE) {
+                continue;
+            }
+
+            Segment best = bestSegment(content, epochStart, epochEnd, frequencies, window);
+            if (best.score <= 0L) { //nothing in this epoch is worth adding
+                continue;
+            }
+            segments.add(best);
+
+            //don't count the selected dmers again
+            for (int pos = best.start, end = best.start + SEGMENT_SIZE - DMER_SIZE; pos <= end; pos++) {
+                frequencies.remove(dmer(content, pos));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            return null;
+        }
+
+        //zstd can reference content closer to the end of the dictionary with smaller offsets, so the highest-scoring segments are placed last
+        segments.sort(Comparator.comparingLong(segment -> segment.score));
+
+        int dictSize = min(segments.size() * SEGMENT_SIZE, maxSize);
+        byte[] dict = new byte[dictSize];
+        for (int i = segments.size() - 1, dst = dictSize; i >= 0 && dst > 0; i--) {
+            int len = min(SEGMENT_SIZE, dst);
+            dst -= len;
+            System.arraycopy(content, segments.get(i).start + SEGMENT_SIZE - len, dict, dst, len);
+        }
+        return dict;
+    }
+
+    private Segment bestSegment(byte[] content, int start, int end, Long2IntMap frequencies, Long2IntOpenHashMap window) {
+        window.clear();
+
+        Segment best = new Segment(start, Long.MIN_VALUE);
+        long score = 0L;
+
+        //slide a window of SEGMENT_SIZE bytes across the epoch, keeping track of the sum of the frequencies of the distinct dmers in the window
+        for (int pos = start, last = end - DMER_SIZE; pos <= last; pos++) {
+            long dmer = dmer(content, pos);
+            if (window.addTo(dmer, 1) == 0) { //dmer wasn't previously in the window
+                score += frequencies.get(dmer);
+            }
+
+            int segmentStart = pos + DMER_SIZE - SEGMENT_SIZE;
+            if (segmentStart >= start) {
+                if (score > best.score) {
+                    best = new Segment(segmentStart, score);
+                }
+
+                //remove the first dmer from the window
+                long oldDmer = dmer(content, segmentStart);
+                if (window.addTo(oldDmer, -1) == 1) { //dmer is no longer in the window
+                    window.remove(oldDmer);
+                    score -= frequencies.get(oldDmer);
+                }
+            }
+        }
+        return best;
+    }
+
+    private long dmer(byte[] content, int pos) {
+        return PUnsafe.getLong(content, PUnsafe.ARRAY_BYTE_BASE_OFFSET + pos);
+    }
+
+    /**
+     * @author DaPorkchop_
+     */
+    private static final class Segment {
+        final int start;
+        final long score;
+
+        Segment(int start, long score) {
+            this.start = start;
+            this.score = score;
+        }
+    }
+}
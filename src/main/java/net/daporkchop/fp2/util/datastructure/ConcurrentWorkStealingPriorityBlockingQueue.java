@@ -0,0 +1,508 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.datastructure;
+
+import lombok.NonNull;
+import net.daporkchop.lib.common.util.PorkUtil;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.daporkchop.lib.common.util.PorkUtil.*;
+
+/**
+ * Alternative to {@link ConcurrentUnboundedPriorityBlockingQueue} which scales better with large numbers of consumer threads.
+ * <p>
+ * Rather than a single shared structure, every thread which polls the queue is given its own priority heap (a "lane"). Elements added by such a thread are
+ * placed in its own lane, elements added by any other thread are placed in a random lane. When polling, a thread compares the head of its own lane with the head
+ * of a randomly chosen other lane and takes the smaller one, falling back to stealing from every other lane if both are empty. As a result, elements are only
+ * polled in approximate priority order.
+ * <p>
+ * Elements added using {@link #push(Object)} can be removed in constant time using the returned {@link Node}, which simply marks the element as removed. Removed
+ * elements are discarded once they reach the head of their lane, or when more than half of a lane consists of removed elements.
+ * <p>
+ * Blocking poll methods park the calling thread until a suitable element is added, rather than spinning.
+ * <p>
+ * A lane is retired once it is empty and its owning thread has either exited or called {@link #releaseLocalLane()}, so that short-lived or replaced worker
+ * threads don't leave behind lanes which every subsequent poll would still have to look at. Any elements left in such a lane remain available to other threads
+ * until it has been emptied.
+ *
+ * @author DaPorkchop_
+ */
+public class ConcurrentWorkStealingPriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    protected static final int NODE_QUEUED = 0;
+    protected static final int NODE_TAKEN = 1;
+    protected static final int NODE_REMOVED = 2;
+
+    protected static final AtomicIntegerFieldUpdater<ConcurrentWorkStealingPriorityBlockingQueue.Node> NODE_STATE_UPDATER
+            = AtomicIntegerFieldUpdater.newUpdater(ConcurrentWorkStealingPriorityBlockingQueue.Node.class, "state");
+
+    protected static final int MIN_PURGE_COUNT = 64;
+
+    protected final Comparator<? super E> comparator;
+    protected final Comparator<Node> nodeComparator;
+
+    protected final AtomicInteger size = new AtomicInteger();
+
+    protected final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    protected final ThreadLocal<Lane> localLane = new ThreadLocal<>();
+
+    public ConcurrentWorkStealingPriorityBlockingQueue() {
+        this(null);
+    }
+
+    public ConcurrentWorkStealingPriorityBlockingQueue(Comparator<? super E> comparator) {
+        this.comparator = comparator != null ? comparator : (a, b) -> PorkUtil.<Comparable<E>>uncheckedCast(a).compareTo(b);
+        this.nodeComparator = (a, b) -> this.comparator.compare(a.value, b.value);
+
+        //elements added before any thread has polled the queue need somewhere to go
+        this.lanes.add(new Lane(null));
+    }
+
+    protected Lane localLane() {
+        Lane lane = this.localLane.get();
+        if (lane == null) { //register a new lane for the current thread
+            //new lanes are generally registered when worker threads are (re-)created, which is also when the previous workers' lanes are most likely to have
+            //  been orphaned
+            for (Lane other : this.lanes) {
+                if (other.orphaned()) {
+                    this.tryRetire(other);
+                }
+            }
+
+            lane = new Lane(Thread.currentThread());
+            this.localLane.set(lane);
+            this.lanes.add(lane);
+        }
+        return lane;
+    }
+
+    /**
+     * Releases the current thread's lane, if it has one.
+     * <p>
+     * This should be called by worker threads before they exit. Any elements remaining in the lane will still be available to other threads, and the lane will be
+     * removed once it is empty. If the current thread polls this queue again afterwards, it will be given a new lane.
+     */
+    public void releaseLocalLane() {
+        Lane lane = this.localLane.get();
+        if (lane != null) {
+            this.localLane.remove();
+            lane.released = true;
+            this.tryRetire(lane);
+        }
+    }
+
+    /**
+     * Removes the given lane from this queue if it's empty.
+     *
+     * @return whether or not the lane was removed
+     */
+    protected boolean tryRetire(@NonNull Lane lane) {
+        synchronized (lane) {
+            if (lane.retired || this.peekLane(lane) != null) { //the lane has already been removed, or isn't empty
+                return false;
+            }
+
+            //push() checks this flag while holding the lane's lock, so nothing can be added to the lane once it's set
+            lane.retired = true;
+        }
+        this.lanes.remove(lane);
+        return true;
+    }
+
+    /**
+     * @return the number of lanes which currently exist
+     */
+    public int laneCount() {
+        return this.lanes.size();
+    }
+
+    protected Lane randomLane() {
+        List<Lane> lanes = this.lanes;
+        return lanes.get(ThreadLocalRandom.current().nextInt(lanes.size()));
+    }
+
+    /**
+     * Adds the given element to this queue.
+     *
+     * @param value the element
+     * @return a {@link Node} which may be used to remove the element from the queue again
+     */
+    public Node push(@NonNull E value) {
+        Node node;
+        for (Lane lane = this.localLane.get(); ; lane = null) {
+            if (lane == null) { //the current thread never polls, so it doesn't have a lane of its own
+                lane = this.randomLane();
+            }
+
+            synchronized (lane) {
+                if (lane.retired) { //the lane was removed after we chose it, try again with a different one
+                    continue;
+                }
+
+                int dead = lane.dead.get();
+                if (dead >= MIN_PURGE_COUNT && dead > (lane.heap.size() >> 1)) { //most of the lane consists of removed nodes, purge them all at once
+                    int sizeBefore = lane.heap.size();
+                    lane.heap.removeIf(n -> n.state != NODE_QUEUED);
+                    lane.dead.addAndGet(lane.heap.size() - sizeBefore);
+                }
+                node = new Node(value, lane);
+                lane.heap.add(node);
+                break;
+            }
+        }
+        this.size.incrementAndGet();
+
+        this.signal(value);
+        return node;
+    }
+
+    /**
+     * Wakes up all threads which are currently waiting for an element to become available, even if no elements have been added.
+     */
+    public void wakeWaiters() {
+        for (Lane lane : this.lanes) {
+            if (lane.waiting) {
+                LockSupport.unpark(lane.thread);
+            }
+        }
+    }
+
+    protected void signal(E value) {
+        for (Lane lane : this.lanes) {
+            if (lane.waiting) {
+                Object bound = lane.bound;
+                if (bound == null || this.comparator.compare(value, uncheckedCast(bound)) < 0) {
+                    LockSupport.unpark(lane.thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the value of the first live node in the given lane, or {@code null} if the lane is empty
+     */
+    protected E peekLane(@NonNull Lane lane) {
+        synchronized (lane) {
+            for (Node node; (node = lane.heap.peek()) != null; ) {
+                if (node.state == NODE_QUEUED) {
+                    return node.value;
+                }
+
+                //discard removed node
+                lane.heap.poll();
+                lane.dead.decrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Polls the first live node in the given lane, as long as it is less than the given bound.
+     */
+    protected E pollLane(@NonNull Lane lane, E bound) {
+        synchronized (lane) {
+            for (Node node; (node = lane.heap.peek()) != null; ) {
+                if (node.state == NODE_QUEUED) {
+                    if (bound != null && this.comparator.compare(node.value, bound) >= 0) { //the first node isn't less than the bound
+                        return null;
+                    }
+
+                    lane.heap.poll();
+                    if (NODE_STATE_UPDATER.compareAndSet(node, NODE_QUEUED, NODE_TAKEN)) {
+                        this.size.decrementAndGet();
+                        return node.value;
+                    }
+                    //the node was removed concurrently, so it's now counted as dead
+                } else {
+                    lane.heap.poll();
+                }
+
+                //discard removed node
+                lane.dead.decrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    protected E tryPoll(E bound) {
+        if (this.size.get() == 0) { //fast path: don't bother acquiring any locks
+            return null;
+        }
+
+        List<Lane> lanes = this.lanes;
+        Lane own = this.localLane();
+        Lane victim = lanes.get(ThreadLocalRandom.current().nextInt(lanes.size()));
+
+        //choose whichever of the two lanes has the smaller head
+        E ownHead = this.peekLane(own);
+        E victimHead = victim != own ? this.peekLane(victim) : null;
+        Lane first = ownHead == null || (victimHead != null && this.comparator.compare(victimHead, ownHead) < 0) ? victim : own;
+
+        E value = this.pollLane(first, bound);
+        if (first.orphaned()) { //the lane's owner is gone, and we may have just taken the last element from it
+            this.tryRetire(first);
+        }
+        if (value != null) {
+            return value;
+        }
+
+        //steal from any lane we can find, starting at a random index to avoid all threads fighting over the same lanes
+        for (int i = 0, size = lanes.size(), offset = ThreadLocalRandom.current().nextInt(size); i < size; i++) {
+            Lane lane = lanes.get((i + offset) % size);
+            if (lane != first) {
+                value = this.pollLane(lane, bound);
+                if (lane.orphaned()) {
+                    this.tryRetire(lane);
+                }
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Polls an element, waiting until one which is less than the given bound is available.
+     *
+     * @param bound        the (exclusive) upper bound, or {@code null} if any element is acceptable
+     * @param timeoutNanos the maximum time to wait, in nanoseconds
+     * @param returnOnWake if {@code true}, this method will return {@code null} as soon as the calling thread is unparked, rather than continuing to wait
+     */
+    protected E poll0(E bound, long timeoutNanos, boolean returnOnWake) throws InterruptedException {
+        E value = this.tryPoll(bound);
+        if (value != null || timeoutNanos <= 0L) {
+            return value;
+        }
+
+        Lane lane = this.localLane();
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            while (true) {
+                //publish that we're waiting before checking again, so that any element added after the check will be guaranteed to see us and unpark us
+                lane.bound = bound;
+                lane.waiting = true;
+                if ((value = this.tryPoll(bound)) != null) {
+                    return value;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                lane.waiting = false;
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                } else if ((value = this.tryPoll(bound)) != null || returnOnWake) {
+                    return value;
+                }
+            }
+        } finally {
+            lane.waiting = false;
+            lane.bound = null;
+        }
+    }
+
+    /**
+     * Polls an element which is strictly less than the given bound, waiting if necessary.
+     * <p>
+     * Unlike {@link #poll(long, TimeUnit)}, this method may return {@code null} before the timeout has elapsed if the calling thread is unparked (e.g. by
+     * {@link #wakeWaiters()} or {@link LockSupport#unpark(Thread)}).
+     *
+     * @param bound   the (exclusive) upper bound
+     * @param timeout the maximum time to wait
+     * @param unit    the {@link TimeUnit} of {@code timeout}
+     * @return the polled element, or {@code null} if none was available
+     */
+    public E pollLess(@NonNull E bound, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return this.poll0(bound, unit.toNanos(timeout), true);
+    }
+
+    @Override
+    public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return this.poll0(null, unit.toNanos(timeout), false);
+    }
+
+    @Override
+    public E poll() {
+        return this.tryPoll(null);
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        while (true) {
+            E value = this.poll0(null, TimeUnit.SECONDS.toNanos(1L), false);
+            if (value != null) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        E min = null;
+        for (Lane lane : this.lanes) {
+            E head = this.peekLane(lane);
+            if (head != null && (min == null || this.comparator.compare(head, min) < 0)) {
+                min = head;
+            }
+        }
+        return min;
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        //iterate over a snapshot of all the live nodes
+        List<E> values = new ArrayList<>();
+        for (Lane lane : this.lanes) {
+            synchronized (lane) {
+                for (Node node : lane.heap) {
+                    if (node.state == NODE_QUEUED) {
+                        values.add(node.value);
+                    }
+                }
+            }
+        }
+        return values.iterator();
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        int added = 0;
+        for (E value; added < maxElements && (value = this.poll()) != null; added++) {
+            c.add(value);
+        }
+        return added;
+    }
+
+    //delegate methods
+
+    @Override
+    public boolean offer(@NonNull E e) {
+        this.push(e);
+        return true;
+    }
+
+    @Override
+    public void put(@NonNull E e) {
+        this.push(e);
+    }
+
+    @Override
+    public boolean offer(@NonNull E e, long timeout, @NonNull TimeUnit unit) {
+        this.push(e);
+        return true;
+    }
+
+    /**
+     * A priority heap owned by a single polling thread.
+     *
+     * @author DaPorkchop_
+     */
+    protected final class Lane {
+        protected final PriorityQueue<Node> heap = new PriorityQueue<>(ConcurrentWorkStealingPriorityBlockingQueue.this.nodeComparator);
+        protected final AtomicInteger dead = new AtomicInteger(); //the number of removed nodes which are still in the heap
+
+        protected final Thread thread;
+        protected volatile boolean waiting;
+        protected volatile Object bound;
+
+        protected volatile boolean released; //whether or not the owning thread has released this lane
+        protected boolean retired; //whether or not this lane has been removed from the queue. guarded by the lane's lock
+
+        protected Lane(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * @return whether or not this lane's owning thread is gone, meaning that the lane may be removed once it's empty
+         */
+        protected boolean orphaned() {
+            return this.thread != null && (this.released || !this.thread.isAlive());
+        }
+    }
+
+    /**
+     * A handle to an element in the queue.
+     *
+     * @author DaPorkchop_
+     */
+    public final class Node {
+        protected final E value;
+        protected final Lane lane;
+
+        protected volatile int state = NODE_QUEUED;
+
+        protected Node(@NonNull E value, @NonNull Lane lane) {
+            this.value = value;
+            this.lane = lane;
+        }
+
+        /**
+         * Removes this node's element from the queue.
+         *
+         * @return {@code false} if the element has already been polled or removed
+         */
+        public boolean remove() {
+            if (NODE_STATE_UPDATER.compareAndSet(this, NODE_QUEUED, NODE_REMOVED)) {
+                ConcurrentWorkStealingPriorityBlockingQueue.this.size.decrementAndGet();
+                this.lane.dead.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.datastructure;
+
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A concurrent map whose values are only ever operated on while holding their own monitor.
+ * <p>
+ * Values are looked up and inserted without locking, and then locked individually, so operations on different keys never block each other and operations on the same
+ * key simply wait for each other instead of spinning. A value is only removed from the map while its monitor is held, so anyone who acquires the monitor of a value which
+ * has been removed in the meantime knows to look it up again. Removed values must never be inserted again.
+ *
+ * @author DaPorkchop_
+ */
+public class LockingEntryMap<K, V> {
+    protected final Map<K, V> map = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the given action on the value associated with the given key while holding the value's monitor, creating a new value if none is present.
+     *
+     * @param key     the key
+     * @param factory a function for creating a new value for the key. The returned value must not have been in this map before
+     * @param action  the action to run. Returns whether or not the value should be removed from the map
+     */
+    public void runLocked(@NonNull K key, @NonNull Function<? super K, ? extends V> factory, @NonNull Predicate<? super V> action) {
+        while (true) {
+            V value = this.map.get(key);
+            if (value == null) { //no value exists for this key, so we should try to make a new one
+                V created = factory.apply(key);
+                V existing = this.map.putIfAbsent(key, created);
+                value = existing != null ? existing : created; //if someone else created a value first, use theirs
+            }
+
+            if (this.tryRun(key, value, action)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the given action on the value associated with the given key while holding the value's monitor, if any.
+     *
+     * @param key    the key
+     * @param action the action to run. Returns whether or not the value should be removed from the map
+     * @return whether or not a value was present
+     */
+    public boolean runLockedIfPresent(@NonNull K key, @NonNull Predicate<? super V> action) {
+        while (true) {
+            V value = this.map.get(key);
+            if (value == null) {
+                return false;
+            }
+
+            if (this.tryRun(key, value, action)) {
+                return true;
+            }
+        }
+    }
+
+    protected boolean tryRun(@NonNull K key, @NonNull V value, @NonNull Predicate<? super V> action) {
+        synchronized (value) {
+            if (this.map.get(key) != value) { //the value was removed while we were waiting for the lock, try again
+                return false;
+            }
+
+            if (action.test(value)) { //remove the value while we still hold the lock
+                this.map.remove(key);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of values in this map
+     */
+    public int size() {
+        return this.map.size();
+    }
+}
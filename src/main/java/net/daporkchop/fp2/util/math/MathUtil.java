@@ -295,6 +295,67 @@ public class MathUtil {
         return l;
     }
 
+    /**
+     * Finds the point inside of an axis-aligned box with the smallest Morton code (Z-order index) which is greater than the Morton code of a given point
+     * outside of the box (commonly known as "BIGMIN").
+     * <p>
+     * All coordinates are treated as unsigned 32-bit integers, and the axes are ordered from most significant to least significant (i.e. for each bit index,
+     * the bit from {@code point[0]} is the most significant one in the interleaved code). Both corners of the box are inclusive.
+     * <p>
+     * Based on Tropf, H. and Herzog, H., "Multidimensional Range Search in Dynamically Balanced Trees".
+     *
+     * @param point the coordinates of the point. Must not be inside the box.
+     * @param min   the coordinates of the box's minimum corner
+     * @param max   the coordinates of the box's maximum corner
+     * @param dst   the array to store the resulting coordinates in
+     * @return whether or not such a point exists
+     */
+    public static boolean zOrderBigMin(int[] point, int[] min, int[] max, int[] dst) {
+        int dims = point.length;
+        for (int d = 0; d < dims; d++) {
+            if (Integer.compareUnsigned(min[d], max[d]) > 0) { //the box is empty
+                return false;
+            }
+        }
+
+        //these are narrowed down as we go, so we need our own copies
+        min = min.clone();
+        max = max.clone();
+
+        boolean found = false;
+        for (int bit = 31; bit >= 0; bit--) {
+            int mask = 1 << bit;
+            int lowMask = mask - 1;
+            int highMask = ~(mask | lowMask);
+
+            for (int d = 0; d < dims; d++) {
+                boolean pointBit = (point[d] & mask) != 0;
+                boolean minBit = (min[d] & mask) != 0;
+                boolean maxBit = (max[d] & mask) != 0;
+
+                if (!pointBit) {
+                    if (minBit) { //0,1,1: the entire remaining box is above the point
+                        System.arraycopy(min, 0, dst, 0, dims);
+                        return true;
+                    } else if (maxBit) { //0,0,1: the upper half of the box is a candidate, continue searching in the lower half
+                        System.arraycopy(min, 0, dst, 0, dims);
+                        dst[d] = (min[d] & highMask) | mask;
+                        found = true;
+
+                        max[d] = (max[d] & highMask) | lowMask;
+                    }
+                } else if (!minBit) {
+                    if (!maxBit) { //1,0,0: the entire remaining box is below the point
+                        return found;
+                    } else { //1,0,1: continue searching in the upper half of the box
+                        min[d] = (min[d] & highMask) | mask;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
     public static long lcm(long a, long b) {
         return multiplyExact(a, b) / gcd(a, b);
     }
@@ -31,6 +31,7 @@ import net.daporkchop.fp2.util.threading.futureexecutor.MarkedFutureExecutor;
 import net.daporkchop.fp2.util.threading.futureexecutor.MarkingForwardingFutureExecutor;
 import net.daporkchop.fp2.util.threading.futureexecutor.ServerThreadMarkedFutureExecutor;
 import net.daporkchop.fp2.util.threading.futureexecutor.ThreadValidatingForwardingFutureExecutor;
+import net.daporkchop.fp2.util.threading.workergroup.SharedWorkerPool;
 import net.daporkchop.fp2.util.threading.workergroup.WorkerGroupBuilder;
 import net.daporkchop.fp2.util.threading.workergroup.WorldWorkerGroup;
 import net.daporkchop.lib.common.misc.string.PStrings;
@@ -49,7 +50,10 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
@@ -79,6 +83,32 @@ public class ThreadingHelper {
         };
     }
 
+    /**
+     * Creates a new {@link SharedWorkerPool}.
+     *
+     * @param threads       a supplier for the number of threads the pool should use
+     * @param threadFactory the {@link ThreadFactory} to use for creating the pool's threads
+     * @return a new {@link SharedWorkerPool}
+     */
+    public SharedWorkerPool sharedWorkerPool(@NonNull IntSupplier threads, @NonNull ThreadFactory threadFactory) {
+        return new SharedWorkerPool(threads, threadFactory) {
+            @Override
+            protected FutureExecutor createWorldExecutor(@NonNull World world, @NonNull Predicate<Thread> filter) {
+                return new ThreadValidatingForwardingFutureExecutor(new MarkingForwardingFutureExecutor(rootExecutorFor(world)), filter);
+            }
+
+            @Override
+            protected void enterGroup(@NonNull WorldWorkerGroup group) {
+                checkState(THREADS_TO_GROUPS.putIfAbsent(Thread.currentThread(), group) == null, "thread %s is already a member of a worker group!", Thread.currentThread());
+            }
+
+            @Override
+            protected void exitGroup(@NonNull WorldWorkerGroup group) {
+                checkState(THREADS_TO_GROUPS.remove(Thread.currentThread(), group), "unable to remove thread->group mapping %s->%s from THREADS_TO_GROUPS map?!?", Thread.currentThread(), group);
+            }
+        };
+    }
+
     /**
      * Handles the given exception.
      *
@@ -22,6 +22,7 @@ package net.daporkchop.fp2.util.threading.scheduler;
 
 import lombok.NonNull;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
+import net.daporkchop.fp2.util.threading.workergroup.SharedWorkerPool;
 import net.daporkchop.fp2.util.threading.workergroup.WorkerGroupBuilder;
 import net.daporkchop.fp2.util.threading.workergroup.WorldWorkerGroup;
 
@@ -48,7 +49,7 @@ import static net.daporkchop.lib.common.util.PValidation.*;
  *
  * @author DaPorkchop_
  */
-public class NoFutureScheduler<P> implements Scheduler<P, Void>, Runnable {
+public class NoFutureScheduler<P> implements Scheduler<P, Void>, Runnable, SharedWorkerPool.Member {
     protected static final Object ADDED_STATE = new Object[0];
     protected static final Object RUNNING_STATE = new Object[0];
 
@@ -76,6 +77,7 @@ public class NoFutureScheduler<P> implements Scheduler<P, Void>, Runnable {
 
     protected void enqueue(@NonNull P param) {
         checkState(this.queue.add(param), "unable to add %s to queue!", param);
+        this.group.workAvailable();
     }
 
     @Override
@@ -92,6 +94,11 @@ public class NoFutureScheduler<P> implements Scheduler<P, Void>, Runnable {
         return null; //always return null lol
     }
 
+    @Override
+    public boolean isQueued(@NonNull P param) {
+        return this.parameterStates.get(param) == ADDED_STATE;
+    }
+
     @Override
     public List<Void> scatterGather(@NonNull List<P> params) {
         throw new UnsupportedOperationException();
@@ -113,27 +120,59 @@ public class NoFutureScheduler<P> implements Scheduler<P, Void>, Runnable {
                     continue;
                 }
 
-                try {
-                    //mark the parameter as "running" so that we'll be able to determine whether or not it's been re-scheduled while the task was running
-                    checkState(this.parameterStates.replace(param, ADDED_STATE, RUNNING_STATE));
-
-                    //pass the parameter to the function
-                    this.function.accept(param);
-                } catch (Throwable t) {
-                    ThreadingHelper.handle(this.group.world(), t);
-                } finally {
-                    //if the parameter was re-scheduled while running the function, it'll have been mapped to ADDED again and this removal will fail. it's our
-                    //  responsibility to add it to the queue again now that execution has finished.
-                    if (!this.parameterStates.remove(param, RUNNING_STATE)) {
-                        this.enqueue(param);
-                    }
-                }
+                this.execute(param);
             }
         } catch (Exception e) { //should be impossible, but whatever
             FP2_LOG.error(Thread.currentThread().getName(), e);
         }
     }
 
+    /**
+     * @deprecated internal API, do not touch!
+     */
+    @Override
+    @Deprecated
+    public boolean executeSingleTask() {
+        if (!this.running) {
+            return false;
+        }
+
+        P param = this.queue.poll();
+        if (param == null) { //the queue was empty
+            return false;
+        }
+
+        this.execute(param);
+        return true;
+    }
+
+    /**
+     * @deprecated internal API, do not touch!
+     */
+    @Override
+    @Deprecated
+    public int queueDepth() {
+        return this.queue.size();
+    }
+
+    protected void execute(@NonNull P param) {
+        try {
+            //mark the parameter as "running" so that we'll be able to determine whether or not it's been re-scheduled while the task was running
+            checkState(this.parameterStates.replace(param, ADDED_STATE, RUNNING_STATE));
+
+            //pass the parameter to the function
+            this.function.accept(param);
+        } catch (Throwable t) {
+            ThreadingHelper.handle(this.group.world(), t);
+        } finally {
+            //if the parameter was re-scheduled while running the function, it'll have been mapped to ADDED again and this removal will fail. it's our
+            //  responsibility to add it to the queue again now that execution has finished.
+            if (!this.parameterStates.remove(param, RUNNING_STATE)) {
+                this.enqueue(param);
+            }
+        }
+    }
+
     @Override
     public void close() {
         //notify workers that we're shutting down
@@ -86,6 +86,18 @@ public interface Scheduler<P, V> extends AutoCloseable {
         }
     }
 
+    /**
+     * Checks whether the given parameter is currently queued, i.e. it has been scheduled but hasn't begun execution yet.
+     * <p>
+     * The result is only a hint, as the parameter's state may change at any time. Implementations which aren't able to determine this always return {@code false}.
+     *
+     * @param param the parameter
+     * @return whether or not the given parameter is currently queued
+     */
+    default boolean isQueued(@NonNull P param) {
+        return false;
+    }
+
     /**
      * Closes this scheduler.
      * <p>
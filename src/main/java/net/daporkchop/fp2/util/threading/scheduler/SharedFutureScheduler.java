@@ -24,6 +24,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import net.daporkchop.fp2.util.threading.ThreadingHelper;
+import net.daporkchop.fp2.util.threading.workergroup.SharedWorkerPool;
 import net.daporkchop.fp2.util.threading.workergroup.WorkerGroupBuilder;
 import net.daporkchop.fp2.util.threading.workergroup.WorldWorkerGroup;
 import net.daporkchop.lib.common.misc.string.PStrings;
@@ -58,7 +59,7 @@ import static net.daporkchop.lib.common.util.PValidation.*;
  *
  * @author DaPorkchop_
  */
-public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
+public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable, SharedWorkerPool.Member {
     protected static final long TASK_DEPENDENCIES_OFFSET = PUnsafe.pork_getOffset(SharedFutureScheduler.Task.class, "dependencies");
 
     protected static final boolean DEBUG_PRINTS_ENABLED = Boolean.parseBoolean(System.getProperty("fp2.SharedFutureScheduler.debugPrintsEnabled", "false"));
@@ -68,6 +69,10 @@ public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
 
     protected final Cached<Deque<Task>> recursionStack = Cached.threadLocal(this.recursionStackFactory());
 
+    //whether or not the current thread is executing tasks for this scheduler. worker threads may be shared with other schedulers, so we can't simply check whether the
+    //  current thread belongs to the worker group
+    protected final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
     protected final Function<P, V> function;
 
     protected final WorldWorkerGroup group;
@@ -93,6 +98,7 @@ public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
 
     protected void enqueue(@NonNull Task task) {
         checkState(SharedFutureScheduler.this.queue.add(task));
+        this.group.workAvailable();
     }
 
     protected void unqueue(@NonNull Task task) {
@@ -105,6 +111,12 @@ public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
         return this.retainTask(param);
     }
 
+    @Override
+    public boolean isQueued(@NonNull P param) {
+        Task task = this.tasks.get(param);
+        return task != null && task.refCnt > 0; //this is racy, but isQueued() is only a hint anyway
+    }
+
     @Override
     public void close() {
         //notify workers that we're shutting down
@@ -342,13 +354,62 @@ public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
     @Override
     @Deprecated
     public void run() {
+        this.worker.set(Boolean.TRUE);
         try {
             while (true) {
                 this.pollAndExecuteSingleTask();
             }
         } catch (SchedulerClosedError e) {
             //swallow error and exit quietly
+        } finally {
+            this.worker.remove();
+            this.workerExiting();
+        }
+    }
+
+    /**
+     * Called by a dedicated worker thread immediately before it exits.
+     */
+    protected void workerExiting() {
+        //no-op
+    }
+
+    /**
+     * @deprecated internal API, do not touch!
+     */
+    @Override
+    @Deprecated
+    public boolean executeSingleTask() {
+        if (!this.running) {
+            return false;
         }
+
+        Task task = this.queue.poll();
+        if (task == null) { //queue is empty
+            return false;
+        }
+
+        this.worker.set(Boolean.TRUE);
+        try {
+            if (this.beginTask(task)) {
+                this.executeTask(task);
+            }
+            return true;
+        } catch (SchedulerClosedError e) {
+            //swallow error and return quietly
+            return false;
+        } finally {
+            this.worker.set(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * @deprecated internal API, do not touch!
+     */
+    @Override
+    @Deprecated
+    public int queueDepth() {
+        return this.queue.size();
     }
 
     protected void awaitJoin(@NonNull Task task) {
@@ -473,7 +534,7 @@ public class SharedFutureScheduler<P, V> implements Scheduler<P, V>, Runnable {
 
         @Override
         public V join() {
-            if (SharedFutureScheduler.this.group.threads().contains(Thread.currentThread())) {
+            if (SharedFutureScheduler.this.worker.get()) {
                 //we're on a worker thread, which means this task is being waited on recursively!
                 //  let's steal work from the execution queue until this task is completed.
                 SharedFutureScheduler.this.awaitJoin(this);
@@ -0,0 +1,141 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.threading.scheduler;
+
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import net.daporkchop.fp2.util.datastructure.ConcurrentWorkStealingPriorityBlockingQueue;
+import net.daporkchop.fp2.util.threading.workergroup.WorkerGroupBuilder;
+import net.daporkchop.lib.common.util.PorkUtil;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static net.daporkchop.lib.common.util.PorkUtil.*;
+
+/**
+ * Variant of {@link ApproximatelyPrioritizedSharedFutureScheduler} which uses a {@link ConcurrentWorkStealingPriorityBlockingQueue} instead of a single shared
+ * priority queue.
+ * <p>
+ * Each worker thread has its own priority queue and steals from the other workers when it runs out of tasks. Releasing or beginning a task only marks its queue
+ * entry as removed, and recursive tasks waiting for a lower-priority task to become available are parked until one is actually queued (or until the task they're
+ * joining completes), rather than spinning.
+ * <p>
+ * All other behavior (sharing of futures for equal parameters, only permitting recursion into strictly lower parameters) is inherited unchanged.
+ *
+ * @author DaPorkchop_
+ */
+public class WorkStealingSharedFutureScheduler<P, V> extends ApproximatelyPrioritizedSharedFutureScheduler<P, V> {
+    /**
+     * The tasks which the current thread is currently joining, and for which it has therefore already registered a completion callback to unpark itself.
+     */
+    protected final ThreadLocal<Set<SharedFutureScheduler<P, V>.Task>> joining = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    public WorkStealingSharedFutureScheduler(@NonNull Function<Scheduler<P, V>, Function<P, V>> functionFactory, @NonNull WorkerGroupBuilder builder, @NonNull Comparator<P> initialComparator) {
+        super(functionFactory, builder, initialComparator);
+    }
+
+    protected ConcurrentWorkStealingPriorityBlockingQueue<SharedFutureScheduler<P, V>.Task> queue() {
+        return uncheckedCast(this.queue);
+    }
+
+    @Override
+    protected BlockingQueue<SharedFutureScheduler<P, V>.Task> createTaskQueue() {
+        return new ConcurrentWorkStealingPriorityBlockingQueue<>();
+    }
+
+    @Override
+    protected SharedFutureScheduler<P, V>.Task createTask(@NonNull P param) {
+        return new Task(param);
+    }
+
+    @Override
+    protected void enqueue(@NonNull SharedFutureScheduler<P, V>.Task task) {
+        //this is always called from inside of tasks#compute for the task's parameter, as is unqueue(), so the node will always have been set by the time
+        //  anyone tries to unqueue the task
+        PorkUtil.<Task>uncheckedCast(task).node = this.queue().push(task);
+        this.group.workAvailable();
+    }
+
+    @Override
+    protected void unqueue(@NonNull SharedFutureScheduler<P, V>.Task task) {
+        ConcurrentWorkStealingPriorityBlockingQueue<SharedFutureScheduler<P, V>.Task>.Node node = PorkUtil.<Task>uncheckedCast(task).node;
+        if (node != null) {
+            node.remove();
+        }
+    }
+
+    @Override
+    protected void workerExiting() {
+        //the worker's lane would otherwise stick around for as long as the scheduler does
+        this.queue().releaseLocalLane();
+    }
+
+    @Override
+    protected void awaitJoin(@NonNull SharedFutureScheduler<P, V>.Task task) {
+        //make sure we get woken up if we're parked waiting for a lower task when the task we're joining completes. we only register the callback once per join,
+        //  even if the same task is joined again from a nested task on this thread, as otherwise callbacks would pile up on the task for as long as it's running
+        Set<SharedFutureScheduler<P, V>.Task> joining = this.joining.get();
+        if (task.isDone() //there's nothing to wait for
+            || !joining.add(task)) { //an outer frame on this thread is already joining this task and has registered a callback
+            super.awaitJoin(task);
+            return;
+        }
+
+        try {
+            Thread thread = Thread.currentThread();
+            task.whenComplete((v, t) -> LockSupport.unpark(thread));
+
+            super.awaitJoin(task);
+        } finally {
+            joining.remove(task);
+        }
+    }
+
+    @Override
+    @SneakyThrows(InterruptedException.class)
+    protected SharedFutureScheduler<P, V>.Task pollSingleTask() {
+        SharedFutureScheduler<P, V>.Task parent = this.recursionStack.get().peekFirst();
+        if (parent != null) { //this is a recursive task! we should make sure that the task we get is less than the current one
+            //this may return early if the task being joined completes, in which case awaitJoin() will notice and stop polling
+            return this.queue().pollLess(parent, 1L, TimeUnit.SECONDS);
+        } else {
+            return this.queue().poll(1L, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @author DaPorkchop_
+     */
+    protected class Task extends ApproximatelyPrioritizedSharedFutureScheduler<P, V>.Task {
+        protected ConcurrentWorkStealingPriorityBlockingQueue<SharedFutureScheduler<P, V>.Task>.Node node;
+
+        public Task(@NonNull P param) {
+            super(param);
+        }
+    }
+}
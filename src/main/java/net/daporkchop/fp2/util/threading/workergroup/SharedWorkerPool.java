@@ -0,0 +1,447 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.fp2.util.threading.workergroup;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import net.daporkchop.fp2.debug.util.DebugStats;
+import net.daporkchop.fp2.util.annotation.DebugOnly;
+import net.daporkchop.fp2.util.threading.ThreadingHelper;
+import net.daporkchop.fp2.util.threading.futureexecutor.FutureExecutor;
+import net.daporkchop.lib.common.misc.string.PStrings;
+import net.daporkchop.lib.unsafe.util.AbstractReleasable;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * A fixed-size pool of worker threads which is shared between any number of {@link WorldWorkerGroup}s.
+ * <p>
+ * Each group joins the pool by supplying a {@link Member}, which is asked to execute tasks one at a time. Groups are serviced using start-time fair queuing:
+ * every group has a virtual time which advances by the time spent executing its tasks divided by its weight, and idle workers always service the group
+ * with the lowest virtual time which has tasks queued. A group which was idle is moved forwards to the current virtual time when it becomes busy again, so it
+ * can't starve other groups by "saving up" time.
+ * <p>
+ * The worker threads are started when the first group joins, and stopped once the last group leaves. The number of threads is queried from the
+ * {@link IntSupplier} given at construction time every time the threads are started.
+ *
+ * @author DaPorkchop_
+ * @see ThreadingHelper#sharedWorkerPool(IntSupplier, ThreadFactory)
+ */
+public abstract class SharedWorkerPool {
+    protected final IntSupplier threadCount;
+    protected final ThreadFactory threadFactory;
+
+    protected final List<Group> groups = new CopyOnWriteArrayList<>();
+    protected final AtomicLong virtualTime = new AtomicLong();
+
+    protected final Lock lock = new ReentrantLock();
+    protected final Condition workAvailable = this.lock.newCondition();
+    protected final AtomicLong signals = new AtomicLong();
+    protected final AtomicInteger waiters = new AtomicInteger();
+
+    protected Workers workers; //guarded by this
+
+    public SharedWorkerPool(@NonNull IntSupplier threadCount, @NonNull ThreadFactory threadFactory) {
+        this.threadCount = threadCount;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @return a new {@link GroupBuilder} for creating {@link WorldWorkerGroup}s which use this pool's threads
+     */
+    public GroupBuilder workerGroupBuilder() {
+        return new GroupBuilder();
+    }
+
+    /**
+     * @return a snapshot of the statistics of every group which is currently using this pool
+     */
+    @DebugOnly
+    public List<DebugStats.WorkerGroup> stats() {
+        List<DebugStats.WorkerGroup> stats = new ArrayList<>();
+        for (Group group : this.groups) {
+            stats.add(DebugStats.WorkerGroup.builder()
+                    .name(group.name)
+                    .weight(group.weight)
+                    .queueDepth(group.member.queueDepth())
+                    .executedTasks(group.executedTasks.sum())
+                    .busyTime(group.busyTime.sum())
+                    .build());
+        }
+        return stats;
+    }
+
+    /**
+     * Creates a {@link FutureExecutor} for the given group's world.
+     *
+     * @param world  the {@link World}
+     * @param filter a {@link Predicate} which only accepts threads that are currently executing tasks for the group
+     */
+    protected abstract FutureExecutor createWorldExecutor(@NonNull World world, @NonNull Predicate<Thread> filter);
+
+    /**
+     * Called by a worker thread before it starts executing tasks for the given group.
+     */
+    protected abstract void enterGroup(@NonNull WorldWorkerGroup group);
+
+    /**
+     * Called by a worker thread after it finishes executing tasks for the given group.
+     */
+    protected abstract void exitGroup(@NonNull WorldWorkerGroup group);
+
+    protected synchronized void join(@NonNull Group group) {
+        //start off at the current virtual time, otherwise the new group would be able to monopolize the workers until it catches up with the others
+        group.virtualTime.set(this.virtualTime.get());
+        this.groups.add(group);
+
+        if (this.workers == null) { //this is the first group, start the workers
+            this.workers = new Workers(this.threadCount.getAsInt());
+        }
+    }
+
+    protected synchronized void stopIfIdle() {
+        if (this.groups.isEmpty() && this.workers != null) { //the last group has left, stop the workers
+            Workers workers = this.workers;
+            this.workers = null;
+            workers.shutdown();
+        }
+    }
+
+    protected void signal() {
+        this.signals.incrementAndGet();
+        if (this.waiters.get() > 0) {
+            this.lock.lock();
+            try {
+                this.workAvailable.signal();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    protected void awaitSignal(@NonNull Workers workers, long signals) {
+        this.lock.lock();
+        try {
+            this.waiters.incrementAndGet();
+            if (workers.running && signals == this.signals.get()) { //nothing has been signalled since the worker last checked for tasks
+                this.workAvailable.await(1L, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            //swallow exception, we'll just go back to polling
+        } finally {
+            this.waiters.decrementAndGet();
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Executes a single task from the group with the lowest virtual time which has any tasks queued.
+     *
+     * @return whether or not any work was done
+     */
+    protected boolean dispatchOnce() {
+        List<Group> groups = this.groups;
+        boolean[] tried = null;
+        for (int attempt = 0, size = groups.size(); attempt < size; attempt++) {
+            //find the untried group with the lowest virtual time
+            int bestIndex = -1;
+            Group best = null;
+            for (int i = 0; i < size; i++) {
+                Group group = groups.get(i);
+                if ((tried == null || !tried[i]) && group.member.queueDepth() > 0
+                    && (best == null || group.virtualTime.get() < best.virtualTime.get())) {
+                    bestIndex = i;
+                    best = group;
+                }
+            }
+
+            if (best == null) { //no group has any tasks queued
+                return false;
+            } else if (this.dispatch(best)) {
+                return true;
+            }
+
+            if (tried == null) {
+                tried = new boolean[size];
+            }
+            tried[bestIndex] = true;
+        }
+        return false;
+    }
+
+    protected boolean dispatch(@NonNull Group group) {
+        //advance the group to the current virtual time if it was idle, and advance the global virtual time to the group's start time
+        long start = group.virtualTime.accumulateAndGet(this.virtualTime.get(), Math::max);
+        this.virtualTime.accumulateAndGet(start, Math::max);
+
+        //charge the expected cost of the task now so that other workers don't all pick the same group at once, and correct it once the task is complete
+        long estimate = group.averageCost;
+        group.virtualTime.addAndGet(estimate / group.weight);
+
+        Thread thread = Thread.currentThread();
+        long startTime = System.nanoTime();
+        boolean executed = false;
+        group.activeThreads.add(thread);
+        this.enterGroup(group);
+        try {
+            executed = group.member.executeSingleTask();
+        } catch (Throwable t) {
+            FP2_LOG.error(PStrings.fastFormat("uncaught exception in worker group %s", group.name), t);
+        } finally {
+            this.exitGroup(group);
+            group.activeThreads.remove(thread);
+
+            //if the group was released while we were executing its task, it's waiting for us
+            Thread releaser = group.releaser;
+            if (releaser != null) {
+                LockSupport.unpark(releaser);
+            }
+        }
+
+        long cost = System.nanoTime() - startTime;
+        group.virtualTime.addAndGet((cost - estimate) / group.weight);
+        if (executed) {
+            group.averageCost += (cost - group.averageCost) >> 3L; //exponential moving average, races here don't really matter
+            group.executedTasks.increment();
+            group.busyTime.add(cost);
+        }
+        return executed;
+    }
+
+    /**
+     * Something which may be executed by a {@link SharedWorkerPool}'s threads.
+     *
+     * @author DaPorkchop_
+     */
+    public interface Member {
+        /**
+         * Executes a single task, if any are available.
+         * <p>
+         * This method must not block while waiting for new tasks to become available.
+         *
+         * @return whether or not any work was done
+         */
+        boolean executeSingleTask();
+
+        /**
+         * @return the approximate number of tasks which are currently queued
+         */
+        int queueDepth();
+    }
+
+    /**
+     * Builder for {@link WorldWorkerGroup}s which use a {@link SharedWorkerPool}'s threads.
+     * <p>
+     * The {@link #threads()} and {@link #threadFactory()} settings are ignored, and the task passed to {@link #build(Runnable)} must implement {@link Member}.
+     *
+     * @author DaPorkchop_
+     */
+    @Getter
+    @Setter
+    public class GroupBuilder extends WorkerGroupBuilder {
+        /**
+         * The name of the group, used for identifying it in statistics.
+         */
+        @NonNull
+        protected String name = "unnamed";
+
+        /**
+         * The group's weight. Each group receives worker time proportional to its weight while it has tasks queued.
+         */
+        protected int weight = 1;
+
+        public GroupBuilder weight(int weight) {
+            this.weight = positive(weight, "weight");
+            return this;
+        }
+
+        @Override
+        protected void validate() {
+            checkArg(this.world != null, "world must be set!");
+        }
+
+        @Override
+        public WorldWorkerGroup build(@NonNull Runnable task) {
+            this.validate();
+            checkArg(task instanceof Member, "%s doesn't implement %s", task, Member.class);
+
+            Group group = new Group(this.world, this.name, this.weight, (Member) task);
+            SharedWorkerPool.this.join(group);
+            return group;
+        }
+    }
+
+    /**
+     * A {@link WorldWorkerGroup} which uses this pool's threads.
+     *
+     * @author DaPorkchop_
+     */
+    protected class Group extends AbstractReleasable implements WorldWorkerGroup {
+        @Getter
+        protected final World world;
+        @Getter
+        protected final FutureExecutor worldExecutor;
+
+        protected final String name;
+        protected final int weight;
+        protected final Member member;
+
+        protected final Set<Thread> activeThreads = ConcurrentHashMap.newKeySet();
+        protected final AtomicLong virtualTime = new AtomicLong();
+        protected volatile long averageCost;
+        protected final LongAdder executedTasks = new LongAdder();
+        protected final LongAdder busyTime = new LongAdder();
+
+        protected volatile Thread releaser;
+
+        protected Group(@NonNull World world, @NonNull String name, int weight, @NonNull Member member) {
+            this.world = world;
+            this.name = name;
+            this.weight = weight;
+            this.member = member;
+
+            this.worldExecutor = SharedWorkerPool.this.createWorldExecutor(world, this.activeThreads::contains);
+        }
+
+        @Override
+        public Collection<Thread> threads() {
+            synchronized (SharedWorkerPool.this) {
+                Workers workers = SharedWorkerPool.this.workers;
+                return workers != null ? workers.threads : Collections.emptyList();
+            }
+        }
+
+        @Override
+        public void workAvailable() {
+            SharedWorkerPool.this.signal();
+        }
+
+        @Override
+        protected void doRelease() {
+            checkState(!this.activeThreads.contains(Thread.currentThread()), "thread %s cannot release it's own worker group!", Thread.currentThread());
+            this.releaser = Thread.currentThread();
+
+            //stop workers from picking up any more of our tasks
+            SharedWorkerPool.this.groups.remove(this);
+
+            //closing the world executor will cancel all tasks which might have been pending execution on the server thread, thus preventing a deadlock in the case where
+            //  we're currently on the server thread, but any of the workers was waiting for the server thread to do something.
+            this.worldExecutor.close();
+
+            //wait for all workers which are currently executing one of our tasks to finish
+            while (!this.activeThreads.isEmpty()) {
+                this.activeThreads.forEach(ThreadingHelper::externalManagedUnblock);
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50L));
+            }
+
+            SharedWorkerPool.this.stopIfIdle();
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+
+    /**
+     * A single generation of worker threads.
+     *
+     * @author DaPorkchop_
+     */
+    protected class Workers implements Runnable {
+        protected final List<Thread> threads;
+        protected volatile boolean running = true;
+
+        protected Workers(int threadCount) {
+            positive(threadCount, "threadCount");
+
+            List<Thread> threads = new ArrayList<>(threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                threads.add(SharedWorkerPool.this.threadFactory.newThread(this));
+            }
+            this.threads = Collections.unmodifiableList(threads);
+
+            this.threads.forEach(Thread::start);
+        }
+
+        @Override
+        public void run() {
+            while (this.running) {
+                long signals = SharedWorkerPool.this.signals.get();
+                if (!SharedWorkerPool.this.dispatchOnce()) { //nothing to do, wait until something is queued
+                    SharedWorkerPool.this.awaitSignal(this, signals);
+                }
+
+                //clear the interrupted flag in case a task was forcibly unblocked, we don't want it to affect the next task
+                Thread.interrupted();
+            }
+        }
+
+        protected void shutdown() {
+            this.running = false;
+
+            //wake up all idle workers so they can notice that they should exit
+            SharedWorkerPool.this.lock.lock();
+            try {
+                SharedWorkerPool.this.workAvailable.signalAll();
+            } finally {
+                SharedWorkerPool.this.lock.unlock();
+            }
+
+            boolean interrupted = false;
+            for (Thread thread : this.threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join(50L);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            if (interrupted) { //restore interrupted state
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
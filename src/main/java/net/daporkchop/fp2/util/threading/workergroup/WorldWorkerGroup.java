@@ -48,4 +48,12 @@ public interface WorldWorkerGroup extends Releasable {
      * @return the {@link FutureExecutor} to be used by this group's threads to execute tasks on the world thread
      */
     FutureExecutor worldExecutor();
+
+    /**
+     * Notifies this group that new tasks have been queued.
+     * <p>
+     * Groups whose threads are shared with other groups use this to wake up idle threads. By default, this method does nothing.
+     */
+    default void workAvailable() {
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package client.texture;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.daporkchop.fp2.client.texture.StateBiomeTable;
+import net.daporkchop.fp2.compat.vanilla.FastRegistry;
+import net.daporkchop.fp2.util.SingleBiomeBlockAccess;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.biome.Biome;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assume.*;
+
+/**
+ * Compares the cost of looking up color multipliers in a {@link StateBiomeTable}, both with and without approximation, with that of computing them using
+ * {@link net.minecraft.client.renderer.color.BlockColors#colorMultiplier} for every vertex (as the bakers used to do).
+ * <p>
+ * The lookups are for tinted block states at random positions in random biomes. Apart from the time per lookup, the number of color multipliers which
+ * were actually computed per lookup is also reported.
+ * <p>
+ * This is skipped unless the {@code fp2.test.benchmark} system property is set to {@code true}, since it takes a while and only prints its results. Correctness of
+ * {@link StateBiomeTable} is checked by {@link TestStateBiomeTable}.
+ *
+ * @author DaPorkchop_
+ */
+public class BenchmarkStateBiomeTable {
+    protected static final int LOOKUPS_PER_ROUND = 1 << 16;
+    protected static final int WARMUP_ROUNDS = 5;
+    protected static final int MEASURED_ROUNDS = 10;
+
+    @BeforeClass
+    public static void init() {
+        assumeTrue("benchmarks are disabled", Boolean.getBoolean("fp2.test.benchmark"));
+
+        TestStateBiomeTable.init();
+    }
+
+    @Test
+    public void benchmark() {
+        SplittableRandom r = new SplittableRandom(12345L);
+        IBlockState[] states = new IBlockState[LOOKUPS_PER_ROUND];
+        int[] biomes = new int[LOOKUPS_PER_ROUND];
+        BlockPos[] positions = new BlockPos[LOOKUPS_PER_ROUND];
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            states[i] = TestStateBiomeTable.STATES[1 + r.nextInt(TestStateBiomeTable.STATES.length - 1)]; //skip stone, which isn't tinted
+            biomes[i] = TestStateBiomeTable.BIOMES[r.nextInt(TestStateBiomeTable.BIOMES.length)];
+            positions[i] = new BlockPos(r.nextInt(-1 << 20, 1 << 20), r.nextInt(256), r.nextInt(-1 << 20, 1 << 20));
+        }
+
+        this.benchmark("colorMultiplier", new Lookup() {
+            final SingleBiomeBlockAccess biomeAccess = new SingleBiomeBlockAccess();
+
+            @Override
+            public int color(TestStateBiomeTable.CountingBlockColors blockColors, int i) {
+                this.biomeAccess.biome(Biome.getBiome(biomes[i]));
+                return blockColors.colorMultiplier(states[i], this.biomeAccess, positions[i], 0);
+            }
+        });
+
+        for (boolean approximate : new boolean[]{ false, true }) {
+            this.benchmark(approximate ? "approximate table" : "exact table", new Lookup() {
+                StateBiomeTable table;
+                int[] stateIds;
+
+                @Override
+                public int color(TestStateBiomeTable.CountingBlockColors blockColors, int i) {
+                    if (this.table == null) { //the table's rows are filled during the warmup rounds
+                        this.table = StateBiomeTable.create(blockColors, new Reference2IntOpenHashMap<>(), approximate);
+                        this.stateIds = Arrays.stream(states).mapToInt(FastRegistry::getId).toArray();
+                    }
+
+                    BlockPos pos = positions[i];
+                    return this.table.color(this.stateIds[i], biomes[i], pos.getX(), pos.getY(), pos.getZ());
+                }
+            });
+        }
+    }
+
+    protected void benchmark(String name, Lookup lookup) {
+        TestStateBiomeTable.CountingBlockColors blockColors = new TestStateBiomeTable.CountingBlockColors();
+
+        long[] nanosPerLookup = new long[MEASURED_ROUNDS];
+        int checksum = 0; //prevents the jit from optimizing away the work
+        for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+            if (round == 0) {
+                blockColors.calls = 0L;
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+                checksum += lookup.color(blockColors, i);
+            }
+            long nanos = System.nanoTime() - start;
+
+            if (round >= 0) {
+                nanosPerLookup[round] = nanos / LOOKUPS_PER_ROUND;
+            }
+        }
+
+        Arrays.sort(nanosPerLookup);
+        System.out.printf("%s: median %d ns/lookup, best %d ns/lookup, %.3f colorMultiplier calls/lookup (checksum %d)\n",
+                name, nanosPerLookup[MEASURED_ROUNDS >> 1], nanosPerLookup[0], blockColors.calls / ((double) MEASURED_ROUNDS * LOOKUPS_PER_ROUND), checksum);
+    }
+
+    /**
+     * A way of getting the color multiplier for one of the benchmark's lookups.
+     *
+     * @author DaPorkchop_
+     */
+    protected interface Lookup {
+        int color(TestStateBiomeTable.CountingBlockColors blockColors, int i);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package client.texture;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.daporkchop.fp2.client.texture.StateBiomeTable;
+import net.daporkchop.fp2.compat.vanilla.FastRegistry;
+import net.daporkchop.fp2.util.SingleBiomeBlockAccess;
+import net.minecraft.block.BlockTallGrass;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.color.BlockColors;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.ColorizerFoliage;
+import net.minecraft.world.ColorizerGrass;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.biome.Biome;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import javax.annotation.Nullable;
+import java.util.SplittableRandom;
+import java.util.stream.StreamSupport;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Checks that the colors returned by {@link StateBiomeTable} are the same as those computed by {@link BlockColors}, and that approximated colors are never
+ * computed per position.
+ *
+ * @author DaPorkchop_
+ */
+public class TestStateBiomeTable {
+    protected static IBlockState[] STATES;
+    protected static int[] BIOMES;
+
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+
+        //the colormaps are normally loaded from the resource pack, so we fill them with a gradient in which every (temperature, rainfall) pair has a different color
+        int[] colormap = new int[256 * 256];
+        for (int i = 0; i < colormap.length; i++) {
+            colormap[i] = 0xFF000000 | i;
+        }
+        ColorizerGrass.setGrassBiomeColorizer(colormap);
+        ColorizerFoliage.setFoliageBiomeColorizer(colormap);
+
+        STATES = new IBlockState[]{
+                Blocks.STONE.getDefaultState(),
+                Blocks.GRASS.getDefaultState(),
+                Blocks.TALLGRASS.getDefaultState().withProperty(BlockTallGrass.TYPE, BlockTallGrass.EnumType.GRASS),
+                Blocks.LEAVES.getDefaultState(),
+                Blocks.VINE.getDefaultState(),
+                Blocks.WATER.getDefaultState()
+        };
+        BIOMES = StreamSupport.stream(Biome.REGISTRY.spliterator(), false).mapToInt(Biome::getIdForBiome).sorted().toArray();
+    }
+
+    protected static int directColor(BlockColors blockColors, IBlockState state, int biome, BlockPos pos) {
+        SingleBiomeBlockAccess biomeAccess = new SingleBiomeBlockAccess();
+        biomeAccess.biome(Biome.getBiome(biome));
+        return blockColors.colorMultiplier(state, biomeAccess, pos, 0);
+    }
+
+    @Test
+    public void testExact() {
+        BlockColors blockColors = BlockColors.init();
+        StateBiomeTable table = StateBiomeTable.create(blockColors, new Reference2IntOpenHashMap<>(), false);
+
+        SplittableRandom r = new SplittableRandom(12345L);
+        for (IBlockState state : STATES) {
+            for (int biome : BIOMES) {
+                for (int i = 0; i < 64; i++) {
+                    BlockPos pos = new BlockPos(r.nextInt(-1 << 20, 1 << 20), r.nextInt(256), r.nextInt(-1 << 20, 1 << 20));
+                    int expected = directColor(blockColors, state, biome, pos);
+                    int actual = table.color(FastRegistry.getId(state), biome, pos.getX(), pos.getY(), pos.getZ());
+                    checkState(expected == actual, "%s in biome %d at %s: expected %08x, got %08x", state, biome, pos, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testApproximate() {
+        CountingBlockColors blockColors = new CountingBlockColors();
+        StateBiomeTable table = StateBiomeTable.create(blockColors, new Reference2IntOpenHashMap<>(), true);
+
+        //make sure every row has been computed
+        for (IBlockState state : STATES) {
+            table.color(FastRegistry.getId(state), BIOMES[0], 0, 0, 0);
+        }
+        blockColors.calls = 0L;
+
+        SplittableRandom r = new SplittableRandom(12345L);
+        for (IBlockState state : STATES) {
+            for (int biome : BIOMES) {
+                for (int i = 0; i < 64; i++) {
+                    int x = r.nextInt(-1 << 20, 1 << 20);
+                    int y = r.nextInt(256);
+                    int z = r.nextInt(-1 << 20, 1 << 20);
+                    int actual = table.color(FastRegistry.getId(state), biome, x, y, z);
+                    checkState(blockColors.calls == 0L, "%s in biome %d at (%d, %d, %d): color was computed for the position", state, biome, x, y, z);
+
+                    //approximated colors are those at the center of the height band, and all others are independent of the position anyway
+                    int expected = directColor(blockColors.delegate, state, biome, new BlockPos(0, (y & ~15) + 8, 0));
+                    checkState(expected == actual, "%s in biome %d at (%d, %d, %d): expected %08x, got %08x", state, biome, x, y, z, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link BlockColors} which counts the number of color multipliers it has computed.
+     *
+     * @author DaPorkchop_
+     */
+    protected static class CountingBlockColors extends BlockColors {
+        protected final BlockColors delegate = BlockColors.init();
+        protected long calls;
+
+        @Override
+        public int colorMultiplier(IBlockState state, @Nullable IBlockAccess blockAccess, @Nullable BlockPos pos, int renderPass) {
+            this.calls++;
+            return this.delegate.colorMultiplier(state, blockAccess, pos, renderPass);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package compat.cwg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.server.gen.IFarGeneratorRough;
+import net.daporkchop.fp2.mode.heightmap.HeightmapPos;
+import net.daporkchop.fp2.mode.heightmap.HeightmapTile;
+import net.daporkchop.fp2.mode.heightmap.server.gen.rough.CWGHeightmapGenerator;
+import net.daporkchop.fp2.mode.voxel.VoxelPos;
+import net.daporkchop.fp2.mode.voxel.VoxelTile;
+import net.daporkchop.fp2.mode.voxel.server.gen.rough.CWGVoxelGenerator;
+import net.daporkchop.lib.unsafe.PUnsafe;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.WorldSettings;
+import net.minecraft.world.WorldType;
+import net.minecraft.world.storage.ISaveHandler;
+import net.minecraft.world.storage.WorldInfo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Ensures that the batched generation methods of the CWG rough generators produce exactly the same tiles as generating each tile on its own, as promised by
+ * {@link IFarGeneratorRough#generate(IFarPos[], IFarTile[])}.
+ *
+ * @author DaPorkchop_
+ */
+public class TestCwgBatchedGeneration {
+    protected static File SAVE_DIRECTORY;
+    protected static WorldServer WORLD;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        FP2Test.init();
+
+        SAVE_DIRECTORY = Files.createTempDirectory("fp2-cwg-batched").toFile();
+        WORLD = dummyWorld(102978420983752L, SAVE_DIRECTORY);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        SAVE_DIRECTORY.delete();
+    }
+
+    /**
+     * Creates a {@link WorldServer} with just enough state initialized for the CWG generators to be constructed, since starting an actual server isn't possible in a
+     * unit test environment.
+     */
+    protected static WorldServer dummyWorld(long seed, File saveDirectory) throws Exception {
+        WorldServer world = PUnsafe.allocateInstance(WorldServer.class);
+
+        ISaveHandler saveHandler = (ISaveHandler) Proxy.newProxyInstance(ISaveHandler.class.getClassLoader(), new Class[]{ ISaveHandler.class },
+                (proxy, method, args) -> "getWorldDirectory".equals(method.getName()) ? saveDirectory : null);
+
+        setField(world, "worldInfo", new WorldInfo(new WorldSettings(seed, GameType.SURVIVAL, true, false, WorldType.DEFAULT), "fp2_test"));
+        setField(world, "saveHandler", saveHandler);
+        setField(world, "rand", new Random(seed));
+        setField(world, "seaLevel", 63);
+        return world;
+    }
+
+    protected static void setField(World world, String name, Object value) throws Exception {
+        Field field = World.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(world, value);
+    }
+
+    protected static <POS extends IFarPos, T extends IFarTile> void testBatches(IFarGeneratorRough<POS, T> generator, List<POS> origins, IntFunction<POS[]> posArray,
+                                                                               IntFunction<T[]> tileArray, Supplier<T> tileFactory) {
+        Random random = new Random(12345L);
+
+        for (POS origin : origins) {
+            List<POS> group = generator.batchGenerationGroup(origin).collect(Collectors.toList());
+            checkState(group.contains(origin), "%s isn't in its own batch generation group", origin);
+
+            //generate every tile in the group on its own
+            List<byte[]> expected = new ArrayList<>();
+            for (POS pos : group) {
+                T tile = tileFactory.get();
+                generator.generate(pos, tile);
+                expected.add(encode(tile));
+            }
+
+            //generate the whole group at once, as well as some random subsets of it (in random order)
+            for (int attempt = 0; attempt < 4; attempt++) {
+                List<Integer> indices = new ArrayList<>();
+                for (int i = 0; i < group.size(); i++) {
+                    if (attempt == 0 || random.nextBoolean()) {
+                        indices.add(i);
+                    }
+                }
+                if (indices.isEmpty()) {
+                    continue;
+                }
+                if (attempt != 0) {
+                    Collections.shuffle(indices, random);
+                }
+
+                POS[] positions = posArray.apply(indices.size());
+                T[] tiles = tileArray.apply(indices.size());
+                for (int i = 0; i < indices.size(); i++) {
+                    positions[i] = group.get(indices.get(i));
+                    tiles[i] = tileFactory.get();
+                }
+
+                generator.generate(positions, tiles);
+
+                for (int i = 0; i < indices.size(); i++) {
+                    checkState(Arrays.equals(expected.get(indices.get(i)), encode(tiles[i])),
+                            "batched generation of %s (batch size %d) differs from generating it on its own", positions[i], positions.length);
+                }
+            }
+        }
+    }
+
+    protected static byte[] encode(IFarTile tile) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            if (tile.write(buf)) { //the tile is empty
+                return new byte[0];
+            }
+
+            byte[] data = new byte[buf.readableBytes()];
+            buf.readBytes(data);
+            return data;
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testVoxel() {
+        List<VoxelPos> origins = new ArrayList<>();
+        for (int level = 0; level < 3; level++) {
+            origins.add(new VoxelPos(level, 0, 2 >> level, 0));
+            origins.add(new VoxelPos(level, -7, 3 >> level, 12));
+            origins.add(new VoxelPos(level, 1000, 2 >> level, -1000));
+        }
+        origins.add(new VoxelPos(0, 5, -2, -5)); //underground
+
+        testBatches(new CWGVoxelGenerator(WORLD), origins, VoxelPos[]::new, VoxelTile[]::new, VoxelTile::new);
+    }
+
+    @Test
+    public void testHeightmap() {
+        List<HeightmapPos> origins = new ArrayList<>();
+        for (int level = 0; level < 3; level++) {
+            origins.add(new HeightmapPos(level, 0, 0));
+            origins.add(new HeightmapPos(level, -7, 12));
+            origins.add(new HeightmapPos(level, 1000, -1000));
+        }
+
+        testBatches(new CWGHeightmapGenerator(WORLD), origins, HeightmapPos[]::new, HeightmapTile[]::new, HeightmapTile::new);
+    }
+}
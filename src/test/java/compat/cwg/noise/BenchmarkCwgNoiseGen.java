@@ -0,0 +1,91 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package compat.cwg.noise;
+
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import net.daporkchop.fp2.compat.cwg.noise.CWGNoiseProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assume.*;
+
+/**
+ * Compares the throughput of the different {@link CWGNoiseProvider} implementations, using the same sample layout as CWGContext.
+ * <p>
+ * This is skipped unless the {@code fp2.test.benchmark} system property is set to {@code true}, since it takes a while and only prints its results. Correctness of
+ * the batched implementation is checked by {@link TestCwgNoiseGenBatched}.
+ *
+ * @author DaPorkchop_
+ */
+public class BenchmarkCwgNoiseGen {
+    protected static final int TILES_PER_ROUND = 128;
+    protected static final int WARMUP_ROUNDS = 10;
+    protected static final int MEASURED_ROUNDS = 20;
+
+    @BeforeClass
+    public static void init() {
+        assumeTrue("benchmarks are disabled", Boolean.getBoolean("fp2.test.benchmark"));
+
+        TestCwgNoiseGenBatched.init();
+    }
+
+    @Test
+    public void benchmarkConfigured() {
+        String[] names = { "scalar java", "batched java", "native" };
+        CWGNoiseProvider.Configured[] configured = {
+                TestCwgNoiseGenBatched.CONFIGURED_SCALAR,
+                TestCwgNoiseGenBatched.CONFIGURED_BATCHED,
+                CWGNoiseProvider.INSTANCE.isNative() ? CWGNoiseProvider.INSTANCE.forSettings(new CustomGeneratorSettings(), 102978420983752L) : null
+        };
+
+        double[] heights = new double[17 * 17];
+        double[] variation = new double[17 * 17];
+        double[] depth = new double[17 * 17];
+        double[] out = new double[17 * 17 * 17];
+
+        double checksum = 0.0d; //prevents the jit from optimizing away the work
+        for (int i = 0; i < configured.length; i++) {
+            if (configured[i] == null) {
+                System.out.printf("%s: unavailable\n", names[i]);
+                continue;
+            }
+
+            long[] nanosPerTile = new long[MEASURED_ROUNDS];
+            for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int tile = 0; tile < TILES_PER_ROUND; tile++) {
+                    configured[i].generateDepth2d(depth, tile * 64, 0, 4, 4, 17, 17);
+                    configured[i].generate3d(heights, variation, depth, out, tile * 64, 0, 0, 4, 8, 4, 17, 17, 17);
+                    checksum += out[tile];
+                }
+                if (round >= 0) {
+                    nanosPerTile[round] = (System.nanoTime() - start) / TILES_PER_ROUND;
+                }
+            }
+
+            Arrays.sort(nanosPerTile);
+            System.out.printf("%s: median %dus, best %dus per tile\n", names[i], nanosPerTile[MEASURED_ROUNDS >> 1] / 1000L, nanosPerTile[0] / 1000L);
+        }
+        System.out.printf("(checksum: %s)\n", checksum);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package compat.cwg.noise;
+
+import com.flowpowered.noise.Utils;
+import io.github.opencubicchunks.cubicchunks.cubicgen.customcubic.CustomGeneratorSettings;
+import net.daporkchop.fp2.compat.cwg.noise.CWGNoiseProvider;
+import net.daporkchop.lib.common.misc.string.PStrings;
+import net.daporkchop.lib.random.PRandom;
+import net.daporkchop.lib.random.impl.FastJavaPRandom;
+import net.minecraft.world.gen.NoiseGeneratorImproved;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the batched pure-java noise provider produces exactly the same output as the scalar one.
+ *
+ * @author DaPorkchop_
+ */
+@SuppressWarnings("deprecation")
+public class TestCwgNoiseGenBatched {
+    protected static CWGNoiseProvider.Configured CONFIGURED_SCALAR;
+    protected static CWGNoiseProvider.Configured CONFIGURED_BATCHED;
+
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+
+        //see TestCwgNoiseGen#bbb_initFlowNoiseHack()
+        PRandom random = new FastJavaPRandom(123456789);
+        for (int i = 0; i < Utils.RANDOM_VECTORS.length / 4; i++) {
+            int j = random.nextInt(NoiseGeneratorImproved.GRAD_X.length);
+            Utils.RANDOM_VECTORS[i * 4] = NoiseGeneratorImproved.GRAD_X[j] / 2;
+            Utils.RANDOM_VECTORS[i * 4 + 1] = NoiseGeneratorImproved.GRAD_Y[j] / 2;
+            Utils.RANDOM_VECTORS[i * 4 + 2] = NoiseGeneratorImproved.GRAD_Z[j] / 2;
+        }
+
+        CustomGeneratorSettings settings = new CustomGeneratorSettings();
+        long seed = 102978420983752L;
+        CONFIGURED_SCALAR = CWGNoiseProvider.JAVA_INSTANCE.forSettings(settings, seed);
+        CONFIGURED_BATCHED = CWGNoiseProvider.BATCHED_JAVA_INSTANCE.forSettings(settings, seed);
+    }
+
+    protected static void checkIdentical(double[] scalar, double[] batched) {
+        for (int i = 0; i < scalar.length; i++) {
+            if (Double.doubleToRawLongBits(scalar[i]) != Double.doubleToRawLongBits(batched[i])) {
+                throw new IllegalStateException(PStrings.fastFormat("@%d: %s (scalar) != %s (batched)", i, scalar[i], batched[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testNormal() {
+        SplittableRandom r = new SplittableRandom(67890L);
+
+        for (int i = 0; i < 256; i++) {
+            int baseX = r.nextInt(-1000000, 1000000);
+            int baseY = r.nextInt(-1000000, 1000000);
+            int baseZ = r.nextInt(-1000000, 1000000);
+            int level = r.nextInt(4);
+            double freqX = r.nextDouble(Double.MIN_VALUE, 100000.0d);
+            double freqY = r.nextDouble(Double.MIN_VALUE, 100000.0d);
+            double freqZ = r.nextDouble(Double.MIN_VALUE, 100000.0d);
+            int sizeX = r.nextInt(1, 33);
+            int sizeY = r.nextInt(1, 33);
+            int sizeZ = r.nextInt(1, 33);
+            int seed = r.nextInt();
+            int octaves = r.nextInt(1, 17);
+
+            double[] outScalar = new double[sizeX * sizeY * sizeZ];
+            double[] outBatched = new double[sizeX * sizeY * sizeZ];
+            CWGNoiseProvider.JAVA_INSTANCE.generate3d(outScalar, baseX, baseY, baseZ, level, freqX, freqY, freqZ, sizeX, sizeY, sizeZ, seed, octaves);
+            CWGNoiseProvider.BATCHED_JAVA_INSTANCE.generate3d(outBatched, baseX, baseY, baseZ, level, freqX, freqY, freqZ, sizeX, sizeY, sizeZ, seed, octaves);
+            checkIdentical(outScalar, outBatched);
+
+            outScalar = new double[sizeX * sizeZ];
+            outBatched = new double[sizeX * sizeZ];
+            CWGNoiseProvider.JAVA_INSTANCE.generate2d(outScalar, baseX, baseZ, level, freqX, freqZ, sizeX, sizeZ, seed, octaves);
+            CWGNoiseProvider.BATCHED_JAVA_INSTANCE.generate2d(outBatched, baseX, baseZ, level, freqX, freqZ, sizeX, sizeZ, seed, octaves);
+            checkIdentical(outScalar, outBatched);
+        }
+    }
+
+    @Test
+    public void testConfigured() {
+        SplittableRandom r = new SplittableRandom(12345L);
+
+        for (int i = 0; i < 256; i++) {
+            int baseX = r.nextInt(-1000000, 1000000);
+            int baseY = r.nextInt(-1000000, 1000000);
+            int baseZ = r.nextInt(-1000000, 1000000);
+            int scaleX = 1 << r.nextInt(4);
+            int scaleY = 1 << r.nextInt(4);
+            int scaleZ = 1 << r.nextInt(4);
+            int sizeX = r.nextInt(1, 33);
+            int sizeY = r.nextInt(1, 33);
+            int sizeZ = r.nextInt(1, 33);
+
+            double[] heights = new double[sizeX * sizeZ];
+            double[] variation = new double[sizeX * sizeZ];
+            for (int j = 0; j < sizeX * sizeZ; j++) {
+                heights[j] = r.nextDouble(-10, 10);
+                variation[j] = r.nextDouble(-10, 10);
+            }
+
+            double[] depthScalar = new double[sizeX * sizeZ];
+            double[] depthBatched = new double[sizeX * sizeZ];
+            CONFIGURED_SCALAR.generateDepth2d(depthScalar, baseX, baseZ, scaleX, scaleZ, sizeX, sizeZ);
+            CONFIGURED_BATCHED.generateDepth2d(depthBatched, baseX, baseZ, scaleX, scaleZ, sizeX, sizeZ);
+            checkIdentical(depthScalar, depthBatched);
+
+            double[] outScalar = new double[sizeX * sizeY * sizeZ];
+            double[] outBatched = new double[sizeX * sizeY * sizeZ];
+            CONFIGURED_SCALAR.generate3d(heights, variation, depthScalar, outScalar, baseX, baseY, baseZ, scaleX, scaleY, scaleZ, sizeX, sizeY, sizeZ);
+            CONFIGURED_BATCHED.generate3d(heights, variation, depthBatched, outBatched, baseX, baseY, baseZ, scaleX, scaleY, scaleZ, sizeX, sizeY, sizeZ);
+            checkIdentical(outScalar, outBatched);
+        }
+    }
+}
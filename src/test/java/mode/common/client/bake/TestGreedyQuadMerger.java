@@ -0,0 +1,175 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.client.bake;
+
+import net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static net.daporkchop.fp2.mode.common.client.bake.GreedyQuadMerger.*;
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Checks that merging quads with {@link GreedyQuadMerger} doesn't change which surface is covered by which kind of quad.
+ *
+ * @author DaPorkchop_
+ */
+public class TestGreedyQuadMerger {
+    @Test
+    public void testFlatTile() {
+        int[] keys = new int[T_VOXELS * T_VOXELS];
+        Arrays.fill(keys, 0);
+
+        //a completely flat tile should be merged into a single quad
+        checkState(this.test(keys, 0, T_VOXELS, T_VOXELS) == 1);
+    }
+
+    @Test
+    public void testEmptyTile() {
+        int[] keys = new int[T_VOXELS * T_VOXELS];
+        Arrays.fill(keys, -1);
+
+        checkState(this.test(keys, 0, T_VOXELS, T_VOXELS) == 0);
+    }
+
+    @Test
+    public void testCheckerboardTile() {
+        int[] keys = new int[T_VOXELS * T_VOXELS];
+        for (int u = 0; u < T_VOXELS; u++) {
+            for (int v = 0; v < T_VOXELS; v++) {
+                keys[u * T_VOXELS + v] = (u ^ v) & 1;
+            }
+        }
+
+        //nothing can be merged
+        checkState(this.test(keys, 0, T_VOXELS, T_VOXELS) == T_VOXELS * T_VOXELS);
+    }
+
+    @Test
+    public void testTerracedTiles() {
+        Random random = new Random(12345L);
+        for (int i = 0; i < 1000; i++) {
+            //fill the tile with a few overlapping flat rectangles, with the occasional hole
+            int[] keys = new int[T_VOXELS * T_VOXELS];
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                int key = random.nextInt(4) - 1;
+                int u0 = random.nextInt(T_VOXELS);
+                int v0 = random.nextInt(T_VOXELS);
+                int u1 = u0 + random.nextInt(T_VOXELS - u0) + 1;
+                int v1 = v0 + random.nextInt(T_VOXELS - v0) + 1;
+                for (int u = u0; u < u1; u++) {
+                    for (int v = v0; v < v1; v++) {
+                        keys[u * T_VOXELS + v] = key;
+                    }
+                }
+            }
+
+            int cells = (int) Arrays.stream(keys).filter(key -> key >= 0).count();
+            int count = this.test(keys, 0, T_VOXELS, T_VOXELS);
+            checkState(count <= cells, "%d cells were merged into %d rectangles", cells, count);
+        }
+    }
+
+    @Test
+    public void testNoisyTiles() {
+        Random random = new Random(67890L);
+        for (int i = 0; i < 1000; i++) {
+            int[] keys = new int[T_VOXELS * T_VOXELS];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = random.nextInt(3) - 1;
+            }
+            this.test(keys, 0, T_VOXELS, T_VOXELS);
+        }
+    }
+
+    @Test
+    public void testOffsetGrids() {
+        Random random = new Random(13579L);
+        for (int i = 0; i < 1000; i++) {
+            int sizeU = random.nextInt(T_VERTS) + 1;
+            int sizeV = random.nextInt(T_VERTS) + 1;
+            int offset = random.nextInt(T_VERTS);
+
+            int[] keys = new int[offset + sizeU * sizeV + random.nextInt(T_VERTS)];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = random.nextInt(2);
+            }
+            int[] original = keys.clone();
+
+            this.test(keys, offset, sizeU, sizeV);
+
+            //cells outside of the grid must not be modified
+            for (int j = 0; j < keys.length; j++) {
+                if (j < offset || j >= offset + sizeU * sizeV) {
+                    checkState(keys[j] == original[j], "cell %d outside of the grid was modified", j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the given grid, and then checks that the merged rectangles cover exactly the same cells with exactly the same keys as the original grid.
+     *
+     * @return the number of merged rectangles
+     */
+    protected int test(int[] keys, int offset, int sizeU, int sizeV) {
+        int[] original = Arrays.copyOfRange(keys, offset, offset + sizeU * sizeV);
+        int[] rects = new int[sizeU * sizeV * RECT_SIZE];
+        int count = GreedyQuadMerger.merge(keys, offset, sizeU, sizeV, rects);
+
+        //all cells must have been consumed
+        for (int i = 0; i < sizeU * sizeV; i++) {
+            checkState(keys[offset + i] < 0, "cell %d was not consumed", i);
+        }
+
+        //rasterize the merged rectangles back onto an empty grid
+        int[] rasterized = new int[sizeU * sizeV];
+        Arrays.fill(rasterized, -1);
+        for (int i = 0; i < count; i++) {
+            int u0 = rects[i * RECT_SIZE + 0];
+            int v0 = rects[i * RECT_SIZE + 1];
+            int width = rects[i * RECT_SIZE + 2];
+            int height = rects[i * RECT_SIZE + 3];
+            int key = rects[i * RECT_SIZE + 4];
+
+            checkState(key >= 0, "rectangle %d has negative key %d", i, key);
+            checkState(width > 0 && height > 0 && u0 + width <= sizeU && v0 + height <= sizeV, "rectangle %d is out of bounds", i);
+
+            for (int u = u0; u < u0 + width; u++) {
+                for (int v = v0; v < v0 + height; v++) {
+                    checkState(rasterized[u * sizeV + v] < 0, "cell (%d, %d) is covered by multiple rectangles", u, v);
+                    rasterized[u * sizeV + v] = key;
+                }
+            }
+        }
+
+        for (int u = 0; u < sizeU; u++) {
+            for (int v = 0; v < sizeV; v++) {
+                checkState(rasterized[u * sizeV + v] == Math.max(original[u * sizeV + v], -1),
+                        "cell (%d, %d): expected %d, but found %d", u, v, original[u * sizeV + v], rasterized[u * sizeV + v]);
+            }
+        }
+        return count;
+    }
+}
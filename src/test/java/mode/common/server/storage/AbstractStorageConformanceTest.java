@@ -0,0 +1,312 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.server.storage;
+
+import lombok.NonNull;
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.voxel.VoxelData;
+import net.daporkchop.fp2.mode.voxel.VoxelPos;
+import net.daporkchop.fp2.mode.voxel.VoxelTile;
+import net.daporkchop.fp2.util.SimpleRecycler;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static net.daporkchop.fp2.mode.api.tile.ITileMetadata.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Tests which every {@link IFarStorage} implementation must pass.
+ *
+ * @author DaPorkchop_
+ */
+public abstract class AbstractStorageConformanceTest {
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+    }
+
+    protected IFarStorage<VoxelPos, VoxelTile> storage;
+
+    /**
+     * @return a new, empty {@link IFarStorage} instance
+     */
+    protected abstract IFarStorage<VoxelPos, VoxelTile> createStorage() throws IOException;
+
+    @Before
+    public void open() throws IOException {
+        this.storage = this.createStorage();
+    }
+
+    @After
+    public void close() throws IOException {
+        this.storage.close();
+    }
+
+    protected static VoxelTile emptyTile() {
+        return new VoxelTile();
+    }
+
+    protected static VoxelTile nonEmptyTile() {
+        return new VoxelTile().set(1, 2, 3, new VoxelData());
+    }
+
+    protected static boolean set(@NonNull ITileHandle<VoxelPos, VoxelTile> handle, long timestamp, @NonNull VoxelTile tile) {
+        return handle.set(ofTimestamp(timestamp), tile);
+    }
+
+    @Test
+    public void testStorageId() {
+        checkState(this.storage.storageId() != null);
+        checkState(this.storage.storageId().equals(this.storage.storageId()), "storage ID isn't stable");
+    }
+
+    @Test
+    public void testBlank() {
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(new VoxelPos(0, 1, 2, 3));
+
+        checkState(handle.timestamp() == TIMESTAMP_BLANK);
+        checkState(!handle.isInitialized());
+        checkState(handle.dirtyTimestamp() == TIMESTAMP_BLANK);
+        checkState(handle.snapshot() == null);
+
+        //uninitialized tiles may not be marked as dirty
+        checkState(!handle.markDirty(0L));
+        checkState(!handle.clearDirty());
+        checkState(handle.dirtyTimestamp() == TIMESTAMP_BLANK);
+    }
+
+    @Test
+    public void testSetTimestamp() {
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(new VoxelPos(0, -1, 2, -3));
+
+        checkState(set(handle, TIMESTAMP_GENERATED, emptyTile()));
+        checkState(handle.timestamp() == TIMESTAMP_GENERATED);
+
+        checkState(set(handle, 5L, emptyTile()));
+        checkState(handle.timestamp() == 5L);
+
+        //timestamps may only increase
+        checkState(!set(handle, 5L, nonEmptyTile()));
+        checkState(!set(handle, 4L, nonEmptyTile()));
+        checkState(handle.timestamp() == 5L);
+
+        checkState(set(handle, 6L, nonEmptyTile()));
+        checkState(handle.timestamp() == 6L);
+
+        //handles for the same position must observe the same state
+        checkState(this.storage.handleFor(new VoxelPos(0, -1, 2, -3)).timestamp() == 6L);
+
+        //other positions must be unaffected
+        checkState(this.storage.handleFor(new VoxelPos(0, -1, 2, -2)).timestamp() == TIMESTAMP_BLANK);
+        checkState(this.storage.handleFor(new VoxelPos(1, -1, 2, -3)).timestamp() == TIMESTAMP_BLANK);
+    }
+
+    @Test
+    public void testSnapshot() {
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(new VoxelPos(2, 100, -100, 100));
+        SimpleRecycler<VoxelTile> recycler = new SimpleRecycler.OfReusablePersistent<>(VoxelTile::new);
+
+        checkState(set(handle, 1L, emptyTile()));
+        RefCountedTileSnapshot<VoxelPos, VoxelTile> snapshot = handle.snapshot();
+        try {
+            checkState(snapshot.pos().equals(handle.pos()));
+            checkState(snapshot.timestamp() == 1L);
+            checkState(snapshot.isEmpty());
+        } finally {
+            snapshot.release();
+        }
+
+        checkState(set(handle, 2L, nonEmptyTile()));
+        snapshot = handle.snapshot();
+        try {
+            checkState(snapshot.timestamp() == 2L);
+            checkState(!snapshot.isEmpty());
+
+            //the snapshot must not be affected by subsequent modifications
+            checkState(set(handle, 3L, emptyTile()));
+            checkState(snapshot.timestamp() == 2L);
+
+            VoxelTile tile = snapshot.loadTile(recycler);
+            checkState(tile.count() == 1);
+            recycler.release(tile);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Test
+    public void testDirty() {
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(new VoxelPos(0, 0, 0, 0));
+        checkState(set(handle, 10L, emptyTile()));
+
+        //the dirty timestamp must be newer than the tile's timestamp
+        checkState(!handle.markDirty(9L));
+        checkState(!handle.markDirty(10L));
+        checkState(handle.dirtyTimestamp() == TIMESTAMP_BLANK);
+
+        checkState(handle.markDirty(12L));
+        checkState(handle.dirtyTimestamp() == 12L);
+
+        //the dirty timestamp may only increase
+        checkState(!handle.markDirty(12L));
+        checkState(!handle.markDirty(11L));
+        checkState(handle.markDirty(13L));
+        checkState(handle.dirtyTimestamp() == 13L);
+
+        //setting the tile to an older timestamp than the dirty timestamp must not clear it
+        checkState(set(handle, 12L, emptyTile()));
+        checkState(handle.dirtyTimestamp() == 13L);
+
+        //setting the tile to a timestamp at least as new as the dirty timestamp must clear it
+        checkState(set(handle, 13L, emptyTile()));
+        checkState(handle.dirtyTimestamp() == TIMESTAMP_BLANK);
+
+        checkState(handle.markDirty(14L));
+        checkState(handle.clearDirty());
+        checkState(handle.dirtyTimestamp() == TIMESTAMP_BLANK);
+        checkState(!handle.clearDirty());
+        checkState(handle.timestamp() == 13L);
+    }
+
+    @Test
+    public void testMarkAllDirty() {
+        List<VoxelPos> positions = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            positions.add(new VoxelPos(0, i - 32, i & 3, -i));
+        }
+
+        //initialize every other tile, alternating between old and new timestamps
+        Set<VoxelPos> expected = new HashSet<>();
+        for (int i = 0; i < positions.size(); i += 2) {
+            boolean old = (i & 2) == 0;
+            checkState(set(this.storage.handleFor(positions.get(i)), old ? 5L : 15L, emptyTile()));
+            if (old) {
+                expected.add(positions.get(i));
+            }
+        }
+
+        Set<VoxelPos> notified = new HashSet<>();
+        IFarStorage.Listener<VoxelPos, VoxelTile> listener = new IFarStorage.Listener<VoxelPos, VoxelTile>() {
+            @Override
+            public void tilesChanged(@NonNull Stream<VoxelPos> positions) {
+                throw new IllegalStateException("no tiles should be changed!");
+            }
+
+            @Override
+            public void tilesDirty(@NonNull Stream<VoxelPos> positions) {
+                positions.forEach(pos -> checkState(notified.add(pos), "duplicate notification for %s", pos));
+            }
+        };
+        this.storage.addListener(listener);
+        try {
+            //duplicate positions must be ignored
+            Set<VoxelPos> result = this.storage.markAllDirty(Stream.concat(positions.stream(), positions.stream()), 10L).collect(Collectors.toSet());
+            checkState(expected.equals(result), "expected %s, got %s", expected, result);
+            checkState(expected.equals(notified), "expected %s, got %s", expected, notified);
+
+            positions.forEach(pos -> checkState(this.storage.handleFor(pos).dirtyTimestamp() == (expected.contains(pos) ? 10L : TIMESTAMP_BLANK)));
+
+            //nothing can be marked as dirty again at the same timestamp
+            checkState(this.storage.markAllDirty(positions.stream(), 10L).count() == 0L);
+        } finally {
+            this.storage.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void testListeners() {
+        VoxelPos pos = new VoxelPos(0, 7, 7, 7);
+        List<VoxelPos> changed = new ArrayList<>();
+        List<VoxelPos> dirty = new ArrayList<>();
+        IFarStorage.Listener<VoxelPos, VoxelTile> listener = new IFarStorage.Listener<VoxelPos, VoxelTile>() {
+            @Override
+            public void tilesChanged(@NonNull Stream<VoxelPos> positions) {
+                positions.forEach(changed::add);
+            }
+
+            @Override
+            public void tilesDirty(@NonNull Stream<VoxelPos> positions) {
+                positions.forEach(dirty::add);
+            }
+        };
+        this.storage.addListener(listener);
+
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(pos);
+        checkState(set(handle, 1L, emptyTile()));
+        checkState(!set(handle, 1L, emptyTile()));
+        checkState(handle.markDirty(2L));
+        checkState(!handle.markDirty(2L));
+        checkState(changed.equals(Arrays.asList(pos)), "%s", changed);
+        checkState(dirty.equals(Arrays.asList(pos)), "%s", dirty);
+
+        this.storage.removeListener(listener);
+        checkState(set(handle, 3L, emptyTile()));
+        checkState(changed.size() == 1);
+    }
+
+    @Test
+    public void testForEachDirtyPos() {
+        Set<VoxelPos> expected = new HashSet<>();
+        Set<VoxelPos> expectedInBB = new HashSet<>();
+        IntAxisAlignedBB bb = new IntAxisAlignedBB(-4, -4, -4, 3, 3, 3);
+
+        for (int level = 0; level < 2; level++) {
+            for (int x = -8; x < 8; x++) {
+                for (int z = -8; z < 8; z++) {
+                    VoxelPos pos = new VoxelPos(level, x, (x ^ z) & 7, z);
+                    ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(pos);
+                    checkState(set(handle, 0L, emptyTile()));
+
+                    if (((x + z) & 1) == 0) {
+                        checkState(handle.markDirty(1L));
+                        expected.add(pos);
+                        if (level == 1 && pos.containedBy(bb)) {
+                            expectedInBB.add(pos);
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<VoxelPos> actual = new HashSet<>();
+        this.storage.forEachDirtyPos(pos -> checkState(actual.add(pos), "duplicate position %s", pos));
+        checkState(expected.equals(actual), "expected %s, got %s", expected, actual);
+
+        Set<VoxelPos> actualInBB = new HashSet<>();
+        this.storage.forEachDirtyPos(1, bb, pos -> checkState(actualInBB.add(pos), "duplicate position %s", pos));
+        checkState(expectedInBB.equals(actualInBB), "expected %s, got %s", expectedInBB, actualInBB);
+    }
+}
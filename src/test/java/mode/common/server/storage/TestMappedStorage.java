@@ -0,0 +1,114 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.server.storage;
+
+import net.daporkchop.fp2.mode.api.server.storage.IFarStorage;
+import net.daporkchop.fp2.mode.api.tile.ITileHandle;
+import net.daporkchop.fp2.mode.api.tile.RefCountedTileSnapshot;
+import net.daporkchop.fp2.mode.common.server.storage.mapped.MappedRegion;
+import net.daporkchop.fp2.mode.common.server.storage.mapped.MappedStorage;
+import net.daporkchop.fp2.mode.voxel.VoxelPos;
+import net.daporkchop.fp2.mode.voxel.VoxelTile;
+import net.daporkchop.lib.common.misc.file.PFiles;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestMappedStorage extends AbstractStorageConformanceTest {
+    protected File root;
+
+    @Override
+    protected IFarStorage<VoxelPos, VoxelTile> createStorage() throws IOException {
+        if (this.root == null) {
+            this.root = Files.createTempDirectory("fp2-mapped-storage").toFile();
+        }
+        return new MappedStorage<>(VoxelPos::new, this.root, VoxelTile.MAX_ENCODED_SIZE);
+    }
+
+    @After
+    @Override
+    public void close() throws IOException {
+        super.close();
+
+        PFiles.rmContentsParallel(this.root);
+        checkState(this.root.delete(), "unable to delete %s", this.root);
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        VoxelPos pos = new VoxelPos(3, -5, 6, -7);
+        checkState(set(this.storage.handleFor(pos), 5L, nonEmptyTile()));
+        checkState(this.storage.handleFor(pos).markDirty(6L));
+        UUID storageId = this.storage.storageId();
+
+        //re-open the storage from the same directory
+        this.storage.close();
+        this.storage = this.createStorage();
+        checkState(storageId.equals(this.storage.storageId()), "storage ID changed after re-opening");
+
+        ITileHandle<VoxelPos, VoxelTile> handle = this.storage.handleFor(pos);
+        checkState(handle.timestamp() == 5L);
+        checkState(handle.dirtyTimestamp() == 6L);
+
+        RefCountedTileSnapshot<VoxelPos, VoxelTile> snapshot = handle.snapshot();
+        try {
+            checkState(snapshot.timestamp() == 5L);
+            checkState(!snapshot.isEmpty());
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Test
+    public void testClosedRegion() throws IOException {
+        MappedRegion region = new MappedRegion(new byte[2], new File(this.root, "closed.tmp"), 16);
+        checkState(region.write(0, 5L, null));
+        checkState(region.timestamp(0) == 5L);
+
+        region.close();
+        region.close(); //closing twice should have no effect
+
+        //accessing the region after it's been unmapped must fail cleanly rather than touching the unmapped memory
+        try {
+            region.timestamp(0);
+            throw new AssertionError("closed region was accessed successfully");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        //the region file should have been flushed to disk before it was unmapped
+        region = new MappedRegion(new byte[2], new File(this.root, "closed.tmp"), 16);
+        try {
+            checkState(region.timestamp(0) == 5L);
+        } finally {
+            region.close();
+        }
+    }
+}
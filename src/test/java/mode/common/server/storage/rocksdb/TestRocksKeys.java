@@ -0,0 +1,143 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.server.storage.rocksdb;
+
+import io.netty.buffer.Unpooled;
+import net.daporkchop.fp2.mode.common.server.storage.rocksdb.RocksKeys;
+import net.daporkchop.fp2.mode.heightmap.HeightmapPos;
+import net.daporkchop.fp2.mode.voxel.VoxelPos;
+import net.daporkchop.fp2.util.math.IntAxisAlignedBB;
+import net.daporkchop.fp2.util.math.MathUtil;
+import net.daporkchop.lib.common.misc.file.PFiles;
+import org.junit.Test;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestRocksKeys {
+    @Test
+    public void testMigrateV4Key() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 10000; i++) {
+            int level = random.nextInt(0, 32);
+            int x = random.nextInt();
+            int y = random.nextInt();
+            int z = random.nextInt();
+
+            //v4 keys were the level followed by the morton code of the raw coordinates
+            VoxelPos voxelPos = new VoxelPos(level, x, y, z);
+            byte[] voxelKeyV4 = new byte[13];
+            Unpooled.wrappedBuffer(voxelKeyV4).clear()
+                    .writeByte(level)
+                    .writeInt(MathUtil.interleaveBitsHigh(x, y, z))
+                    .writeLong(MathUtil.interleaveBits(x, y, z));
+
+            byte[] voxelKey = RocksKeys.migrateV4Key(voxelKeyV4);
+            checkState(Arrays.equals(voxelKey, voxelPos.toBytes()), "migrated key for %s doesn't match", voxelPos);
+            checkState(voxelPos.equals(new VoxelPos(Unpooled.wrappedBuffer(voxelKey))));
+
+            HeightmapPos heightmapPos = new HeightmapPos(level, x, z);
+            byte[] heightmapKeyV4 = new byte[9];
+            Unpooled.wrappedBuffer(heightmapKeyV4).clear()
+                    .writeByte(level)
+                    .writeLong(MathUtil.interleaveBits(x, z));
+
+            byte[] heightmapKey = RocksKeys.migrateV4Key(heightmapKeyV4);
+            checkState(Arrays.equals(heightmapKey, heightmapPos.toBytes()), "migrated key for %s doesn't match", heightmapPos);
+            checkState(heightmapPos.equals(new HeightmapPos(Unpooled.wrappedBuffer(heightmapKey))));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMigrateV4KeyInvalidLength() {
+        RocksKeys.migrateV4Key(new byte[10]);
+    }
+
+    @Test
+    public void testForEachInBB() throws IOException, RocksDBException {
+        RocksDB.loadLibrary();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        File root = Files.createTempDirectory("fp2-rocks-keys").toFile();
+        try (Options options = new Options().setCreateIfMissing(true);
+             RocksDB db = RocksDB.open(options, root.getPath())) {
+            //sparsely fill a few levels with positions on both sides of zero
+            List<VoxelPos> positions = new ArrayList<>();
+            for (int level = 0; level < 3; level++) {
+                for (int x = -12; x < 12; x++) {
+                    for (int y = -12; y < 12; y++) {
+                        for (int z = -12; z < 12; z++) {
+                            if (random.nextInt(4) == 0) {
+                                VoxelPos pos = new VoxelPos(level, x, y, z);
+                                positions.add(pos);
+                                db.put(pos.toBytes(), new byte[]{ (byte) x, (byte) y, (byte) z });
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < 1000; i++) {
+                int level = random.nextInt(0, 3);
+                int minX = random.nextInt(-16, 16);
+                int minY = random.nextInt(-16, 16);
+                int minZ = random.nextInt(-16, 16);
+                IntAxisAlignedBB bb = new IntAxisAlignedBB(minX, minY, minZ, random.nextInt(minX, 16), random.nextInt(minY, 16), random.nextInt(minZ, 16));
+
+                Set<VoxelPos> expected = new HashSet<>();
+                for (VoxelPos pos : positions) {
+                    if (pos.level() == level && pos.containedBy(bb)) {
+                        expected.add(pos);
+                    }
+                }
+
+                Set<VoxelPos> actual = new HashSet<>();
+                try (RocksIterator itr = db.newIterator()) {
+                    RocksKeys.forEachInBB(itr, VoxelPos::new, level, bb, (pos, value) -> {
+                        checkState(actual.add(pos), "duplicate position %s", pos);
+                        checkState(Arrays.equals(value, new byte[]{ (byte) pos.x(), (byte) pos.y(), (byte) pos.z() }), "wrong value for %s", pos);
+                    });
+                }
+                checkState(expected.equals(actual), "level %d, %s: expected %s, got %s", level, bb, expected, actual);
+            }
+        } finally {
+            PFiles.rmContentsParallel(root);
+            checkState(root.delete(), "unable to delete %s", root);
+        }
+    }
+}
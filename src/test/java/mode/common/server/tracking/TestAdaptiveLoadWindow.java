@@ -0,0 +1,110 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.server.tracking;
+
+import net.daporkchop.fp2.mode.common.server.tracking.AdaptiveLoadWindow;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestAdaptiveLoadWindow {
+    protected static final long FAST = AdaptiveLoadWindow.FAST_LOAD_NANOS >> 1L;
+    protected static final long SLOW = AdaptiveLoadWindow.FAST_LOAD_NANOS + 1L;
+
+    @Test
+    public void testFastLoadsWidenAdditively() {
+        AdaptiveLoadWindow window = new AdaptiveLoadWindow(1, 4, 16);
+        for (int i = 1; i <= 12; i++) {
+            window.loadCompleted(FAST, true); //fast loads always widen the window, even if the scheduler is congested
+            checkState(window.window() == 4 + i, "window is %d after %d fast loads", window.window(), i);
+        }
+
+        //the window must be clamped to the maximum
+        for (int i = 0; i < 10; i++) {
+            window.loadCompleted(FAST, false);
+        }
+        checkState(window.window() == 16, "window wasn't clamped to the maximum: %d", window.window());
+    }
+
+    @Test
+    public void testSlowLoadsWidenSlowly() {
+        AdaptiveLoadWindow window = new AdaptiveLoadWindow(1, 4, 16);
+
+        //each slow load widens the window by 1/window, so it takes roughly one full window's worth of loads to widen it by one
+        for (int i = 0; i < 4; i++) {
+            window.loadCompleted(SLOW, false);
+        }
+        checkState(window.window() == 4, "window widened too quickly: %d", window.window());
+        window.loadCompleted(SLOW, false);
+        checkState(window.window() == 5, "window didn't widen: %d", window.window());
+
+        for (int i = 0; i < 1000; i++) {
+            window.loadCompleted(SLOW, false);
+        }
+        checkState(window.window() == 16, "window wasn't clamped to the maximum: %d", window.window());
+    }
+
+    @Test
+    public void testCongestedLoadsDecreaseMultiplicatively() throws InterruptedException {
+        AdaptiveLoadWindow window = new AdaptiveLoadWindow(2, 16, 16);
+
+        //the window may only be decreased once per average load latency
+        sleepLongerThan(SLOW);
+        window.loadCompleted(SLOW, true);
+        checkState(window.window() == 8, "window wasn't halved: %d", window.window());
+        window.loadCompleted(SLOW, true);
+        checkState(window.window() == 8, "window was halved twice within the average load latency: %d", window.window());
+
+        sleepLongerThan(window.averageLatency());
+        window.loadCompleted(SLOW, true);
+        checkState(window.window() == 4, "window wasn't halved: %d", window.window());
+
+        //the window must be clamped to the minimum
+        for (int i = 0; i < 3; i++) {
+            sleepLongerThan(window.averageLatency());
+            window.loadCompleted(SLOW, true);
+        }
+        checkState(window.window() == 2, "window wasn't clamped to the minimum: %d", window.window());
+    }
+
+    @Test
+    public void testAverageLatency() {
+        AdaptiveLoadWindow window = new AdaptiveLoadWindow(1, 1, 1);
+        window.loadCompleted(800L, false);
+        checkState(window.averageLatency() == 800L, "first sample should be used as-is: %d", window.averageLatency());
+        window.loadCompleted(1600L, false);
+        checkState(window.averageLatency() == 900L, "average should move 1/8 of the way towards the new sample: %d", window.averageLatency());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialWindowOutOfRange() {
+        new AdaptiveLoadWindow(2, 1, 16);
+    }
+
+    protected static void sleepLongerThan(long nanos) throws InterruptedException {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(nanos) + 10L);
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.common.server.tracking;
+
+import lombok.RequiredArgsConstructor;
+import net.daporkchop.fp2.mode.common.server.tracking.ShellOrder;
+import net.daporkchop.fp2.mode.common.server.tracking.ShellQueue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static java.lang.Math.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Tests for {@link ShellOrder} and {@link ShellQueue}.
+ *
+ * @author DaPorkchop_
+ */
+public class TestShellQueue {
+    protected static final ShellQueue.Filter NO_FILTER = (level, axes) -> false;
+
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+    }
+
+    protected static int distance(int[] origin, int[] axes) {
+        int distance = 0;
+        for (int axis = 0; axis < origin.length; axis++) {
+            distance += abs(axes[axis] - origin[axis]);
+        }
+        return distance;
+    }
+
+    protected static double cos(Box box, int[] axes) {
+        double dot = 0.0d;
+        double lengthSq = 0.0d;
+        double directionLengthSq = 0.0d;
+        for (int axis = 0; axis < axes.length; axis++) {
+            int d = axes[axis] - box.origin[axis];
+            dot += d * box.direction[axis];
+            lengthSq += d * d;
+            directionLengthSq += box.direction[axis] * box.direction[axis];
+        }
+        return lengthSq != 0.0d && directionLengthSq != 0.0d ? dot / sqrt(lengthSq * directionLengthSq) : 1.0d;
+    }
+
+    protected static ShellQueue queue(ShellOrder order, Box box) {
+        ShellQueue queue = new ShellQueue(order.axisCount());
+        queue.addLevel(box.level, order, box.origin, box.min, box.max, box.direction);
+        queue.rewind();
+        return queue;
+    }
+
+    protected static ShellQueue queue(Box box) {
+        return queue(new ShellOrder(box.key()), box);
+    }
+
+    protected static List<int[]> drain(ShellQueue queue, ShellQueue.Filter filter, int axisCount) {
+        List<int[]> positions = new ArrayList<>();
+        int[] dst = new int[axisCount];
+        while (queue.poll(dst, filter) >= 0) {
+            positions.add(dst.clone());
+        }
+        return positions;
+    }
+
+    @Test
+    public void testOrder() {
+        this.testOrder(new Box(0, new int[]{ -5, -5 }, new int[]{ 5, 5 }, new int[]{ 0, 0 }, null));
+        this.testOrder(new Box(0, new int[]{ -5, -5 }, new int[]{ 5, 5 }, new int[]{ 4, -5 }, new double[]{ 0.5d, -1.0d }));
+        this.testOrder(new Box(1, new int[]{ -3, 10, -7 }, new int[]{ 6, 12, 2 }, new int[]{ 0, 11, 0 }, new double[]{ 1.0d, 0.0d, 0.25d }));
+        this.testOrder(new Box(2, new int[]{ 100, 100, 100 }, new int[]{ 103, 104, 105 }, new int[]{ 90, 110, 102 }, new double[]{ 0.0d, 0.0d, 0.0d }));
+    }
+
+    protected void testOrder(Box box) {
+        ShellOrder order = new ShellOrder(box.key());
+        List<int[]> positions = drain(queue(order, box), NO_FILTER, order.axisCount());
+        checkBox(box, positions);
+
+        //positions must be sorted by distance, and then by alignment with the direction
+        for (int i = 1; i < positions.size(); i++) {
+            int d0 = distance(box.origin, positions.get(i - 1));
+            int d1 = distance(box.origin, positions.get(i));
+            checkState(d0 <= d1, "positions aren't sorted by distance: %d > %d", d0, d1);
+
+            if (d0 == d1 && box.direction != null) {
+                double cos0 = cos(box, positions.get(i - 1));
+                double cos1 = cos(box, positions.get(i));
+                checkState(cos0 >= cos1 - 2.0d / ShellQueue.DIRECTION_BUCKETS, "positions at distance %d aren't sorted by direction: %s < %s", d0, cos0, cos1);
+            }
+        }
+
+        checkState(order.cachedInts() == 0L, "shells are still cached after the queue was exhausted");
+    }
+
+    @Test
+    public void testFilter() {
+        Box box = new Box(0, new int[]{ -8, -8, -8 }, new int[]{ 8, 8, 8 }, new int[]{ 1, 2, 3 }, new double[]{ 1.0d, 1.0d, 0.0d });
+        ShellQueue.Filter filter = (level, axes) -> ((axes[0] ^ axes[1] ^ axes[2]) & 1) != 0;
+
+        List<int[]> unfiltered = drain(queue(box), NO_FILTER, 3);
+        List<int[]> filtered = drain(queue(box), filter, 3);
+
+        unfiltered.removeIf(axes -> filter.skip(0, axes));
+        checkState(samePositions(unfiltered, filtered), "filtered positions don't match");
+    }
+
+    @Test
+    public void testSharedOrder() {
+        Box box = new Box(0, new int[]{ -20, -20, -20 }, new int[]{ 20, 20, 20 }, new int[]{ 3, -1, 2 }, new double[]{ 0.25d, -1.0d, 0.75d });
+        List<int[]> reference = drain(queue(box), NO_FILTER, 3);
+        long[] shellInts = shellInts(box.key());
+
+        Random random = new Random(12345L);
+        ShellOrder shared = new ShellOrder(box.key());
+        ShellQueue a = queue(shared, box);
+        ShellQueue b = queue(shared, box);
+        List<int[]> positionsA = new ArrayList<>();
+        List<int[]> positionsB = new ArrayList<>();
+        int[] dst = new int[3];
+
+        //poll from both queues in a random interleaving, with b lagging behind a
+        boolean exhaustedA = false;
+        boolean exhaustedB = false;
+        while (!exhaustedA || !exhaustedB) {
+            if (!exhaustedA && (exhaustedB || random.nextInt(3) != 0)) {
+                if (a.poll(dst, NO_FILTER) >= 0) {
+                    positionsA.add(dst.clone());
+                } else {
+                    exhaustedA = true;
+                }
+            } else {
+                if (b.poll(dst, NO_FILTER) >= 0) {
+                    positionsB.add(dst.clone());
+                } else {
+                    exhaustedB = true;
+                }
+            }
+
+            if (!positionsA.isEmpty() && !positionsB.isEmpty() && !exhaustedA && !exhaustedB) {
+                //only the shells between the two cursors may be cached
+                int minDistance = min(distance(box.origin, positionsA.get(positionsA.size() - 1)), distance(box.origin, positionsB.get(positionsB.size() - 1)));
+                int maxDistance = max(distance(box.origin, positionsA.get(positionsA.size() - 1)), distance(box.origin, positionsB.get(positionsB.size() - 1)));
+                checkState(shared.cachedInts() <= sum(shellInts, minDistance, maxDistance), "shells which every queue has passed are still cached");
+            }
+        }
+
+        checkState(samePositions(reference, positionsA), "shared order returned different positions than an unshared one (queue a)");
+        checkState(samePositions(reference, positionsB), "shared order returned different positions than an unshared one (queue b)");
+        checkState(shared.cachedInts() == 0L, "shells are still cached after every queue was exhausted");
+    }
+
+    @Test
+    public void testSharedOrderCacheLimit() {
+        //the box is large enough that the shells between the two cursors can't all be cached
+        Box box = new Box(0, new int[]{ -80, -80, -80 }, new int[]{ 80, 80, 80 }, new int[]{ 0, 0, 0 }, new double[]{ 1.0d, 0.0d, 0.0d });
+        ShellOrder shared = new ShellOrder(box.key());
+        ShellQueue a = queue(shared, box);
+        ShellQueue b = queue(shared, box);
+        ShellQueue reference = queue(box);
+        int[] dst = new int[3];
+        int[] referenceDst = new int[3];
+
+        //poll the first position from queue b, so that it starts consuming the order at distance 0
+        checkState(b.poll(dst, NO_FILTER) >= 0 && reference.poll(referenceDst, NO_FILTER) >= 0 && Arrays.equals(dst, referenceDst));
+
+        //let queue a get far ahead of queue b
+        do {
+            checkState(a.poll(dst, NO_FILTER) >= 0);
+        } while (distance(box.origin, dst) <= 100);
+        checkState(shared.cachedInts() <= ShellOrder.MAX_CACHED_INTS, "order caches %d ints, more than the limit", shared.cachedInts());
+        checkState(sum(shellInts(box.key()), 0, 100) > ShellOrder.MAX_CACHED_INTS, "box is too small to exceed the cache limit");
+
+        //queue b must still see exactly the same positions, even though the shells it needs were generated again instead of being cached
+        while (b.poll(dst, NO_FILTER) >= 0) {
+            checkState(reference.poll(referenceDst, NO_FILTER) >= 0, "queue b returned too many positions");
+            checkState(Arrays.equals(dst, referenceDst), "queue b returned %s, expected %s", Arrays.toString(dst), Arrays.toString(referenceDst));
+        }
+        checkState(reference.poll(referenceDst, NO_FILTER) < 0, "queue b returned too few positions");
+
+        a.rewind();
+        checkState(shared.cachedInts() == 0L, "shells are still cached after every queue was done");
+    }
+
+    @Test
+    public void testSharedBetweenNearbyPlayers() {
+        final int players = 50;
+        final int cutoff = 12;
+
+        //place the players in a few adjacent tiles, each looking and moving in a different direction, and key their orders the same way the tracker does
+        Random random = new Random(54321L);
+        Map<ShellOrder.Key, ShellOrder> orders = new HashMap<>();
+        List<Box> boxes = new ArrayList<>();
+        List<ShellQueue> queues = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            int[] base = { random.nextInt(4), random.nextInt(2), random.nextInt(4) };
+            int[] min = new int[3];
+            int[] max = new int[3];
+            int[] origin = new int[3];
+            double[] direction = new double[3];
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = base[axis] - cutoff;
+                max[axis] = base[axis] + cutoff;
+                origin[axis] = base[axis] + random.nextInt(cutoff) - (cutoff >> 1); //look-ahead and velocity offsets
+                direction[axis] = random.nextDouble() * 2.0d - 1.0d;
+            }
+
+            Box box = new Box(0, min, max, origin, direction);
+            boxes.add(box);
+            queues.add(queue(orders.computeIfAbsent(box.key(), ShellOrder::new), box));
+        }
+        checkState(orders.size() <= 2, "%d players in a few tiles need %d different orders", players, orders.size());
+
+        //consume all of the queues in lockstep, as the trackers would while sharing the orders
+        List<List<int[]>> positions = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            positions.add(new ArrayList<>());
+        }
+        int[] dst = new int[3];
+        for (boolean any = true; any; ) {
+            any = false;
+            for (int i = 0; i < players; i++) {
+                if (queues.get(i).poll(dst, NO_FILTER) >= 0) {
+                    positions.get(i).add(dst.clone());
+                    any = true;
+                }
+            }
+        }
+
+        //every player must still see exactly their own box, in their own order
+        for (int i = 0; i < players; i++) {
+            Box box = boxes.get(i);
+            checkBox(box, positions.get(i));
+            checkState(samePositions(drain(queue(box), NO_FILTER, 3), positions.get(i)), "shared order returned different positions than an unshared one");
+        }
+        for (ShellOrder order : orders.values()) {
+            checkState(order.cachedInts() == 0L, "shells are still cached after every queue was exhausted");
+        }
+    }
+
+    protected static void checkBox(Box box, List<int[]> positions) {
+        //every position in the box must be returned exactly once
+        Set<List<Integer>> expected = new HashSet<>();
+        int[] axes = box.min.clone();
+        do {
+            expected.add(toList(axes));
+        } while (next(box.min, box.max, axes));
+
+        Set<List<Integer>> actual = new HashSet<>();
+        for (int[] pos : positions) {
+            checkState(actual.add(toList(pos)), "position %s was returned twice", Arrays.toString(pos));
+        }
+        checkState(expected.equals(actual), "returned positions don't match the box");
+    }
+
+    /**
+     * Computes the number of ints in each of the shells of the {@link ShellOrder} with the given {@link ShellOrder.Key}, indexed by distance.
+     */
+    protected static long[] shellInts(ShellOrder.Key key) {
+        ShellOrder order = new ShellOrder(key);
+        long[] ints = new long[order.maxDistance() + 1];
+        for (int distance = 0; distance <= order.maxDistance(); distance++) {
+            ints[distance] = order.shell(distance).length;
+        }
+        return ints;
+    }
+
+    protected static long sum(long[] values, int from, int to) {
+        long sum = 0L;
+        for (int i = from; i <= min(to, values.length - 1); i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    protected static boolean samePositions(List<int[]> a, List<int[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static List<Integer> toList(int[] axes) {
+        List<Integer> list = new ArrayList<>(axes.length);
+        for (int i : axes) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    protected static boolean next(int[] min, int[] max, int[] axes) {
+        for (int axis = axes.length - 1; axis >= 0; axis--) {
+            if (++axes[axis] <= max[axis]) {
+                return true;
+            }
+            axes[axis] = min[axis];
+        }
+        return false;
+    }
+
+    /**
+     * The parameters of a single level of a {@link ShellQueue}.
+     *
+     * @author DaPorkchop_
+     */
+    @RequiredArgsConstructor
+    protected static final class Box {
+        protected final int level;
+        protected final int[] min;
+        protected final int[] max;
+        protected final int[] origin;
+        protected final double[] direction;
+
+        public ShellOrder.Key key() {
+            return ShellOrder.Key.of(this.min, this.max, this.origin);
+        }
+    }
+}
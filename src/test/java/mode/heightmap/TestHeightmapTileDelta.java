@@ -0,0 +1,144 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.heightmap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.daporkchop.fp2.mode.heightmap.HeightmapData;
+import net.daporkchop.fp2.mode.heightmap.HeightmapTile;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Biomes;
+import net.minecraft.init.Blocks;
+import net.minecraft.world.biome.Biome;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.util.Random;
+
+import static net.daporkchop.fp2.mode.heightmap.HeightmapConstants.*;
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestHeightmapTileDelta {
+    protected static IBlockState[] STATES;
+    protected static Biome[] BIOMES;
+
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+
+        STATES = new IBlockState[]{
+                Blocks.STONE.getDefaultState(),
+                Blocks.GRASS.getDefaultState(),
+                Blocks.WATER.getDefaultState(),
+                Blocks.SAND.getDefaultState(),
+                Blocks.LEAVES.getDefaultState()
+        };
+        BIOMES = new Biome[]{ Biomes.PLAINS, Biomes.OCEAN, Biomes.DESERT, Biomes.FOREST, Biomes.SWAMPLAND };
+    }
+
+    @Test
+    public void testSmallChanges() {
+        this.test(new Random(12345L), 50);
+    }
+
+    @Test
+    public void testLargeChanges() {
+        this.test(new Random(67890L), T_VOXELS * T_VOXELS * MAX_LAYERS);
+    }
+
+    @Test
+    public void testNoChanges() {
+        Random random = new Random(13579L);
+        HeightmapTile base = randomTile(random);
+        HeightmapTile tile = new HeightmapTile();
+        copy(base, tile);
+
+        ByteBuf delta = Unpooled.buffer();
+        tile.writeDelta(base, delta);
+        checkState(delta.readIntLE() == 0, "delta between identical tiles isn't empty");
+    }
+
+    protected void test(Random random, int maxChanges) {
+        for (int i = 0; i < 100; i++) {
+            HeightmapTile base = randomTile(random);
+
+            //add, modify and remove some layers
+            HeightmapTile tile = new HeightmapTile();
+            copy(base, tile);
+            HeightmapData data = new HeightmapData();
+            for (int j = random.nextInt(maxChanges); j > 0; j--) {
+                int x = random.nextInt(T_VOXELS);
+                int z = random.nextInt(T_VOXELS);
+                int layer = random.nextInt(MAX_LAYERS);
+                if (random.nextInt(3) == 0) {
+                    tile.unsetLayer(x, z, layer);
+                } else {
+                    tile.setLayer(x, z, layer, randomData(random, data));
+                }
+            }
+
+            ByteBuf delta = Unpooled.buffer();
+            tile.writeDelta(base, delta);
+
+            //apply the delta to a copy of the base tile which was loaded from its encoded form
+            HeightmapTile patched = new HeightmapTile();
+            copy(base, patched);
+            patched.applyDelta(delta);
+            checkState(!delta.isReadable(), "delta wasn't fully read");
+
+            ByteBuf expected = Unpooled.buffer();
+            ByteBuf actual = Unpooled.buffer();
+            tile.write(expected);
+            patched.write(actual);
+            checkState(expected.equals(actual), "patched tile differs from the original (iteration %s)", i);
+        }
+    }
+
+    protected static HeightmapData randomData(Random random, HeightmapData data) {
+        data.state = STATES[random.nextInt(STATES.length)];
+        data.biome = BIOMES[random.nextInt(BIOMES.length)];
+        data.height_int = random.nextInt();
+        data.height_frac = random.nextInt(256);
+        data.light = random.nextInt(256);
+        data.secondaryConnection = random.nextInt(MAX_LAYERS);
+        return data;
+    }
+
+    protected static HeightmapTile randomTile(Random random) {
+        HeightmapTile tile = new HeightmapTile();
+        HeightmapData data = new HeightmapData();
+        for (int j = random.nextInt(T_VOXELS * T_VOXELS * MAX_LAYERS); j > 0; j--) {
+            tile.setLayer(random.nextInt(T_VOXELS), random.nextInt(T_VOXELS), random.nextInt(MAX_LAYERS), randomData(random, data));
+        }
+        return tile;
+    }
+
+    protected static void copy(HeightmapTile src, HeightmapTile dst) {
+        ByteBuf buf = Unpooled.buffer();
+        src.write(buf);
+        dst.read(buf);
+    }
+}
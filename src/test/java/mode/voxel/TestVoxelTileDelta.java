@@ -0,0 +1,127 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package mode.voxel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.daporkchop.fp2.mode.voxel.VoxelData;
+import net.daporkchop.fp2.mode.voxel.VoxelTile;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static net.daporkchop.fp2.mode.voxel.VoxelConstants.*;
+import static net.daporkchop.fp2.util.Constants.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestVoxelTileDelta {
+    @Test
+    public void testSmallChanges() {
+        this.test(new Random(12345L), 50);
+    }
+
+    @Test
+    public void testLargeChanges() {
+        this.test(new Random(67890L), T_VOXELS * T_VOXELS * T_VOXELS);
+    }
+
+    protected void test(Random random, int maxChanges) {
+        for (int i = 0; i < 100; i++) {
+            Map<Integer, VoxelData> baseVoxels = new HashMap<>();
+            for (int j = random.nextInt(VoxelTile.ENTRY_COUNT); j > 0; j--) {
+                baseVoxels.put(random.nextInt(VoxelTile.ENTRY_COUNT), randomVoxel(random));
+            }
+
+            //add, modify and remove some voxels
+            Map<Integer, VoxelData> voxels = new HashMap<>(baseVoxels);
+            for (int j = random.nextInt(maxChanges); j > 0; j--) {
+                if (random.nextInt(3) == 0) {
+                    voxels.remove(random.nextInt(VoxelTile.ENTRY_COUNT));
+                } else {
+                    voxels.put(random.nextInt(VoxelTile.ENTRY_COUNT), randomVoxel(random));
+                }
+            }
+
+            VoxelTile base = createTile(random, baseVoxels);
+            VoxelTile tile = createTile(random, voxels);
+
+            ByteBuf delta = Unpooled.buffer();
+            tile.writeDelta(base, delta);
+
+            //apply the delta to a copy of the base tile which was loaded from its encoded form
+            VoxelTile patched = new VoxelTile();
+            ByteBuf encodedBase = Unpooled.buffer();
+            if (!base.write(encodedBase)) {
+                patched.read(encodedBase);
+            }
+            patched.applyDelta(delta);
+            checkState(!delta.isReadable(), "delta wasn't fully read");
+
+            ByteBuf expected = Unpooled.buffer();
+            ByteBuf actual = Unpooled.buffer();
+            checkState(tile.write(expected) == patched.write(actual));
+            checkState(expected.equals(actual), "patched tile differs from the original (iteration %s)", i);
+
+            //make sure every voxel can still be looked up correctly
+            VoxelData data = new VoxelData();
+            for (int pos = 0; pos < VoxelTile.ENTRY_COUNT; pos++) {
+                VoxelData expectedData = voxels.get(pos);
+                boolean present = patched.get(pos >> (T_SHIFT << 1), (pos >> T_SHIFT) & T_MASK, pos & T_MASK, data);
+                checkState(present == (expectedData != null), "voxel %s presence mismatch", pos);
+                checkState(!present || (data.states[0] == expectedData.states[0] && data.light == expectedData.light), "voxel %s data mismatch", pos);
+            }
+        }
+    }
+
+    protected static VoxelData randomVoxel(Random random) {
+        VoxelData data = new VoxelData();
+        data.x = random.nextInt(POS_ONE);
+        data.y = random.nextInt(POS_ONE);
+        data.z = random.nextInt(POS_ONE);
+        data.edges = random.nextInt(1 << EDGE_COUNT);
+        data.biome = random.nextInt(256);
+        data.light = random.nextInt(256);
+        for (int i = 0; i < EDGE_COUNT; i++) {
+            data.states[i] = random.nextInt(1 << 16);
+        }
+        return data;
+    }
+
+    protected static VoxelTile createTile(Random random, Map<Integer, VoxelData> voxels) {
+        //insert the voxels in random order to make sure that the tile's internal layout doesn't matter
+        List<Integer> positions = new ArrayList<>(voxels.keySet());
+        Collections.shuffle(positions, random);
+
+        VoxelTile tile = new VoxelTile();
+        for (int pos : positions) {
+            tile.set(pos >> (T_SHIFT << 1), (pos >> T_SHIFT) & T_MASK, pos & T_MASK, voxels.get(pos));
+        }
+        return tile;
+    }
+}
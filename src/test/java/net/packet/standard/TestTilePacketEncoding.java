@@ -0,0 +1,197 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.packet.standard;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.daporkchop.fp2.mode.api.IFarDirectPosAccess;
+import net.daporkchop.fp2.mode.api.IFarPos;
+import net.daporkchop.fp2.mode.api.IFarRenderMode;
+import net.daporkchop.fp2.mode.api.IFarTile;
+import net.daporkchop.fp2.mode.api.tile.CompressedTileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.ITileMetadata;
+import net.daporkchop.fp2.mode.api.tile.ITileSnapshot;
+import net.daporkchop.fp2.mode.api.tile.TileSnapshot;
+import net.daporkchop.fp2.mode.heightmap.HeightmapRenderMode;
+import net.daporkchop.fp2.mode.voxel.VoxelRenderMode;
+import net.daporkchop.fp2.net.packet.standard.client.CPacketCachedTiles;
+import net.daporkchop.fp2.net.packet.standard.server.SPacketTileDataBatch;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import util.FP2Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * Ensures that the packets which delta-encode lists of tile positions can be decoded back into exactly what was sent.
+ *
+ * @author DaPorkchop_
+ */
+public class TestTilePacketEncoding {
+    @BeforeClass
+    public static void init() {
+        FP2Test.init();
+    }
+
+    /**
+     * Generates a bunch of distinct positions at mixed levels, including some with negative, very large and extreme coordinates.
+     */
+    protected static <POS extends IFarPos> List<POS> randomPositions(Random random, IFarRenderMode<POS, ?> mode, int count) {
+        IFarDirectPosAccess<POS> directPosAccess = mode.directPosAccess();
+        int[] specialValues = { 0, -1, 1, 1 << 20, -(1 << 20), 1 << 28, -(1 << 28), Integer.MAX_VALUE, Integer.MIN_VALUE };
+
+        Map<POS, Boolean> positions = new HashMap<>();
+        int[] axes = new int[directPosAccess.axisCount()];
+        while (positions.size() < count) {
+            for (int axis = 0; axis < axes.length; axis++) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        axes[axis] = random.nextInt(64) - 32;
+                        break;
+                    case 1:
+                        axes[axis] = random.nextInt();
+                        break;
+                    default:
+                        axes[axis] = specialValues[random.nextInt(specialValues.length)];
+                }
+            }
+            positions.put(directPosAccess.fromAxes(random.nextInt(8), axes), Boolean.TRUE);
+        }
+        return new ArrayList<>(positions.keySet());
+    }
+
+    protected static long randomTimestamp(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return ITileMetadata.TIMESTAMP_GENERATED;
+            case 1:
+                return random.nextInt(1000);
+            case 2:
+                return random.nextLong();
+            default:
+                return random.nextBoolean() ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+    }
+
+    @Test
+    public void testTimestampsVoxel() {
+        this.testTimestamps(new VoxelRenderMode());
+    }
+
+    @Test
+    public void testTimestampsHeightmap() {
+        this.testTimestamps(new HeightmapRenderMode());
+    }
+
+    protected <POS extends IFarPos> void testTimestamps(IFarRenderMode<POS, ?> mode) {
+        Random random = new Random(12345L);
+
+        for (int count : new int[]{ 0, 1, 2, 100, 5000 }) {
+            Map<POS, Long> timestamps = new HashMap<>();
+            for (POS pos : randomPositions(random, mode, count)) {
+                timestamps.put(pos, randomTimestamp(random));
+            }
+
+            CPacketCachedTiles packet = new CPacketCachedTiles();
+            packet.modeId(count & 3);
+            packet.mode(mode);
+            packet.timestamps(timestamps);
+
+            ByteBuf buf = Unpooled.buffer();
+            packet.toBytes(buf);
+
+            CPacketCachedTiles decoded = new CPacketCachedTiles();
+            decoded.fromBytes(buf);
+            checkState(!buf.isReadable(), "packet wasn't read completely");
+
+            checkState(decoded.modeId() == (count & 3), "mode ID mismatch: %d", decoded.modeId());
+            checkState(timestamps.equals(decoded.decode(mode)), "decoded timestamps don't match the original ones (count=%d)", count);
+        }
+    }
+
+    @Test
+    public void testTileDataBatchVoxel() {
+        this.testTileDataBatch(new VoxelRenderMode());
+    }
+
+    @Test
+    public void testTileDataBatchHeightmap() {
+        this.testTileDataBatch(new HeightmapRenderMode());
+    }
+
+    protected <POS extends IFarPos, T extends IFarTile> void testTileDataBatch(IFarRenderMode<POS, T> mode) {
+        Random random = new Random(67890L);
+
+        for (int count : new int[]{ 0, 1, 2, 100, 1000 }) {
+            List<ITileSnapshot<POS, T>> tiles = new ArrayList<>();
+            for (POS pos : randomPositions(random, mode, count)) {
+                byte[] data = null;
+                if (random.nextInt(4) != 0) { //some tiles are empty
+                    data = new byte[random.nextInt(1024)];
+                    random.nextBytes(data);
+                }
+                tiles.add(new TileSnapshot<>(pos, randomTimestamp(random), data));
+            }
+
+            SPacketTileDataBatch packet = new SPacketTileDataBatch();
+            packet.modeId(count & 3);
+            packet.mode(mode);
+            packet.tiles(tiles);
+
+            ByteBuf buf = Unpooled.buffer();
+            packet.toBytes(buf);
+
+            SPacketTileDataBatch decoded = new SPacketTileDataBatch();
+            decoded.fromBytes(buf);
+            checkState(!buf.isReadable(), "packet wasn't read completely");
+            checkState(decoded.modeId() == (count & 3), "mode ID mismatch: %d", decoded.modeId());
+
+            List<CompressedTileSnapshot<POS, T>> decodedTiles = decoded.decode(mode, null);
+            checkState(decodedTiles.size() == tiles.size(), "expected %d tiles, but decoded %d", tiles.size(), decodedTiles.size());
+
+            //the packet sorts the tiles by position, so do the same to the originals before comparing them
+            tiles.sort((a, b) -> a.pos().compareTo(b.pos()));
+            for (int i = 0; i < tiles.size(); i++) {
+                checkState(Arrays.equals(encode(tiles.get(i)), encode(decodedTiles.get(i))), "tile #%d (%s) doesn't match the original", i, tiles.get(i).pos());
+            }
+        }
+    }
+
+    protected static byte[] encode(ITileSnapshot<?, ?> snapshot) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            snapshot.write(buf);
+
+            byte[] data = new byte[buf.readableBytes()];
+            buf.readBytes(data);
+            return data;
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package util.compression;
+
+import net.daporkchop.fp2.util.compression.ZstdDictionaryTrainer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static net.daporkchop.fp2.util.compression.ZstdDictionaryTrainer.*;
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestZstdDictionaryTrainer {
+    protected static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    protected static int indexOf(byte[] haystack, byte[] needle) {
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(haystack, i, i + needle.length), needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testCommonContentIsSelected() {
+        Random random = new Random(12345L);
+        byte[] common = randomBytes(random, SEGMENT_SIZE);
+
+        //each sample consists of some random noise with the same block of common content somewhere in the middle
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            byte[] prefix = randomBytes(random, random.nextInt(2048));
+            byte[] suffix = randomBytes(random, random.nextInt(2048));
+
+            byte[] sample = new byte[prefix.length + common.length + suffix.length];
+            System.arraycopy(prefix, 0, sample, 0, prefix.length);
+            System.arraycopy(common, 0, sample, prefix.length, common.length);
+            System.arraycopy(suffix, 0, sample, prefix.length + common.length, suffix.length);
+            samples.add(sample);
+        }
+
+        int maxSize = 4 * SEGMENT_SIZE;
+        byte[] dict = ZstdDictionaryTrainer.train(samples, maxSize);
+        checkState(dict != null, "training failed");
+        checkState(dict.length <= maxSize, "dictionary is too big: %d > %d", dict.length, maxSize);
+
+        //the common content is by far the most valuable segment, so it should be placed at the very end of the dictionary
+        checkState(indexOf(dict, common) == dict.length - common.length, "common content isn't at the end of the dictionary");
+    }
+
+    @Test
+    public void testDeterministic() {
+        Random random = new Random(67890L);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            samples.add(randomBytes(random, 1 + random.nextInt(4096)));
+        }
+
+        byte[] dict0 = ZstdDictionaryTrainer.train(samples, 8 * SEGMENT_SIZE);
+        byte[] dict1 = ZstdDictionaryTrainer.train(samples, 8 * SEGMENT_SIZE);
+        checkState(dict0 != null && Arrays.equals(dict0, dict1), "training isn't deterministic");
+    }
+
+    @Test
+    public void testNotEnoughData() {
+        //there's nothing to train from
+        checkState(ZstdDictionaryTrainer.train(Collections.emptyList(), 4 * SEGMENT_SIZE) == null);
+
+        //the samples are smaller in total than the requested dictionary size
+        Random random = new Random(13579L);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            samples.add(randomBytes(random, SEGMENT_SIZE));
+        }
+        checkState(ZstdDictionaryTrainer.train(samples, 4 * SEGMENT_SIZE) == null);
+
+        //the samples are all too small to contain a single dmer
+        samples.clear();
+        for (int i = 0; i < 4 * SEGMENT_SIZE; i++) {
+            samples.add(randomBytes(random, DMER_SIZE - 1));
+        }
+        checkState(ZstdDictionaryTrainer.train(samples, 4 * SEGMENT_SIZE) == null);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package util.datastructure;
+
+import net.daporkchop.fp2.util.datastructure.CompactReferenceArraySet;
+import net.daporkchop.fp2.util.datastructure.LockingEntryMap;
+import net.daporkchop.lib.unsafe.PUnsafe;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+import static org.junit.Assume.*;
+
+/**
+ * Compares the throughput of {@link LockingEntryMap} with that of the protocol previously used by the tracker manager (acquiring the entry's monitor using
+ * {@link PUnsafe#tryMonitorEnter(Object)} inside {@link ConcurrentHashMap#compute(Object, BiFunction)}, and spinning while it's busy), under tracker churn on a few hot
+ * positions.
+ * <p>
+ * This is skipped unless the {@code fp2.test.benchmark} system property is set to {@code true}, since it takes a while and only prints its results. Correctness of
+ * {@link LockingEntryMap} is checked by {@link TestLockingEntryMap}.
+ *
+ * @author DaPorkchop_
+ */
+public class BenchmarkLockingEntryMap {
+    protected static final int KEYS = 64;
+    protected static final int OPERATIONS_PER_ROUND = 200000;
+    protected static final int WARMUP_ROUNDS = 5;
+    protected static final int MEASURED_ROUNDS = 10;
+
+    @BeforeClass
+    public static void init() {
+        assumeTrue("benchmarks are disabled", Boolean.getBoolean("fp2.test.benchmark"));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int threads : IntStream.of(1, cpus, cpus * 4).distinct().toArray()) {
+            this.benchmark("locking entry map", threads, new LockingProtocol());
+            this.benchmark("compute + tryMonitorEnter", threads, new SpinningProtocol());
+        }
+    }
+
+    protected void benchmark(String name, int threads, Protocol protocol) throws Exception {
+        long[] nanosPerOp = new long[MEASURED_ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+            CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Object tracker = new Object();
+                workers.add(new Thread(() -> {
+                    boolean[] tracking = new boolean[KEYS];
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int op = 0; op < OPERATIONS_PER_ROUND; op++) {
+                        int key = random.nextInt(KEYS);
+                        if (tracking[key]) {
+                            protocol.stopTracking(tracker, key);
+                        } else {
+                            protocol.beginTracking(tracker, key);
+                        }
+                        tracking[key] = !tracking[key];
+                    }
+                    for (int key = 0; key < KEYS; key++) {
+                        if (tracking[key]) {
+                            protocol.stopTracking(tracker, key);
+                        }
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+
+            barrier.await();
+            long start = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long nanos = System.nanoTime() - start;
+
+            if (round >= 0) {
+                nanosPerOp[round] = nanos / ((long) threads * OPERATIONS_PER_ROUND);
+            }
+        }
+
+        Arrays.sort(nanosPerOp);
+        System.out.printf("%s, %d threads: median %d ns/op, best %d ns/op (wall-clock time divided by the total number of operations)\n", name, threads, nanosPerOp[MEASURED_ROUNDS >> 1], nanosPerOp[0]);
+    }
+
+    /**
+     * A way of adding and removing trackers to and from the entries in a map.
+     *
+     * @author DaPorkchop_
+     */
+    protected interface Protocol {
+        void beginTracking(Object tracker, Integer key);
+
+        void stopTracking(Object tracker, Integer key);
+    }
+
+    protected static class LockingProtocol implements Protocol {
+        protected final LockingEntryMap<Integer, CompactReferenceArraySet<Object>> entries = new LockingEntryMap<>();
+
+        @Override
+        public void beginTracking(Object tracker, Integer key) {
+            this.entries.runLocked(key, k -> new CompactReferenceArraySet<>(), entry -> {
+                entry.add(tracker);
+                return false;
+            });
+        }
+
+        @Override
+        public void stopTracking(Object tracker, Integer key) {
+            this.entries.runLockedIfPresent(key, entry -> {
+                entry.remove(tracker);
+                return entry.isEmpty();
+            });
+        }
+    }
+
+    protected static class SpinningProtocol implements Protocol {
+        protected final Map<Integer, CompactReferenceArraySet<Object>> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public void beginTracking(Object tracker, Integer key) {
+            class State implements BiFunction<Integer, CompactReferenceArraySet<Object>, CompactReferenceArraySet<Object>> {
+                CompactReferenceArraySet<Object> entry;
+
+                @Override
+                public CompactReferenceArraySet<Object> apply(Integer key, CompactReferenceArraySet<Object> entry) {
+                    if (entry == null) { //no entry exists at this position, so we should make a new one
+                        entry = new CompactReferenceArraySet<>();
+                    } else if (PUnsafe.tryMonitorEnter(entry)) {
+                        this.entry = entry;
+                    }
+                    return entry;
+                }
+            }
+
+            State state = new State();
+            do {
+                this.entries.compute(key, state);
+            } while (state.entry == null);
+
+            try {
+                state.entry.add(tracker);
+            } finally {
+                PUnsafe.monitorExit(state.entry);
+            }
+        }
+
+        @Override
+        public void stopTracking(Object tracker, Integer key) {
+            class State implements BiFunction<Integer, CompactReferenceArraySet<Object>, CompactReferenceArraySet<Object>> {
+                boolean spin;
+
+                @Override
+                public CompactReferenceArraySet<Object> apply(Integer key, CompactReferenceArraySet<Object> entry) {
+                    if (!PUnsafe.tryMonitorEnter(entry)) { //failed to acquire a lock, break out and spin
+                        this.spin = true;
+                        return entry;
+                    }
+
+                    try {
+                        this.spin = false;
+                        entry.remove(tracker);
+                        return entry.isEmpty() ? null : entry;
+                    } finally {
+                        PUnsafe.monitorExit(entry);
+                    }
+                }
+            }
+
+            State state = new State();
+            do {
+                this.entries.compute(key, state);
+            } while (state.spin);
+        }
+    }
+}
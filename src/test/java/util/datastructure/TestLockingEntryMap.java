@@ -0,0 +1,171 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package util.datastructure;
+
+import net.daporkchop.fp2.util.datastructure.LockingEntryMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestLockingEntryMap {
+    @Test
+    public void testIfPresent() {
+        LockingEntryMap<Integer, Value> map = new LockingEntryMap<>();
+        checkState(!map.runLockedIfPresent(0, value -> {
+            throw new IllegalStateException("action called for absent key");
+        }));
+        checkState(map.size() == 0);
+
+        map.runLocked(0, Value::new, Value::add);
+        checkState(map.size() == 1);
+        checkState(map.runLockedIfPresent(0, Value::remove));
+        checkState(map.size() == 0);
+        checkState(!map.runLockedIfPresent(0, Value::remove));
+    }
+
+    @Test
+    public void testConcurrentChurn() throws Throwable {
+        //simulates many trackers beginning and stopping to track the same few positions at once, which is what happens when lots of players are close together
+        final int threads = 8;
+        final int keys = 16;
+        final int operations = 50000;
+
+        LockingEntryMap<Integer, Value> map = new LockingEntryMap<>();
+        AtomicInteger created = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(() -> {
+                try {
+                    boolean[] holding = new boolean[keys];
+                    barrier.await();
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int op = 0; op < operations; op++) {
+                        int key = random.nextInt(keys);
+                        if (holding[key]) { //stop tracking: the entry must still exist, since we're holding it
+                            checkState(map.runLockedIfPresent(key, Value::remove), "entry %d disappeared while it was held", key);
+                        } else { //begin tracking
+                            map.runLocked(key, k -> {
+                                created.incrementAndGet();
+                                return new Value(k);
+                            }, Value::add);
+                        }
+                        holding[key] = !holding[key];
+
+                        if ((op & 7) == 0) { //other operations run on whichever entries happen to exist
+                            map.runLockedIfPresent(random.nextInt(keys), Value::touch);
+                        }
+                    }
+
+                    for (int key = 0; key < keys; key++) {
+                        if (holding[key]) {
+                            checkState(map.runLockedIfPresent(key, Value::remove), "entry %d disappeared while it was held", key);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        checkState(map.size() == 0, "%d entries are left over after every holder was removed", map.size());
+        checkState(created.get() > keys, "entries were never removed and re-created (%d created)", created.get());
+    }
+
+    /**
+     * A value which checks that it's only ever accessed by one thread at a time, and never after it's been removed.
+     * <p>
+     * Each operation returns whether or not the value should be removed from the map.
+     *
+     * @author DaPorkchop_
+     */
+    protected static final class Value {
+        protected final int key;
+        protected int holders;
+        protected boolean busy;
+        protected boolean removed;
+
+        public Value(int key) {
+            this.key = key;
+        }
+
+        protected void enter() {
+            checkState(!this.removed, "entry %d was accessed after being removed", this.key);
+            checkState(!this.busy, "entry %d was accessed concurrently", this.key);
+            this.busy = true;
+        }
+
+        protected void exit() {
+            Thread.yield(); //give other threads a chance to run into the entry while it's busy
+            this.busy = false;
+        }
+
+        public boolean add() {
+            this.enter();
+            try {
+                this.holders++;
+                return false;
+            } finally {
+                this.exit();
+            }
+        }
+
+        public boolean remove() {
+            this.enter();
+            try {
+                checkState(this.holders > 0, "entry %d has no holders", this.key);
+                return this.removed = --this.holders == 0;
+            } finally {
+                this.exit();
+            }
+        }
+
+        public boolean touch() {
+            this.enter();
+            try {
+                return false;
+            } finally {
+                this.exit();
+            }
+        }
+    }
+}
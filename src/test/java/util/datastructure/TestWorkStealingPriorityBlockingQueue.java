@@ -0,0 +1,172 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2021 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package util.datastructure;
+
+import net.daporkchop.fp2.util.datastructure.ConcurrentWorkStealingPriorityBlockingQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static net.daporkchop.lib.common.util.PValidation.*;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestWorkStealingPriorityBlockingQueue {
+    @Test
+    public void testRemove() {
+        ConcurrentWorkStealingPriorityBlockingQueue<Integer> queue = new ConcurrentWorkStealingPriorityBlockingQueue<>();
+        List<ConcurrentWorkStealingPriorityBlockingQueue<Integer>.Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            nodes.add(queue.push(i));
+        }
+
+        for (int i = 0; i < 10000; i += 2) {
+            checkState(nodes.get(i).remove());
+            checkState(!nodes.get(i).remove());
+        }
+        checkState(queue.size() == 5000, "%s", queue.size());
+
+        //a single thread only has one lane, so elements must come out in order
+        for (int i = 1; i < 10000; i += 2) {
+            Integer value = queue.poll();
+            checkState(value != null && value == i, "expected %d, got %s", i, value);
+            checkState(!nodes.get(i).remove());
+        }
+        checkState(queue.poll() == null && queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentPoll() throws InterruptedException {
+        ConcurrentWorkStealingPriorityBlockingQueue<Integer> queue = new ConcurrentWorkStealingPriorityBlockingQueue<>();
+        for (int i = 0; i < 100000; i++) {
+            queue.add(i);
+        }
+
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (Integer value; (value = queue.poll()) != null; ) {
+                    checkState(seen.add(value), "duplicate value %d", value);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        checkState(seen.size() == 100000, "%s", seen.size());
+        checkState(queue.isEmpty());
+    }
+
+    @Test
+    public void testPollLess() throws InterruptedException {
+        ConcurrentWorkStealingPriorityBlockingQueue<Integer> queue = new ConcurrentWorkStealingPriorityBlockingQueue<>();
+
+        Integer[] result = new Integer[1];
+        Thread thread = new Thread(() -> {
+            try {
+                result[0] = queue.pollLess(10, 10L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+
+        Thread.sleep(50L);
+        queue.add(50); //not less than the bound, mustn't wake the poller up
+        Thread.sleep(50L);
+        queue.add(5);
+        thread.join();
+
+        checkState(result[0] != null && result[0] == 5, "%s", result[0]);
+        checkState(queue.size() == 1 && queue.peek() == 50);
+    }
+
+    @Test
+    public void testLaneRetirement() throws Exception {
+        ConcurrentWorkStealingPriorityBlockingQueue<Integer> queue = new ConcurrentWorkStealingPriorityBlockingQueue<>();
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+
+        //threads only get a lane once they actually poll something
+        for (int i = 0; i < 8; i++) {
+            queue.add(-1 - i);
+        }
+
+        //workers which release their lanes before exiting, one of which leaves some elements behind in its lane
+        Thread[] threads = new Thread[8];
+        CyclicBarrier barrier = new CyclicBarrier(threads.length);
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    checkState(queue.poll() != null);
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+
+                if (index == 0) {
+                    for (int j = 0; j < 100; j++) {
+                        queue.add(j);
+                    }
+                }
+                queue.releaseLocalLane();
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        checkState(queue.size() == 100, "%s", queue.size());
+        checkState(queue.laneCount() == 2, "%s", queue.laneCount()); //the shared lane, plus the released lane which still contains elements
+
+        //workers which exit without releasing their lanes
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> checkState(seen.add(queue.poll())));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //the elements left behind must still be available, and all of the orphaned lanes should be gone once they've been emptied
+        for (Integer value; (value = queue.poll()) != null; ) {
+            checkState(seen.add(value), "duplicate value %d", value);
+        }
+        checkState(seen.size() == 100, "%s", seen.size());
+        checkState(queue.laneCount() == 2, "%s", queue.laneCount()); //the shared lane, plus the current thread's lane
+
+        //elements added by threads without a lane of their own must never end up in a retired lane
+        Thread thread = new Thread(() -> queue.add(1000));
+        thread.start();
+        thread.join();
+        checkState(queue.poll() == 1000);
+        checkState(queue.isEmpty());
+    }
+}
@@ -86,4 +86,103 @@ public class BitInterleaveTest {
             checkState(x0 == x1 && y0 == y1 && z0 == z1);
         }
     }
+
+    @Test
+    public void testBigMin2d() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 10000; i++) {
+            //coordinates are signed and have their sign bits flipped, the same way as they are in tile position keys
+            int minX = random.nextInt(-32, 32);
+            int maxX = random.nextInt(minX, 32);
+            int minZ = random.nextInt(-32, 32);
+            int maxZ = random.nextInt(minZ, 32);
+            int x = random.nextInt(-40, 40);
+            int z = random.nextInt(-40, 40);
+            if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                continue;
+            }
+
+            //brute-force search for the expected result
+            long code = MathUtil.interleaveBits(x ^ Integer.MIN_VALUE, z ^ Integer.MIN_VALUE);
+            long expected = 0L;
+            boolean expectedFound = false;
+            for (int bx = minX; bx <= maxX; bx++) {
+                for (int bz = minZ; bz <= maxZ; bz++) {
+                    long c = MathUtil.interleaveBits(bx ^ Integer.MIN_VALUE, bz ^ Integer.MIN_VALUE);
+                    if (Long.compareUnsigned(c, code) > 0 && (!expectedFound || Long.compareUnsigned(c, expected) < 0)) {
+                        expected = c;
+                        expectedFound = true;
+                    }
+                }
+            }
+
+            int[] next = new int[2];
+            boolean found = MathUtil.zOrderBigMin(
+                    new int[]{ z ^ Integer.MIN_VALUE, x ^ Integer.MIN_VALUE },
+                    new int[]{ minZ ^ Integer.MIN_VALUE, minX ^ Integer.MIN_VALUE },
+                    new int[]{ maxZ ^ Integer.MIN_VALUE, maxX ^ Integer.MIN_VALUE },
+                    next);
+
+            checkState(found == expectedFound);
+            checkState(!found || MathUtil.interleaveBits(next[1], next[0]) == expected);
+        }
+    }
+
+    @Test
+    public void testBigMin3d() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 2000; i++) {
+            //coordinates are signed and have their sign bits flipped, the same way as they are in tile position keys
+            int minX = random.nextInt(-8, 8);
+            int maxX = random.nextInt(minX, 8);
+            int minY = random.nextInt(-8, 8);
+            int maxY = random.nextInt(minY, 8);
+            int minZ = random.nextInt(-8, 8);
+            int maxZ = random.nextInt(minZ, 8);
+            int x = random.nextInt(-12, 12);
+            int y = random.nextInt(-12, 12);
+            int z = random.nextInt(-12, 12);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                continue;
+            }
+
+            //brute-force search for the expected result. the morton code is 96 bits long, so we compare the high and low parts separately
+            int codeHigh = MathUtil.interleaveBitsHigh(x ^ Integer.MIN_VALUE, y ^ Integer.MIN_VALUE, z ^ Integer.MIN_VALUE);
+            long codeLow = MathUtil.interleaveBits(x ^ Integer.MIN_VALUE, y ^ Integer.MIN_VALUE, z ^ Integer.MIN_VALUE);
+            int expectedHigh = 0;
+            long expectedLow = 0L;
+            boolean expectedFound = false;
+            for (int bx = minX; bx <= maxX; bx++) {
+                for (int by = minY; by <= maxY; by++) {
+                    for (int bz = minZ; bz <= maxZ; bz++) {
+                        int cHigh = MathUtil.interleaveBitsHigh(bx ^ Integer.MIN_VALUE, by ^ Integer.MIN_VALUE, bz ^ Integer.MIN_VALUE);
+                        long cLow = MathUtil.interleaveBits(bx ^ Integer.MIN_VALUE, by ^ Integer.MIN_VALUE, bz ^ Integer.MIN_VALUE);
+                        if (compare96(cHigh, cLow, codeHigh, codeLow) > 0 && (!expectedFound || compare96(cHigh, cLow, expectedHigh, expectedLow) < 0)) {
+                            expectedHigh = cHigh;
+                            expectedLow = cLow;
+                            expectedFound = true;
+                        }
+                    }
+                }
+            }
+
+            //z is the most significant axis, followed by y and then x
+            int[] next = new int[3];
+            boolean found = MathUtil.zOrderBigMin(
+                    new int[]{ z ^ Integer.MIN_VALUE, y ^ Integer.MIN_VALUE, x ^ Integer.MIN_VALUE },
+                    new int[]{ minZ ^ Integer.MIN_VALUE, minY ^ Integer.MIN_VALUE, minX ^ Integer.MIN_VALUE },
+                    new int[]{ maxZ ^ Integer.MIN_VALUE, maxY ^ Integer.MIN_VALUE, maxX ^ Integer.MIN_VALUE },
+                    next);
+
+            checkState(found == expectedFound);
+            checkState(!found || (MathUtil.interleaveBitsHigh(next[2], next[1], next[0]) == expectedHigh && MathUtil.interleaveBits(next[2], next[1], next[0]) == expectedLow));
+        }
+    }
+
+    private static int compare96(int aHigh, long aLow, int bHigh, long bLow) {
+        int d = Integer.compareUnsigned(aHigh, bHigh);
+        return d != 0 ? d : Long.compareUnsigned(aLow, bLow);
+    }
 }